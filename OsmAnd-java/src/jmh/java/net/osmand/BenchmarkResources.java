@@ -0,0 +1,74 @@
+package net.osmand;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.router.TestEntry;
+
+/**
+ * Inputs shared by benchmarks: test map (system property osmand.benchmark.obf, by default routing test archive
+ * collected by collectTestResources) and routing scenarios from test_routing.json.
+ */
+public class BenchmarkResources {
+
+	public static final String OBF_PROPERTY = "osmand.benchmark.obf";
+	public static final String DEFAULT_OBF = "src/test/resources/routing/Routing_test_archive.obf";
+	public static final String TEST_ROUTING = "/test_routing.json";
+
+	public static File getObfFile() throws FileNotFoundException {
+		File f = new File(System.getProperty(OBF_PROPERTY, DEFAULT_OBF));
+		if (!f.exists()) {
+			throw new FileNotFoundException(f.getAbsolutePath() + " (run collectTestResources or set -D"
+					+ OBF_PROPERTY + ")");
+		}
+		return f;
+	}
+
+	public static BinaryMapIndexReader openReader() throws IOException {
+		File f = getObfFile();
+		return new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f);
+	}
+
+	public static List<TestEntry> loadTestEntries() throws IOException {
+		InputStream is = BenchmarkResources.class.getResourceAsStream(TEST_ROUTING);
+		if (is == null) {
+			throw new FileNotFoundException(TEST_ROUTING + " (run collectTestResources)");
+		}
+		Reader reader = new InputStreamReader(is);
+		try {
+			TestEntry[] entries = new Gson().fromJson(reader, TestEntry[].class);
+			List<TestEntry> res = new ArrayList<TestEntry>();
+			for (TestEntry te : entries) {
+				if (!te.isIgnore() && (te.getParams() == null || !te.getParams().containsKey("map"))) {
+					res.add(te);
+				}
+			}
+			return res;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return scenario with given name or first scenario if name is empty
+	 */
+	public static TestEntry getTestEntry(String testName) throws IOException {
+		List<TestEntry> entries = loadTestEntries();
+		for (TestEntry te : entries) {
+			if (testName.isEmpty() || testName.equals(te.getTestName())) {
+				return te;
+			}
+		}
+		throw new IllegalArgumentException("Routing test '" + testName + "' is not found");
+	}
+}
@@ -0,0 +1,79 @@
+package net.osmand.binary;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.data.LatLon;
+import net.osmand.data.QuadRect;
+import net.osmand.util.MapUtils;
+
+/**
+ * Decoding of POI and map objects in bbox around start point of routing test scenario (-p testName=...).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BinaryMapIndexReaderBenchmark {
+
+	@Param({ "" })
+	public String testName;
+
+	@Param({ "2000" })
+	public int radius;
+
+	@Param({ "15" })
+	public int zoom;
+
+	private BinaryMapIndexReader reader;
+	private int left, right, top, bottom;
+
+	@Setup
+	public void setUp() throws IOException {
+		reader = BenchmarkResources.openReader();
+		LatLon l = BenchmarkResources.getTestEntry(testName).getStartPoint();
+		QuadRect bbox = MapUtils.calculateLatLonBbox(l.getLatitude(), l.getLongitude(), radius);
+		left = MapUtils.get31TileNumberX(bbox.left);
+		right = MapUtils.get31TileNumberX(bbox.right);
+		top = MapUtils.get31TileNumberY(bbox.top);
+		bottom = MapUtils.get31TileNumberY(bbox.bottom);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+
+	@Benchmark
+	public List<Amenity> searchPoi() throws IOException {
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(left, right, top, bottom, zoom,
+				BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+		return reader.searchPoi(req);
+	}
+
+	@Benchmark
+	public List<BinaryMapDataObject> searchMapIndex() throws IOException {
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(left, right, top, bottom,
+				zoom, null);
+		return reader.searchMapIndex(req);
+	}
+}
@@ -0,0 +1,93 @@
+package net.osmand.gpx;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.osmand.util.Algorithms;
+
+/**
+ * GPX parsing and track analysis. Parses file given by -p file=... or generated track with given number of points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GPXUtilitiesBenchmark {
+
+	@Param({ "" })
+	public String file;
+
+	@Param({ "10000" })
+	public int points;
+
+	private byte[] content;
+	private GPXFile gpxFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		if (file.isEmpty()) {
+			content = generateTrack(points).getBytes("UTF-8");
+		} else {
+			FileInputStream fis = new FileInputStream(new File(file));
+			try {
+				content = Algorithms.readBytesFromInputStream(fis);
+			} finally {
+				fis.close();
+			}
+		}
+		gpxFile = loadGPXFile();
+		if (gpxFile.error != null) {
+			throw new IOException(gpxFile.error);
+		}
+	}
+
+	private static String generateTrack(int points) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>\n");
+		sb.append("<gpx version=\"1.1\" creator=\"OsmAnd\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+		sb.append("<trk><name>Benchmark</name><trkseg>\n");
+		long time = 1700000000000L;
+		for (int i = 0; i < points; i++) {
+			double lat = 52.0 + 0.0001 * i + 0.00005 * Math.sin(i / 10.0);
+			double lon = 4.0 + 0.00015 * i;
+			sb.append(String.format(Locale.US, "<trkpt lat=\"%.6f\" lon=\"%.6f\"><ele>%.1f</ele><time>%s</time>"
+					+ "<extensions><speed>%.1f</speed></extensions></trkpt>\n", lat, lon,
+					20 + 10 * Math.sin(i / 50.0), format.format(new Date(time + i * 1000L)), 10.0 + (i % 7)));
+		}
+		sb.append("</trkseg></trk>\n</gpx>\n");
+		return sb.toString();
+	}
+
+	@Benchmark
+	public GPXFile loadGPXFile() {
+		return GPXUtilities.loadGPXFile(new ByteArrayInputStream(content));
+	}
+
+	@Benchmark
+	public GPXTrackAnalysis analysis() {
+		return gpxFile.getAnalysis(0);
+	}
+}
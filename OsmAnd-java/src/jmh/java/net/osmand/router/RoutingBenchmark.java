@@ -0,0 +1,113 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import net.osmand.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+/**
+ * Route calculation on scenarios of test_routing.json (select with -p testName=..., first scenario by default):
+ * A* of {@link BinaryRoutePlanner}, {@link HHRoutePlanner#runRouting} (map should contain HH sections) and
+ * {@link RouteResultPreparation#prepareResult} of precalculated route.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoutingBenchmark {
+
+	@Param({ "" })
+	public String testName;
+
+	private TestEntry te;
+	private BinaryMapIndexReader reader;
+	private RoutePlannerFrontEnd fe;
+	private RoutingContext prepareCtx;
+	private List<RouteSegmentResult> route;
+
+	@Setup
+	public void setUp(BenchmarkParams params) throws IOException, InterruptedException {
+		te = BenchmarkResources.getTestEntry(testName);
+		reader = BenchmarkResources.openReader();
+		if (params.getBenchmark().endsWith(".hhRouting") && reader.getHHRoutingIndexes().isEmpty()) {
+			reader.close();
+			// otherwise planner silently measures empty context
+			throw new IllegalStateException("Map " + reader.getFile().getName() + " has no HH routing sections");
+		}
+		fe = new RoutePlannerFrontEnd();
+		fe.disableHHRoutingConfig();
+		prepareCtx = buildContext();
+		RouteCalcResult res = fe.searchRoute(prepareCtx, te.getStartPoint(), te.getEndPoint(), te.getTransitPoint());
+		if (res == null || !res.isCorrect() || res.getList().isEmpty()) {
+			throw new IllegalStateException("Route is not found for " + te.getTestName());
+		}
+		route = res.getList();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+
+	private RoutingContext buildContext() {
+		Map<String, String> params = te.getParams() == null ? Collections.<String, String>emptyMap()
+				: te.getParams();
+		RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+				RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build(
+				params.containsKey("vehicle") ? params.get("vehicle") : "car", memoryLimits, params);
+		if (params.containsKey("heuristicCoefficient")) {
+			config.heuristicCoefficient = Float.parseFloat(params.get("heuristicCoefficient"));
+		}
+		return fe.buildRoutingContext(config, null, new BinaryMapIndexReader[] { reader });
+	}
+
+	@Benchmark
+	public RouteCalcResult astar() throws IOException, InterruptedException {
+		// new context every time: tiles loading is part of route calculation
+		return fe.searchRoute(buildContext(), te.getStartPoint(), te.getEndPoint(), te.getTransitPoint());
+	}
+
+	@Benchmark
+	public HHNetworkRouteRes hhRouting() throws SQLException, IOException, InterruptedException {
+		HHRoutePlanner<?> planner = HHRoutePlanner.create(buildContext());
+		return planner.runRouting(te.getStartPoint(), te.getEndPoint(),
+				HHRoutingConfig.astar(0).calcDetailed(HHRoutingConfig.CALCULATE_ALL_DETAILED));
+	}
+
+	@Benchmark
+	public RouteCalcResult prepareResult() throws IOException {
+		// prepareResult modifies segments (turns, attached roads) so it gets fresh copy of raw route
+		List<RouteSegmentResult> copy = new ArrayList<RouteSegmentResult>(route.size());
+		for (RouteSegmentResult r : route) {
+			copy.add(new RouteSegmentResult(r.getObject(), r.getStartPointIndex(), r.getEndPointIndex()));
+		}
+		return new RouteResultPreparation().prepareResult(prepareCtx, copy);
+	}
+}
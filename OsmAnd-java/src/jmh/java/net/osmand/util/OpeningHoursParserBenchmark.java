@@ -0,0 +1,50 @@
+package net.osmand.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.osmand.util.OpeningHoursParser.OpeningHours;
+
+/**
+ * Parsing of typical opening_hours values (simple, multi-rule, month ranges, comments, sunrise/sunset).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OpeningHoursParserBenchmark {
+
+	private static final String[] OPENING_HOURS = {
+			"24/7",
+			"Mo-Fr 08:00-20:00",
+			"Mo-Fr 09:00-18:00; Sa 10:00-14:00; Su,PH off",
+			"11:00-14:00,17:00-22:00; We off; Fr,Sa 11:00-14:00,17:00-00:00",
+			"Mo-We 07:00-21:00, Th-Fr 07:00-21:30, PH,Sa-Su 08:00-21:00",
+			"Mo-Fr 08:00-12:30, Mo-We 12:30-16:30 \"Sur rendez-vous\", Fr 12:30-15:30 \"Sur rendez-vous\"",
+			"Mo-Fr 10:00-18:30; We 10:00-14:00; Sa 10:00-13:00; Dec-Feb Mo-Fr 11:00-17:00; Dec-Feb We off; "
+					+ "Dec-Feb Sa 11:00-13:00; Dec 24-Dec 31 off \"Inventurarbeiten\"; PH off",
+			"Oct 24-Apr 05, Jun 10-Jun 20, Jul 6-12: Fr 08:00-16:00",
+			"2019 Apr 15 - 2019 Sep 1: Mo-Fr 00:00-24:00",
+			"Mo-Su (sunrise-00:30)-(sunset+00:30)"
+	};
+
+	@Benchmark
+	public void parseOpenedHours(Blackhole bh) {
+		for (String s : OPENING_HOURS) {
+			OpeningHours hours = OpeningHoursParser.parseOpenedHours(s);
+			bh.consume(hours);
+		}
+	}
+}
@@ -68,6 +68,14 @@ public final class CodedInputStream {
     return new CodedInputStream(raf);
   }
 
+  /**
+   * Create a new CodedInputStream reading from memory mapped file,
+   * several streams could share the same mapping.
+   */
+  public static CodedInputStream newInstance(MappedFile mappedFile) {
+    return new CodedInputStream(mappedFile.newCursor());
+  }
+
   /**
    * Create a new CodedInputStream wrapping the given byte array slice.
    */
@@ -539,6 +547,7 @@ public final class CodedInputStream {
 
   private final byte[] buffer;
   private RandomAccessFile raf;
+  private MappedFile.Cursor mapped;
   private int bufferSize;
   private int bufferSizeAfterLimit;
   private int bufferPos;
@@ -589,6 +598,16 @@ public final class CodedInputStream {
 		input = null;
 	}
 
+   // osmand change
+   private CodedInputStream(final MappedFile.Cursor mapped) {
+		buffer = new byte[BUFFER_SIZE];
+		this.bufferSize = 0;
+		bufferPos = 0;
+		totalBytesRetired = 0;
+		this.mapped = mapped;
+		input = null;
+	}
+
   private CodedInputStream(final InputStream input) {
     buffer = new byte[BUFFER_SIZE];
     bufferSize = 0;
@@ -777,6 +796,16 @@ public final class CodedInputStream {
     	} else {
     		bufferSize = -1;
     	}
+    } else if (mapped != null) {
+    	// osmand change
+    	totalBytesRetired = mapped.getFilePointer();
+    	long remain = mapped.length() - mapped.getFilePointer();
+    	bufferSize = (int) Math.min(remain, buffer.length);
+    	if(bufferSize > 0) {
+    		mapped.readFully(buffer, 0, bufferSize);
+    	} else {
+    		bufferSize = -1;
+    	}
     } else {
     	bufferSize = (input == null) ? -1 : input.read(buffer);
     }
@@ -898,6 +927,9 @@ public final class CodedInputStream {
         	if(raf != null) {
         		raf.readFully(chunk, pos, chunk.length - pos);
         		n = chunk.length - pos;
+        	} else if(mapped != null) {
+        		mapped.readFully(chunk, pos, chunk.length - pos);
+        		n = chunk.length - pos;
         	} else {
         		n = (input == null) ? -1 :
         	    input.read(chunk, pos, chunk.length - pos);
@@ -962,6 +994,11 @@ public final class CodedInputStream {
          bufferSize = 0;
          raf.seek(raf.getFilePointer() + (size - pos));
          totalBytesRetired = raf.getFilePointer();
+      } else if(mapped != null) {
+         bufferPos = 0;
+         bufferSize = 0;
+         mapped.seek(mapped.getFilePointer() + (size - pos));
+         totalBytesRetired = mapped.getFilePointer();
       } else {
         // Keep refilling the buffer until we get to the point we wanted to skip
         // to.  This has the side effect of ensuring the limits are updated
@@ -987,7 +1024,11 @@ public final class CodedInputStream {
 	  } else {
 		  totalBytesRetired = pointer;
 		  bufferSizeAfterLimit = 0;
-		  raf.seek(pointer);
+		  if (mapped != null) {
+			  mapped.seek(pointer);
+		  } else {
+			  raf.seek(pointer);
+		  }
 		  bufferPos = 0;
 		  bufferSize = 0;
 	  }
@@ -0,0 +1,108 @@
+package com.google.protobuf;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// osmand change
+/**
+ * Read-only memory mapping of a whole file. Files larger than 2 GB are split into
+ * chunks of {@link #CHUNK_SIZE} bytes because a single {@link MappedByteBuffer} is int addressed.
+ *
+ * The mapping itself is immutable and could be shared between threads, every reader
+ * should obtain own {@link Cursor} which keeps position state.
+ */
+public final class MappedFile {
+
+	public static final int CHUNK_SHIFT = 30;
+	public static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+	private final MappedByteBuffer[] chunks;
+	private final long length;
+	private final int chunkShift;
+
+	private MappedFile(MappedByteBuffer[] chunks, long length, int chunkShift) {
+		this.chunks = chunks;
+		this.length = length;
+		this.chunkShift = chunkShift;
+	}
+
+	public static MappedFile map(RandomAccessFile raf) throws IOException {
+		return map(raf, CHUNK_SHIFT);
+	}
+
+	// smaller chunks are used by tests to read across chunk boundaries
+	static MappedFile map(RandomAccessFile raf, int chunkShift) throws IOException {
+		FileChannel channel = raf.getChannel();
+		long length = channel.size();
+		long chunkSize = 1L << chunkShift;
+		int cnt = (int) ((length + chunkSize - 1) >> chunkShift);
+		MappedByteBuffer[] chunks = new MappedByteBuffer[cnt];
+		for (int i = 0; i < cnt; i++) {
+			long start = ((long) i) << chunkShift;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, length - start));
+		}
+		return new MappedFile(chunks, length, chunkShift);
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public Cursor newCursor() {
+		return new Cursor(this);
+	}
+
+	/**
+	 * Not thread safe view over the mapping with own file pointer.
+	 */
+	public static final class Cursor {
+		private final ByteBuffer[] views;
+		private final long length;
+		private final int chunkShift;
+		private final long chunkMask;
+		private long pointer;
+
+		private Cursor(MappedFile file) {
+			views = new ByteBuffer[file.chunks.length];
+			for (int i = 0; i < views.length; i++) {
+				views[i] = file.chunks[i].duplicate();
+			}
+			length = file.length;
+			chunkShift = file.chunkShift;
+			chunkMask = (1L << chunkShift) - 1;
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public long getFilePointer() {
+			return pointer;
+		}
+
+		public void seek(long pointer) {
+			this.pointer = pointer;
+		}
+
+		public void readFully(byte[] dst, int off, int len) throws IOException {
+			if (pointer + len > length) {
+				throw InvalidProtocolBufferException.truncatedMessage();
+			}
+			while (len > 0) {
+				ByteBuffer view = views[(int) (pointer >> chunkShift)];
+				int pos = (int) (pointer & chunkMask);
+				int n = Math.min(len, view.limit() - pos);
+				// cast keeps compatibility with pre-9 runtimes where position() returns Buffer
+				((Buffer) view).position(pos);
+				view.get(dst, off, n);
+				pointer += n;
+				off += n;
+				len -= n;
+			}
+		}
+	}
+}
@@ -38,6 +38,10 @@ import java.util.Random;
  */
 
 // https://github.com/lukedodd/ant-tsp
+/**
+ * @deprecated use {@link net.osmand.router.TspSolver} which also accepts road network time matrix
+ */
+@Deprecated
 public class TspAnt {
     // Algorithm parameters:
     // original amount of trail
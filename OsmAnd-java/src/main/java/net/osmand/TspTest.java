@@ -3,12 +3,14 @@ package net.osmand;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import net.osmand.data.LatLon;
+import net.osmand.router.TspSolver;
 import net.osmand.util.MapUtils;
 
 public class TspTest {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws InterruptedException {
 		ArrayList<LatLon> l = new ArrayList<LatLon>();
 		LatLon start = new LatLon(52.2956, 4.95);
 		LatLon farest = new LatLon(52.4556, 4.6739);
@@ -37,8 +39,11 @@ public class TspTest {
 		System.out.println("] ");
 //		ans = new TspHeldKarp().readInput(sh, true).solve();
 		LatLon end = farest;
-		TspAnt t = new TspAnt().readGraph(sh, start, end);
-		int [] ans = t.solve();
+		List<LatLon> points = new ArrayList<LatLon>();
+		points.add(start);
+		points.addAll(sh);
+		points.add(end);
+		int[] ans = TspSolver.solveOrder(TspSolver.buildStraightLineMatrix(points, 1), 0, points.size() - 1);
 		
 		double s = 0;
 		int[] order = new int[ans.length];
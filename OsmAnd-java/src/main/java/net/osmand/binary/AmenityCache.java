@@ -0,0 +1,207 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.data.Amenity;
+import net.osmand.data.Amenity.LazyAdditionalInfo;
+import net.osmand.osm.PoiCategory;
+
+/**
+ * Bounded LRU cache of decoded poi atoms by file and file pointer of atom, shared by all readers.
+ * Cached atoms are not changed and don't depend on request, every search creates new {@link Amenity}
+ * from them, so found objects could be changed by caller. Atoms are softly referenced and released on low memory.
+ */
+public class AmenityCache {
+
+	public static final int DEFAULT_SIZE = 10000;
+	private static final String EN_NAME_TAG = Amenity.NAME + ":en";
+
+	private static final AmenityCache DEFAULT = new AmenityCache(DEFAULT_SIZE);
+
+	private final int maxSize;
+	private final LinkedHashMap<AtomKey, SoftReference<PoiAtom>> atoms;
+	private long hits;
+	private long misses;
+
+	public AmenityCache(int maxSize) {
+		this.maxSize = maxSize;
+		atoms = new LinkedHashMap<AtomKey, SoftReference<PoiAtom>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<AtomKey, SoftReference<PoiAtom>> eldest) {
+				return size() > AmenityCache.this.maxSize;
+			}
+		};
+	}
+
+	public static AmenityCache getDefault() {
+		return DEFAULT;
+	}
+
+	synchronized PoiAtom get(File file, long fileModified, long pointer) {
+		AtomKey key = new AtomKey(file, fileModified, pointer);
+		SoftReference<PoiAtom> ref = atoms.get(key);
+		PoiAtom atom = ref == null ? null : ref.get();
+		if (atom == null) {
+			if (ref != null) {
+				atoms.remove(key);
+			}
+			misses++;
+		} else {
+			hits++;
+		}
+		return atom;
+	}
+
+	synchronized void put(File file, long fileModified, long pointer, PoiAtom atom) {
+		atoms.put(new AtomKey(file, fileModified, pointer), new SoftReference<PoiAtom>(atom));
+	}
+
+	public synchronized void clear(File file) {
+		Iterator<AtomKey> it = atoms.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().file.equals(file)) {
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		atoms.clear();
+	}
+
+	public synchronized int size() {
+		return atoms.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Amenity cache size " + atoms.size() + " hits " + hits + " misses " + misses;
+	}
+
+	private static class AtomKey {
+		private final File file;
+		private final long fileModified;
+		private final long pointer;
+
+		AtomKey(File file, long fileModified, long pointer) {
+			this.file = file;
+			this.fileModified = fileModified;
+			this.pointer = pointer;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + (int) (pointer ^ (pointer >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof AtomKey)) {
+				return false;
+			}
+			AtomKey o = (AtomKey) obj;
+			return pointer == o.pointer && fileModified == o.fileModified && file.equals(o.file);
+		}
+	}
+
+	/**
+	 * Poi atom decoded without request specific filters. Fields are in order of file, so amenity created from atom
+	 * is the same as amenity read from file. Atom isn't changed after it's put to cache.
+	 */
+	static class PoiAtom implements LazyAdditionalInfo {
+		// base zoom coordinates to check request bbox
+		int x;
+		int y;
+		double latitude;
+		double longitude;
+		Long id;
+		final List<PoiCategory> types = new ArrayList<>(1);
+		final List<String> subtypes = new ArrayList<>(1);
+		// field numbers of OsmAndPoiBoxDataAtom, additional info is stored with TEXTVALUES field number
+		final TIntArrayList fields = new TIntArrayList();
+		final List<String> tags = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
+
+		void addCategory(PoiCategory type, String subtype) {
+			types.add(type);
+			subtypes.add(subtype);
+		}
+
+		void addField(int field, String tag, String value) {
+			fields.add(field);
+			tags.add(tag);
+			values.add(value);
+		}
+
+		/**
+		 * @param names name and english name, which are needed to show amenity
+		 * @param other other names and additional info
+		 */
+		void setFields(Amenity am, boolean names, boolean other) {
+			for (int i = 0; i < fields.size(); i++) {
+				int field = fields.get(i);
+				String tag = tags.get(i);
+				boolean name = field == OsmandOdb.OsmAndPoiBoxDataAtom.NAME_FIELD_NUMBER
+						|| field == OsmandOdb.OsmAndPoiBoxDataAtom.NAMEEN_FIELD_NUMBER
+						|| Amenity.NAME.equals(tag) || EN_NAME_TAG.equals(tag);
+				if (name ? !names : !other) {
+					continue;
+				}
+				String value = values.get(i);
+				switch (field) {
+				case OsmandOdb.OsmAndPoiBoxDataAtom.TEXTVALUES_FIELD_NUMBER:
+					am.setAdditionalInfo(tag, value);
+					break;
+				case OsmandOdb.OsmAndPoiBoxDataAtom.NAME_FIELD_NUMBER:
+					am.setName(value);
+					break;
+				case OsmandOdb.OsmAndPoiBoxDataAtom.NAMEEN_FIELD_NUMBER:
+					am.setEnName(value);
+					break;
+				case OsmandOdb.OsmAndPoiBoxDataAtom.OPENINGHOURS_FIELD_NUMBER:
+					am.setOpeningHours(value);
+					break;
+				case OsmandOdb.OsmAndPoiBoxDataAtom.SITE_FIELD_NUMBER:
+					am.setSite(value);
+					break;
+				case OsmandOdb.OsmAndPoiBoxDataAtom.PHONE_FIELD_NUMBER:
+					am.setPhone(value);
+					break;
+				case OsmandOdb.OsmAndPoiBoxDataAtom.NOTE_FIELD_NUMBER:
+					am.setDescription(value);
+					break;
+				}
+			}
+		}
+
+		@Override
+		public void decode(Amenity amenity) {
+			setFields(amenity, false, true);
+		}
+	}
+}
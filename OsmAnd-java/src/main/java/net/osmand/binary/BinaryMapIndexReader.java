@@ -37,6 +37,7 @@ import org.xml.sax.SAXException;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MappedFile;
 import com.google.protobuf.WireFormat;
 
 import gnu.trove.list.array.TIntArrayList;
@@ -105,6 +106,8 @@ public class BinaryMapIndexReader {
 	
 	
 	private final RandomAccessFile raf;
+	// not null if file is read through memory mapping (mapping is shared with readers referencing same file)
+	private final MappedFile mappedFile;
 	protected final File file;
 	/*private*/ int version;
 	/*private*/ long dateCreated;
@@ -119,6 +122,9 @@ public class BinaryMapIndexReader {
 	/*private*/ List<HHRouteRegion> hhIndexes = new ArrayList<HHRouteRegion>();
 	/*private*/ List<BinaryIndexPart> indexes = new ArrayList<BinaryIndexPart>();
 	TLongObjectHashMap<IncompleteTransportRoute> incompleteTransportRoutes = null;
+	private PoiNameTrigramIndex poiNameTrigramIndex;
+	private AmenityCache amenityCache = AmenityCache.getDefault();
+	private final long fileModified;
 	
 	protected CodedInputStream codedIS;
 
@@ -132,22 +138,24 @@ public class BinaryMapIndexReader {
 
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file) throws IOException {
-		this.raf = raf;
-		this.file = file;
-		codedIS = CodedInputStream.newInstance(raf);
-		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
-		transportAdapter = new BinaryMapTransportReaderAdapter(this);
-		addressAdapter = new BinaryMapAddressReaderAdapter(this);
-		poiAdapter = new BinaryMapPoiReaderAdapter(this);
-		routeAdapter = new BinaryMapRouteReaderAdapter(this);
-		hhAdapter = new BinaryHHRouteReaderAdapter(this);
-		init();
+		this(raf, file, true);
 	}
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init) throws IOException {
+		this(raf, file, init, false);
+	}
+
+	/**
+	 * @param memoryMapped read whole file through {@link MappedFile} instead of buffered RandomAccessFile reads,
+	 *                     readers created with {@link #BinaryMapIndexReader(RandomAccessFile, BinaryMapIndexReader)}
+	 *                     share the same mapping
+	 */
+	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init, boolean memoryMapped) throws IOException {
 		this.raf = raf;
 		this.file = file;
-		codedIS = CodedInputStream.newInstance(raf);
+		this.fileModified = file != null ? file.lastModified() : 0;
+		this.mappedFile = memoryMapped ? MappedFile.map(raf) : null;
+		codedIS = createCodedInputStream();
 		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
 		transportAdapter = new BinaryMapTransportReaderAdapter(this);
 		addressAdapter = new BinaryMapAddressReaderAdapter(this);
@@ -162,7 +170,9 @@ public class BinaryMapIndexReader {
 	public BinaryMapIndexReader(final RandomAccessFile raf, BinaryMapIndexReader referenceToSameFile) throws IOException {
 		this.raf = raf;
 		this.file = referenceToSameFile.file;
-		codedIS = CodedInputStream.newInstance(raf);
+		this.fileModified = referenceToSameFile.fileModified;
+		this.mappedFile = referenceToSameFile.mappedFile;
+		codedIS = createCodedInputStream();
 		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
 		version = referenceToSameFile.version;
 		dateCreated = referenceToSameFile.dateCreated;
@@ -179,9 +189,33 @@ public class BinaryMapIndexReader {
 		hhIndexes = new ArrayList<HHRouteRegion>(referenceToSameFile.hhIndexes);
 		indexes = new ArrayList<BinaryIndexPart>(referenceToSameFile.indexes);
 		basemap = referenceToSameFile.basemap;
+		poiNameTrigramIndex = referenceToSameFile.poiNameTrigramIndex;
+		amenityCache = referenceToSameFile.amenityCache;
 		calculateCenterPointForRegions();
 	}
 
+	/**
+	 * Creates reader over the same memory mapping as referenceToSameFile without opening new file handle.
+	 * Parsed index metadata (regions, encoding rules) is shared with referenceToSameFile.
+	 */
+	public BinaryMapIndexReader(BinaryMapIndexReader referenceToSameFile) throws IOException {
+		this(null, checkMemoryMapped(referenceToSameFile));
+	}
+
+	private static BinaryMapIndexReader checkMemoryMapped(BinaryMapIndexReader reader) {
+		if (!reader.isMemoryMapped()) {
+			throw new IllegalArgumentException("Reader is not memory mapped: " + reader.getFile().getName());
+		}
+		return reader;
+	}
+
+	private CodedInputStream createCodedInputStream() {
+		return mappedFile != null ? CodedInputStream.newInstance(mappedFile) : CodedInputStream.newInstance(raf);
+	}
+
+	public boolean isMemoryMapped() {
+		return mappedFile != null;
+	}
 
 	public long getDateCreated() {
 		return dateCreated;
@@ -1398,6 +1432,37 @@ public class BinaryMapIndexReader {
 		return req.getSearchResults();
 	}
 
+	public PoiNameTrigramIndex getPoiNameTrigramIndex() {
+		return poiNameTrigramIndex;
+	}
+
+	public void setPoiNameTrigramIndex(PoiNameTrigramIndex poiNameTrigramIndex) {
+		this.poiNameTrigramIndex = poiNameTrigramIndex;
+	}
+
+	public AmenityCache getAmenityCache() {
+		return amenityCache;
+	}
+
+	/**
+	 * @param amenityCache cache of decoded pois, null to decode pois on every search
+	 */
+	public void setAmenityCache(AmenityCache amenityCache) {
+		this.amenityCache = amenityCache;
+	}
+
+	long getFileModified() {
+		return fileModified;
+	}
+
+	void readPoiNameTrigrams(PoiRegion poiIndex, PoiNameTrigramIndex.RegionBuilder builder) throws IOException {
+		poiAdapter.initCategories(poiIndex);
+		codedIS.seek(poiIndex.filePointer);
+		long old = codedIS.pushLimitLong((long) poiIndex.length);
+		poiAdapter.readPoiNameTrigrams(poiIndex, builder);
+		codedIS.popLimit(old);
+	}
+
 	public Map<PoiCategory, List<String>> searchPoiCategoriesByName(String query, Map<PoiCategory, List<String>> map) throws IOException {
 		if (query == null || query.length() == 0) {
 			throw new IllegalArgumentException();
@@ -1672,11 +1737,17 @@ public class BinaryMapIndexReader {
 
 	public void close() throws IOException {
 		if (codedIS != null) {
-			raf.close();
+			if (raf != null) {
+				raf.close();
+			}
 			codedIS = null;
 			mapIndexes.clear();
 			addressIndexes.clear();
 			transportIndexes.clear();
+			if (poiNameTrigramIndex != null) {
+				// file is opened again if index is used by other reader of the same file
+				poiNameTrigramIndex.close();
+			}
 		}
 	}
 
@@ -1758,6 +1829,9 @@ public class BinaryMapIndexReader {
 
 		String nameQuery = null;
 		StringMatcherMode matcherMode = StringMatcherMode.CHECK_STARTS_FROM_SPACE;
+		// typos allowed by poi name search with trigram index, -1 - prefix search by name index of file
+		int poiNameMaxErrors = -1;
+		boolean lazyAdditionalInfo = false;
 		SearchFilter searchFilter = null;
 
 		SearchPoiTypeFilter poiTypeFilter = null;
@@ -1836,6 +1910,22 @@ public class BinaryMapIndexReader {
 			this.interrupted = interrupted;
 		}
 
+		/**
+		 * Searches poi names containing query words with allowed number of typos. It's used only if reader has
+		 * {@link PoiNameTrigramIndex}, otherwise names are searched by prefix.
+		 */
+		public void setPoiNameSubstringSearch(int maxErrors) {
+			this.poiNameMaxErrors = maxErrors;
+		}
+
+		/**
+		 * Found amenities have only type, name and location, other names and additional info are set
+		 * on first access. It reduces allocations of searches showing many pois.
+		 */
+		public void setLazyAdditionalInfo(boolean lazyAdditionalInfo) {
+			this.lazyAdditionalInfo = lazyAdditionalInfo;
+		}
+
 		public boolean limitExceeded() {
 			return limit != -1 && searchResults.size() > limit;
 		}
@@ -2764,6 +2854,22 @@ public class BinaryMapIndexReader {
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Replaces routing regions shared with reference reader by own copies, so lazily loaded subregion trees,
+	 * data objects and added encoding rules aren't changed by readers of other threads.
+	 */
+	public void copyRouteRegions() {
+		for (int i = 0; i < routingIndexes.size(); i++) {
+			RouteRegion shared = routingIndexes.get(i);
+			RouteRegion copy = new RouteRegion(shared);
+			int ind = indexes.indexOf(shared);
+			if (ind >= 0) {
+				indexes.set(ind, copy);
+			}
+			routingIndexes.set(i, copy);
+		}
+	}
+
 	public void initRouteRegion(RouteRegion routeReg) throws IOException {
 		if (routeAdapter != null) {
 			routeAdapter.initRouteRegion(routeReg);
@@ -0,0 +1,139 @@
+package net.osmand.binary;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+import org.apache.commons.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of readers over the same set of obf files for concurrent usage (e.g. several routing requests).
+ * Index metadata is parsed once by initial readers. Map and poi regions are fully initialized then and shared
+ * by all leased readers, routing regions are copied for each leased reader as their subregion trees and
+ * encoding rules are changed while routing. Leased readers are not thread safe and should be used by one thread
+ * until released, initial readers shouldn't be used directly.
+ */
+public class BinaryMapIndexReaderPool {
+
+	private static final Log LOG = PlatformUtil.getLog(BinaryMapIndexReaderPool.class);
+
+	private final List<BinaryMapIndexReader> initialReaders = new ArrayList<BinaryMapIndexReader>();
+	private final ConcurrentLinkedQueue<BinaryMapIndexReader[]> freeReaders = new ConcurrentLinkedQueue<BinaryMapIndexReader[]>();
+	private int createdReaders;
+	private final boolean memoryMapped;
+	private volatile boolean closed;
+
+	public BinaryMapIndexReaderPool(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public BinaryMapIndexReaderPool(List<File> files, boolean memoryMapped) throws IOException {
+		this(memoryMapped);
+		for (File f : files) {
+			addFile(f);
+		}
+	}
+
+	public synchronized BinaryMapIndexReader addFile(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, file, true, memoryMapped);
+		addReader(reader);
+		return reader;
+	}
+
+	/**
+	 * Adds already initialized reader, pool is owner of the reader after that and it shouldn't be used directly.
+	 */
+	public synchronized void addReader(BinaryMapIndexReader reader) throws IOException {
+		if (createdReaders > 0) {
+			throw new IllegalStateException("Files should be added before first lease");
+		}
+		// read lazily initialized structures now, so they're not modified concurrently later
+		for (RouteRegion r : reader.getRoutingIndexes()) {
+			reader.initRouteRegion(r);
+		}
+		reader.initCategories();
+		initialReaders.add(reader);
+	}
+
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	public synchronized List<BinaryMapIndexReader> getInitialReaders() {
+		return new ArrayList<BinaryMapIndexReader>(initialReaders);
+	}
+
+	/**
+	 * @return readers for all files of the pool (same order as files were added) for exclusive usage by caller
+	 */
+	public BinaryMapIndexReader[] lease() throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Pool is closed");
+		}
+		BinaryMapIndexReader[] readers = freeReaders.poll();
+		if (readers == null) {
+			readers = createReaders();
+		}
+		return readers;
+	}
+
+	public void release(BinaryMapIndexReader[] readers) {
+		freeReaders.add(readers);
+		if (closed) {
+			closeFreeReaders();
+		}
+	}
+
+	private synchronized BinaryMapIndexReader[] createReaders() throws IOException {
+		BinaryMapIndexReader[] readers = new BinaryMapIndexReader[initialReaders.size()];
+		for (int i = 0; i < readers.length; i++) {
+			BinaryMapIndexReader ref = initialReaders.get(i);
+			if (ref.isMemoryMapped()) {
+				readers[i] = new BinaryMapIndexReader(ref);
+			} else {
+				readers[i] = new BinaryMapIndexReader(new RandomAccessFile(ref.getFile(), "r"), ref);
+			}
+			readers[i].copyRouteRegions();
+		}
+		createdReaders++;
+		return readers;
+	}
+
+	public synchronized int getCreatedReadersCount() {
+		return createdReaders;
+	}
+
+	/**
+	 * Closes all files, readers which are leased at the moment are closed on release.
+	 */
+	public synchronized void close() {
+		closed = true;
+		closeFreeReaders();
+		closeReaders(initialReaders.toArray(new BinaryMapIndexReader[0]));
+		initialReaders.clear();
+	}
+
+	private void closeFreeReaders() {
+		BinaryMapIndexReader[] readers;
+		while ((readers = freeReaders.poll()) != null) {
+			closeReaders(readers);
+		}
+	}
+
+	private static void closeReaders(BinaryMapIndexReader[] readers) {
+		for (BinaryMapIndexReader r : readers) {
+			try {
+				r.close();
+			} catch (IOException e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -21,6 +21,8 @@ import net.osmand.CollatorStringMatcher;
 import net.osmand.CollatorStringMatcher.StringMatcherMode;
 import net.osmand.Location;
 import net.osmand.PlatformUtil;
+import net.osmand.StringMatcher;
+import net.osmand.binary.AmenityCache.PoiAtom;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.binary.OsmandOdb.OsmAndPoiNameIndex.OsmAndPoiNameIndexData;
 import net.osmand.data.Amenity;
@@ -300,10 +302,21 @@ public class BinaryMapPoiReaderAdapter {
 	protected void searchPoiByName(PoiRegion region, SearchRequest<Amenity> req) throws IOException {
 		TIntLongHashMap offsets = new TIntLongHashMap();
 		String query = normalizeSearchPoiByNameQuery(req.nameQuery);
-		CollatorStringMatcher matcher = new CollatorStringMatcher(query,
+		CollatorStringMatcher collatorMatcher = new CollatorStringMatcher(query,
 				StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+		StringMatcher matcher = collatorMatcher;
 		long time = System.currentTimeMillis();
 		long indexOffset = codedIS.getTotalBytesRead();
+		boolean trigramSearch = false;
+		PoiNameTrigramIndex trigramIndex = map.getPoiNameTrigramIndex();
+		if (req.poiNameMaxErrors >= 0 && trigramIndex != null) {
+			TIntLongHashMap trigramOffsets = trigramIndex.searchBoxes(region, query, req, req.poiNameMaxErrors);
+			if (trigramOffsets != null) {
+				offsets = trigramOffsets;
+				matcher = PoiNameTrigramIndex.createMatcher(query, req.poiNameMaxErrors);
+				trigramSearch = true;
+			}
+		}
 		while (true) {
 			if (req.isCancelled()) {
 				return;
@@ -315,9 +328,13 @@ public class BinaryMapPoiReaderAdapter {
 				return;
 			case OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER:
 				long length = readInt();
+				if (trigramSearch) {
+					codedIS.skipRawBytes(length);
+					break;
+				}
 				long oldLimit = codedIS.pushLimitLong((long) length);
 				// here offsets are sorted by distance
-				offsets = readPoiNameIndex(matcher.getCollator(), query, req);
+				offsets = readPoiNameIndex(collatorMatcher.getCollator(), query, req);
 				codedIS.popLimit(oldLimit);
 				break;
 			case OsmandOdb.OsmAndPoiIndex.POIDATA_FIELD_NUMBER:
@@ -499,6 +516,72 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 
+	void readPoiNameTrigrams(PoiRegion region, PoiNameTrigramIndex.RegionBuilder builder) throws IOException {
+		long indexOffset = codedIS.getTotalBytesRead();
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, -1, null, null);
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiIndex.POIDATA_FIELD_NUMBER:
+				// same offsets as stored in name index
+				int offset = (int) (codedIS.getTotalBytesRead() - indexOffset);
+				long len = readInt();
+				long oldLimit = codedIS.pushLimitLong(len);
+				readPoiNameTrigramsBox(offset, builder, req, region);
+				codedIS.popLimit(oldLimit);
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readPoiNameTrigramsBox(int offset, PoiNameTrigramIndex.RegionBuilder builder,
+			SearchRequest<Amenity> req, PoiRegion region) throws IOException {
+		int x = 0;
+		int y = 0;
+		int zoom = 0;
+		builder.startBox(offset);
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				builder.finishBox(x << (31 - zoom), y << (31 - zoom));
+				return;
+			case OsmandOdb.OsmAndPoiBoxData.X_FIELD_NUMBER:
+				x = codedIS.readUInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBoxData.ZOOM_FIELD_NUMBER:
+				zoom = codedIS.readUInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBoxData.Y_FIELD_NUMBER:
+				y = codedIS.readUInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBoxData.POIDATA_FIELD_NUMBER:
+				int len = codedIS.readRawVarint32();
+				long oldLim = codedIS.pushLimitLong((long) len);
+				// all poi of file are read once, so they aren't put to amenity cache
+				PoiAtom atom = readPoiAtom(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, x, y, zoom, req, region, false);
+				codedIS.popLimit(oldLim);
+				Amenity am = atom == null ? null
+						: createAmenity(atom, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, req, false);
+				if (am != null) {
+					builder.addNames(am);
+				}
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	protected void searchPoiIndex(int left31, int right31, int top31, int bottom31,
 			SearchRequest<Amenity> req, PoiRegion region) throws IOException {
 		long indexOffset = codedIS.getTotalBytesRead();
@@ -567,7 +650,7 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 
-	private void readPoiData(CollatorStringMatcher matcher, SearchRequest<Amenity> req, PoiRegion region) throws IOException {
+	private void readPoiData(StringMatcher matcher, SearchRequest<Amenity> req, PoiRegion region) throws IOException {
 		int x = 0;
 		int y = 0;
 		int zoom = 0;
@@ -716,72 +799,137 @@ public class BinaryMapPoiReaderAdapter {
 
 	private Amenity readPoiPoint(int left31, int right31, int top31, int bottom31,
 			int px, int py, int zoom, SearchRequest<Amenity> req, PoiRegion region, boolean checkBounds) throws IOException {
+		AmenityCache cache = map.getFile() != null ? map.getAmenityCache() : null;
+		long pointer = codedIS.getTotalBytesRead();
+		PoiAtom atom = cache != null ? cache.get(map.getFile(), map.getFileModified(), pointer) : null;
+		if (atom != null) {
+			codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+		} else {
+			atom = readPoiAtom(left31, right31, top31, bottom31, px, py, zoom, req, region, checkBounds);
+			if (atom == null) {
+				return null;
+			}
+			if (cache != null) {
+				cache.put(map.getFile(), map.getFileModified(), pointer, atom);
+			}
+		}
+		return createAmenity(atom, left31, right31, top31, bottom31, req, checkBounds);
+	}
+
+	private Amenity createAmenity(PoiAtom atom, int left31, int right31, int top31, int bottom31,
+			SearchRequest<Amenity> req, boolean checkBounds) {
+		req.numberOfVisitedObjects++;
+		if (checkBounds) {
+			if (left31 > atom.x || right31 < atom.x || top31 > atom.y || bottom31 < atom.y) {
+				return null;
+			}
+		}
 		Amenity am = null;
+		for (int i = 0; i < atom.types.size(); i++) {
+			PoiCategory type = atom.types.get(i);
+			String subtype = atom.subtypes.get(i);
+			if (acceptCategory(req, type, subtype)) {
+				if (am == null) {
+					am = new Amenity();
+					am.setSubType(subtype);
+					am.setType(type);
+				} else {
+					am.setSubType(am.getSubType() + ";" + subtype);
+				}
+			}
+		}
+		if (am == null) {
+			return null;
+		}
+		req.numberOfAcceptedObjects++;
+		if (atom.id != null) {
+			am.setId(atom.id);
+		}
+		if (req.lazyAdditionalInfo) {
+			atom.setFields(am, true, false);
+			am.setLazyAdditionalInfo(atom);
+		} else {
+			atom.setFields(am, true, true);
+		}
+		am.setLocation(atom.latitude, atom.longitude);
+		if (req.radius > 0) {
+			LatLon loc = am.getLocation();
+			List<Location> locs = req.tiles.get(req.getTileHashOnPath(loc.getLatitude(), loc.getLongitude()));
+			if (locs == null) {
+				return null;
+			}
+			AmenityRoutePoint arp = dist(am.getLocation(), locs, req.radius);
+			if (arp == null) {
+				return null;
+			} else {
+				am.setRoutePoint(arp);
+			}
+		}
+		return am;
+	}
+
+	private boolean acceptCategory(SearchRequest<Amenity> req, PoiCategory type, String subtype) {
+		return !poiTypes.isTypeForbidden(subtype) && (req.poiTypeFilter == null || req.poiTypeFilter.accept(type, subtype));
+	}
+
+	/**
+	 * Reads all fields of poi, so atom could be cached and used by requests with other filters.
+	 * Returns null without reading whole atom if poi is outside of bbox or not accepted by request filter.
+	 */
+	private PoiAtom readPoiAtom(int left31, int right31, int top31, int bottom31,
+			int px, int py, int zoom, SearchRequest<Amenity> req, PoiRegion region, boolean checkBounds) throws IOException {
+		PoiAtom atom = null;
 		int x = 0;
 		int y = 0;
 		int precisionXY = 0;
-		boolean hasLocation = false;
+		boolean accepted = false;
 		StringBuilder retValue = new StringBuilder();
-		PoiCategory amenityType = null;
 		LinkedList<String> textTags = null;
 		while (true) {
 			int t = codedIS.readTag();
 			int tag = WireFormat.getTagFieldNumber(t);
-			if (amenityType == null && (tag > OsmandOdb.OsmAndPoiBoxDataAtom.CATEGORIES_FIELD_NUMBER || tag == 0)) {
+			if (!accepted && (tag > OsmandOdb.OsmAndPoiBoxDataAtom.CATEGORIES_FIELD_NUMBER || tag == 0)) {
+				if (atom != null) {
+					req.numberOfVisitedObjects++;
+				}
 				codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
 				return null;
 			}
 			switch (tag) {
 			case 0:
-				req.numberOfAcceptedObjects++;
-				if (hasLocation) {
-					if (precisionXY != 0) {
-						int[] xy = MapUtils.calculateFinalXYFromBaseAndPrecisionXY(BASE_POI_ZOOM, FINAL_POI_ZOOM, precisionXY, x >> BASE_POI_SHIFT, y >> BASE_POI_SHIFT, true);
-						int x31 = xy[0] << FINAL_POI_SHIFT;
-						int y31 = xy[1] << FINAL_POI_SHIFT;
-						am.setLocation(MapUtils.get31LatitudeY(y31), MapUtils.get31LongitudeX(x31));
-					} else {
-						am.setLocation(MapUtils.get31LatitudeY(y), MapUtils.get31LongitudeX(x));
-					}
+				if (precisionXY != 0) {
+					int[] xy = MapUtils.calculateFinalXYFromBaseAndPrecisionXY(BASE_POI_ZOOM, FINAL_POI_ZOOM, precisionXY, x >> BASE_POI_SHIFT, y >> BASE_POI_SHIFT, true);
+					int x31 = xy[0] << FINAL_POI_SHIFT;
+					int y31 = xy[1] << FINAL_POI_SHIFT;
+					atom.latitude = MapUtils.get31LatitudeY(y31);
+					atom.longitude = MapUtils.get31LongitudeX(x31);
 				} else {
-					return null;
+					atom.latitude = MapUtils.get31LatitudeY(y);
+					atom.longitude = MapUtils.get31LongitudeX(x);
 				}
-
-				if (req.radius > 0) {
-					LatLon loc = am.getLocation();
-					List<Location> locs = req.tiles.get(req.getTileHashOnPath(loc.getLatitude(), loc.getLongitude()));
-					if (locs == null) {
-						return null;
-					}
-					AmenityRoutePoint arp = dist(am.getLocation(), locs, req.radius);
-					if (arp == null) {
-						return null;
-					} else {
-						am.setRoutePoint(arp);
-					}
-				}
-				return am;
+				return atom;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.DX_FIELD_NUMBER:
 				x = (codedIS.readSInt32() + (px << (BASE_POI_ZOOM - zoom))) << BASE_POI_SHIFT;
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.DY_FIELD_NUMBER:
 				y = (codedIS.readSInt32() + (py << (BASE_POI_ZOOM - zoom))) << BASE_POI_SHIFT;
-				req.numberOfVisitedObjects++;
 				if (checkBounds) {
 					if (left31 > x || right31 < x || top31 > y || bottom31 < y) {
+						req.numberOfVisitedObjects++;
 						codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
 						return null;
 					}
 				}
-				am = new Amenity();
-				hasLocation = true;
+				atom = new PoiAtom();
+				atom.x = x;
+				atom.y = y;
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.SUBCATEGORIES_FIELD_NUMBER:
 				int subtypev = codedIS.readUInt32();
 				retValue.setLength(0);
 				PoiSubType st = region.getSubtypeFromId(subtypev, retValue);
 				if (st != null) {
-					am.setAdditionalInfo(st.name, retValue.toString());
+					atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.TEXTVALUES_FIELD_NUMBER, st.name, retValue.toString());
 				}
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.TEXTCATEGORIES_FIELD_NUMBER:
@@ -798,7 +946,7 @@ public class BinaryMapPoiReaderAdapter {
 			case OsmandOdb.OsmAndPoiBoxDataAtom.TEXTVALUES_FIELD_NUMBER:
 				String str = codedIS.readString();
 				if (textTags != null && !textTags.isEmpty()) {
-					am.setAdditionalInfo(textTags.poll(), str);
+					atom.addField(tag, textTags.poll(), str);
 				}
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.CATEGORIES_FIELD_NUMBER:
@@ -815,40 +963,22 @@ public class BinaryMapPoiReaderAdapter {
 					}
 				}
 				subtype = poiTypes.replaceDeprecatedSubtype(type, subtype);
-				boolean isForbidden = poiTypes.isTypeForbidden(subtype);
-				if (!isForbidden && (req.poiTypeFilter == null || req.poiTypeFilter.accept(type, subtype))) {
-					if (amenityType == null) {
-						amenityType = type;
-						am.setSubType(subtype);
-						am.setType(amenityType);
-					} else {
-						am.setSubType(am.getSubType() + ";" + subtype);
-					}
-				}
+				atom.addCategory(type, subtype);
+				accepted = accepted || acceptCategory(req, type, subtype);
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.ID_FIELD_NUMBER:
-				am.setId(codedIS.readUInt64());
+				atom.id = codedIS.readUInt64();
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.NAME_FIELD_NUMBER:
-				am.setName(codedIS.readString());
-				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.NAMEEN_FIELD_NUMBER:
-				am.setEnName(codedIS.readString());
-				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.OPENINGHOURS_FIELD_NUMBER:
-				am.setOpeningHours(codedIS.readString());
-				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.SITE_FIELD_NUMBER:
-				am.setSite(codedIS.readString());
-				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.PHONE_FIELD_NUMBER:
-				am.setPhone(codedIS.readString());
-				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.NOTE_FIELD_NUMBER:
-				am.setDescription(codedIS.readString());
+				atom.addField(tag, null, codedIS.readString());
 				break;
 			case OsmandOdb.OsmAndPoiBoxDataAtom.PRECISIONXY_FIELD_NUMBER:
-				if (hasLocation) {
+				if (atom != null) {
 					precisionXY = codedIS.readInt32();
 				}
 				break;
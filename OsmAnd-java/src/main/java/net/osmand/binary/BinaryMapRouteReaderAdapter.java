@@ -329,6 +329,43 @@ public class BinaryMapRouteReaderAdapter {
 		int destinationRefTypeRule = -1;
 		private RouteRegion referenceRouteRegion;
 
+		public RouteRegion() {
+		}
+
+		/**
+		 * Copy of initialized region for another reader of the same file. Lazily loaded structures
+		 * (subregion trees, added encoding rules) of copies are changed independently, so regions aren't
+		 * synchronized: each copy is used by one reader and initial region isn't changed after copying.
+		 */
+		public RouteRegion(RouteRegion copy) {
+			this.name = copy.name;
+			this.length = copy.length;
+			this.filePointer = copy.filePointer;
+			this.regionsRead = copy.regionsRead;
+			this.routeEncodingRules = new ArrayList<RouteTypeRule>(copy.routeEncodingRules);
+			this.routeEncodingRulesBytes = copy.routeEncodingRulesBytes;
+			for (RouteSubregion s : copy.subregions) {
+				subregions.add(new RouteSubregion(s, this));
+			}
+			for (RouteSubregion s : copy.basesubregions) {
+				basesubregions.add(new RouteSubregion(s, this));
+			}
+			this.directionForward = copy.directionForward;
+			this.directionBackward = copy.directionBackward;
+			this.maxheightForward = copy.maxheightForward;
+			this.maxheightBackward = copy.maxheightBackward;
+			this.directionTrafficSignalsForward = copy.directionTrafficSignalsForward;
+			this.directionTrafficSignalsBackward = copy.directionTrafficSignalsBackward;
+			this.trafficSignals = copy.trafficSignals;
+			this.stopSign = copy.stopSign;
+			this.stopMinor = copy.stopMinor;
+			this.giveWaySign = copy.giveWaySign;
+			this.nameTypeRule = copy.nameTypeRule;
+			this.refTypeRule = copy.refTypeRule;
+			this.destinationTypeRule = copy.destinationTypeRule;
+			this.destinationRefTypeRule = copy.destinationRefTypeRule;
+		}
+
 		public String getPartName() {
 			return "Routing";
 		}
@@ -589,6 +626,27 @@ public class BinaryMapRouteReaderAdapter {
 		public RouteSubregion(RouteRegion routeReg) {
 			this.routeReg = routeReg;
 		}
+
+		/**
+		 * Deep copy of loaded subregion tree for another region instance, loaded data objects aren't copied
+		 */
+		RouteSubregion(RouteSubregion copy, RouteRegion routeReg) {
+			this.routeReg = routeReg;
+			this.left = copy.left;
+			this.right = copy.right;
+			this.top = copy.top;
+			this.bottom = copy.bottom;
+			this.filePointer = copy.filePointer;
+			this.length = copy.length;
+			this.shiftToData = copy.shiftToData;
+			List<RouteSubregion> subs = copy.subregions;
+			if (subs != null) {
+				subregions = new ArrayList<RouteSubregion>(subs.size());
+				for (RouteSubregion s : subs) {
+					subregions.add(new RouteSubregion(s, routeReg));
+				}
+			}
+		}
 		public long length;
 		public long filePointer;
 		public int left;
@@ -39,6 +39,7 @@ public class CachedOsmandIndexes {
 	private OsmAndStoredIndex.Builder storedIndexBuilder;
 	private Log log = PlatformUtil.getLog(CachedOsmandIndexes.class);
 	private boolean hasChanged = false;
+	private File poiNameTrigramsDir;
 	public static final String INDEXES_DEFAULT_FILENAME = "indexes.cache";
 
 	public static final int VERSION = 3;
@@ -208,19 +209,39 @@ public class CachedOsmandIndexes {
 		routing.addSubregions(rpart);
 	}
 
+	/**
+	 * Readers with poi data created by {@link #getReader} get poi name trigram index from this directory,
+	 * index is built when reader is created first time
+	 */
+	public void setPoiNameTrigramsDir(File poiNameTrigramsDir) {
+		this.poiNameTrigramsDir = poiNameTrigramsDir;
+	}
+
 	public BinaryMapIndexReader getReader(File f, boolean useStoredIndex) throws IOException {
+		return getReader(f, useStoredIndex, false);
+	}
+
+	public BinaryMapIndexReader getReader(File f, boolean useStoredIndex, boolean memoryMapped) throws IOException {
 		FileIndex found = useStoredIndex ? getFileIndex(f, false) : null;
 		BinaryMapIndexReader reader = null;
 		RandomAccessFile mf = new RandomAccessFile(f.getPath(), "r");
 		if (found == null) {
 			long val = System.currentTimeMillis();
-			reader = new BinaryMapIndexReader(mf, f);
+			reader = new BinaryMapIndexReader(mf, f, true, memoryMapped);
 			found = addToCache(reader, f);
 			if (log.isDebugEnabled()) {
 				log.debug("Initializing db " + f.getAbsolutePath() + " " + (System.currentTimeMillis() - val) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			}
 		} else {
-			reader = initReaderFromFileIndex(found, mf, f);
+			reader = initReaderFromFileIndex(found, mf, f, memoryMapped);
+		}
+		if (poiNameTrigramsDir != null && !reader.getPoiIndexes().isEmpty()) {
+			try {
+				initPoiNameTrigramIndex(reader, poiNameTrigramsDir);
+			} catch (IOException e) {
+				// search by name works without index
+				log.error("Poi name trigram index of " + f.getName() + " isn't built", e);
+			}
 		}
 		return reader;
 	}
@@ -253,7 +274,11 @@ public class CachedOsmandIndexes {
 	}
 
 	public BinaryMapIndexReader initReaderFromFileIndex(FileIndex found, RandomAccessFile mf, File f) throws IOException {
-		BinaryMapIndexReader reader = new BinaryMapIndexReader(mf, f, false);
+		return initReaderFromFileIndex(found, mf, f, false);
+	}
+
+	public BinaryMapIndexReader initReaderFromFileIndex(FileIndex found, RandomAccessFile mf, File f, boolean memoryMapped) throws IOException {
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(mf, f, false, memoryMapped);
 		reader.version = found.getVersion();
 		reader.dateCreated = found.getDateModified();
 
@@ -377,6 +402,20 @@ public class CachedOsmandIndexes {
 	}
 	
 
+	/**
+	 * Reads poi name trigram index of reader file from cache directory or builds it (reads all poi data of file)
+	 * and attaches it to reader.
+	 */
+	public PoiNameTrigramIndex initPoiNameTrigramIndex(BinaryMapIndexReader reader, File cacheDir) throws IOException {
+		File f = new File(cacheDir, reader.getFile().getName() + PoiNameTrigramIndex.FILE_EXT);
+		PoiNameTrigramIndex index = PoiNameTrigramIndex.read(f, reader.getFile());
+		if (index == null) {
+			index = PoiNameTrigramIndex.build(reader, f);
+		}
+		reader.setPoiNameTrigramIndex(index);
+		return index;
+	}
+
 	public void readFromFile(File f) throws IOException {
 		long time = System.currentTimeMillis();
 		FileInputStream is = new FileInputStream(f);
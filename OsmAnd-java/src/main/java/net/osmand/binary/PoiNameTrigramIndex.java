@@ -0,0 +1,483 @@
+package net.osmand.binary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.PlatformUtil;
+import net.osmand.StringMatcher;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.data.Amenity;
+
+/**
+ * Sidecar index of POI names stored next to {@link CachedOsmandIndexes}: maps trigrams of normalized name words to
+ * POI data boxes of obf file. It's used for substring and typo tolerant search by name
+ * ({@link SearchRequest#setPoiNameSubstringSearch(int)}), obf name index supports only prefix search. Only trigram
+ * directory is kept in memory, lists of boxes are read from file.
+ */
+public class PoiNameTrigramIndex {
+
+	private static final Log log = PlatformUtil.getLog(PoiNameTrigramIndex.class);
+
+	public static final String FILE_EXT = ".poi-trigrams";
+	public static final int VERSION = 2;
+	private static final int MAGIC = 0x4f504e54;
+	private static final int TRIGRAM = 3;
+	// one typo changes up to 3 trigrams of word
+	private static final int TRIGRAMS_PER_ERROR = 3;
+	// shorter words are matched without typos
+	private static final int MIN_WORD_LENGTH_WITH_ERRORS = 4;
+
+	private final File file;
+	private final List<RegionTrigrams> regions = new ArrayList<>();
+	private RandomAccessFile raf;
+
+	private static class RegionTrigrams {
+		String name;
+		long filePointer;
+		// box offsets as in obf poi name index, tile of box (31 zoom)
+		int[] boxOffsets;
+		int[] boxX31;
+		int[] boxY31;
+		// sorted trigrams, pointer to list of boxes in file and list size
+		long[] trigrams;
+		long[] pointers;
+		int[] counts;
+		// lists of boxes are stored one after another in order of trigrams
+		long postingsEnd;
+	}
+
+	/**
+	 * Collects trigrams of names in boxes of one poi region while it's read
+	 */
+	static class RegionBuilder {
+		private final TLongObjectHashMap<TIntArrayList> trigrams = new TLongObjectHashMap<>();
+		private final TIntArrayList boxOffsets = new TIntArrayList();
+		private final TIntArrayList boxX31 = new TIntArrayList();
+		private final TIntArrayList boxY31 = new TIntArrayList();
+
+		void startBox(int offset) {
+			boxOffsets.add(offset);
+		}
+
+		void addNames(Amenity am) {
+			int box = boxOffsets.size() - 1;
+			addName(box, am.getName());
+			addName(box, am.getEnName(true));
+			for (String s : am.getOtherNames()) {
+				addName(box, s);
+			}
+			// same names as checked by poi search by name
+			for (String key : am.getAdditionalInfoKeys()) {
+				if (key.contains("_name") || key.equals("brand")) {
+					addName(box, am.getAdditionalInfo(key));
+				}
+			}
+		}
+
+		private void addName(int box, String name) {
+			if (name == null || name.isEmpty()) {
+				return;
+			}
+			for (String word : splitWords(normalize(name))) {
+				for (int i = 0; i + TRIGRAM <= word.length(); i++) {
+					long trigram = trigram(word, i);
+					TIntArrayList boxes = trigrams.get(trigram);
+					if (boxes == null) {
+						boxes = new TIntArrayList();
+						trigrams.put(trigram, boxes);
+					}
+					if (boxes.isEmpty() || boxes.get(boxes.size() - 1) != box) {
+						boxes.add(box);
+					}
+				}
+			}
+		}
+
+		void finishBox(int x31, int y31) {
+			boxX31.add(x31);
+			boxY31.add(y31);
+		}
+	}
+
+	private PoiNameTrigramIndex(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Reads all poi data of obf file and writes index to file
+	 */
+	public static PoiNameTrigramIndex build(BinaryMapIndexReader reader, File file) throws IOException {
+		long time = System.currentTimeMillis();
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			List<PoiRegion> poiRegions = reader.getPoiIndexes();
+			writeHeader(out, reader.getFile());
+			out.writeInt(poiRegions.size());
+			for (PoiRegion region : poiRegions) {
+				RegionBuilder builder = new RegionBuilder();
+				reader.readPoiNameTrigrams(region, builder);
+				writeRegion(out, region, builder);
+			}
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Can't write " + file.getName());
+		}
+		log.info("Poi name trigram index " + file.getName() + " is built in " + (System.currentTimeMillis() - time)
+				+ " ms");
+		return read(file, reader.getFile());
+	}
+
+	/**
+	 * @return null if file doesn't exist or it's created for other version of obf file
+	 */
+	public static PoiNameTrigramIndex read(File file, File obfFile) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		PoiNameTrigramIndex index = new PoiNameTrigramIndex(file);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != obfFile.length()
+					|| in.readLong() != obfFile.lastModified() || !in.readUTF().equals(obfFile.getName())) {
+				return null;
+			}
+			int regionsCount = in.readInt();
+			for (int r = 0; r < regionsCount; r++) {
+				RegionTrigrams rt = new RegionTrigrams();
+				rt.name = in.readUTF();
+				rt.filePointer = in.readLong();
+				int boxes = in.readInt();
+				rt.boxOffsets = new int[boxes];
+				rt.boxX31 = new int[boxes];
+				rt.boxY31 = new int[boxes];
+				for (int i = 0; i < boxes; i++) {
+					rt.boxOffsets[i] = in.readInt();
+					rt.boxX31[i] = in.readInt();
+					rt.boxY31[i] = in.readInt();
+				}
+				int size = in.readInt();
+				rt.trigrams = new long[size];
+				rt.pointers = new long[size];
+				rt.counts = new int[size];
+				for (int i = 0; i < size; i++) {
+					rt.trigrams[i] = in.readLong();
+					rt.pointers[i] = in.readInt();
+					rt.counts[i] = in.readInt();
+				}
+				int postingsLength = in.readInt();
+				long postingsPointer = in.readLong();
+				for (int i = 0; i < size; i++) {
+					rt.pointers[i] += postingsPointer;
+				}
+				rt.postingsEnd = postingsPointer + postingsLength;
+				skipFully(in, postingsLength);
+				index.regions.add(rt);
+			}
+		} finally {
+			in.close();
+		}
+		return index;
+	}
+
+	static void writeHeader(DataOutputStream out, File obfFile) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(obfFile.length());
+		out.writeLong(obfFile.lastModified());
+		out.writeUTF(obfFile.getName());
+	}
+
+	static void writeRegion(DataOutputStream out, PoiRegion region, RegionBuilder builder) throws IOException {
+		out.writeUTF(region.getName() == null ? "" : region.getName());
+		out.writeLong(region.getFilePointer());
+		int boxes = builder.boxOffsets.size();
+		out.writeInt(boxes);
+		for (int i = 0; i < boxes; i++) {
+			out.writeInt(builder.boxOffsets.get(i));
+			out.writeInt(builder.boxX31.get(i));
+			out.writeInt(builder.boxY31.get(i));
+		}
+		long[] trigrams = builder.trigrams.keys();
+		Arrays.sort(trigrams);
+		ByteArrayOutputStream postings = new ByteArrayOutputStream();
+		out.writeInt(trigrams.length);
+		for (long trigram : trigrams) {
+			TIntArrayList list = builder.trigrams.get(trigram);
+			out.writeLong(trigram);
+			out.writeInt(postings.size());
+			out.writeInt(list.size());
+			int prev = 0;
+			for (int i = 0; i < list.size(); i++) {
+				writeVarint(postings, list.get(i) - prev);
+				prev = list.get(i);
+			}
+		}
+		out.writeInt(postings.size());
+		// position of postings in file
+		out.writeLong(out.size() + 8L);
+		postings.writeTo(out);
+	}
+
+	/**
+	 * Finds boxes of region which could contain names matching all words of query.
+	 * @return map of box offset to distance from request center (as obf name index does) or null if query
+	 * has no words long enough to use trigrams
+	 */
+	TIntLongHashMap searchBoxes(PoiRegion region, String query, SearchRequest<Amenity> req, int maxErrors)
+			throws IOException {
+		RegionTrigrams rt = getRegion(region);
+		if (rt == null) {
+			return null;
+		}
+		int[] boxes = null;
+		for (String word : splitWords(normalize(query))) {
+			int[] found = searchWord(rt, word, maxErrors);
+			if (found != null) {
+				boxes = boxes == null ? found : intersect(boxes, found);
+			}
+		}
+		if (boxes == null) {
+			return null;
+		}
+		TIntLongHashMap offsets = new TIntLongHashMap();
+		for (int box : boxes) {
+			int x31 = rt.boxX31[box];
+			int y31 = rt.boxY31[box];
+			if (req.contains(x31, y31, x31, y31)) {
+				offsets.put(rt.boxOffsets[box], Math.abs(req.x - x31) + Math.abs(req.y - y31));
+			}
+		}
+		return offsets;
+	}
+
+	private RegionTrigrams getRegion(PoiRegion region) {
+		for (RegionTrigrams rt : regions) {
+			if (rt.filePointer == region.getFilePointer()) {
+				return rt;
+			}
+		}
+		return null;
+	}
+
+	// sorted boxes having enough trigrams of word, null if word is too short
+	private int[] searchWord(RegionTrigrams rt, String word, int maxErrors) throws IOException {
+		TLongHashSet wordTrigrams = new TLongHashSet();
+		for (int i = 0; i + TRIGRAM <= word.length(); i++) {
+			wordTrigrams.add(trigram(word, i));
+		}
+		int minTrigrams = wordTrigrams.size() - getAllowedErrors(word, maxErrors) * TRIGRAMS_PER_ERROR;
+		if (minTrigrams <= 0) {
+			return null;
+		}
+		TIntArrayList all = new TIntArrayList();
+		for (long trigram : wordTrigrams.toArray()) {
+			int ind = Arrays.binarySearch(rt.trigrams, trigram);
+			if (ind >= 0) {
+				readBoxes(rt, ind, all);
+			}
+		}
+		all.sort();
+		TIntArrayList result = new TIntArrayList();
+		for (int i = 0; i < all.size();) {
+			int j = i;
+			while (j < all.size() && all.get(j) == all.get(i)) {
+				j++;
+			}
+			if (j - i >= minTrigrams) {
+				result.add(all.get(i));
+			}
+			i = j;
+		}
+		return result.toArray();
+	}
+
+	private void readBoxes(RegionTrigrams rt, int ind, TIntArrayList boxes) throws IOException {
+		long end = ind + 1 < rt.pointers.length ? rt.pointers[ind + 1] : rt.postingsEnd;
+		byte[] block = new byte[(int) (end - rt.pointers[ind])];
+		synchronized (this) {
+			if (raf == null) {
+				raf = new RandomAccessFile(file, "r");
+			}
+			raf.seek(rt.pointers[ind]);
+			raf.readFully(block);
+		}
+		int pos = 0;
+		int box = 0;
+		for (int i = 0; i < rt.counts[ind]; i++) {
+			// varint of delta
+			int delta = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = block[pos++];
+				delta |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			box += delta;
+			boxes.add(box);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		if (raf != null) {
+			raf.close();
+			raf = null;
+		}
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		TIntArrayList r = new TIntArrayList();
+		int i = 0, j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] == b[j]) {
+				r.add(a[i]);
+				i++;
+				j++;
+			} else if (a[i] < b[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return r.toArray();
+	}
+
+	/**
+	 * Matcher of names found in boxes: every word of query should be contained in name with allowed number of typos
+	 */
+	static StringMatcher createMatcher(String query, final int maxErrors) {
+		final List<String> words = splitWords(normalize(query));
+		return new StringMatcher() {
+
+			@Override
+			public boolean matches(String name) {
+				if (name == null || name.isEmpty()) {
+					return false;
+				}
+				String text = normalize(name);
+				for (String word : words) {
+					if (!containsApproximately(text, word, getAllowedErrors(word, maxErrors))) {
+						return false;
+					}
+				}
+				return true;
+			}
+		};
+	}
+
+	private static int getAllowedErrors(String word, int maxErrors) {
+		return word.length() < MIN_WORD_LENGTH_WITH_ERRORS ? 0 : maxErrors;
+	}
+
+	/**
+	 * Checks that text has substring with edit distance to word not more than maxErrors
+	 */
+	static boolean containsApproximately(String text, String word, int maxErrors) {
+		if (maxErrors <= 0) {
+			return text.contains(word);
+		}
+		int m = word.length();
+		int[] d = new int[m + 1];
+		for (int i = 0; i <= m; i++) {
+			d[i] = i;
+		}
+		if (d[m] <= maxErrors) {
+			return true;
+		}
+		for (int k = 0; k < text.length(); k++) {
+			char c = text.charAt(k);
+			// substring could start at any position of text
+			int diag = d[0];
+			for (int i = 1; i <= m; i++) {
+				int prev = d[i];
+				int cost = word.charAt(i - 1) == c ? 0 : 1;
+				d[i] = Math.min(Math.min(d[i] + 1, d[i - 1] + 1), diag + cost);
+				diag = prev;
+			}
+			if (d[m] <= maxErrors) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Lower case without diacritics (close to primary collator comparison)
+	 */
+	static String normalize(String s) {
+		String decomposed = Normalizer.normalize(s.toLowerCase(), Normalizer.Form.NFD);
+		StringBuilder b = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) != Character.NON_SPACING_MARK) {
+				b.append(c);
+			}
+		}
+		return b.toString();
+	}
+
+	private static List<String> splitWords(String s) {
+		List<String> words = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= s.length(); i++) {
+			if (i < s.length() && Character.isLetterOrDigit(s.charAt(i))) {
+				if (start == -1) {
+					start = i;
+				}
+			} else if (start != -1) {
+				words.add(s.substring(start, i));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	private static long trigram(String word, int i) {
+		return ((long) word.charAt(i) << 32) | ((long) word.charAt(i + 1) << 16) | word.charAt(i + 2);
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int v) {
+		while ((v & ~0x7f) != 0) {
+			out.write((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+
+	private static void skipFully(DataInputStream in, int len) throws IOException {
+		while (len > 0) {
+			int skipped = in.skipBytes(len);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			len -= skipped;
+		}
+	}
+}
@@ -56,7 +56,14 @@ public class RouteDataObject {
 	}
 
 	public RouteDataObject(RouteDataObject copy) {
-		this.region = copy.region;
+		this(copy, copy.region);
+	}
+
+	/**
+	 * Shallow copy bound to another region instance of the same file (e.g. region of another reader)
+	 */
+	public RouteDataObject(RouteDataObject copy, RouteRegion region) {
+		this.region = region;
 		this.pointsX = copy.pointsX;
 		this.pointsY = copy.pointsY;
 		this.types = copy.types;
@@ -75,6 +75,9 @@ public class Amenity extends MapObject {
 	private TIntArrayList x;
 	private String mapIconName;
 	private int order;
+	// additional info and names are decoded on first access
+	private volatile LazyAdditionalInfo lazyInfo;
+	private boolean decodingLazyInfo;
 
 	public int getOrder() {
 		return order;
@@ -91,6 +94,36 @@ public class Amenity extends MapObject {
 		public Location pointB;
 	}
 
+	/**
+	 * Source of additional info and names of amenity, which are decoded only when they're accessed
+	 */
+	public interface LazyAdditionalInfo {
+
+		void decode(Amenity amenity);
+	}
+
+	public void setLazyAdditionalInfo(LazyAdditionalInfo lazyInfo) {
+		this.lazyInfo = lazyInfo;
+	}
+
+	@Override
+	protected void decodeLazyFields() {
+		if (lazyInfo != null) {
+			synchronized (this) {
+				// decoder sets fields with the same methods, they shouldn't decode again
+				if (lazyInfo != null && !decodingLazyInfo) {
+					decodingLazyInfo = true;
+					try {
+						lazyInfo.decode(this);
+					} finally {
+						decodingLazyInfo = false;
+						lazyInfo = null;
+					}
+				}
+			}
+		}
+	}
+
 	public String getMapIconName() {
 		return mapIconName;
 	}
@@ -116,10 +149,12 @@ public class Amenity extends MapObject {
 	}
 
 	public String getOpeningHours() {
+		decodeLazyFields();
 		return openingHours;
 	}
 
 	public String getAdditionalInfo(String key) {
+		decodeLazyFields();
 		if (additionalInfo == null) {
 			return null;
 		}
@@ -129,11 +164,13 @@ public class Amenity extends MapObject {
 	}
 
 	public boolean hasAdditionalInfo() {
+		decodeLazyFields();
 		return !Algorithms.isEmpty(additionalInfo);
 	}
 
 	// this method should be used carefully
 	private Map<String, String> getInternalAdditionalInfoMap() {
+		decodeLazyFields();
 		if (additionalInfo == null) {
 			return Collections.emptyMap();
 		}
@@ -195,6 +232,7 @@ public class Amenity extends MapObject {
 	}
 
 	public Collection<String> getAdditionalInfoValues(boolean excludeZipped) {
+		decodeLazyFields();
 		if (additionalInfo == null) {
 			return Collections.emptyList();
 		}
@@ -221,6 +259,7 @@ public class Amenity extends MapObject {
 	}
 
 	public Collection<String> getAdditionalInfoKeys() {
+		decodeLazyFields();
 		if (additionalInfo == null) {
 			return Collections.emptyList();
 		}
@@ -228,6 +267,7 @@ public class Amenity extends MapObject {
 	}
 
 	public void setAdditionalInfo(Map<String, String> additionalInfo) {
+		decodeLazyFields();
 		this.additionalInfo = null;
 		openingHours = null;
 		if (additionalInfo != null) {
@@ -248,6 +288,7 @@ public class Amenity extends MapObject {
 	}
 
 	public void setAdditionalInfo(String tag, String value) {
+		decodeLazyFields();
 		if ("name".equals(tag)) {
 			setName(value);
 		} else if (tag.startsWith("name:")) {
@@ -445,6 +486,8 @@ public class Amenity extends MapObject {
 	}
 
 	public boolean comparePoi(Amenity thatObj) {
+		decodeLazyFields();
+		thatObj.decodeLazyFields();
 		return this.compareObject(thatObj) &&
 				Algorithms.objectEquals(this.type.getKeyName(), thatObj.type.getKeyName()) &&
 				Algorithms.objectEquals(this.subType, thatObj.subType) &&
@@ -67,6 +67,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 
 	public void setName(String lang, String name) {
+		decodeLazyFields();
 		if (Algorithms.isEmpty(lang)) {
 			setName(name);
 		} else if (lang.equals("en")) {
@@ -80,6 +81,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 
 	public void setNames(Map<String, String> name) {
+		decodeLazyFields();
 		if (name != null) {
 			if (names == null) {
 				names = new HashMap<String, String>();
@@ -89,6 +91,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 	
 	public Map<String, String> getNamesMap(boolean includeEn) {
+		decodeLazyFields();
 		if ((!includeEn || Algorithms.isEmpty(enName)) && names == null) {
 			return Collections.emptyMap();
 		}
@@ -111,6 +114,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 	
 	public List<String> getOtherNames(boolean transliterate) {
+		decodeLazyFields();
 		List<String> l = new ArrayList<String>();
 		String enName = getEnName(transliterate); 
 		if (!Algorithms.isEmpty(enName)) {
@@ -123,6 +127,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 
 	public void copyNames(String otherName, String otherEnName, Map<String, String> otherNames, boolean overwrite) {
+		decodeLazyFields();
 		if (!Algorithms.isEmpty(otherName) && (overwrite || Algorithms.isEmpty(name))) {
 			name = otherName;
 		}
@@ -156,6 +161,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 
 	public void copyNames(MapObject s, boolean copyName, boolean copyEnName, boolean overwrite) {
+		s.decodeLazyFields();
 		copyNames((copyName ? s.name : null), (copyEnName ? s.enName : null), s.names, overwrite);
 	}
 
@@ -175,6 +181,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 				return !Algorithms.isEmpty(enName) ? enName : getName();
 			} else {
 				// get name
+				decodeLazyFields();
 				if (names != null) {
 					String nm = names.get(lang);
 					if (!Algorithms.isEmpty(nm)) {
@@ -311,6 +318,12 @@ public abstract class MapObject implements Comparable<MapObject> {
 		}
 	}
 	
+	/**
+	 * Called before access to names map, subclasses could read names on first access
+	 */
+	protected void decodeLazyFields() {
+	}
+
 	public void setReferenceFile(Object referenceFile) {
 		this.referenceFile = referenceFile;
 	}
@@ -320,6 +333,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 	}
 
 	public JSONObject toJSON() {
+		decodeLazyFields();
 		JSONObject json = new JSONObject();
 		json.put("name", unzipContent(name));
 		json.put("enName", unzipContent(enName));
@@ -659,7 +659,7 @@ public class GPXTrackAnalysis {
 		}
 	}
 
-	private void checkUnspecifiedValues(long fileTimeStamp) {
+	void checkUnspecifiedValues(long fileTimeStamp) {
 		if (getTotalDistance() < 0) {
 			availableAttributes.clear();
 		}
@@ -692,7 +692,7 @@ public class GPXTrackAnalysis {
 		return 0;
 	}
 
-	private void processAverageValues(float totalElevation, int elevationPoints, double totalSpeedSum, int speedCount) {
+	void processAverageValues(float totalElevation, int elevationPoints, double totalSpeedSum, int speedCount) {
 		if (elevationPoints > 0) {
 			setAvgElevation(totalElevation / elevationPoints);
 		}
@@ -0,0 +1,113 @@
+package net.osmand.gpx;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.gpx.GPXTrackStreamReader.TrackPointsListener;
+
+/**
+ * Track points stored by columns (about 30 bytes per point), used instead of {@link GPXUtilities.WptPt} lists for
+ * very large tracks. Coordinates are kept with 7 decimal digits. Distance is counted from the segment start as
+ * {@link GPXUtilities.WptPt#distance} and is set only when points are read with analysis.
+ */
+public class GPXTrackPoints implements TrackPointsListener {
+
+	private static final double COORDINATES_MULT = 1e7;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int size;
+	private int[] lat = new int[INITIAL_CAPACITY];
+	private int[] lon = new int[INITIAL_CAPACITY];
+	private long[] time = new long[INITIAL_CAPACITY];
+	private float[] ele = new float[INITIAL_CAPACITY];
+	private float[] speed = new float[INITIAL_CAPACITY];
+	private float[] distance = new float[INITIAL_CAPACITY];
+	private final TIntArrayList segmentStarts = new TIntArrayList();
+
+	public int getPointsCount() {
+		return size;
+	}
+
+	public double getLatitude(int i) {
+		return lat[i] / COORDINATES_MULT;
+	}
+
+	public double getLongitude(int i) {
+		return lon[i] / COORDINATES_MULT;
+	}
+
+	public long getTime(int i) {
+		return time[i];
+	}
+
+	// NaN if point has no elevation
+	public double getElevation(int i) {
+		return ele[i];
+	}
+
+	public double getSpeed(int i) {
+		return speed[i];
+	}
+
+	public double getDistance(int i) {
+		return distance[i];
+	}
+
+	void setDistance(int i, float d) {
+		distance[i] = d;
+	}
+
+	public int getSegmentsCount() {
+		return segmentStarts.size();
+	}
+
+	public int getSegmentStart(int segment) {
+		return segmentStarts.get(segment);
+	}
+
+	// exclusive
+	public int getSegmentEnd(int segment) {
+		return segment + 1 < segmentStarts.size() ? segmentStarts.get(segment + 1) : size;
+	}
+
+	@Override
+	public void segmentStarted() {
+		segmentStarts.add(size);
+	}
+
+	@Override
+	public void pointRead(double latitude, double longitude, long time, double ele, double speed, double hdop) {
+		if (size == lat.length) {
+			int capacity = size + (size >> 1);
+			lat = Arrays.copyOf(lat, capacity);
+			lon = Arrays.copyOf(lon, capacity);
+			this.time = Arrays.copyOf(this.time, capacity);
+			this.ele = Arrays.copyOf(this.ele, capacity);
+			this.speed = Arrays.copyOf(this.speed, capacity);
+			distance = Arrays.copyOf(distance, capacity);
+		}
+		lat[size] = (int) Math.round(latitude * COORDINATES_MULT);
+		lon[size] = (int) Math.round(longitude * COORDINATES_MULT);
+		this.time[size] = time;
+		this.ele[size] = (float) ele;
+		this.speed[size] = (float) speed;
+		size++;
+	}
+
+	@Override
+	public void segmentFinished() {
+	}
+
+	/**
+	 * Releases unused capacity after reading
+	 */
+	public void trimToSize() {
+		lat = Arrays.copyOf(lat, size);
+		lon = Arrays.copyOf(lon, size);
+		time = Arrays.copyOf(time, size);
+		ele = Arrays.copyOf(ele, size);
+		speed = Arrays.copyOf(speed, size);
+		distance = Arrays.copyOf(distance, size);
+		segmentStarts.trimToSize();
+	}
+}
@@ -0,0 +1,301 @@
+package net.osmand.gpx;
+
+import static net.osmand.gpx.GPXUtilities.POINT_ELEVATION;
+import static net.osmand.gpx.GPXUtilities.POINT_SPEED;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import net.osmand.gpx.GPXTrackStreamReader.TrackPointsListener;
+import net.osmand.gpx.GPXUtilities.WptPt;
+import net.osmand.util.MapUtils;
+
+/**
+ * Calculates {@link GPXTrackAnalysis} of track segments while points are read, values are the same as
+ * {@link GPXFile#getAnalysis(long)} calculates for loaded file. Point attributes aren't created (use
+ * {@link GPXTrackPoints} instead), sensor values and expected route duration aren't calculated.
+ */
+class GPXTrackStreamAnalyser implements TrackPointsListener {
+
+	private static final double SLOPE_THRESHOLD = 70.0;
+
+	private final GPXTrackPoints points;
+	private final GPXTrackAnalysis analysis = new GPXTrackAnalysis();
+	private final float[] calculations = new float[1];
+
+	private int totalTracks;
+	private int totalPoints;
+	private int segmentPoints;
+	private float segmentDistance;
+	private boolean hasStart;
+
+	// previous point
+	private double prevLat;
+	private double prevLon;
+	private long prevTime;
+	private double prevEle;
+	private double prevSpeed;
+	private double prevHdop;
+
+	private long startTime = Long.MAX_VALUE;
+	private long endTime = Long.MIN_VALUE;
+	private float totalDistance;
+	private float totalDistanceMoving;
+	private long timeMoving;
+	private float minSpeed = Float.MAX_VALUE;
+	private float maxSpeed;
+	private double totalSpeedSum;
+	private int speedCount;
+	private double minElevation = 99999;
+	private double maxElevation = -100;
+	private float totalElevation;
+	private int elevationPoints;
+	private double diffElevationUp;
+	private double diffElevationDown;
+	private final SegmentElevation elevation = new SegmentElevation();
+
+	GPXTrackStreamAnalyser(GPXTrackPoints points) {
+		this.points = points;
+		analysis.pointAttributes = new ArrayList<>();
+		analysis.availableAttributes = new HashSet<>();
+	}
+
+	@Override
+	public void segmentStarted() {
+		totalTracks++;
+		segmentPoints = 0;
+		segmentDistance = 0;
+		elevation.clear();
+		if (points != null) {
+			points.segmentStarted();
+		}
+	}
+
+	@Override
+	public void pointRead(double lat, double lon, long time, double ele, double speed, double hdop) {
+		if (points != null) {
+			points.pointRead(lat, lon, time, ele, speed, hdop);
+		}
+		// single point segments are not analysed, so the first point waits for the second one
+		if (segmentPoints == 1) {
+			analysePoint(prevLat, prevLon, prevTime, prevEle, prevSpeed, prevHdop, true);
+		}
+		if (segmentPoints >= 1) {
+			analysePoint(lat, lon, time, ele, speed, hdop, false);
+		}
+		prevLat = lat;
+		prevLon = lon;
+		prevTime = time;
+		prevEle = ele;
+		prevSpeed = speed;
+		prevHdop = hdop;
+		segmentPoints++;
+	}
+
+	@Override
+	public void segmentFinished() {
+		if (points != null) {
+			points.segmentFinished();
+		}
+		if (segmentPoints > 1) {
+			elevation.finish();
+		}
+	}
+
+	private void analysePoint(double lat, double lon, long time, double ele, double pointSpeed, double hdop,
+			boolean first) {
+		totalPoints++;
+		if (first && !hasStart) {
+			hasStart = true;
+			analysis.locationStart = new WptPt(lat, lon, time, ele, pointSpeed, hdop);
+			analysis.setLatLonStart(lat, lon);
+		}
+		if (time != 0) {
+			startTime = Math.min(startTime, time);
+			endTime = Math.max(endTime, time);
+		}
+		updateBounds(lat, lon);
+		float speed = (float) pointSpeed;
+		if (speed > 0) {
+			analysis.hasSpeedInTrack = true;
+		}
+		if (hdop > 0) {
+			if (Double.isNaN(analysis.minHdop) || hdop < analysis.minHdop) {
+				analysis.minHdop = hdop;
+			}
+			if (Double.isNaN(analysis.maxHdop) || hdop > analysis.maxHdop) {
+				analysis.maxHdop = hdop;
+			}
+		}
+		if (!first) {
+			net.osmand.Location.distanceBetween(prevLat, prevLon, lat, lon, calculations);
+			totalDistance += calculations[0];
+			segmentDistance += calculations[0];
+			if (points != null) {
+				points.setDistance(points.getPointsCount() - 1, segmentDistance);
+			}
+			long timeDiffMillis = Math.max(0, time - prevTime);
+			int timeDiff = (int) (timeDiffMillis / 1000);
+			if (!analysis.hasSpeedInTrack && speed == 0 && timeDiff > 0) {
+				speed = calculations[0] / timeDiff;
+			}
+			boolean timeSpecified = time != 0 && prevTime != 0;
+			if (speed > 0 && timeSpecified && calculations[0] > timeDiffMillis / 10000f) {
+				timeMoving += timeDiffMillis;
+				totalDistanceMoving += calculations[0];
+			}
+		}
+		minSpeed = Math.min(speed, minSpeed);
+		if (speed > 0 && !Float.isInfinite(speed)) {
+			totalSpeedSum += speed;
+			maxSpeed = Math.max(speed, maxSpeed);
+			speedCount++;
+		}
+		if (!Double.isNaN(ele)) {
+			totalElevation += ele;
+			elevationPoints++;
+			minElevation = Math.min(ele, minElevation);
+			maxElevation = Math.max(ele, maxElevation);
+		}
+		if (speed > 0 && totalDistance > 0) {
+			analysis.availableAttributes.add(POINT_SPEED);
+		}
+		if (!Double.isNaN(ele) && totalDistance > 0) {
+			analysis.availableAttributes.add(POINT_ELEVATION);
+		}
+		elevation.add(lat, lon, ele);
+	}
+
+	private void updateBounds(double lat, double lon) {
+		if (analysis.left == 0 && analysis.right == 0) {
+			analysis.left = lon;
+			analysis.right = lon;
+			analysis.top = lat;
+			analysis.bottom = lat;
+		} else {
+			analysis.left = Math.min(analysis.left, lon);
+			analysis.right = Math.max(analysis.right, lon);
+			analysis.top = Math.max(analysis.top, lat);
+			analysis.bottom = Math.min(analysis.bottom, lat);
+		}
+	}
+
+	GPXTrackAnalysis finish(long fileTimestamp) {
+		if (totalPoints > 0) {
+			analysis.locationEnd = new WptPt(prevLat, prevLon, prevTime, prevEle, prevSpeed, prevHdop);
+		}
+		analysis.setTotalTracks(totalTracks);
+		analysis.setPoints(totalPoints);
+		analysis.setStartTime(startTime);
+		analysis.setEndTime(endTime);
+		analysis.setTotalDistance(totalDistance);
+		analysis.setTotalDistanceMoving(totalDistanceMoving);
+		analysis.setTimeMoving(timeMoving);
+		analysis.setMinSpeed(minSpeed);
+		analysis.setMaxSpeed(maxSpeed);
+		analysis.setMinElevation(minElevation);
+		analysis.setMaxElevation(maxElevation);
+		analysis.setDiffElevationUp(diffElevationUp);
+		analysis.setDiffElevationDown(diffElevationDown);
+		analysis.checkUnspecifiedValues(fileTimestamp);
+		analysis.processAverageValues(totalElevation, elevationPoints, totalSpeedSum, speedCount);
+		analysis.setAvgSensorSpeed(-1);
+		analysis.setAvgSensorCadence(-1);
+		analysis.setAvgSensorHr(-1);
+		analysis.setAvgSensorPower(-1);
+		analysis.setAvgSensorTemperature(-1);
+		return analysis;
+	}
+
+	/**
+	 * Streaming version of {@link ElevationApproximator}: both filters depend only on the last kept point, so only
+	 * kept points (distance, elevation) are stored until segment is finished.
+	 */
+	private class SegmentElevation {
+		private int count;
+		// first filter keeps points where elevation continues to change in the same direction
+		private int firstKept;
+		private double firstLastEle;
+		private double pendingLat, pendingLon, pendingEle;
+		// second filter drops too steep points
+		private int secondKept;
+		private double secondLat, secondLon, secondEle;
+		private double[] distances = new double[256];
+		private double[] elevations = new double[256];
+
+		void clear() {
+			count = 0;
+			firstKept = 0;
+			secondKept = 0;
+		}
+
+		void add(double lat, double lon, double ele) {
+			if (count == 0) {
+				firstKept = 1;
+				firstLastEle = ele;
+				keep(lat, lon, ele);
+			} else if (count > 1 && (pendingEle - firstLastEle) * (ele - pendingEle) > 0) {
+				firstKept++;
+				firstLastEle = pendingEle;
+				keep(pendingLat, pendingLon, pendingEle);
+			}
+			pendingLat = lat;
+			pendingLon = lon;
+			pendingEle = ele;
+			count++;
+		}
+
+		private void keep(double lat, double lon, double ele) {
+			double dist = 0;
+			if (secondKept > 0) {
+				dist = MapUtils.getDistance(lat, lon, secondLat, secondLon);
+				double slope = (ele - secondEle) * 100 / dist;
+				if (Math.abs(slope) > SLOPE_THRESHOLD) {
+					return;
+				}
+			}
+			if (secondKept == distances.length) {
+				distances = Arrays.copyOf(distances, secondKept * 2);
+				elevations = Arrays.copyOf(elevations, secondKept * 2);
+			}
+			distances[secondKept] = dist;
+			elevations[secondKept] = ele;
+			secondLat = lat;
+			secondLon = lon;
+			secondEle = ele;
+			secondKept++;
+		}
+
+		void finish() {
+			if (count < 4) {
+				return;
+			}
+			// the last point is always kept
+			firstKept++;
+			keep(pendingLat, pendingLon, pendingEle);
+			if (firstKept < 4 || secondKept < 4) {
+				return;
+			}
+			ElevationDiffsCalculator calc = new ElevationDiffsCalculator() {
+				@Override
+				public double getPointDistance(int index) {
+					return distances[index];
+				}
+
+				@Override
+				public double getPointElevation(int index) {
+					return elevations[index];
+				}
+
+				@Override
+				public int getPointsCount() {
+					return secondKept;
+				}
+			};
+			calc.calculateElevationDiffs();
+			diffElevationUp += calc.getDiffElevationUp();
+			diffElevationDown += calc.getDiffElevationDown();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package net.osmand.gpx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.logging.Log;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import net.osmand.PlatformUtil;
+import net.osmand.util.Algorithms;
+
+/**
+ * Streaming reader of track points (trk / trkseg / trkpt) for very large tracks: points are passed to listener as
+ * primitives and no {@link GPXUtilities.WptPt} or extension maps are created. Waypoints, routes, metadata and
+ * extensions (except speed) are skipped, use {@link GPXUtilities#loadGPXFile(InputStream)} to get them.
+ */
+public class GPXTrackStreamReader {
+
+	private static final Log log = PlatformUtil.getLog(GPXTrackStreamReader.class);
+
+	public interface TrackPointsListener {
+
+		void segmentStarted();
+
+		// ele and hdop are NaN, time and speed are 0 if not specified
+		void pointRead(double lat, double lon, long time, double ele, double speed, double hdop);
+
+		void segmentFinished();
+	}
+
+	/**
+	 * Reads points into columns and calculates analysis while reading
+	 * @param points could be null if only analysis is needed
+	 */
+	public static GPXTrackAnalysis analyse(File file, GPXTrackPoints points) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			GPXTrackAnalysis analysis = analyse(fis, points, file.lastModified());
+			analysis.name = file.getAbsolutePath();
+			return analysis;
+		} finally {
+			Algorithms.closeStream(fis);
+		}
+	}
+
+	public static GPXTrackAnalysis analyse(InputStream stream, GPXTrackPoints points, long fileTimestamp)
+			throws IOException {
+		GPXTrackStreamAnalyser analyser = new GPXTrackStreamAnalyser(points);
+		read(stream, analyser);
+		if (points != null) {
+			points.trimToSize();
+		}
+		return analyser.finish(fileTimestamp);
+	}
+
+	public static void read(InputStream stream, TrackPointsListener listener) throws IOException {
+		try {
+			XmlPullParser parser = PlatformUtil.newXMLPullParser();
+			parser.setInput(GPXUtilities.getUTF8Reader(stream));
+			new GPXTrackStreamReader().read(parser, listener);
+		} catch (XmlPullParserException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private boolean track;
+	private boolean segment;
+	private boolean point;
+	private double lat;
+	private double lon;
+	private long time;
+	private double ele;
+	private double speed;
+	private double hdop;
+
+	private void read(XmlPullParser parser, TrackPointsListener listener) throws XmlPullParserException, IOException {
+		int tok;
+		while ((tok = parser.next()) != XmlPullParser.END_DOCUMENT) {
+			if (tok == XmlPullParser.START_TAG) {
+				String tag = parser.getName();
+				if (point) {
+					readPointTag(parser, tag);
+				} else if (tag.equals("trk")) {
+					track = true;
+				} else if (track && tag.equals("trkseg")) {
+					startSegment(listener);
+				} else if (track && tag.equals("trkpt")) {
+					// points without trkseg belong to one segment of track
+					if (!segment) {
+						startSegment(listener);
+					}
+					startPoint(parser);
+				}
+			} else if (tok == XmlPullParser.END_TAG) {
+				String tag = parser.getName();
+				if (point) {
+					if (tag.equals("trkpt")) {
+						point = false;
+						listener.pointRead(lat, lon, time, ele, speed, hdop);
+					}
+				} else if (tag.equals("trkseg") || tag.equals("trk")) {
+					if (segment) {
+						segment = false;
+						listener.segmentFinished();
+					}
+					track &= !tag.equals("trk");
+				}
+			}
+		}
+	}
+
+	private void startSegment(TrackPointsListener listener) {
+		if (segment) {
+			listener.segmentFinished();
+		}
+		segment = true;
+		listener.segmentStarted();
+	}
+
+	private void startPoint(XmlPullParser parser) {
+		point = true;
+		lat = 0;
+		lon = 0;
+		time = 0;
+		ele = Double.NaN;
+		speed = 0;
+		hdop = Double.NaN;
+		try {
+			lat = Double.parseDouble(parser.getAttributeValue("", "lat"));
+			lon = Double.parseDouble(parser.getAttributeValue("", "lon"));
+		} catch (NumberFormatException e) {
+			// ignore
+		} catch (NullPointerException e) {
+			// ignore
+		}
+	}
+
+	private void readPointTag(XmlPullParser parser, String tag) throws XmlPullParserException, IOException {
+		// same values as GPXUtilities reads for WptPt
+		try {
+			if (tag.equals(GPXUtilities.POINT_ELEVATION)) {
+				String text = GPXUtilities.readText(parser, tag);
+				if (text != null) {
+					ele = Float.parseFloat(text);
+				}
+			} else if (tag.equals("time")) {
+				time = parseTime(GPXUtilities.readText(parser, tag));
+			} else if (tag.equals(GPXUtilities.POINT_SPEED)) {
+				String text = GPXUtilities.readText(parser, tag);
+				if (!Algorithms.isEmpty(text)) {
+					speed = Float.parseFloat(text);
+				}
+			} else if (tag.equals("hdop")) {
+				String text = GPXUtilities.readText(parser, tag);
+				if (text != null) {
+					hdop = Float.parseFloat(text);
+				}
+			}
+		} catch (NumberFormatException e) {
+			log.debug(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parses common xml time formats (yyyy-MM-ddTHH:mm:ss[.SSS][Z|+hh:mm]) without date formatters, other
+	 * formats are parsed by {@link GPXUtilities#parseTime(String)}.
+	 */
+	static long parseTime(String text) {
+		if (text == null) {
+			return 0;
+		}
+		String t = text.trim();
+		int len = t.length();
+		if (len >= 19 && t.charAt(4) == '-' && t.charAt(7) == '-' && t.charAt(10) == 'T' && t.charAt(13) == ':'
+				&& t.charAt(16) == ':') {
+			int year = digits(t, 0, 4);
+			int month = digits(t, 5, 7);
+			int day = digits(t, 8, 10);
+			int hour = digits(t, 11, 13);
+			int min = digits(t, 14, 16);
+			int sec = digits(t, 17, 19);
+			int pos = 19;
+			int millis = 0;
+			// SimpleDateFormat reads SSS as number of millis, so only 3 digits are parsed here
+			if (pos < len && t.charAt(pos) == '.') {
+				millis = pos + 4 <= len ? digits(t, pos + 1, pos + 4) : -1;
+				pos += 4;
+				if (pos < len && Character.isDigit(t.charAt(pos))) {
+					millis = -1;
+				}
+			}
+			int offset = 0;
+			if (pos < len && t.charAt(pos) == 'Z') {
+				pos++;
+			} else if (pos + 6 == len && (t.charAt(pos) == '+' || t.charAt(pos) == '-') && t.charAt(pos + 3) == ':') {
+				int h = digits(t, pos + 1, pos + 3);
+				int m = digits(t, pos + 4, pos + 6);
+				offset = h < 0 || m < 0 ? -1 : (h * 60 + m) * (t.charAt(pos) == '+' ? 1 : -1);
+				pos += 6;
+			}
+			if (pos == len && year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour >= 0
+					&& hour < 24 && min >= 0 && min < 60 && sec >= 0 && sec < 60 && millis >= 0 && offset != -1) {
+				long days = daysFromEpoch(year, month, day);
+				return ((days * 24 + hour) * 60 + min - offset) * 60000l + sec * 1000l + millis;
+			}
+		}
+		return GPXUtilities.parseTime(text);
+	}
+
+	private static int digits(String t, int from, int to) {
+		int r = 0;
+		for (int i = from; i < to; i++) {
+			char c = t.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			r = r * 10 + (c - '0');
+		}
+		return r;
+	}
+
+	// days from 1970-01-01 in proleptic gregorian calendar
+	private static long daysFromEpoch(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yoe = y - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097l + doe - 719468;
+	}
+}
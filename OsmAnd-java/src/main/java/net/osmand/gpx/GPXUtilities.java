@@ -1891,7 +1891,7 @@ public class GPXUtilities {
 		return pointsGroups;
 	}
 
-	private static Reader getUTF8Reader(InputStream f) throws IOException {
+	static Reader getUTF8Reader(InputStream f) throws IOException {
 		BufferedInputStream bis = new BufferedInputStream(f);
 		assert bis.markSupported();
 		bis.mark(3);
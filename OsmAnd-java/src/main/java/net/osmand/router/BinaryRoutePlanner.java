@@ -6,15 +6,26 @@ import gnu.trove.map.hash.TLongObjectHashMap;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.osmand.PlatformUtil;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
 import net.osmand.osm.MapRenderingTypes;
+import net.osmand.util.Algorithms;
+import net.osmand.util.FloatPriorityQueue;
 import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
@@ -27,6 +38,8 @@ public class BinaryRoutePlanner {
 	private static final int REVERSE_WAY_RESTRICTION_ONLY = 1024;
 	/*private*/ static final int STANDARD_ROAD_IN_QUEUE_OVERHEAD = 220;
 	/*private*/ static final int STANDARD_ROAD_VISITED_OVERHEAD = 150;
+	// snapshot of visited segment published to concurrent search in opposite direction
+	private static final int VISITED_SNAPSHOT_OVERHEAD = 60;
 
 	protected static final Log log = PlatformUtil.getLog(BinaryRoutePlanner.class);
 
@@ -39,6 +52,17 @@ public class BinaryRoutePlanner {
 	public static boolean DEBUG_PRECISE_DIST_MEASUREMENT = false;
 	public static boolean DEBUG_BREAK_EACH_SEGMENT = false;
 
+	// threads of concurrent reverse search (see RoutingConfiguration.parallelBidirectionalSearch) reused by all searches
+	private static final ExecutorService REVERSE_SEARCH_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+			60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Reverse route search");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
 
 	public static double squareRootDist(int x1, int y1, int x2, int y2) {
 		if (DEBUG_PRECISE_DIST_MEASUREMENT) {
@@ -48,30 +72,13 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private static class SegmentsComparator implements Comparator<RouteSegmentCost> {
-		@Override
-		public int compare(RouteSegmentCost o1, RouteSegmentCost o2) {
-			return Double.compare(o1.cost, o2.cost);
-		}
-	}
-	
 	private static float cost(float distanceFromStart, float distanceToEnd, RoutingContext ctx) {
 		return ctx.config.heuristicCoefficient * distanceToEnd + distanceFromStart;
 	}
 
-	private static class RouteSegmentCost {
-		float cost;
-		RouteSegment segment;
-		
-		public RouteSegmentCost(RouteSegment segment, RoutingContext ctx) {
-			this.cost = cost(segment.distanceFromStart, segment.distanceToEnd, ctx);
-			this.segment = segment;
-		}
-
-		@Override
-		public String toString() {
-			return String.format("%.2f %s", cost, segment);
-		}
+	// cost is calculated at the moment segment is added to queue
+	private static void addToQueue(FloatPriorityQueue<RouteSegment> graphSegments, RouteSegment segment, RoutingContext ctx) {
+		graphSegments.add(segment, cost(segment.distanceFromStart, segment.distanceToEnd, ctx));
 	}
 
 	/**
@@ -80,15 +87,47 @@ public class BinaryRoutePlanner {
 	 */
 	FinalRouteSegment searchRouteInternal(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end, 
 			TLongObjectMap<RouteSegment> boundaries) throws InterruptedException, IOException {
+		if (ctx.config.speedProfiles != null) {
+			// set once per route (legs start at arrival time of previous leg)
+			ctx.getDepartureTime();
+		}
+		if (start != null && end != null && isConcurrentSearchAllowed(ctx)) {
+			RoutingContext reverseCtx = ctx.getReverseSearchContext();
+			if (reverseCtx != null) {
+				try {
+					return searchRouteConcurrently(ctx, reverseCtx, start, end, boundaries);
+				} finally {
+					// readers are kept for following searches, tiles keep state of this search
+					reverseCtx.unloadAllData();
+				}
+			}
+		}
 		// measure time
 		ctx.memoryOverhead = 1000;
 		// Initializing priority queue to visit way segments 
-		PriorityQueue<RouteSegmentCost> graphDirectSegments = new PriorityQueue<>(50, new SegmentsComparator());
-		PriorityQueue<RouteSegmentCost> graphReverseSegments = new PriorityQueue<>(50, new SegmentsComparator());
+		FloatPriorityQueue<RouteSegment> graphDirectSegments = new FloatPriorityQueue<RouteSegment>(50);
+		FloatPriorityQueue<RouteSegment> graphReverseSegments;
 		// Set to not visit one segment twice (stores road.id << X + segmentStart)
 		TLongObjectHashMap<RouteSegment> visitedDirectSegments = new TLongObjectHashMap<RouteSegment>();
-		TLongObjectHashMap<RouteSegment> visitedOppositeSegments = new TLongObjectHashMap<RouteSegment>();
-		initQueuesWithStartEnd(ctx, start, end, graphDirectSegments, graphReverseSegments);
+		TLongObjectHashMap<RouteSegment> visitedOppositeSegments;
+		// time dependent costs of reverse tree depend on start point, so tree can't be reused with speed profiles
+		ReverseSearchTree reverseTree = start != null && end != null && boundaries == null
+				&& ctx.config.speedProfiles == null ? ctx.reverseSearchTree : null;
+		if (reverseTree != null && reverseTree.matches(ctx, end)) {
+			// resume reverse search of previous calculation to the same target, only forward search starts from scratch
+			// (segments of loaded tiles keep state of previous forward search)
+			ctx.unloadAllData();
+			ctx.targetX = end.preciseX;
+			ctx.targetY = end.preciseY;
+			initQueuesWithStartEnd(ctx, start, null, graphDirectSegments, null);
+			visitedOppositeSegments = reverseTree.visited;
+			graphReverseSegments = resumeReverseQueue(ctx, reverseTree.queue);
+			reverseTree.resumedSearches++;
+		} else {
+			graphReverseSegments = new FloatPriorityQueue<RouteSegment>(50);
+			visitedOppositeSegments = new TLongObjectHashMap<RouteSegment>();
+			initQueuesWithStartEnd(ctx, start, end, graphDirectSegments, graphReverseSegments);
+		}
 
 		boolean onlyBackward = ctx.getPlanRoadDirection() < 0;
 		boolean onlyForward = ctx.getPlanRoadDirection() > 0;
@@ -104,11 +143,11 @@ public class BinaryRoutePlanner {
 			end.others = null;
 			forwardSearch = false;
 		}
-		PriorityQueue<RouteSegmentCost> graphSegments = forwardSearch ?  graphDirectSegments : graphReverseSegments;
+		FloatPriorityQueue<RouteSegment> graphSegments = forwardSearch ?  graphDirectSegments : graphReverseSegments;
 		float[] minCost = new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
 		while (!graphSegments.isEmpty()) {
-			RouteSegmentCost cst = graphSegments.poll();
-			RouteSegment segment = cst.segment;
+			float segmentCost = graphSegments.peekKey();
+			RouteSegment segment = graphSegments.poll();
 			int visitedCnt = (start != null ? visitedDirectSegments.size() : 0) + (end != null ? visitedOppositeSegments.size() : 0);
 			// use accumulative approach
 			ctx.memoryOverhead = visitedCnt * STANDARD_ROAD_VISITED_OVERHEAD +
@@ -122,6 +161,9 @@ public class BinaryRoutePlanner {
 				}
 				break;
 			}
+			if (ctx.dijkstraMode != 0 && ctx.config.MAX_COST > 0 && segmentCost > ctx.config.MAX_COST) {
+				break;
+			}
 			boolean skipSegment = false;
 			if (segment instanceof FinalRouteSegment) {
 				if (RoutingContext.SHOW_GC_SIZE) {
@@ -160,12 +202,12 @@ public class BinaryRoutePlanner {
 					println("  " + segment.segEnd + ">> Already visited by minimum");
 				}
 				skipSegment = true;
-			} else if (cst.cost + 0.1 < minCost[forwardSearch ? 1 : 0] && ASSERT_CHECKS && ctx.calculationMode != RouteCalculationMode.COMPLEX) {
+			} else if (segmentCost + 0.1 < minCost[forwardSearch ? 1 : 0] && ASSERT_CHECKS && ctx.calculationMode != RouteCalculationMode.COMPLEX) {
 				if (ctx.config.heuristicCoefficient <= 1) {
-					throw new IllegalStateException(cst.cost + " < ???  " + minCost[forwardSearch ? 1 : 0]);
+					throw new IllegalStateException(segmentCost + " < ???  " + minCost[forwardSearch ? 1 : 0]);
 				}
 			} else {
-				minCost[forwardSearch ? 1 : 0] = cst.cost;
+				minCost[forwardSearch ? 1 : 0] = segmentCost;
 			}
 			if (!skipSegment) {
 				if (forwardSearch) {
@@ -199,17 +241,20 @@ public class BinaryRoutePlanner {
 					graphSegments = graphDirectSegments.isEmpty() ? graphReverseSegments : graphDirectSegments;
 					if (finalSegment == null) {
 						while (!graphSegments.isEmpty()) {
-							RouteSegmentCost pc = graphSegments.poll();
-							if (pc.segment instanceof FinalRouteSegment) {
-								finalSegment = (FinalRouteSegment) pc.segment;
+							RouteSegment pc = graphSegments.poll();
+							if (pc instanceof FinalRouteSegment) {
+								finalSegment = (FinalRouteSegment) pc;
 								break;
 							}
 						}
 					}
+					if (reverseTree != null) {
+						reverseTree.store(ctx, end, visitedOppositeSegments, graphReverseSegments);
+					}
 					return finalSegment;
 				} else {
-					RouteSegment fw = graphDirectSegments.peek().segment;
-					RouteSegment bw = graphReverseSegments.peek().segment;
+					RouteSegment fw = graphDirectSegments.peek();
+					RouteSegment bw = graphReverseSegments.peek();
 					forwardSearch = Double.compare(cost(fw.distanceFromStart, fw.distanceToEnd, ctx), 
 							cost(bw.distanceFromStart, bw.distanceToEnd,ctx)) <= 0;
 				}
@@ -240,11 +285,329 @@ public class BinaryRoutePlanner {
 			ctx.calculationProgress.directQueueSize += graphDirectSegments.size(); // Math.max(ctx.directQueueSize, graphDirectSegments.size());
 			ctx.calculationProgress.oppositeQueueSize += graphReverseSegments.size();
 		}
+		if (reverseTree != null) {
+			reverseTree.store(ctx, end, visitedOppositeSegments, graphReverseSegments);
+		}
 		return finalSegment;
 	}
 
+	/**
+	 * Reverse queue of previous search has costs estimated to previous start point, so they're recalculated to the
+	 * new start. Final segments of previous search are dropped.
+	 */
+	private FloatPriorityQueue<RouteSegment> resumeReverseQueue(RoutingContext ctx, FloatPriorityQueue<RouteSegment> queue) {
+		FloatPriorityQueue<RouteSegment> res = new FloatPriorityQueue<RouteSegment>(Math.max(50, queue.size()));
+		while (!queue.isEmpty()) {
+			RouteSegment segment = queue.poll();
+			if (segment instanceof FinalRouteSegment) {
+				continue;
+			}
+			int x = segment.getRoad().getPoint31XTile(segment.getSegmentStart());
+			int y = segment.getRoad().getPoint31YTile(segment.getSegmentStart());
+			segment.distanceToEnd = h(ctx, x, y, ctx.startX, ctx.startY);
+			addToQueue(res, segment, ctx);
+		}
+		return res;
+	}
+
+	private boolean isConcurrentSearchAllowed(RoutingContext ctx) {
+		// direction points, precalculated direction and visitors are not thread safe, reverse search needs own router
+		return ctx.config.parallelBidirectionalSearch && ctx.planRouteIn2Directions() && ctx.nativeLib == null
+				&& ctx.getRouter() instanceof GeneralRouter
+				&& ctx.visitor == null && ctx.reachedVisitor == null && ctx.precalculatedRouteDirection == null
+				&& ctx.config.getDirectionPoints() == null && ctx.reverseSearchTree == null;
+	}
+
+	/**
+	 * Bidirectional A* where forward search runs in calling thread with ctx and reverse search runs in separate thread
+	 * with reverseCtx (own tiles, readers, router and progress counters). Search directions exchange only snapshots
+	 * of visited segments and found final segment.
+	 */
+	private FinalRouteSegment searchRouteConcurrently(final RoutingContext ctx, final RoutingContext reverseCtx,
+			RouteSegmentPoint start, RouteSegmentPoint end, TLongObjectMap<RouteSegment> boundaries)
+			throws InterruptedException {
+		ConcurrentSearch search = new ConcurrentSearch(ctx.calculationProgress);
+		ConcurrentSearchDirection direct = new ConcurrentSearchDirection(search, ctx, start, false, boundaries);
+		ConcurrentSearchDirection reverse = new ConcurrentSearchDirection(search, reverseCtx, end, true, boundaries);
+		direct.opposite = reverse;
+		reverse.opposite = direct;
+		// router keeps evaluation state and caches, so reverse search uses own copy (kept while router isn't changed)
+		GeneralRouter router = (GeneralRouter) ctx.getRouter();
+		if (reverseCtx.searchRouter == null || reverseCtx.searchRouterOrigin != router) {
+			reverseCtx.searchRouter = router.copyForConcurrentUse();
+			reverseCtx.searchRouterOrigin = router;
+		}
+		for (ConcurrentSearchDirection d : new ConcurrentSearchDirection[] { direct, reverse }) {
+			d.ctx.dijkstraMode = 0;
+			d.ctx.startX = start.preciseX;
+			d.ctx.startY = start.preciseY;
+			d.ctx.targetX = end.preciseX;
+			d.ctx.targetY = end.preciseY;
+		}
+		initEdgeSegment(ctx, start, true, direct.graphSegments, false);
+		initEdgeSegment(ctx, start, false, direct.graphSegments, false);
+		initEdgeSegment(reverseCtx, end, true, reverse.graphSegments, true);
+		initEdgeSegment(reverseCtx, end, false, reverse.graphSegments, true);
+		Future<?> reverseSearch = REVERSE_SEARCH_EXECUTOR.submit(reverse);
+		direct.run();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				reverseSearch.get();
+				break;
+			} catch (InterruptedException e) {
+				// reverse search uses reverseCtx which is unloaded after return
+				search.stopped = true;
+				interrupted = true;
+			} catch (ExecutionException e) {
+				reverse.error = e.getCause();
+				break;
+			}
+		}
+		if (interrupted) {
+			throw new InterruptedException("Route calculation interrupted");
+		}
+		direct.rethrowError();
+		reverse.rethrowError();
+		if (ctx.calculationProgress != null) {
+			ctx.calculationProgress.addSearchCounters(reverseCtx.calculationProgress);
+			ctx.calculationProgress.visitedDirectSegments += direct.visitedSegments.size();
+			ctx.calculationProgress.visitedOppositeSegments += reverse.visitedSegments.size();
+			ctx.calculationProgress.directQueueSize += direct.graphSegments.size();
+			ctx.calculationProgress.oppositeQueueSize += reverse.graphSegments.size();
+		}
+		ctx.memoryOverhead = direct.searchOverhead + reverse.searchOverhead;
+		ctx.alertFasterRoadToVisitedSegments += reverseCtx.alertFasterRoadToVisitedSegments;
+		ctx.alertSlowerSegmentedWasVisitedEarlier += reverseCtx.alertSlowerSegmentedWasVisitedEarlier;
+		reverseCtx.alertFasterRoadToVisitedSegments = 0;
+		reverseCtx.alertSlowerSegmentedWasVisitedEarlier = 0;
+		return search.finalSegment.get();
+	}
+
+	private void searchDirectionConcurrently(ConcurrentSearchDirection d) throws InterruptedException {
+		final RoutingContext ctx = d.ctx;
+		ConcurrentSearch search = d.search;
+		FloatPriorityQueue<RouteSegment> graphSegments = d.graphSegments;
+		String msg = d.reverseWaySearch ? "Route is not found to selected target point."
+				: "Route is not found from selected start point.";
+		float minCost = Float.NEGATIVE_INFINITY;
+		while (!search.stopped) {
+			if (graphSegments.isEmpty()) {
+				if (checkIfGraphIsEmpty(ctx, true, d.reverseWaySearch, graphSegments, d.point, d.visitedSegments, msg)) {
+					minCost = Float.NEGATIVE_INFINITY;
+					continue;
+				}
+				search.exhausted = true;
+				break;
+			}
+			if (search.exhausted) {
+				// opposite direction can't proceed any more - check if final already exist
+				while (!graphSegments.isEmpty()) {
+					RouteSegment pc = graphSegments.poll();
+					if (pc instanceof FinalRouteSegment) {
+						search.offerFinalSegment((FinalRouteSegment) pc);
+						break;
+					}
+				}
+				break;
+			}
+			float segmentCost = graphSegments.peekKey();
+			if (segmentCost >= search.getFinalCost()) {
+				// route found by opposite direction can't be improved
+				break;
+			}
+			RouteSegment segment = graphSegments.poll();
+			if (TRACE_ROUTING) {
+				printRoad(">", segment, d.reverseWaySearch);
+			}
+			if (segment instanceof FinalRouteSegment) {
+				if (TRACE_ROUTING) {
+					println(" >>FINAL segment: " + segment);
+				}
+				search.offerFinalSegment((FinalRouteSegment) segment);
+				break;
+			}
+			int visitedCnt = d.visitedSegments.size() + d.opposite.visitedSegments.published.size();
+			if (ctx.config.MAX_VISITED > 0 && visitedCnt > ctx.config.MAX_VISITED) {
+				search.stopped = true;
+				break;
+			}
+			// each direction loads tiles within half of memory limit
+			d.searchOverhead = d.visitedSegments.size() * (STANDARD_ROAD_VISITED_OVERHEAD + VISITED_SNAPSHOT_OVERHEAD)
+					+ graphSegments.size() * STANDARD_ROAD_IN_QUEUE_OVERHEAD;
+			ctx.memoryOverhead = (int) (ctx.config.memoryLimitation / 2) + d.searchOverhead;
+			if (d.searchOverhead + d.opposite.searchOverhead > ctx.config.memoryLimitation * 0.95) {
+				throw new IllegalStateException("There is not enough memory " + ctx.config.memoryLimitation / (1 << 20) + " Mb");
+			}
+			if (ctx.calculationProgress != null) {
+				ctx.calculationProgress.visitedSegments++;
+			}
+			if (d.visitedSegments.containsKey(calculateRoutePointId(segment))) {
+				if (TRACE_ROUTING) {
+					println("  " + segment.segEnd + ">> Already visited by minimum");
+				}
+			} else {
+				if (segmentCost + 0.1 < minCost && ASSERT_CHECKS && ctx.calculationMode != RouteCalculationMode.COMPLEX
+						&& ctx.config.heuristicCoefficient <= 1) {
+					throw new IllegalStateException(segmentCost + " < ???  " + minCost);
+				}
+				minCost = Math.max(minCost, segmentCost);
+				processRouteSegment(ctx, d.reverseWaySearch, graphSegments, d.visitedSegments, segment,
+						d.opposite.visitedSegments.published, d.boundaries, false);
+			}
+			// each direction updates only own fields of shared progress
+			updateCalculationProgress(ctx, search.progress, graphSegments, d.reverseWaySearch);
+			// check if interrupted
+			if (search.progress != null && search.progress.isCancelled) {
+				throw new InterruptedException("Route calculation interrupted");
+			}
+		}
+	}
+
+	// state shared by search directions
+	private static class ConcurrentSearch {
+		final AtomicReference<FinalRouteSegment> finalSegment = new AtomicReference<FinalRouteSegment>();
+		// progress of calling context, counters of reverse search are added after search
+		final RouteCalculationProgress progress;
+		// one of directions can't proceed any more
+		volatile boolean exhausted;
+		// search is finished by error or limit
+		volatile boolean stopped;
+
+		ConcurrentSearch(RouteCalculationProgress progress) {
+			this.progress = progress;
+		}
+
+		void offerFinalSegment(FinalRouteSegment segment) {
+			FinalRouteSegment current;
+			do {
+				current = finalSegment.get();
+				if (current != null && current.distanceFromStart <= segment.distanceFromStart) {
+					return;
+				}
+			} while (!finalSegment.compareAndSet(current, segment));
+		}
+
+		float getFinalCost() {
+			FinalRouteSegment f = finalSegment.get();
+			return f == null ? Float.POSITIVE_INFINITY : f.distanceFromStart;
+		}
+	}
+
+	private class ConcurrentSearchDirection implements Runnable {
+		final ConcurrentSearch search;
+		final RoutingContext ctx;
+		final RouteSegmentPoint point;
+		final boolean reverseWaySearch;
+		final TLongObjectMap<RouteSegment> boundaries;
+		final FloatPriorityQueue<RouteSegment> graphSegments = new FloatPriorityQueue<RouteSegment>(50);
+		final PublishingSegmentsMap visitedSegments = new PublishingSegmentsMap();
+		ConcurrentSearchDirection opposite;
+		volatile int searchOverhead;
+		volatile Throwable error;
+
+		ConcurrentSearchDirection(ConcurrentSearch search, RoutingContext ctx, RouteSegmentPoint point,
+				boolean reverseWaySearch, TLongObjectMap<RouteSegment> boundaries) {
+			this.search = search;
+			this.ctx = ctx;
+			this.point = point;
+			this.reverseWaySearch = reverseWaySearch;
+			this.boundaries = boundaries;
+		}
+
+		@Override
+		public void run() {
+			try {
+				searchDirectionConcurrently(this);
+			} catch (Throwable e) {
+				error = e;
+				search.stopped = true;
+			}
+		}
+
+		void rethrowError() throws InterruptedException {
+			if (error instanceof InterruptedException) {
+				throw (InterruptedException) error;
+			} else if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			} else if (error != null) {
+				throw new IllegalStateException(error);
+			}
+		}
+	}
+
+	/**
+	 * Visited segments of one search direction (accessed only by its thread), every put segment is also published
+	 * as immutable snapshot to synchronized map read by opposite direction. Visited segments are changed after
+	 * they're put (distance, parent), so opposite direction never reads them while search is running.
+	 */
+	private static class PublishingSegmentsMap extends TLongObjectHashMap<RouteSegment> {
+		private static final long serialVersionUID = 1L;
+
+		final TLongObjectMap<RouteSegment> published = new SynchronizedSegmentsMap();
+
+		@Override
+		public RouteSegment put(long key, RouteSegment value) {
+			published.put(key, new VisitedSegmentSnapshot(value));
+			return super.put(key, value);
+		}
+	}
+
+	private static class SynchronizedSegmentsMap extends TLongObjectHashMap<RouteSegment> {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public synchronized RouteSegment get(long key) {
+			return super.get(key);
+		}
+
+		@Override
+		public synchronized RouteSegment put(long key, RouteSegment value) {
+			return super.put(key, value);
+		}
+
+		@Override
+		public synchronized RouteSegment remove(long key) {
+			return super.remove(key);
+		}
+
+		@Override
+		public synchronized boolean containsKey(long key) {
+			return super.containsKey(key);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+
+		@Override
+		public synchronized boolean isEmpty() {
+			return super.isEmpty();
+		}
+	}
+
+	/**
+	 * Copy of visited segment taken when it's visited, it keeps parent with different road (to check via restrictions)
+	 * which otherwise would be found by walking parents changed by search thread. Parents of snapshot are walked
+	 * only to prepare result after search threads are finished.
+	 */
+	static class VisitedSegmentSnapshot extends RouteSegment {
+		final RouteSegment parentDiffId;
+
+		VisitedSegmentSnapshot(RouteSegment s) {
+			super(s.road, s.segStart, s.segEnd);
+			this.parentRoute = s.parentRoute;
+			this.distanceFromStart = s.distanceFromStart;
+			this.distanceToEnd = s.distanceToEnd;
+			this.parentDiffId = getParentDiffId(s);
+		}
+	}
+
 	protected boolean checkIfGraphIsEmpty(final RoutingContext ctx, boolean allowDirection,
-			boolean reverseWaySearch, PriorityQueue<RouteSegmentCost> graphSegments, RouteSegmentPoint pnt, TLongObjectMap<RouteSegment> visited,
+			boolean reverseWaySearch, FloatPriorityQueue<RouteSegment> graphSegments, RouteSegmentPoint pnt, TLongObjectMap<RouteSegment> visited,
 			String msg) {
 		if (allowDirection && graphSegments.isEmpty()) {
 			if (pnt.others != null) {
@@ -259,7 +622,7 @@ public class BinaryRoutePlanner {
 						pos.setParentRoute(null);
 						pos.distanceFromStart = 0;
 						pos.distanceToEnd = estimatedDistance;
-						graphSegments.add(new RouteSegmentCost(pos, ctx));
+						addToQueue(graphSegments, pos, ctx);
 					}
 					RouteSegment neg = next.initRouteSegment(false);
 					if (neg != null && !visited.containsKey(calculateRoutePointId(neg)) && 
@@ -267,7 +630,7 @@ public class BinaryRoutePlanner {
 						neg.setParentRoute(null);
 						neg.distanceFromStart = 0;
 						neg.distanceToEnd = estimatedDistance;
-						graphSegments.add(new RouteSegmentCost(neg, ctx));
+						addToQueue(graphSegments, neg, ctx);
 					}
 					if (!graphSegments.isEmpty()) {
 						println("Reiterate point with new " + (!reverseWaySearch ? "start " : "destination ")
@@ -283,7 +646,7 @@ public class BinaryRoutePlanner {
 		return false;
 	}
 
-	public RouteSegment initEdgeSegment(final RoutingContext ctx, RouteSegmentPoint pnt, boolean originalDir, PriorityQueue<RouteSegmentCost> graphSegments, boolean reverseSearchWay) {
+	public RouteSegment initEdgeSegment(final RoutingContext ctx, RouteSegmentPoint pnt, boolean originalDir, FloatPriorityQueue<RouteSegment> graphSegments, boolean reverseSearchWay) {
 		if (pnt == null) {
 			return null;
 		}
@@ -327,7 +690,7 @@ public class BinaryRoutePlanner {
 		}
 		if (checkMovementAllowed(ctx, reverseSearchWay, seg)) {
 			seg.distanceToEnd = estimatedDistance(seg, reverseSearchWay, ctx);
-			graphSegments.add(new RouteSegmentCost(seg, ctx));
+			addToQueue(graphSegments, seg, ctx);
 			return seg;
 		}
 		return null;
@@ -344,7 +707,7 @@ public class BinaryRoutePlanner {
 	
 
 	private void initQueuesWithStartEnd(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
-			PriorityQueue<RouteSegmentCost> graphDirectSegments, PriorityQueue<RouteSegmentCost> graphReverseSegments) {
+			FloatPriorityQueue<RouteSegment> graphDirectSegments, FloatPriorityQueue<RouteSegment> graphReverseSegments) {
 		if (start != null) {
 			ctx.startX = start.preciseX;
 			ctx.startY = start.preciseY;
@@ -373,22 +736,30 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private void updateCalculationProgress(final RoutingContext ctx, PriorityQueue<RouteSegmentCost> graphDirectSegments,
-			PriorityQueue<RouteSegmentCost> graphReverseSegments) {
-		if (ctx.calculationProgress != null) {
-			ctx.calculationProgress.reverseSegmentQueueSize = graphReverseSegments.size();
-			ctx.calculationProgress.directSegmentQueueSize = graphDirectSegments.size();
-			if (!graphDirectSegments.isEmpty() && ctx.getPlanRoadDirection() >= 0) {
-				RouteSegment peek = graphDirectSegments.peek().segment;
-				ctx.calculationProgress.distanceFromBegin = Math.max(peek.distanceFromStart,
-						ctx.calculationProgress.distanceFromBegin);
-				ctx.calculationProgress.directDistance = peek.distanceFromStart + peek.distanceToEnd;
-			}
-			if (!graphReverseSegments.isEmpty() && ctx.getPlanRoadDirection() <= 0) {
-				RouteSegment peek = graphReverseSegments.peek().segment;
-				ctx.calculationProgress.distanceFromEnd = Math.max(peek.distanceFromStart + peek.distanceToEnd,
-							ctx.calculationProgress.distanceFromEnd);
-				ctx.calculationProgress.reverseDistance = peek.distanceFromStart + peek.distanceToEnd;
+	private void updateCalculationProgress(final RoutingContext ctx, FloatPriorityQueue<RouteSegment> graphDirectSegments,
+			FloatPriorityQueue<RouteSegment> graphReverseSegments) {
+		updateCalculationProgress(ctx, ctx.calculationProgress, graphReverseSegments, true);
+		updateCalculationProgress(ctx, ctx.calculationProgress, graphDirectSegments, false);
+	}
+
+	private void updateCalculationProgress(final RoutingContext ctx, RouteCalculationProgress progress,
+			FloatPriorityQueue<RouteSegment> graphSegments, boolean reverseWaySearch) {
+		if (progress != null) {
+			if (!reverseWaySearch) {
+				progress.directSegmentQueueSize = graphSegments.size();
+				if (!graphSegments.isEmpty() && ctx.getPlanRoadDirection() >= 0) {
+					RouteSegment peek = graphSegments.peek();
+					progress.distanceFromBegin = Math.max(peek.distanceFromStart, progress.distanceFromBegin);
+					progress.directDistance = peek.distanceFromStart + peek.distanceToEnd;
+				}
+			} else {
+				progress.reverseSegmentQueueSize = graphSegments.size();
+				if (!graphSegments.isEmpty() && ctx.getPlanRoadDirection() <= 0) {
+					RouteSegment peek = graphSegments.peek();
+					progress.distanceFromEnd = Math.max(peek.distanceFromStart + peek.distanceToEnd,
+							progress.distanceFromEnd);
+					progress.reverseDistance = peek.distanceFromStart + peek.distanceToEnd;
+				}
 			}
 		}
 	}
@@ -447,6 +818,9 @@ public class BinaryRoutePlanner {
 		short prevSegmentInd = !reverseWaySearch ? segment.getSegmentStart() : segment.getSegmentEnd();
 
 		double distTimeOnRoadToPass = calcRoutingSegmentTimeOnlyDist(ctx.getRouter(), segment);
+		if (ctx.config.speedProfiles != null) {
+			distTimeOnRoadToPass = applySpeedProfile(ctx, reverseWaySearch, segment, distTimeOnRoadToPass);
+		}
 		// calculate possible obstacle plus time
 		double obstacle = ctx.getRouter().defineRoutingObstacle(road, segmentInd, prevSegmentInd > segmentInd);
 		if (obstacle < 0) {
@@ -460,7 +834,31 @@ public class BinaryRoutePlanner {
 
 	}
 
-	
+
+	/**
+	 * Applies speed factor at time when segment is passed. Reverse search doesn't know arrival time,
+	 * so it is estimated by straight line time from start point. Speed is capped as in route preparation
+	 * ({@link SpeedProfileTable#applySpeedFactor}).
+	 */
+	private double applySpeedProfile(RoutingContext ctx, boolean reverseWaySearch, RouteSegment segment,
+			double distTimeOnRoadToPass) {
+		VehicleRouter router = ctx.getRouter();
+		int x = segment.road.getPoint31XTile(segment.getSegmentStart());
+		int y = segment.road.getPoint31YTile(segment.getSegmentStart());
+		double dist = squareRootDist(x, y, segment.road.getPoint31XTile(segment.getSegmentEnd()),
+				segment.road.getPoint31YTile(segment.getSegmentEnd()));
+		if (dist == 0 || distTimeOnRoadToPass <= 0) {
+			return distTimeOnRoadToPass;
+		}
+		double timeFromStart = segment.distanceFromStart;
+		if (reverseWaySearch) {
+			timeFromStart = squareRootDist(ctx.startX, ctx.startY, x, y) / router.getMaxSpeed();
+		}
+		float factor = ctx.config.speedProfiles.getSpeedFactor(segment.road,
+				ctx.departureTime + (long) (timeFromStart * 1000));
+		return dist / SpeedProfileTable.applySpeedFactor(dist / distTimeOnRoadToPass, factor, router.getMaxSpeed());
+	}
+
 	public float calcRoutingSegmentTimeOnlyDist(VehicleRouter router, RouteSegment segment) {
 		int prevX = segment.road.getPoint31XTile(segment.getSegmentStart());
 		int prevY = segment.road.getPoint31YTile(segment.getSegmentStart());
@@ -480,7 +878,7 @@ public class BinaryRoutePlanner {
 	}
 
 	private void processRouteSegment(final RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegmentCost> graphSegments, TLongObjectMap<RouteSegment> visitedSegments,
+			FloatPriorityQueue<RouteSegment> graphSegments, TLongObjectMap<RouteSegment> visitedSegments,
 			RouteSegment startSegment, TLongObjectMap<RouteSegment> oppositeSegments,
 			TLongObjectMap<RouteSegment> boundaries, boolean doNotAddIntersections) {
 		if (ASSERT_CHECKS && !checkMovementAllowed(ctx, reverseWaySearch, startSegment)) {
@@ -505,21 +903,21 @@ public class BinaryRoutePlanner {
 				break;
 			}
 			// calculate new start segment time as we're going to assign to put to visited segments
-			float distFromStartPlusSegmentTime = currentSegment.distanceFromStart + segmentAndObstaclesTime;
+			float distFromStart = currentSegment.distanceFromStart;
+			float distFromStartPlusSegmentTime = distFromStart + segmentAndObstaclesTime;
 			
 			// 2. check if segment was already visited in opposite direction
 			// We check before we calculate segmentTime (to not calculate it twice with opposite and calculate turns
 			// onto each segment).
 			boolean bothDirVisited = checkIfOppositeSegmentWasVisited(ctx, reverseWaySearch, graphSegments,
-					currentSegment, oppositeSegments, boundaries);
+					currentSegment, distFromStart, oppositeSegments, boundaries);
  			
 			// 3. upload segment itself to visited segments
 			long nextPntId = calculateRoutePointId(currentSegment);
-			RouteSegment existingSegment = visitedSegments.put(nextPntId, currentSegment);
+			RouteSegment existingSegment = visitedSegments.get(nextPntId);
 			if (existingSegment != null) {
 				if (distFromStartPlusSegmentTime > existingSegment.distanceFromStart) {
-					// insert back original segment (test case with large area way)
-					visitedSegments.put(nextPntId, existingSegment);
+					// keep original segment (test case with large area way)
 					if (TRACE_ROUTING) {
 						println("  " + currentSegment.segEnd + ">> Already visited");
 					}
@@ -536,8 +934,19 @@ public class BinaryRoutePlanner {
 				}
 			}
 						
+			if (ctx.reachedVisitor != null) {
+				ctx.reachedVisitor.visitReachedSegment(currentSegment, distFromStartPlusSegmentTime);
+			}
 			// reassign @distanceFromStart to make it correct for visited segment
+			// (before segment is put to visited as it could be read by concurrent search in opposite direction)
 			currentSegment.distanceFromStart = distFromStartPlusSegmentTime;
+			visitedSegments.put(nextPntId, currentSegment);
+			if (!bothDirVisited && visitedSegments instanceof PublishingSegmentsMap) {
+				// concurrent search in opposite direction could publish the meeting segment after the check above
+				// and check own visited segments before this segment was published, so check again after publishing
+				bothDirVisited = checkIfOppositeSegmentWasVisited(ctx, reverseWaySearch, graphSegments,
+						currentSegment, distFromStart, oppositeSegments, boundaries);
+			}
 			
 			if (bothDirVisited) {
  				// We stop here for shortcut creation (we can't improve the neighbors if they're already visited cause the opposite is min - prove by contradiction) 
@@ -554,7 +963,7 @@ public class BinaryRoutePlanner {
 			// a) final segment is always in queue & double checked b) using osm segment almost always is shorter routing than other connected
 			if (DEBUG_BREAK_EACH_SEGMENT && nextCurrentSegment != null) {
 				if (!doNotAddIntersections) {
-					graphSegments.add(new RouteSegmentCost(nextCurrentSegment, ctx));
+					addToQueue(graphSegments, nextCurrentSegment, ctx);
 				}
 				break;
 			}
@@ -613,7 +1022,7 @@ public class BinaryRoutePlanner {
 		return true;
 	}
 
-	private RouteSegment getParentDiffId(RouteSegment s) {
+	private static RouteSegment getParentDiffId(RouteSegment s) {
 		if (s == null) {
 			return null;
 		}
@@ -624,7 +1033,7 @@ public class BinaryRoutePlanner {
 	}
 
 	private boolean checkIfOppositeSegmentWasVisited(RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegmentCost> graphSegments, RouteSegment currentSegment,
+			FloatPriorityQueue<RouteSegment> graphSegments, RouteSegment currentSegment, float distFromStart,
 			TLongObjectMap<RouteSegment> oppositeSegments, TLongObjectMap<RouteSegment> boundaries) {
 		// check inverse direction for opposite
 		long currPoint = calculateRoutePointInternalId(currentSegment.getRoad(), 
@@ -636,7 +1045,8 @@ public class BinaryRoutePlanner {
 		if (oppositeSegments.containsKey(currPoint)) {
 			RouteSegment opposite = oppositeSegments.get(currPoint);
 			RouteSegment curParent = getParentDiffId(currentSegment);
-			RouteSegment oppParent = getParentDiffId(opposite);
+			RouteSegment oppParent = opposite instanceof VisitedSegmentSnapshot
+					? ((VisitedSegmentSnapshot) opposite).parentDiffId : getParentDiffId(opposite);
 			RouteSegment to = reverseWaySearch ? curParent : oppParent;
 			RouteSegment from = !reverseWaySearch ? curParent : oppParent;
 			if (checkViaRestrictions(from, to)) {
@@ -645,14 +1055,14 @@ public class BinaryRoutePlanner {
 				frs.setParentRoute(currentSegment.getParentRoute());
 				frs.reverseWaySearch = reverseWaySearch;
 				float oppTime = opposite == null ? 0 : opposite.distanceFromStart;
-				frs.distanceFromStart = oppTime + currentSegment.distanceFromStart;
+				frs.distanceFromStart = oppTime + distFromStart;
 				frs.distanceToEnd = 0;
 				frs.opposite = opposite;
 				if (frs.distanceFromStart < 0) {
 					// impossible route (when start/point on same segment but different dir) don't add to queue
 					return true;
 				}
-				graphSegments.add(new RouteSegmentCost(frs, ctx));
+				addToQueue(graphSegments, frs, ctx);
 				if (TRACE_ROUTING) {
 					printRoad("  " + currentSegment.segEnd + ">> Final segment : ", frs, reverseWaySearch);
 				}
@@ -797,7 +1207,7 @@ public class BinaryRoutePlanner {
 		}
 	}
 
-	private RouteSegment processIntersections(RoutingContext ctx, PriorityQueue<RouteSegmentCost> graphSegments,
+	private RouteSegment processIntersections(RoutingContext ctx, FloatPriorityQueue<RouteSegment> graphSegments,
 			TLongObjectMap<RouteSegment> visitedSegments,  RouteSegment currentSegment,
 			boolean reverseWaySearch, boolean doNotAddIntersections) {
 		RouteSegment nextCurrentSegment = null;
@@ -904,7 +1314,7 @@ public class BinaryRoutePlanner {
 		return nextCurrentSegment;
 	}
 
-	private boolean processOneRoadIntersection(RoutingContext ctx, boolean reverseWaySearch, PriorityQueue<RouteSegmentCost> graphSegments,
+	private boolean processOneRoadIntersection(RoutingContext ctx, boolean reverseWaySearch, FloatPriorityQueue<RouteSegment> graphSegments,
 			TLongObjectMap<RouteSegment> visitedSegments, RouteSegment segment, RouteSegment next) {
 		if (next != null) {
 			if (!checkMovementAllowed(ctx, reverseWaySearch, next)) {
@@ -969,7 +1379,7 @@ public class BinaryRoutePlanner {
 				// put additional information to recover whole route after
 				next.setParentRoute(segment);
 				if (graphSegments != null) {
-					graphSegments.add(new RouteSegmentCost(next, ctx));
+					addToQueue(graphSegments, next, ctx);
 				}
 				return true;
 			}
@@ -985,6 +1395,109 @@ public class BinaryRoutePlanner {
 		public void visitApproximatedSegments(List<RouteSegmentResult> segment, GpxPoint start, GpxPoint target);
 	}
 	
+	public interface ReachedSegmentVisitor {
+		
+		// segment.distanceFromStart is time to reach segment start point
+		public void visitReachedSegment(RouteSegment segment, float timeToEnd);
+	}
+	
+	/**
+	 * Reverse (target rooted) search tree kept between recalculations of route to the same target.
+	 * Set empty tree to {@link RoutingContext#reverseSearchTree} to enable it: tree is stored after search and next
+	 * search to the same target point with the same router (could be done with new context of the same profile and
+	 * parameters) resumes reverse search, so only forward search from new start point is done from scratch till it
+	 * meets the tree. Tree is kept only if its estimated size is within half of routing memory limit.
+	 */
+	public static class ReverseSearchTree {
+		VehicleRouter router;
+		String routerName;
+		Map<String, String> parameterValues;
+		long[] impassableRoads;
+		long targetRoadId;
+		int targetSegmentStart;
+		int targetX;
+		int targetY;
+		TLongObjectHashMap<RouteSegment> visited;
+		FloatPriorityQueue<RouteSegment> queue;
+		int resumedSearches;
+		int skippedStores;
+
+		boolean matches(RoutingContext ctx, RouteSegmentPoint end) {
+			// time dependent costs of tree depend on start point
+			return visited != null && ctx.config.speedProfiles == null && matchesRouter(ctx)
+					&& targetRoadId == end.getRoad().getId() && targetSegmentStart == end.getSegmentStart()
+					&& targetX == end.preciseX && targetY == end.preciseY;
+		}
+
+		private boolean matchesRouter(RoutingContext ctx) {
+			VehicleRouter r = ctx.getRouter();
+			if (r == router) {
+				return true;
+			}
+			// router of new context built for the same profile and parameters has the same costs
+			return r instanceof GeneralRouter && Algorithms.objectEquals(routerName, ctx.config.routerName)
+					&& parameterValues != null && parameterValues.equals(((GeneralRouter) r).getParameterValues())
+					&& Arrays.equals(impassableRoads, sortedImpassableRoads(r));
+		}
+
+		private static long[] sortedImpassableRoads(VehicleRouter r) {
+			long[] ids = ((GeneralRouter) r).getImpassableRoadIds();
+			Arrays.sort(ids);
+			return ids;
+		}
+
+		void store(RoutingContext ctx, RouteSegmentPoint end, TLongObjectHashMap<RouteSegment> visited,
+				FloatPriorityQueue<RouteSegment> queue) {
+			long size = (long) visited.size() * STANDARD_ROAD_VISITED_OVERHEAD
+					+ (long) queue.size() * STANDARD_ROAD_IN_QUEUE_OVERHEAD;
+			if (size > ctx.config.memoryLimitation / 2) {
+				// tree is kept outside of routing memory limit of next search
+				clear();
+				skippedStores++;
+				return;
+			}
+			this.router = ctx.getRouter();
+			this.routerName = ctx.config.routerName;
+			this.parameterValues = null;
+			this.impassableRoads = null;
+			if (router instanceof GeneralRouter) {
+				this.parameterValues = new LinkedHashMap<String, String>(((GeneralRouter) router).getParameterValues());
+				this.impassableRoads = sortedImpassableRoads(router);
+			}
+			this.targetRoadId = end.getRoad().getId();
+			this.targetSegmentStart = end.getSegmentStart();
+			this.targetX = end.preciseX;
+			this.targetY = end.preciseY;
+			this.visited = visited;
+			this.queue = queue;
+		}
+
+		public boolean isEmpty() {
+			return visited == null;
+		}
+
+		public int getVisitedSegments() {
+			return visited == null ? 0 : visited.size();
+		}
+
+		public int getResumedSearches() {
+			return resumedSearches;
+		}
+
+		// searches which tree wasn't stored after as it exceeded memory limit
+		public int getSkippedStores() {
+			return skippedStores;
+		}
+
+		public void clear() {
+			router = null;
+			parameterValues = null;
+			impassableRoads = null;
+			visited = null;
+			queue = null;
+		}
+	}
+
 	public static class RouteSegmentPoint extends RouteSegment {
 		
 		public RouteSegmentPoint(RouteDataObject road, int segmentStart, double distToProj) {
@@ -0,0 +1,165 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+import java.util.List;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+/**
+ * Points of roads loaded in one routing tile stored as struct of arrays (road index, point index, next point
+ * with the same coordinates) addressed by int index. Key is the point coordinates (x31 << 31) + y31.
+ * {@link RouteSegment} objects are created only when point is requested by route planner, so most of the points
+ * never allocate segment object. Created segments are kept, so the same point returns the same segments
+ * (planner stores A* state in them) linked through {@link RouteSegment#nextLoaded} in order roads were added.
+ * Segments keep point indexes (start and end) as short, so points of road from {@link Short#MAX_VALUE} on are not
+ * indexed.
+ */
+class CompactRouteSegmentMap {
+
+	private static final int NO_ENTRY = -1;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	// open addressing hash: point key -> first / last entry
+	private long[] hashKeys;
+	private int[] hashFirst;
+	private int[] hashLast;
+	private int hashMask;
+	private int points;
+
+	private RouteDataObject[] roads = new RouteDataObject[16];
+	private int roadsSize;
+
+	// entries: one for each point of each road
+	private int[] entryRoad = new int[64];
+	private short[] entryPoint = new short[64];
+	private int[] entryNext = new int[64];
+	private RouteSegment[] entrySegment = new RouteSegment[64];
+	private int entries;
+
+	CompactRouteSegmentMap() {
+		initHash(64);
+	}
+
+	private void initHash(int capacity) {
+		hashKeys = new long[capacity];
+		hashFirst = new int[capacity];
+		hashLast = new int[capacity];
+		Arrays.fill(hashFirst, NO_ENTRY);
+		hashMask = capacity - 1;
+	}
+
+	public void add(RouteDataObject ro) {
+		if (roadsSize == roads.length) {
+			roads = Arrays.copyOf(roads, roadsSize * 2);
+		}
+		int roadInd = roadsSize++;
+		roads[roadInd] = ro;
+		int len = Math.min(ro.getPointsLength(), Short.MAX_VALUE);
+		ensureEntriesCapacity(entries + len);
+		for (int i = 0; i < len; i++) {
+			long key = (((long) ro.getPoint31XTile(i)) << 31) + (long) ro.getPoint31YTile(i);
+			int e = entries++;
+			entryRoad[e] = roadInd;
+			entryPoint[e] = (short) i;
+			entryNext[e] = NO_ENTRY;
+			int slot = findSlot(key);
+			if (hashFirst[slot] == NO_ENTRY) {
+				hashKeys[slot] = key;
+				hashFirst[slot] = e;
+				hashLast[slot] = e;
+				if (++points > LOAD_FACTOR * hashKeys.length) {
+					rehash();
+				}
+			} else {
+				entryNext[hashLast[slot]] = e;
+				hashLast[slot] = e;
+			}
+		}
+	}
+
+	/**
+	 * @return first segment of linked (nextLoaded) list of road segments connected to the point or null
+	 */
+	public RouteSegment get(long key) {
+		int slot = findSlot(key);
+		int e = hashFirst[slot];
+		if (e == NO_ENTRY) {
+			return null;
+		}
+		if (entrySegment[e] == null) {
+			RouteSegment prev = null;
+			for (int i = e; i != NO_ENTRY; i = entryNext[i]) {
+				RouteSegment s = new RouteSegment(roads[entryRoad[i]], entryPoint[i]);
+				entrySegment[i] = s;
+				if (prev != null) {
+					prev.nextLoaded = s;
+				}
+				prev = s;
+			}
+		}
+		return entrySegment[e];
+	}
+
+	// drops created segments with their search state, they are created again when requested
+	public void clearSegments() {
+		Arrays.fill(entrySegment, 0, entries, null);
+	}
+
+	public int getRoadsSize() {
+		return roadsSize;
+	}
+
+	public int getPointsSize() {
+		return points;
+	}
+
+	public void collectRoads(List<RouteDataObject> toFillIn, TLongObjectHashMap<RouteDataObject> excludeDuplications) {
+		for (int i = 0; i < roadsSize; i++) {
+			RouteDataObject ro = roads[i];
+			if (!excludeDuplications.contains(ro.id)) {
+				excludeDuplications.put(ro.id, ro);
+				toFillIn.add(ro);
+			}
+		}
+	}
+
+	private int findSlot(long key) {
+		int slot = hash(key) & hashMask;
+		while (hashFirst[slot] != NO_ENTRY && hashKeys[slot] != key) {
+			slot = (slot + 1) & hashMask;
+		}
+		return slot;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private void rehash() {
+		long[] oldKeys = hashKeys;
+		int[] oldFirst = hashFirst;
+		int[] oldLast = hashLast;
+		initHash(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldFirst[i] != NO_ENTRY) {
+				int slot = findSlot(oldKeys[i]);
+				hashKeys[slot] = oldKeys[i];
+				hashFirst[slot] = oldFirst[i];
+				hashLast[slot] = oldLast[i];
+			}
+		}
+	}
+
+	private void ensureEntriesCapacity(int capacity) {
+		if (capacity > entryRoad.length) {
+			int nc = Math.max(capacity, entryRoad.length + (entryRoad.length >> 1));
+			entryRoad = Arrays.copyOf(entryRoad, nc);
+			entryPoint = Arrays.copyOf(entryPoint, nc);
+			entryNext = Arrays.copyOf(entryNext, nc);
+			entrySegment = Arrays.copyOf(entrySegment, nc);
+		}
+	}
+}
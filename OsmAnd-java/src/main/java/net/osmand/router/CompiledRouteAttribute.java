@@ -0,0 +1,192 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
+import net.osmand.binary.RouteDataObject;
+
+/**
+ * Evaluated values of one road attribute (speed, priority, access, oneway...) compiled into lookup tables
+ * per {@link RouteRegion}. Rules of attribute check only limited set of tags, so value depends only on road types
+ * with these tags (relevant types). Relevance of each region type is stored in dense table indexed by type id and
+ * values are looked up by relevant types: dense table by type id for single relevant type, long key for two types
+ * and array key for more types. Lookup of roads with up to 2 relevant types doesn't allocate objects.
+ * Tables are filled while routing without synchronization: like the rest of {@link GeneralRouter} state they're used
+ * by single thread, concurrent searches use own router ({@link GeneralRouter#copyForConcurrentUse()}).
+ */
+class CompiledRouteAttribute {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte IRRELEVANT = 1;
+	private static final byte RELEVANT = 2;
+
+	private final Set<String> usedTags;
+	private final Map<RouteRegion, RegionTable> regions = new IdentityHashMap<RouteRegion, RegionTable>();
+	private RouteRegion lastRegion;
+	private RegionTable lastTable;
+
+	CompiledRouteAttribute(Set<String> usedTags) {
+		this.usedTags = usedTags;
+	}
+
+	/**
+	 * @return value or NaN if value is not evaluated yet
+	 */
+	float get(RouteDataObject road, boolean extra) {
+		RegionTable t = getTable(road.region);
+		int[] types = road.types;
+		int cnt = 0;
+		int t1 = -1;
+		int t2 = -1;
+		for (int i = 0; i < types.length; i++) {
+			if (t.isRelevant(types[i])) {
+				if (cnt == 0) {
+					t1 = types[i];
+				} else if (cnt == 1) {
+					t2 = types[i];
+				}
+				cnt++;
+			}
+		}
+		ValueTable vt = t.values[extra ? 1 : 0];
+		Float v;
+		if (cnt == 0) {
+			return vt.noTypesValue;
+		} else if (cnt == 1) {
+			return t1 < vt.singleTypeValues.length ? vt.singleTypeValues[t1] : Float.NaN;
+		} else if (cnt == 2) {
+			v = vt.pairValues.get(pairKey(t1, t2));
+		} else {
+			v = vt.multiValues.get(new TypesKey(t.relevantTypes(types, cnt)));
+		}
+		return v == null ? Float.NaN : v.floatValue();
+	}
+
+	void put(RouteDataObject road, boolean extra, float value) {
+		RegionTable t = getTable(road.region);
+		int[] relevant = t.relevantTypes(road.types, -1);
+		ValueTable vt = t.values[extra ? 1 : 0];
+		if (relevant.length == 0) {
+			vt.noTypesValue = value;
+		} else if (relevant.length == 1) {
+			int tp = relevant[0];
+			if (tp >= vt.singleTypeValues.length) {
+				int oldLen = vt.singleTypeValues.length;
+				int len = Math.max(tp + 1, oldLen * 2);
+				vt.singleTypeValues = Arrays.copyOf(vt.singleTypeValues, len);
+				Arrays.fill(vt.singleTypeValues, oldLen, len, Float.NaN);
+			}
+			vt.singleTypeValues[tp] = value;
+		} else if (relevant.length == 2) {
+			vt.pairValues.put(pairKey(relevant[0], relevant[1]), value);
+		} else {
+			vt.multiValues.put(new TypesKey(relevant), value);
+		}
+	}
+
+	void clear() {
+		regions.clear();
+		lastRegion = null;
+		lastTable = null;
+	}
+
+	private static long pairKey(int t1, int t2) {
+		return (((long) t1) << 32) | (t2 & 0xffffffffL);
+	}
+
+	private RegionTable getTable(RouteRegion reg) {
+		if (reg == lastRegion) {
+			return lastTable;
+		}
+		RegionTable t = regions.get(reg);
+		if (t == null) {
+			t = new RegionTable(reg);
+			regions.put(reg, t);
+		}
+		lastRegion = reg;
+		lastTable = t;
+		return t;
+	}
+
+	private class RegionTable {
+		final RouteRegion region;
+		byte[] typeRelevance = new byte[0];
+		// values without and with extra flag
+		final ValueTable[] values = new ValueTable[] { new ValueTable(), new ValueTable() };
+
+		RegionTable(RouteRegion region) {
+			this.region = region;
+		}
+
+		boolean isRelevant(int type) {
+			if (type >= typeRelevance.length) {
+				typeRelevance = Arrays.copyOf(typeRelevance, Math.max(type + 1, typeRelevance.length * 2));
+			}
+			byte r = typeRelevance[type];
+			if (r == UNKNOWN) {
+				RouteTypeRule rule = region.quickGetEncodingRule(type);
+				r = rule != null && usedTags.contains(rule.getTag()) ? RELEVANT : IRRELEVANT;
+				typeRelevance[type] = r;
+			}
+			return r == RELEVANT;
+		}
+
+		int[] relevantTypes(int[] types, int cnt) {
+			if (cnt < 0) {
+				cnt = 0;
+				for (int i = 0; i < types.length; i++) {
+					if (isRelevant(types[i])) {
+						cnt++;
+					}
+				}
+			}
+			int[] res = new int[cnt];
+			int k = 0;
+			for (int i = 0; i < types.length; i++) {
+				if (isRelevant(types[i])) {
+					res[k++] = types[i];
+				}
+			}
+			return res;
+		}
+	}
+
+	private static class ValueTable {
+		float noTypesValue = Float.NaN;
+		float[] singleTypeValues = new float[0];
+		final TLongObjectHashMap<Float> pairValues = new TLongObjectHashMap<Float>();
+		final Map<TypesKey, Float> multiValues = new HashMap<TypesKey, Float>();
+	}
+
+	private static class TypesKey {
+		private final int[] types;
+		private final int hash;
+
+		TypesKey(int[] types) {
+			this.types = types;
+			this.hash = Arrays.hashCode(types);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TypesKey)) {
+				return false;
+			}
+			return Arrays.equals(types, ((TypesKey) obj).types);
+		}
+	}
+}
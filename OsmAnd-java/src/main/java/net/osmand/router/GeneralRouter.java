@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -91,6 +92,9 @@ public class GeneralRouter implements VehicleRouter {
 	private GeneralRouterProfile profile;
 	
 	Map<RouteRegion, Map<IntHolder, Float>>[] evalCache;
+	// road attributes (not point obstacles) compiled into lookup tables, created lazily after rules are registered
+	// (router instance is used by single thread, see copyForConcurrentUse)
+	private CompiledRouteAttribute[] compiledAttributes;
 		
 	
 	public enum RouteDataObjectAttribute {
@@ -209,6 +213,48 @@ public class GeneralRouter implements VehicleRouter {
 
 	}
 
+	private GeneralRouter(GeneralRouter copy) {
+		this.profile = copy.profile;
+		this.attributes = new LinkedHashMap<String, String>(copy.attributes);
+		this.parameterValues = copy.parameterValues;
+		this.parameters = copy.parameters;
+		this.universalRules = new LinkedHashMap<String, Integer>(copy.universalRules);
+		this.universalRulesById = new ArrayList<String>(copy.universalRulesById);
+		this.tagRuleMask = new LinkedHashMap<String, BitSet>();
+		for (Entry<String, BitSet> e : copy.tagRuleMask.entrySet()) {
+			tagRuleMask.put(e.getKey(), (BitSet) e.getValue().clone());
+		}
+		this.ruleToValue = new ArrayList<Object>(copy.ruleToValue);
+		this.objectAttributes = new RouteAttributeContext[copy.objectAttributes.length];
+		for (int i = 0; i < objectAttributes.length; i++) {
+			objectAttributes[i] = new RouteAttributeContext(copy.objectAttributes[i]);
+		}
+		this.shortestRoute = copy.shortestRoute;
+		this.heightObstacles = copy.heightObstacles;
+		this.allowPrivate = copy.allowPrivate;
+		this.filename = copy.filename;
+		this.profileName = copy.profileName;
+		this.restrictionsAware = copy.restrictionsAware;
+		this.sharpTurn = copy.sharpTurn;
+		this.roundaboutTurn = copy.roundaboutTurn;
+		this.slightTurn = copy.slightTurn;
+		this.minSpeed = copy.minSpeed;
+		this.defaultSpeed = copy.defaultSpeed;
+		this.maxSpeed = copy.maxSpeed;
+		this.maxVehicleSpeed = copy.maxVehicleSpeed;
+		this.impassableRoads = copy.impassableRoads == null ? null : new TLongHashSet(copy.impassableRoads);
+		initCaches();
+	}
+
+	/**
+	 * Creates router with the same rules, attributes and parameters which doesn't share mutable state
+	 * (registered tag values, evaluation state of rules, caches) with this router, so routers could be used
+	 * by different threads at the same time. This router shouldn't be used by other threads while it's copied.
+	 */
+	public GeneralRouter copyForConcurrentUse() {
+		return new GeneralRouter(this);
+	}
+
 	@SuppressWarnings("unchecked")
 	private void initCaches() {
 		int l = RouteDataObjectAttribute.values().length;
@@ -316,10 +362,10 @@ public class GeneralRouter implements VehicleRouter {
 
 	@Override
 	public boolean acceptLine(RouteDataObject way) {
-		Float res = getCache(RouteDataObjectAttribute.ACCESS, way);
-		if (res == null) {
-			res = (float) getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(way, 0);
-			putCache(RouteDataObjectAttribute.ACCESS, way, res);
+		float res = getCompiledCache(RouteDataObjectAttribute.ACCESS, way, false);
+		if (Float.isNaN(res)) {
+			res = getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(way, 0);
+			putCompiledCache(RouteDataObjectAttribute.ACCESS, way, false, res);
 		}
 		if (impassableRoads != null && impassableRoads.contains(way.id >> IMPASSABLE_ROAD_SHIFT)) {
 			return false;
@@ -504,12 +550,12 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public int isOneWay(RouteDataObject road) {
-		Float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
-		if(res == null) {
-			res = (float) getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
-			putCache(RouteDataObjectAttribute.ONEWAY, road, res);
+		float res = getCompiledCache(RouteDataObjectAttribute.ONEWAY, road, false);
+		if (Float.isNaN(res)) {
+			res = getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
+			putCompiledCache(RouteDataObjectAttribute.ONEWAY, road, false, res);
 		}
-		return res.intValue();
+		return (int) res;
 	}
 	
 	@Override
@@ -519,22 +565,22 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float getPenaltyTransition(RouteDataObject road) {
-		Float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
-		if (vl == null) {
-			vl = (float) getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
-			putCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, vl);
+		float vl = getCompiledCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, false);
+		if (Float.isNaN(vl)) {
+			vl = getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
+			putCompiledCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, false, vl);
 		}
 		return vl;
 	}
 
 	@Override
 	public float defineRoutingSpeed(RouteDataObject road, boolean dir) {
-		Float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
-		if (definedSpd == null) {
+		float definedSpd = getCompiledCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
+		if (Float.isNaN(definedSpd)) {
 			// not implemented direction usage
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
  			definedSpd = Math.max(Math.min(spd, maxSpeed), minSpeed);
-			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, definedSpd, dir);
+			putCompiledCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir, definedSpd);
 		}
 		return definedSpd;
 	}
@@ -547,45 +593,62 @@ public class GeneralRouter implements VehicleRouter {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			return Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
 		}
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
-		if (sp == null) {
+		float sp = getCompiledCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
+		if (Float.isNaN(sp)) {
 			// not implemented direction usage
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			sp = Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
-			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, sp, dir);
+			putCompiledCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir, sp);
 		}
 		return sp;
 	}
 	
 	@Override
 	public float defineSpeedPriority(RouteDataObject road, boolean dir) {
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, dir);
-		if(sp == null) {
+		float sp = getCompiledCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, dir);
+		if (Float.isNaN(sp)) {
 			// not implemented direction usage
 			sp = getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).evaluateFloat(road, 1f);
-			putCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, sp, dir);
+			putCompiledCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, dir, sp);
 		}
 		return sp;
 	}
 	
 	@Override
 	public float defineDestinationPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
-		if(sp == null) {
+		float sp = getCompiledCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, false);
+		if (Float.isNaN(sp)) {
 			sp = getObjContext(RouteDataObjectAttribute.DESTINATION_PRIORITIES).evaluateFloat(road, 1f);
-			putCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, sp, false);
+			putCompiledCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, false, sp);
 		}
 		return sp;
 	}
 
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val) {
-		putCache(attr, road.region, road.types, val, false);
+	private float getCompiledCache(RouteDataObjectAttribute attr, RouteDataObject road, boolean extra) {
+		if (!USE_CACHE) {
+			return Float.NaN;
+		}
+		return getCompiledAttribute(attr).get(road, extra);
 	}
-	
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val, boolean extra) {
-		putCache(attr, road.region, road.types, val, extra);
+
+	private void putCompiledCache(RouteDataObjectAttribute attr, RouteDataObject road, boolean extra, float val) {
+		if (USE_CACHE) {
+			getCompiledAttribute(attr).put(road, extra, val);
+		}
 	}
-	
+
+	private CompiledRouteAttribute getCompiledAttribute(RouteDataObjectAttribute attr) {
+		CompiledRouteAttribute[] compiled = compiledAttributes;
+		if (compiled == null) {
+			compiled = new CompiledRouteAttribute[objectAttributes.length];
+			for (int i = 0; i < compiled.length; i++) {
+				compiled[i] = new CompiledRouteAttribute(objectAttributes[i].getUsedTags());
+			}
+			compiledAttributes = compiled;
+		}
+		return compiled[attr.ordinal()];
+	}
+
 	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, Float val, boolean extra) {
 //		TIMER -= System.nanoTime();
 		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
@@ -630,14 +693,6 @@ public class GeneralRouter implements VehicleRouter {
 		}
 	}
 
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
-		return getCache(attr, road.region, road.types, false);
-	}
-	
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road, boolean extra) {
-		return getCache(attr, road.region, road.types, extra);
-	}
-	
 	private Float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
 		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
 //		TIMER -= System.nanoTime();
@@ -816,6 +871,18 @@ public class GeneralRouter implements VehicleRouter {
 		
 		public RouteAttributeContext(){
 		}
+		// copy with own rules for router which doesn't share state with router of original
+		RouteAttributeContext(RouteAttributeContext original) {
+			if (original.paramContext != null) {
+				paramContext = new ParameterContext();
+				paramContext.vars = original.paramContext.vars;
+				paramContext.incline = original.paramContext.incline;
+			}
+			for (RouteAttributeEvalRule rt : original.rules) {
+				rules.add(new RouteAttributeEvalRule(rt));
+			}
+		}
+
 		public RouteAttributeContext(RouteAttributeContext original, Map<String, String> params){
 			if (params != null) {
 				paramContext = new ParameterContext();
@@ -857,6 +924,7 @@ public class GeneralRouter implements VehicleRouter {
 		}
 
 		public RouteAttributeEvalRule registerNewRule(String selectValue, String selectType) {
+			compiledAttributes = null;
 			RouteAttributeEvalRule ev = new RouteAttributeEvalRule();
 			ev.registerSelectValue(selectValue, selectType);
 			rules.add(ev);	
@@ -878,6 +946,24 @@ public class GeneralRouter implements VehicleRouter {
 			return null;
 		}
 
+		// evaluated value depends only on road types with these tags
+		Set<String> getUsedTags() {
+			Set<String> tags = new HashSet<String>();
+			for (RouteAttributeEvalRule r : rules) {
+				tags.addAll(r.tagValueCondDefTag);
+				for (RouteAttributeExpression e : r.conditionExpressions) {
+					e.addUsedTags(tags);
+				}
+				if (r.selectExpression != null) {
+					r.selectExpression.addUsedTags(tags);
+				}
+				if (r.selectValueDef != null && r.selectValueDef.startsWith("$")) {
+					tags.add(r.selectValueDef.substring(1));
+				}
+			}
+			return tags;
+		}
+
 		private boolean checkParameter(RouteAttributeEvalRule r) {
 			if (paramContext != null && r.parameters.size() > 0) {
 				for (String p : r.parameters) {
@@ -989,6 +1075,14 @@ public class GeneralRouter implements VehicleRouter {
 				}
 			}
 		}
+
+		RouteAttributeExpression(RouteAttributeExpression copy) {
+			this.values = copy.values;
+			this.expressionType = copy.expressionType;
+			this.valueType = copy.valueType;
+			this.cacheValues = copy.cacheValues;
+		}
+
 		// definition
 		private String[] values;
 		private int expressionType;
@@ -996,6 +1090,14 @@ public class GeneralRouter implements VehicleRouter {
 		// numbers		
 		private Number[] cacheValues;
 		
+		void addUsedTags(Set<String> tags) {
+			for (String v : values) {
+				if (v != null && v.startsWith("$")) {
+					tags.add(v.substring(1));
+				}
+			}
+		}
+
 		public boolean matches(BitSet types, ParameterContext paramContext) {
 			double f1 = calculateExprValue(0, types, paramContext);
 			double f2 = calculateExprValue(1, types, paramContext);
@@ -1077,6 +1179,29 @@ public class GeneralRouter implements VehicleRouter {
 		protected Set<String> onlyTags = new LinkedHashSet<String>();
 		protected Set<String> onlyNotTags = new LinkedHashSet<String>();
 		protected List<RouteAttributeExpression> conditionExpressions = new ArrayList<RouteAttributeExpression>();
+
+		public RouteAttributeEvalRule() {
+		}
+
+		RouteAttributeEvalRule(RouteAttributeEvalRule copy) {
+			parameters.addAll(copy.parameters);
+			tagValueCondDefTag.addAll(copy.tagValueCondDefTag);
+			tagValueCondDefValue.addAll(copy.tagValueCondDefValue);
+			tagValueCondDefNot.addAll(copy.tagValueCondDefNot);
+			selectValueDef = copy.selectValueDef;
+			selectValue = copy.selectValue;
+			selectType = copy.selectType;
+			if (copy.selectExpression != null) {
+				selectExpression = new RouteAttributeExpression(copy.selectExpression);
+			}
+			filterTypes = (BitSet) copy.filterTypes.clone();
+			filterNotTypes = (BitSet) copy.filterNotTypes.clone();
+			onlyTags.addAll(copy.onlyTags);
+			onlyNotTags.addAll(copy.onlyNotTags);
+			for (RouteAttributeExpression e : copy.conditionExpressions) {
+				conditionExpressions.add(new RouteAttributeExpression(e));
+			}
+		}
 		
 		
 		public RouteAttributeExpression[] getExpressions() {
@@ -1309,6 +1434,7 @@ public class GeneralRouter implements VehicleRouter {
 				evalCache[i].clear();
 			}
 		}
+		compiledAttributes = null;
 	}
 
 	public void printRules(PrintStream out) {
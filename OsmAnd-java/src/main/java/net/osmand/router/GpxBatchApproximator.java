@@ -0,0 +1,304 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.LocationsHolder;
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReaderPool;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+/**
+ * Batch (service) mode of GPX approximation: map-matches stream of tracks by several worker threads.
+ * Each worker has own router (see {@link GeneralRouter#copyForConcurrentUse()}), leases own readers
+ * (with own routing regions and subregions) from {@link BinaryMapIndexReaderPool} and keeps one {@link RoutingContext}
+ * for all its tracks, so routing tiles loaded for one track are reused by next tracks of the same area
+ * (workers prefer pending tracks from the area of their previous track). Tiles could be additionally shared between
+ * workers with {@link RouteTileCache}. Memory is bounded by number of pending tracks which are read
+ * from source ahead and by routing memory limit of each worker context.
+ */
+public class GpxBatchApproximator {
+
+	private static final Log log = PlatformUtil.getLog(GpxBatchApproximator.class);
+
+	// tracks which start in the same tile of this zoom (~40 km) are considered as the same area
+	public static final int AREA_ZOOM = 10;
+
+	public static class GpxTrack {
+		public final String id;
+		// LatLon, Location or WptPt (see LocationsHolder)
+		public final List<?> locations;
+		final long areaKey;
+
+		public GpxTrack(String id, List<?> locations) {
+			this.id = id;
+			this.locations = locations;
+			this.areaKey = calculateAreaKey(new LocationsHolder(locations));
+		}
+
+		private static long calculateAreaKey(LocationsHolder holder) {
+			if (holder.getSize() == 0) {
+				return -1;
+			}
+			LatLon l = holder.getLatLon(0);
+			long x = (long) MapUtils.getTileNumberX(AREA_ZOOM, l.getLongitude());
+			long y = (long) MapUtils.getTileNumberY(AREA_ZOOM, l.getLatitude());
+			return (x << AREA_ZOOM) | y;
+		}
+
+		@Override
+		public String toString() {
+			return "Track " + id + " (" + locations.size() + " points)";
+		}
+	}
+
+	public interface GpxTrackSource {
+
+		// next track to approximate or null if there are no more tracks
+		public GpxTrack nextTrack() throws IOException;
+	}
+
+	/**
+	 * Called by worker threads, so implementation should be thread safe.
+	 */
+	public interface GpxTrackListener {
+
+		public void trackApproximated(GpxTrack track, GpxRouteApproximation gctx);
+
+		public void trackFailed(GpxTrack track, Exception e);
+	}
+
+	private final BinaryMapIndexReaderPool pool;
+	private final RoutingConfiguration.Builder builder;
+	private final String profile;
+	private final Map<String, String> params;
+	private final RoutingMemoryLimits memoryLimits;
+	private RouteTileCache tileCache;
+	private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private int maxPendingTracks = 64;
+
+	private final LinkedList<GpxTrack> pending = new LinkedList<GpxTrack>();
+	private final List<RouteCalculationProgress> activeProgress = new ArrayList<RouteCalculationProgress>();
+	private boolean sourceFinished;
+	private Exception workerError;
+	private volatile boolean cancelled;
+	private int approximatedTracks;
+	private int failedTracks;
+
+	public GpxBatchApproximator(BinaryMapIndexReaderPool pool, RoutingConfiguration.Builder builder, String profile,
+			Map<String, String> params, RoutingMemoryLimits memoryLimits) {
+		this.pool = pool;
+		this.builder = builder;
+		this.profile = profile;
+		this.params = params == null ? new HashMap<String, String>() : params;
+		this.memoryLimits = memoryLimits;
+	}
+
+	public GpxBatchApproximator setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	public GpxBatchApproximator setMaxPendingTracks(int maxPendingTracks) {
+		this.maxPendingTracks = Math.max(1, maxPendingTracks);
+		return this;
+	}
+
+	public GpxBatchApproximator setTileCache(RouteTileCache tileCache) {
+		this.tileCache = tileCache;
+		return this;
+	}
+
+	public synchronized int getApproximatedTracks() {
+		return approximatedTracks;
+	}
+
+	public synchronized int getFailedTracks() {
+		return failedTracks;
+	}
+
+	/**
+	 * Cancels running batch: tracks in progress are finished as cancelled, pending tracks are not processed.
+	 */
+	public void cancel() {
+		cancelled = true;
+		synchronized (pending) {
+			for (RouteCalculationProgress p : activeProgress) {
+				p.isCancelled = true;
+			}
+			pending.clear();
+			pending.notifyAll();
+		}
+	}
+
+	/**
+	 * Reads all tracks from source and approximates them, returns when all tracks are processed.
+	 * Calling thread reads tracks, approximation is done by worker threads.
+	 */
+	public void run(GpxTrackSource source, final GpxTrackListener listener) throws IOException, InterruptedException {
+		cancelled = false;
+		sourceFinished = false;
+		workerError = null;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int k = 0; k < threads; k++) {
+			// builder is not thread safe, so configuration is built before start, built router shares registered
+			// tag values with builder router and keeps evaluation state, so each worker has own copy of it
+			final RoutingConfiguration config = builder.build(profile, memoryLimits,
+					new HashMap<String, String>(params));
+			config.router = config.router.copyForConcurrentUse();
+			config.tileCache = tileCache;
+			Thread th = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runWorker(config, listener);
+					} catch (Exception e) {
+						synchronized (pending) {
+							if (workerError == null) {
+								workerError = e;
+							}
+						}
+						cancel();
+					}
+				}
+			}, "GPX approximation " + k);
+			th.setDaemon(true);
+			th.start();
+			workers.add(th);
+		}
+		try {
+			GpxTrack track;
+			while (!cancelled && (track = source.nextTrack()) != null) {
+				synchronized (pending) {
+					while (pending.size() >= maxPendingTracks && !cancelled) {
+						pending.wait();
+					}
+					if (!cancelled) {
+						pending.add(track);
+						pending.notifyAll();
+					}
+				}
+			}
+		} catch (IOException e) {
+			cancel();
+			throw e;
+		} catch (InterruptedException e) {
+			cancel();
+			throw e;
+		} finally {
+			synchronized (pending) {
+				sourceFinished = true;
+				pending.notifyAll();
+			}
+			for (Thread th : workers) {
+				th.join();
+			}
+		}
+		if (workerError instanceof IOException) {
+			throw (IOException) workerError;
+		} else if (workerError instanceof RuntimeException) {
+			throw (RuntimeException) workerError;
+		} else if (workerError != null) {
+			throw new IllegalStateException(workerError);
+		}
+	}
+
+	private void runWorker(RoutingConfiguration config, GpxTrackListener listener)
+			throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = pool.lease();
+		try {
+			RoutePlannerFrontEnd router = new RoutePlannerFrontEnd();
+			RoutingContext ctx = router.buildRoutingContext(config, null, readers);
+			long areaKey = -1;
+			GpxTrack track;
+			while ((track = takeTrack(areaKey)) != null) {
+				if (track.areaKey != areaKey) {
+					// tiles of previous area are not needed anymore
+					ctx.unloadAllData();
+					areaKey = track.areaKey;
+				} else if (ctx.checkIfMemoryLimitCritical(config.memoryLimitation)) {
+					ctx.unloadUnusedTiles(config.memoryLimitation);
+				}
+				RouteCalculationProgress progress = new RouteCalculationProgress();
+				ctx.calculationProgress = progress;
+				synchronized (pending) {
+					activeProgress.add(progress);
+					progress.isCancelled = cancelled;
+				}
+				try {
+					GpxRouteApproximation gctx = new GpxRouteApproximation(ctx);
+					List<GpxPoint> points = router.generateGpxPoints(gctx, new LocationsHolder(track.locations));
+					gctx = router.searchGpxRoute(gctx, points, null);
+					if (progress.isCancelled) {
+						break;
+					}
+					synchronized (this) {
+						approximatedTracks++;
+					}
+					listener.trackApproximated(track, gctx);
+				} catch (IOException e) {
+					// broken track shouldn't stop the batch
+					log.error("Error approximating " + track, e);
+					synchronized (this) {
+						failedTracks++;
+					}
+					listener.trackFailed(track, e);
+				} catch (RuntimeException e) {
+					log.error("Error approximating " + track, e);
+					synchronized (this) {
+						failedTracks++;
+					}
+					listener.trackFailed(track, e);
+				} finally {
+					synchronized (pending) {
+						activeProgress.remove(progress);
+					}
+				}
+			}
+			ctx.unloadAllData();
+		} finally {
+			pool.release(readers);
+		}
+	}
+
+	/**
+	 * @return pending track from the same area (or the oldest one), null when there are no more tracks
+	 */
+	private GpxTrack takeTrack(long areaKey) throws InterruptedException {
+		synchronized (pending) {
+			while (pending.isEmpty() && !sourceFinished && !cancelled) {
+				pending.wait();
+			}
+			if (pending.isEmpty() || cancelled) {
+				return null;
+			}
+			GpxTrack res = null;
+			Iterator<GpxTrack> it = pending.iterator();
+			while (it.hasNext()) {
+				GpxTrack t = it.next();
+				if (t.areaKey == areaKey) {
+					res = t;
+					it.remove();
+					break;
+				}
+			}
+			if (res == null) {
+				res = pending.removeFirst();
+			}
+			pending.notifyAll();
+			return res;
+		}
+	}
+}
@@ -4,7 +4,9 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -15,12 +17,15 @@ import java.util.TreeMap;
 import com.google.protobuf.CodedInputStream;
 
 import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.hash.TLongHashSet;
 import net.osmand.binary.BinaryHHRouteReaderAdapter.HHRouteRegion;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
 import net.osmand.data.DataTileManager;
 import net.osmand.data.LatLon;
 import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
@@ -30,6 +35,12 @@ import net.osmand.util.MapUtils;
 
 public class HHRouteDataStructure {
 	
+	public interface HHAlternativeRouteListener {
+
+		// called from calculation thread, alternative has segments geometry but detailed route isn't prepared
+		public void alternativeRouteFound(HHNetworkRouteRes alt);
+	}
+
 	public static class HHRoutingConfig {
 		public final static int CALCULATE_ALL_DETAILED = 3;
 		public int STATS_VERBOSE_LEVEL = 1; // 0 less verbose
@@ -59,6 +70,11 @@ public class HHRouteDataStructure {
 		double ALT_EXCLUDE_RAD_MULT = 0.3; // radius multiplier to exclude points
 		double ALT_EXCLUDE_RAD_MULT_IN = 3; // skip some points to speed up calculation
 		double ALT_NON_UNIQUENESS = 0.7; // 0.7 - 30% of points must be unique
+		double ALT_PENALTY = 0.3; // segments of main route cost 30% more for alternatives
+		double ALT_MAX_STRETCH = 0.4; // alternative could be 40% longer than main route
+		double ALT_LOCAL_OPTIMALITY = 0.2; // part of route around detour middle which should be the fastest
+		int ALT_THREADS = 1; // threads to search alternatives
+		HHAlternativeRouteListener altRouteListener;
 
 		
 		double MAX_COST;
@@ -72,6 +88,8 @@ public class HHRouteDataStructure {
 		int MIDPOINT_ERROR = 3;
 		int MIDPOINT_MAX_DEPTH = 20 + MIDPOINT_ERROR;
 		
+		int MATRIX_THREADS = 1; // threads to search matrix sources / targets
+		
 		public static HHRoutingConfig dijkstra(int direction) {
 			HHRoutingConfig df = new HHRoutingConfig();
 			df.HEURISTIC_COEFFICIENT = 0;
@@ -118,6 +136,16 @@ public class HHRouteDataStructure {
 			this.CALC_ALTERNATIVES = true;
 			return this;
 		}
+
+		/**
+		 * @param listener receives the first found alternative before others are calculated
+		 */
+		public HHRoutingConfig calcAlternative(int threads, HHAlternativeRouteListener listener) {
+			this.CALC_ALTERNATIVES = true;
+			this.ALT_THREADS = threads;
+			this.altRouteListener = listener;
+			return this;
+		}
 		
 		public HHRoutingConfig calcDetailed(int segments) {
 			this.ROUTE_LAST_MILE = true;
@@ -151,6 +179,11 @@ public class HHRouteDataStructure {
 			MAX_SETTLE_POINTS = maxPoints;
 			return this;
 		}
+		
+		public HHRoutingConfig matrixThreads(int threads) {
+			MATRIX_THREADS = threads;
+			return this;
+		}
 
 		@Override
 		public String toString() {
@@ -167,6 +200,7 @@ public class HHRouteDataStructure {
 	
 	public static class HHRouteRegionPointsCtx<T extends NetworkDBPoint> {
 		final HHRoutingDB networkDB;
+		final HHRoutingGraphFile graphFile;
 		final BinaryMapIndexReader file;
 		final HHRouteRegion fileRegion;
 		public final short id;
@@ -178,6 +212,18 @@ public class HHRouteDataStructure {
 			this.fileRegion = null;
 			this.file = null;
 			this.networkDB = networkDB;
+			this.graphFile = null;
+		}
+		
+		public HHRouteRegionPointsCtx(short id, HHRoutingGraphFile graphFile, int routingProfile) {
+			this.id = id;
+			this.fileRegion = null;
+			this.file = null;
+			this.networkDB = null;
+			this.graphFile = graphFile;
+			if (routingProfile >= 0) {
+				this.routingProfile = routingProfile;
+			}
 		}
 		
 		public HHRouteRegionPointsCtx(short id, HHRouteRegion fileRegion, BinaryMapIndexReader file, int routingProfile) {
@@ -185,6 +231,7 @@ public class HHRouteDataStructure {
 			this.fileRegion = fileRegion;
 			this.file = file;
 			this.networkDB = null;
+			this.graphFile = null;
 			if (routingProfile >= 0) {
 				this.routingProfile = routingProfile;
 			}
@@ -220,9 +267,21 @@ public class HHRouteDataStructure {
 		TIntObjectHashMap<List<T>> clusterInPoints;
 		TIntObjectHashMap<List<T>> clusterOutPoints;
 
-		DataTileManager<T> pointsRect = new DataTileManager<>(11); // 20km tile
+		static final int POINTS_RECT_ZOOM = 11; // 20km tile
+		DataTileManager<T> pointsRect = new DataTileManager<>(POINTS_RECT_ZOOM);
 		TLongObjectHashMap<RouteSegment> boundaries;
 		boolean initialized = false;
+
+		// graph file region which points are created on demand (pointsById, pointsByGeo, pointsRect keep only
+		// created points), null if all points are loaded
+		HHRouteRegionPointsCtx<T> graphRegion;
+		private Class<T> pointClass;
+		private TLongHashSet graphTiles;
+
+		// routing filter by tag values of points, null if points aren't excluded
+		RouteRegion filterRegion;
+		private RouteDataObject filterRdo;
+		private final TIntArrayList filterTypes = new TIntArrayList(50);
 		
 		// Route specific details
 		RoutingStats stats = new RoutingStats();
@@ -241,7 +300,154 @@ public class HHRouteDataStructure {
 		Queue<NetworkDBPointCost<T>> queuePos = createQueue();
 		Queue<NetworkDBPointCost<T>> queueRev = createQueue();
 
+		// points by index for CH query (rebuilt when points are reloaded), guarded by context lock
+		private NetworkDBPoint[] pointsByIndex;
+		private TLongObjectHashMap<T> pointsByIndexSource;
+
+		// called by concurrent alternative route tasks
+		synchronized NetworkDBPoint[] getPointsByIndex() {
+			if (pointsByIndex == null || pointsByIndexSource != pointsById) {
+				// points of graph file are set to array when they're created
+				long max = graphRegion == null ? -1 : graphRegion.graphFile.getMaxPointIndex();
+				for (long ind : pointsById.keys()) {
+					max = Math.max(max, ind);
+				}
+				NetworkDBPoint[] arr = new NetworkDBPoint[(int) max + 1];
+				for (T p : pointsById.valueCollection()) {
+					if (p.index >= 0) {
+						arr[p.index] = p;
+					}
+				}
+				pointsByIndex = arr;
+				pointsByIndexSource = pointsById;
+			}
+			return pointsByIndex;
+		}
+
+		/**
+		 * Uses graph file region without loading points, if context has only this region
+		 */
+		boolean initGraphFileRegion(Class<T> pointClass) {
+			if (regions.size() != 1 || regions.get(0).graphFile == null) {
+				return false;
+			}
+			graphRegion = regions.get(0);
+			graphRegion.pntsByFileId.clear();
+			this.pointClass = pointClass;
+			pointsById = new TLongObjectHashMap<>();
+			pointsByGeo = new TLongObjectHashMap<>();
+			boundaries = new GraphFileBoundaries(graphRegion.graphFile);
+			graphTiles = new TLongHashSet();
+			return true;
+		}
+
+		/**
+		 * Returns point of graph file region by position in file, creates it with dual point if needed
+		 */
+		synchronized T getPointByPosition(int pos) {
+			T pnt = graphRegion.pntsByFileId.get(pos);
+			if (pnt == null) {
+				pnt = graphRegion.graphFile.createPoint(pos, graphRegion.id, pointClass);
+				pointsById.put(pnt.index, pnt);
+				pointsByGeo.put(pnt.getGeoPntId(), pnt);
+				graphRegion.pntsByFileId.put(pos, pnt);
+				if (pointsByIndex != null && pointsByIndexSource == pointsById) {
+					pointsByIndex[pnt.index] = pnt;
+				}
+				updateExclude(pnt);
+				int dualPos = graphRegion.graphFile.getDualPoint(pos);
+				if (dualPos >= 0) {
+					pnt.dualPoint = getPointByPosition(dualPos);
+				}
+			}
+			return pnt;
+		}
+
+		synchronized T getPointByGeo(long geoId) {
+			T pnt = pointsByGeo.get(geoId);
+			if (pnt == null && graphRegion != null) {
+				int pos = graphRegion.graphFile.findPointByGeo(geoId);
+				if (pos >= 0) {
+					pnt = getPointByPosition(pos);
+				}
+			}
+			return pnt;
+		}
+
+		/**
+		 * Same as {@link DataTileManager#getClosestObjects}, points of graph file tiles are created on demand
+		 */
+		synchronized List<T> getClosestPoints(double lat, double lon, double radius) {
+			if (graphRegion != null) {
+				int zoom = pointsRect.getZoom();
+				int tileDist = (int) Math.ceil(radius / MapUtils.getTileDistanceWidth(lat, zoom));
+				int tileX = (int) MapUtils.getTileNumberX(zoom, lon);
+				int tileY = (int) MapUtils.getTileNumberY(zoom, lat);
+				TIntArrayList positions = new TIntArrayList();
+				for (int x = tileX - tileDist; x <= tileX + tileDist; x++) {
+					for (int y = tileY - tileDist; y <= tileY + tileDist; y++) {
+						long tile = pointsRect.evaluateTileXY(x << (31 - zoom), y << (31 - zoom));
+						if (!graphTiles.add(tile)) {
+							continue;
+						}
+						positions.resetQuick();
+						graphRegion.graphFile.findTilePoints(tile, positions);
+						for (int i = 0; i < positions.size(); i++) {
+							T pnt = getPointByPosition(positions.get(i));
+							LatLon l = pnt.getPoint();
+							pointsRect.registerObject(l.getLatitude(), l.getLongitude(), pnt);
+						}
+					}
+				}
+			}
+			return pointsRect.getClosestObjects(lat, lon, radius);
+		}
+
+		/**
+		 * Excludes point which road isn't accepted by router of filter
+		 * @return true if point is excluded
+		 */
+		boolean updateExclude(T pnt) {
+			pnt.rtExclude = false;
+			if (filterRegion == null || pnt.tagValues == null) {
+				return false;
+			}
+			if (filterRdo == null || filterRdo.region != filterRegion) {
+				filterRdo = new RouteDataObject(filterRegion);
+			}
+			filterTypes.reset();
+			for (TagValuePair tp : pnt.tagValues) {
+				// reuse additionalAttribute to cache values
+				if (tp.additionalAttribute < 0) {
+					tp.additionalAttribute = filterRegion.searchRouteEncodingRule(tp.tag, tp.value);
+				}
+				if (tp.additionalAttribute < 0) {
+					tp.additionalAttribute = filterRegion.routeEncodingRules.size();
+					filterRegion.initRouteEncodingRule(tp.additionalAttribute, tp.tag, tp.value);
+				}
+				filterTypes.add(tp.additionalAttribute);
+			}
+			// here we always copy array but in C++ we could be more efficient
+			filterRdo.types = filterTypes.toArray();
+			VehicleRouter router = rctx.getRouter();
+			pnt.rtExclude = !router.acceptLine(filterRdo);
+			if (!pnt.rtExclude) {
+				// constant should be reduced if route is not found
+				pnt.rtExclude = router.defineSpeedPriority(filterRdo, pnt.end > pnt.start) < HHRoutePlanner.EXCLUDE_PRIORITY_CONSTANT;
+			}
+			return pnt.rtExclude;
+		}
+
+		// workspaces of finished CH queries run by parallel tasks, reused by next tasks of this context
+		private final List<HHRoutingChQuery> freeChQueries = new ArrayList<>();
+
+		synchronized HHRoutingChQuery acquireChQuery() {
+			return freeChQueries.isEmpty() ? new HHRoutingChQuery() : freeChQueries.remove(freeChQueries.size() - 1);
+		}
 
+		synchronized void releaseChQuery(HHRoutingChQuery query) {
+			freeChQueries.add(query);
+		}
 
 		private PriorityQueue<NetworkDBPointCost<T>> createQueue() {
 			return new PriorityQueue<>(new Comparator<NetworkDBPointCost<T>>() {
@@ -385,6 +591,9 @@ public class HHRouteDataStructure {
 			if (r.networkDB != null) {
 				return r.networkDB.loadNetworkSegmentPoint(this, r, point, reverse);
 			}
+			if (r.graphFile != null) {
+				return r.graphFile.loadNetworkSegmentPoint(this, r, point, reverse);
+			}
 			if (r.file != null) {
 				return r.file.loadNetworkSegmentPoint(this, r, point, reverse);
 			}
@@ -400,6 +609,9 @@ public class HHRouteDataStructure {
 				if (r.networkDB != null) {
 					b.append(String.format("db %s [%s]", r.networkDB.getRoutingProfile(),
 							r.networkDB.getRoutingProfiles().get(r.routingProfile)));
+				} else if (r.graphFile != null) {
+					b.append(String.format("%s %s [%s]", r.graphFile.getFile().getName(), r.graphFile.getRoutingProfile(),
+							r.graphFile.getRoutingProfiles().get(r.routingProfile)));
 				} else if (r.fileRegion != null) {
 					b.append(String.format("%s %s [%s]", r.file.getFile().getName(), r.fileRegion.profile,
 							r.fileRegion.profileParams.get(r.routingProfile)));
@@ -425,6 +637,23 @@ public class HHRouteDataStructure {
 		}
 	}
 
+	/**
+	 * Boundaries of graph file are network points of file and boundaries put by search
+	 */
+	static class GraphFileBoundaries extends TLongObjectHashMap<RouteSegment> {
+		private static final long serialVersionUID = 1L;
+		private final HHRoutingGraphFile graphFile;
+
+		GraphFileBoundaries(HHRoutingGraphFile graphFile) {
+			this.graphFile = graphFile;
+		}
+
+		@Override
+		public boolean containsKey(long key) {
+			return super.containsKey(key) || graphFile.findPointByGeo(key) >= 0;
+		}
+	}
+
 	static class NetworkDBPointCost<T> {
 		final T point;
 		final double cost;
@@ -454,6 +683,37 @@ public class HHRouteDataStructure {
 		double prepTime = 0;
 	}
 	
+	public static class HHRouteMatrixRes {
+		public final List<LatLon> sources;
+		public final List<LatLon> targets;
+		// time in seconds (-1 if route is not found) [source][target]
+		public final double[][] times;
+		// approximate distance in meters (straight lines between network points) [source][target]
+		public final double[][] distances;
+		public String error;
+		public RoutingStats stats;
+		
+		public HHRouteMatrixRes(List<LatLon> sources, List<LatLon> targets) {
+			this.sources = sources;
+			this.targets = targets;
+			this.times = new double[sources.size()][targets.size()];
+			this.distances = new double[sources.size()][targets.size()];
+			for (int i = 0; i < sources.size(); i++) {
+				Arrays.fill(times[i], -1);
+				Arrays.fill(distances[i], -1);
+			}
+		}
+		
+		public HHRouteMatrixRes(String error) {
+			this(Collections.<LatLon>emptyList(), Collections.<LatLon>emptyList());
+			this.error = error;
+		}
+		
+		public boolean isCorrect() {
+			return error == null;
+		}
+	}
+	
 	public static class HHNetworkRouteRes extends RouteCalcResult {
 
 		public RoutingStats stats;
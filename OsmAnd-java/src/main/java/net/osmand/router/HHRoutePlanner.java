@@ -6,17 +6,30 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
@@ -38,6 +51,7 @@ import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
 import net.osmand.router.GeneralRouter.RoutingParameter;
 import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
 import net.osmand.router.HHRouteDataStructure.HHNetworkSegmentRes;
+import net.osmand.router.HHRouteDataStructure.HHRouteMatrixRes;
 import net.osmand.router.HHRouteDataStructure.HHRouteRegionPointsCtx;
 import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
 import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
@@ -45,6 +59,9 @@ import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
 import net.osmand.router.HHRouteDataStructure.NetworkDBPointCost;
 import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
 import net.osmand.router.HHRouteDataStructure.RoutingStats;
+import net.osmand.router.IsochronePlanner.IsochroneListener;
+import net.osmand.router.IsochronePlanner.IsochroneResult;
+import net.osmand.router.IsochronePlanner.IsochroneSegment;
 import net.osmand.router.RouteCalculationProgress.HHIteration;
 import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
 import net.osmand.router.RoutingConfiguration.Builder;
@@ -60,7 +77,9 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 	// if point is present without map with HH routing it will iterate each time with MAX_POINTS_CLUSTER_ROUTING
 	public static final double MAX_INC_COST_CORR = 10.0;
 	// this constant should dynamically change if route is not found
-	private static final double EXCLUDE_PRIORITY_CONSTANT = 0.2;
+	static final double EXCLUDE_PRIORITY_CONSTANT = 0.2;
+	// network costs are approximate, so alternative detour could be slightly slower than the fastest route
+	private static final double ALT_LOCAL_OPTIMALITY_TOLERANCE = 0.1;
 	
 	private static boolean ASSERT_COST_INCREASING = false;
 	private static boolean ASSERT_AND_CORRECT_DIST_SMALLER = true;
@@ -78,6 +97,15 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		return new HHRoutePlanner<Ts>(ctx, new HHRouteRegionPointsCtx<Ts>((short) 0, networkDB), cl);
 	}
 	
+	public static HHRoutePlanner<NetworkDBPoint> createFromGraphFile(RoutingContext ctx, HHRoutingGraphFile graphFile, int routingProfile) {
+		return createFromGraphFile(ctx, graphFile, routingProfile, NetworkDBPoint.class);
+	}
+	
+	public static <Ts extends NetworkDBPoint> HHRoutePlanner<Ts> createFromGraphFile(RoutingContext ctx, HHRoutingGraphFile graphFile,
+			int routingProfile, Class<Ts> cl) {
+		return new HHRoutePlanner<Ts>(ctx, new HHRouteRegionPointsCtx<Ts>((short) 0, graphFile, routingProfile), cl);
+	}
+	
 	public static HHRoutePlanner<NetworkDBPoint> create(RoutingContext ctx) {
 		return new HHRoutePlanner<NetworkDBPoint>(ctx, null, NetworkDBPoint.class);
 	}
@@ -105,6 +133,16 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 				e.printStackTrace();
 			}
 		}
+		if (predefinedRegions != null && predefinedRegions.graphFile != null) {
+			try {
+				predefinedRegions.graphFile.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (currentCtx.rctx != null) {
+			currentCtx.rctx.closeReverseSearchContext();
+		}
 		currentCtx.regions.clear();
 	}
 	
@@ -240,11 +278,16 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 			printf(SL > 0, "%d %.2f ms\n", route.altRoutes.size(), hctx.stats.altRoutingTime);
 
 			time = System.nanoTime();
-			for (HHNetworkRouteRes alt : route.altRoutes) {
-				retrieveSegmentsGeometry(hctx, rrp, alt, hctx.config.ROUTE_ALL_ALT_SEGMENTS, progress);
+			// geometry without detailed routing is already loaded while alternatives were searched
+			for (int i = 0; i < route.altRoutes.size() && hctx.config.ROUTE_ALL_ALT_SEGMENTS; i++) {
+				HHNetworkRouteRes alt = route.altRoutes.get(i);
+				retrieveSegmentsGeometry(hctx, rrp, alt, true, progress);
 				if (progress.isCancelled) {
 					return cancelledStatus();
 				}
+				if (i == 0 && hctx.config.altRouteListener != null) {
+					hctx.config.altRouteListener.alternativeRouteFound(alt);
+				}
 			}
 			altRoutes = (System.nanoTime() - time) / 1e6;
 			printf(SL > 0, "%.2f ms\n", altRoutes);
@@ -287,6 +330,511 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		return route;
 	}
 
+	/**
+	 * Calculates route times between all sources and targets over the network without detailed geometry.
+	 * Start / end segments are calculated once per source and per target (instead of each pair), then network is
+	 * searched once per source (in parallel with {@link HHRoutingConfig#matrixThreads(int)}). With CH config each
+	 * target fills buckets of points reached by upward reverse search and sources run upward search (bucket based
+	 * many-to-many), otherwise targets are registered at their network points and sources run Dijkstra till all
+	 * targets are reached. Distances are approximate: straight lines between network points.
+	 * @return matrix or null if calculation was cancelled
+	 */
+	@SuppressWarnings("unchecked")
+	public HHRouteMatrixRes runMatrixRouting(List<LatLon> sources, List<LatLon> targets, HHRoutingConfig config)
+			throws SQLException, IOException, InterruptedException {
+		long startTime = System.nanoTime();
+		RouteCalculationProgress progress = currentCtx.rctx.calculationProgress;
+		if (config.cacheCtx != null && config.cacheCtx.rctx == currentCtx.rctx) {
+			currentCtx = (HHRoutingContext<T>) config.cacheCtx;
+		}
+		config = prepareDefaultRoutingConfig(config);
+		HHRouteMatrixRes res = new HHRouteMatrixRes(sources, targets);
+		if (sources.isEmpty() || targets.isEmpty()) {
+			return res;
+		}
+		LatLon[] selectPoints = mostDistantPoints(sources, targets);
+		HHRoutingContext<T> hctx = initHCtx(config, selectPoints[0], selectPoints[1]);
+		if (config.CACHE_CALCULATION_CONTEXT) {
+			config.cacheCtx = (HHRoutingContext<NetworkDBPoint>) hctx;
+		}
+		if (hctx == null) {
+			return new HHRouteMatrixRes("Files for hh routing were not initialized. Matrix couldn't be calculated.");
+		}
+		res.stats = hctx.stats;
+		filterPointsBasedOnConfiguration(hctx);
+
+		long time = System.nanoTime();
+		progress.hhIteration(HHIteration.START_END_POINT);
+		final List<MatrixAccess> targetAccess = new ArrayList<>();
+		TLongObjectHashMap<TIntArrayList> targetSegments = new TLongObjectHashMap<>();
+		for (int t = 0; t < targets.size(); t++) {
+			progress.hhIterationProgress(t / (double) (targets.size() + sources.size()));
+			MatrixAccess a = initMatrixAccess(hctx, targets.get(t), t, true, null, null);
+			targetAccess.add(a);
+			if (a.segment != null) {
+				for (long id : new long[] { calcRPId(a.segment, a.segment.getSegmentEnd(), a.segment.getSegmentStart()),
+						calcRPId(a.segment, a.segment.getSegmentStart(), a.segment.getSegmentEnd()) }) {
+					if (!targetSegments.containsKey(id)) {
+						targetSegments.put(id, new TIntArrayList());
+					}
+					targetSegments.get(id).add(t);
+				}
+			}
+			if (progress.isCancelled) {
+				return null;
+			}
+		}
+		final List<MatrixAccess> sourceAccess = new ArrayList<>();
+		for (int s = 0; s < sources.size(); s++) {
+			progress.hhIterationProgress((targets.size() + s) / (double) (targets.size() + sources.size()));
+			MatrixAccess a = initMatrixAccess(hctx, sources.get(s), s, false, targetSegments, targetAccess);
+			sourceAccess.add(a);
+			if (progress.isCancelled) {
+				return null;
+			}
+		}
+		hctx.stats.searchPointsTime = (System.nanoTime() - time) / 1e6;
+
+		time = System.nanoTime();
+		progress.hhIteration(HHIteration.ROUTING);
+		List<List<MatrixLabel>> sourcePoints = new ArrayList<>();
+		double[][] times = new double[sources.size()][];
+		double[][] lengths = new double[sources.size()][];
+		for (int s = 0; s < sources.size(); s++) {
+			sourcePoints.add(sourceAccess.get(s).points);
+			times[s] = sourceAccess.get(s).directTimes.clone();
+			lengths[s] = sourceAccess.get(s).directLengths.clone();
+		}
+		List<List<MatrixLabel>> targetPoints = new ArrayList<>();
+		for (MatrixAccess a : targetAccess) {
+			targetPoints.add(a.points);
+		}
+		runNetworkMatrix(hctx, sourcePoints, targetPoints, times, lengths, progress);
+		if (progress.isCancelled) {
+			return null;
+		}
+		for (int s = 0; s < sources.size(); s++) {
+			for (int t = 0; t < targets.size(); t++) {
+				if (times[s][t] < Double.POSITIVE_INFINITY) {
+					res.times[s][t] = times[s][t];
+					res.distances[s][t] = lengths[s][t];
+				}
+			}
+		}
+		hctx.stats.routingTime = (System.nanoTime() - time) / 1e6;
+		printf(hctx.config.STATS_VERBOSE_LEVEL > 0,
+				"Matrix %d x %d %.1f ms (selected %s): last mile %.1f ms, load data %.1f ms (%,d edges), routing %.1f ms \n",
+				sources.size(), targets.size(), (System.nanoTime() - startTime) / 1e6, hctx.getRoutingInfo(),
+				hctx.stats.searchPointsTime, hctx.stats.loadEdgesTime + hctx.stats.loadPointsTime,
+				hctx.stats.loadEdgesCnt, hctx.stats.routingTime);
+		return res;
+	}
+
+	/**
+	 * Isochrone over HH network: network points are reached by dijkstra over network limited by maxTime, detailed roads
+	 * are searched around start point (till the most distant point of start cluster) and from the fringe network points
+	 * (with segments exceeding limit) for the rest of time. Reached segments are streamed to listener.
+	 * @return result or null if start point is not found or calculation was cancelled
+	 */
+	@SuppressWarnings("unchecked")
+	public IsochroneResult runIsochrone(LatLon start, float maxTime, HHRoutingConfig config, IsochroneListener listener)
+			throws SQLException, IOException, InterruptedException {
+		if (config.cacheCtx != null && config.cacheCtx.rctx == currentCtx.rctx) {
+			currentCtx = (HHRoutingContext<T>) config.cacheCtx;
+		}
+		config = prepareDefaultRoutingConfig(config);
+		HHRoutingContext<T> hctx = initHCtx(config, start, start);
+		if (config.CACHE_CALCULATION_CONTEXT) {
+			config.cacheCtx = (HHRoutingContext<NetworkDBPoint>) hctx;
+		}
+		if (hctx == null) {
+			return null;
+		}
+		filterPointsBasedOnConfiguration(hctx);
+		RouteCalculationProgress progress = hctx.rctx.calculationProgress;
+		progress.hhIteration(HHIteration.START_END_POINT);
+		MatrixAccess access = initMatrixAccess(hctx, start, 0, false, null, null);
+		if (access.segment == null && hctx.config.ROUTE_LAST_MILE) {
+			return null;
+		}
+		progress.hhIteration(HHIteration.ROUTING);
+		// config could be shared (cached context), so time limit isn't set to config
+		TLongObjectHashMap<MatrixLabel> labels = runMatrixSearch(hctx, access.points, false, null, null, null, maxTime,
+				progress);
+		if (labels == null) {
+			return null;
+		}
+		IsochroneResult res = new IsochroneResult(start, maxTime);
+		List<IsochroneSegment> partial = new ArrayList<>();
+		List<MatrixLabel> fringe = new ArrayList<>();
+		for (MatrixLabel l : labels.valueCollection()) {
+			if (!l.settled || l.cost > maxTime) {
+				continue;
+			}
+			NetworkDBPoint p = l.point;
+			IsochroneSegment s = new IsochroneSegment(p.roadId, p.start, p.end, p.startX, p.startY, p.endX, p.endY,
+					(float) l.cost, (float) l.cost);
+			if (res.add(s)) {
+				partial.add(s);
+			}
+			List<NetworkDBSegment> segments = p.connected(false);
+			for (int i = 0; segments != null && i < segments.size(); i++) {
+				if (l.cost + segments.get(i).dist > maxTime) {
+					fringe.add(l);
+					break;
+				}
+			}
+		}
+		IsochronePlanner.flush(partial, listener);
+		progress.hhIteration(HHIteration.DETAILED);
+		RoutingContext sctx = IsochronePlanner.createSearchContext(hctx.rctx);
+		try {
+			if (access.segment != null) {
+				double startClusterTime = 0;
+				for (MatrixLabel l : access.points) {
+					startClusterTime = Math.max(startClusterTime, l.cost);
+				}
+				IsochronePlanner.searchDetailed(sctx, access.segment, 0, (float) Math.min(maxTime, startClusterTime),
+						res, listener);
+			}
+			for (int i = 0; i < fringe.size(); i++) {
+				if (progress.isCancelled) {
+					return null;
+				}
+				progress.hhIterationProgress(i / (double) fringe.size());
+				MatrixLabel l = fringe.get(i);
+				RouteSegmentPoint pnt = loadPoint(hctx.rctx, l.point);
+				if (pnt != null) {
+					IsochronePlanner.searchDetailed(sctx, pnt, (float) l.cost, maxTime, res, listener);
+				}
+			}
+		} finally {
+			sctx.unloadAllData();
+		}
+		return res;
+	}
+
+	private static LatLon[] mostDistantPoints(List<LatLon> sources, List<LatLon> targets) {
+		// files are selected by 2 points, so take the most distant one from first source
+		LatLon first = sources.get(0);
+		LatLon other = targets.get(0);
+		double max = -1;
+		for (List<LatLon> l : Arrays.asList(sources, targets)) {
+			for (LatLon p : l) {
+				double d = MapUtils.getDistance(first, p);
+				if (d > max) {
+					max = d;
+					other = p;
+				}
+			}
+		}
+		return new LatLon[] { first, other };
+	}
+
+	private MatrixAccess initMatrixAccess(HHRoutingContext<T> hctx, LatLon latLon, int ind, boolean reverse,
+			TLongObjectHashMap<TIntArrayList> targetSegments, List<MatrixAccess> targets) throws IOException, InterruptedException {
+		MatrixAccess a = new MatrixAccess(latLon, targets == null ? 0 : targets.size());
+		hctx.setStartEnd(reverse ? null : latLon, reverse ? latLon : null);
+		if (hctx.config.ROUTE_LAST_MILE) {
+			a.segment = new RoutePlannerFrontEnd().findRouteSegment(latLon.getLatitude(), latLon.getLongitude(), hctx.rctx, null);
+			if (a.segment == null) {
+				return a;
+			}
+		}
+		TLongObjectHashMap<FinalRouteSegment> reachedTargets = null;
+		TLongArrayList addedBoundaries = new TLongArrayList();
+		if (targetSegments != null) {
+			reachedTargets = new TLongObjectHashMap<>();
+			for (long id : targetSegments.keys()) {
+				if (!hctx.boundaries.containsKey(id)) {
+					hctx.boundaries.put(id, null);
+					addedBoundaries.add(id);
+				}
+			}
+		}
+		TLongObjectHashMap<T> pnts = new TLongObjectHashMap<>();
+		initStart(hctx, a.segment, reverse, pnts, reachedTargets);
+		for (int i = 0; i < addedBoundaries.size(); i++) {
+			hctx.boundaries.remove(addedBoundaries.get(i));
+		}
+		for (T p : pnts.valueCollection()) {
+			if (p.index != PNT_SHORT_ROUTE_START_END) {
+				a.points.add(new MatrixLabel(p, ind, p.rt(reverse).rtDistanceFromStart,
+						MapUtils.getDistance(latLon, p.getPoint())));
+			}
+			boolean exclude = p.rtExclude;
+			p.clearRouting();
+			p.rtExclude = exclude;
+		}
+		if (reachedTargets != null) {
+			BinaryRoutePlanner planner = new BinaryRoutePlanner();
+			TLongObjectIterator<FinalRouteSegment> it = reachedTargets.iterator();
+			while (it.hasNext()) {
+				it.advance();
+				FinalRouteSegment o = it.value();
+				TIntArrayList ts = targetSegments.get(it.key());
+				for (int i = 0; ts != null && i < ts.size(); i++) {
+					int t = ts.get(i);
+					RouteSegmentPoint end = targets.get(t).segment;
+					double cost = o.distanceFromStart + planner.calculatePreciseStartTime(hctx.rctx, end.preciseX, end.preciseY, o);
+					if (cost < a.directTimes[t]) {
+						a.directTimes[t] = cost;
+						a.directLengths[t] = MapUtils.getDistance(latLon, targets.get(t).latLon);
+					}
+				}
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Network part of matrix: times and lengths of source (initialized by direct routes) are improved by routes from
+	 * source points to target points over network. Sources (and targets for CH) are searched in parallel.
+	 */
+	static <T extends NetworkDBPoint> void runNetworkMatrix(final HHRoutingContext<T> hctx,
+			final List<List<MatrixLabel>> sourcePoints, final List<List<MatrixLabel>> targetPoints,
+			final double[][] times, final double[][] lengths, final RouteCalculationProgress progress)
+			throws SQLException, IOException, InterruptedException {
+		final TLongObjectHashMap<List<MatrixLabel>> buckets = new TLongObjectHashMap<>();
+		if (hctx.config.USE_CH) {
+			final List<Collection<MatrixLabel>> reached = new ArrayList<>(Collections.nCopies(targetPoints.size(),
+					(Collection<MatrixLabel>) null));
+			runParallelTasks(targetPoints.size(), hctx.config.MATRIX_THREADS, "HH matrix search", new ParallelTask() {
+				@Override
+				public void run(int t) throws SQLException, IOException {
+					TLongObjectHashMap<MatrixLabel> labels = runMatrixSearch(hctx, targetPoints.get(t), true, null,
+							null, null, hctx.config.MAX_COST, progress);
+					reached.set(t, labels == null ? null : labels.valueCollection());
+				}
+			});
+			for (int t = 0; t < targetPoints.size(); t++) {
+				if (reached.get(t) != null) {
+					for (MatrixLabel l : reached.get(t)) {
+						addToBucket(buckets, l.point, t, l.cost, l.length);
+					}
+				}
+			}
+		} else {
+			for (int t = 0; t < targetPoints.size(); t++) {
+				for (MatrixLabel l : targetPoints.get(t)) {
+					addToBucket(buckets, l.point, t, l.cost, l.length);
+				}
+			}
+		}
+		if (progress != null && progress.isCancelled) {
+			return;
+		}
+		runParallelTasks(sourcePoints.size(), hctx.config.MATRIX_THREADS, "HH matrix search", new ParallelTask() {
+			@Override
+			public void run(int s) throws SQLException, IOException {
+				runMatrixSearch(hctx, sourcePoints.get(s), false, buckets, times[s], lengths[s],
+						hctx.config.MAX_COST, progress);
+			}
+		});
+	}
+
+	private static void addToBucket(TLongObjectHashMap<List<MatrixLabel>> buckets, NetworkDBPoint point, int target,
+			double cost, double length) {
+		List<MatrixLabel> l = buckets.get(point.index);
+		if (l == null) {
+			l = new ArrayList<>();
+			buckets.put(point.index, l);
+		}
+		l.add(new MatrixLabel(point, target, cost, length));
+	}
+
+	/**
+	 * Dijkstra over network with own labels (point route info is not used), so several searches run in parallel.
+	 * Search to buckets stops when all targets couldn't be improved, any search stops at maxCost (if it's positive).
+	 * @return settled labels or null if search was cancelled
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends NetworkDBPoint> TLongObjectHashMap<MatrixLabel> runMatrixSearch(HHRoutingContext<T> hctx,
+			List<MatrixLabel> init, boolean reverse, TLongObjectHashMap<List<MatrixLabel>> buckets, double[] times,
+			double[] lengths, double maxCost, RouteCalculationProgress progress) throws SQLException, IOException {
+		// max time to targets is only decreasing, it's recomputed when time of target with max time is improved
+		double maxTime = buckets == null ? 0 : max(times);
+		boolean maxImproved = false;
+		TLongObjectHashMap<MatrixLabel> labels = new TLongObjectHashMap<>();
+		PriorityQueue<MatrixLabel> queue = new PriorityQueue<>(64, new Comparator<MatrixLabel>() {
+			@Override
+			public int compare(MatrixLabel o1, MatrixLabel o2) {
+				return Double.compare(o1.cost, o2.cost);
+			}
+		});
+		for (MatrixLabel l : init) {
+			if (l.point.rtExclude) {
+				continue;
+			}
+			MatrixLabel ex = labels.get(l.point.index);
+			if (ex == null || l.cost < ex.cost) {
+				MatrixLabel n = new MatrixLabel(l.point, l.target, l.cost, l.length);
+				labels.put(l.point.index, n);
+				queue.add(n);
+			}
+		}
+		while (!queue.isEmpty()) {
+			MatrixLabel cur = queue.poll();
+			if (cur.settled || labels.get(cur.point.index) != cur) {
+				continue;
+			}
+			if (progress != null && progress.isCancelled) {
+				return null;
+			}
+			if (maxCost > 0 && cur.cost > maxCost) {
+				break;
+			}
+			if (buckets != null) {
+				if (maxImproved) {
+					maxTime = max(times);
+					maxImproved = false;
+				}
+				if (cur.cost >= maxTime) {
+					break;
+				}
+			}
+			cur.settled = true;
+			NetworkDBPoint point = cur.point;
+			if (buckets != null) {
+				List<MatrixLabel> bucket = buckets.get(point.index);
+				for (int i = 0; bucket != null && i < bucket.size(); i++) {
+					MatrixLabel b = bucket.get(i);
+					if (cur.cost + b.cost < times[b.target]) {
+						maxImproved |= times[b.target] == maxTime;
+						times[b.target] = cur.cost + b.cost;
+						lengths[b.target] = cur.length + b.length;
+					}
+				}
+			}
+			List<NetworkDBSegment> segments;
+			synchronized (hctx) {
+				long tm = System.nanoTime();
+				hctx.stats.loadEdgesCnt += hctx.loadNetworkSegmentPoint((T) point, reverse);
+				hctx.stats.loadEdgesTime += (System.nanoTime() - tm) / 1e6;
+				segments = point.connected(reverse);
+			}
+			for (NetworkDBSegment connected : segments) {
+				NetworkDBPoint nextPoint = reverse ? connected.start : connected.end;
+				if (!hctx.config.USE_CH && !hctx.config.USE_CH_SHORTCUTS && connected.shortcut) {
+					continue;
+				}
+				if (nextPoint.rtExclude || connected.dist < 0) {
+					continue;
+				}
+				if (hctx.config.USE_CH && (nextPoint.chInd() > 0 && nextPoint.chInd() < point.chInd())) {
+					continue;
+				}
+				double cost = cur.cost + connected.dist;
+				MatrixLabel ex = labels.get(nextPoint.index);
+				if (ex == null || (!ex.settled && cost < ex.cost)) {
+					MatrixLabel n = new MatrixLabel(nextPoint, cur.target, cost, cur.length
+							+ squareRootDist31(point.midX(), point.midY(), nextPoint.midX(), nextPoint.midY()));
+					labels.put(nextPoint.index, n);
+					queue.add(n);
+				}
+			}
+		}
+		return labels;
+	}
+
+	private static double max(double[] times) {
+		double m = 0;
+		for (double d : times) {
+			m = Math.max(m, d);
+		}
+		return m;
+	}
+
+	private static void runParallelTasks(int count, int threads, final String name, final ParallelTask task)
+			throws SQLException, IOException, InterruptedException {
+		if (threads <= 1 || count <= 1) {
+			for (int i = 0; i < count; i++) {
+				task.run(i);
+			}
+			return;
+		}
+		int poolSize = Math.min(threads, count);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread th = new Thread(r, name + " " + threadNumber.getAndIncrement());
+						th.setDaemon(true);
+						return th;
+					}
+				});
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				final int ind = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						task.run(ind);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof SQLException) {
+						throw (SQLException) cause;
+					} else if (cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			// not started tasks are cancelled if one of tasks failed
+			executor.shutdownNow();
+		}
+	}
+
+	private interface ParallelTask {
+		void run(int i) throws SQLException, IOException;
+	}
+
+	static class MatrixLabel {
+		final NetworkDBPoint point;
+		final int target;
+		final double cost;
+		final double length;
+		boolean settled;
+
+		MatrixLabel(NetworkDBPoint point, int target, double cost, double length) {
+			this.point = point;
+			this.target = target;
+			this.cost = cost;
+			this.length = length;
+		}
+	}
+
+	private static class MatrixAccess {
+		final LatLon latLon;
+		RouteSegmentPoint segment;
+		final List<MatrixLabel> points = new ArrayList<>();
+		// routes to targets which don't pass network points
+		final double[] directTimes;
+		final double[] directLengths;
+
+		MatrixAccess(LatLon latLon, int targets) {
+			this.latLon = latLon;
+			this.directTimes = new double[targets];
+			this.directLengths = new double[targets];
+			Arrays.fill(directTimes, Double.POSITIVE_INFINITY);
+		}
+	}
+
 	private void filterPointsBasedOnConfiguration(HHRoutingContext<T> hctx) {
 		GeneralRouter vr = (GeneralRouter) hctx.rctx.getRouter();
 		Map<String, RoutingParameter> parameters = vr.getParameters();
@@ -304,19 +852,18 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		if (hctx.filterRoutingParameters.equals(tm)) {
 			return;
 		}
-		for (T pnt : hctx.pointsById.valueCollection()) {
-			pnt.rtExclude = false;
-		}
+		hctx.filterRoutingParameters = tm;
+		hctx.filterRegion = null;
 		if (tm.isEmpty()) {
 			// no parameters
-			hctx.filterRoutingParameters = tm;
+			for (T pnt : hctx.pointsById.valueCollection()) {
+				pnt.rtExclude = false;
+			}
 			return;
 		}
 		printf(hctx.config.STATS_VERBOSE_LEVEL > 0, " Filter points based on parameters...");
 		long nt = System.nanoTime();
-		RouteRegion regR = new RouteRegion();
-		TIntArrayList tint = new TIntArrayList(50);
-		RouteDataObject rdo = new RouteDataObject(regR);
+		hctx.filterRegion = new RouteRegion();
 		for (T pnt : hctx.pointsById.valueCollection()) {
 			if (pnt.tagValues != null) {
 				for (TagValuePair tp : pnt.tagValues) {
@@ -325,33 +872,12 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 			}
 		}
 		int filtered = 0;
+		// points of graph file created later are filtered by context
 		for (T pnt : hctx.pointsById.valueCollection()) {
-			if (pnt.tagValues != null) {
-				tint.reset();
-				for (TagValuePair tp : pnt.tagValues) {
-					// reuse additionalAttribute to cache values
-					if (tp.additionalAttribute < 0) {
-						tp.additionalAttribute = regR.searchRouteEncodingRule(tp.tag, tp.value);
-					}
-					if (tp.additionalAttribute < 0) {
-						tp.additionalAttribute = regR.routeEncodingRules.size();
-						regR.initRouteEncodingRule(tp.additionalAttribute, tp.tag, tp.value);
-					}
-					tint.add(tp.additionalAttribute);
-				}
-				// here we always copy array but in C++ we could be more efficient
-				rdo.types = tint.toArray();
-				pnt.rtExclude = !currentCtx.rctx.getRouter().acceptLine(rdo);
-				if (!pnt.rtExclude) {
-					// constant should be reduced if route is not found
-					pnt.rtExclude = currentCtx.rctx.getRouter().defineSpeedPriority(rdo, pnt.end > pnt.start) < EXCLUDE_PRIORITY_CONSTANT;
-				}
-				if (pnt.rtExclude) {
-					filtered++;
-				}
+			if (hctx.updateExclude(pnt)) {
+				filtered++;
 			}
 		}
-		hctx.filterRoutingParameters = tm;
 		printf(hctx.config.STATS_VERBOSE_LEVEL > 0, "%d excluded from %d, %.2f ms\n", filtered, hctx.pointsById.size(),
 				(System.nanoTime() - nt) / 1e6);
 	}
@@ -437,155 +963,225 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		printf(hctx.config.STATS_VERBOSE_LEVEL > 0, " Finding first / last segments...%.2f ms\n", hctx.stats.searchPointsTime);
 	}
 
-	private void calcAlternativeRoute(HHRoutingContext<T> hctx, HHNetworkRouteRes route, TLongObjectHashMap<T> stPoints,
-			TLongObjectHashMap<T> endPoints, RouteCalculationProgress progress) throws SQLException, IOException {
-		List<NetworkDBPoint>  exclude = new ArrayList<>();
-		try {
-			HHNetworkRouteRes rt = route;
-			// distances between all points and start/end
-			List<NetworkDBPoint> points = new ArrayList<>();
-			for (int i = 0; i < route.segments.size(); i++) {
-				NetworkDBSegment s = route.segments.get(i).segment;
-				if (s == null) {
-					continue;
-				}
-				if(points.size() == 0) {
-					points.add(s.start);
-				}
-				points.add(s.end);
-			}
-			double[] distances = new double[points.size()];
-			NetworkDBPoint prev = null;
-			for (int i = 0; i < distances.length; i++) {
-				NetworkDBPoint pnt = points.get(i);
-				if (i == 0) {
-					distances[i] = squareRootDist31(hctx.startX, hctx.startY, pnt.midX(), pnt.midY());
-				} else if (i == distances.length - 1) {
-					distances[i] = squareRootDist31(hctx.endX, hctx.endY, pnt.midX(), pnt.midY());
-				} else {
-					distances[i] = squareRootDist31(prev.midX(), prev.midY(), pnt.midX(), pnt.midY());
-				}
-				prev = pnt;
-			}
-			// calculate min(cumPos, cumNeg) distance
-			double[] cdistPos = new double[distances.length];
-			double[] cdistNeg = new double[distances.length];
-			for (int i = 0; i < distances.length; i++) {
-				if(i == 0) {
-					cdistPos[0] = distances[i];
-					cdistNeg[distances.length - 1] = distances[distances.length - 1];
-				} else {
-					cdistPos[i] = cdistPos[i - 1] + distances[i];
-					cdistNeg[distances.length - i - 1] = cdistNeg[distances.length - i] + distances[distances.length - i - 1];
-				}
+	/**
+	 * Penalty method: alternatives are the fastest routes where segments of the main route are penalized and points
+	 * around one of the main route points are excluded. Candidates are searched independently in parallel, too long,
+	 * not locally optimal (detour isn't the fastest way around its middle) or similar to main route are dropped.
+	 */
+	private void calcAlternativeRoute(final HHRoutingContext<T> hctx, final HHNetworkRouteRes route,
+			final TLongObjectHashMap<T> stPoints, final TLongObjectHashMap<T> endPoints,
+			final RouteCalculationProgress progress) throws SQLException, IOException, InterruptedException {
+		// distances between all points and start/end
+		List<NetworkDBPoint> points = new ArrayList<>();
+		for (int i = 0; i < route.segments.size(); i++) {
+			NetworkDBSegment s = route.segments.get(i).segment;
+			if (s == null) {
+				continue;
 			}
-			double[] minDistance = new double[distances.length];
-			boolean[] useToSkip = new boolean[distances.length];
-			int altPoints = 0;
-			for (int i = 0; i < distances.length; i++) {
-				minDistance[i] = Math.min(cdistNeg[i], cdistPos[i]) * hctx.config.ALT_EXCLUDE_RAD_MULT;
-				boolean coveredByPrevious = false;
-				for (int j = 0; j < i; j++) {
-					if (useToSkip[j] && cdistPos[i] - cdistPos[j] < minDistance[j] * hctx.config.ALT_EXCLUDE_RAD_MULT_IN) {
-						coveredByPrevious = true;
-						break;
-					}
-				}
-				if(!coveredByPrevious) {
-					useToSkip[i] = true;
-					altPoints ++;
-				} else {
-					minDistance[i] = 0; // for printing purpose
+			if(points.size() == 0) {
+				points.add(s.start);
+			}
+			points.add(s.end);
+		}
+		double[] distances = new double[points.size()];
+		NetworkDBPoint prev = null;
+		for (int i = 0; i < distances.length; i++) {
+			NetworkDBPoint pnt = points.get(i);
+			if (i == 0) {
+				distances[i] = squareRootDist31(hctx.startX, hctx.startY, pnt.midX(), pnt.midY());
+			} else if (i == distances.length - 1) {
+				distances[i] = squareRootDist31(hctx.endX, hctx.endY, pnt.midX(), pnt.midY());
+			} else {
+				distances[i] = squareRootDist31(prev.midX(), prev.midY(), pnt.midX(), pnt.midY());
+			}
+			prev = pnt;
+		}
+		// calculate min(cumPos, cumNeg) distance
+		double[] cdistPos = new double[distances.length];
+		double[] cdistNeg = new double[distances.length];
+		for (int i = 0; i < distances.length; i++) {
+			if(i == 0) {
+				cdistPos[0] = distances[i];
+				cdistNeg[distances.length - 1] = distances[distances.length - 1];
+			} else {
+				cdistPos[i] = cdistPos[i - 1] + distances[i];
+				cdistNeg[distances.length - i - 1] = cdistNeg[distances.length - i] + distances[distances.length - i - 1];
+			}
+		}
+		double[] minDistance = new double[distances.length];
+		boolean[] useToSkip = new boolean[distances.length];
+		int altPoints = 0;
+		for (int i = 0; i < distances.length; i++) {
+			minDistance[i] = Math.min(cdistNeg[i], cdistPos[i]) * hctx.config.ALT_EXCLUDE_RAD_MULT;
+			boolean coveredByPrevious = false;
+			for (int j = 0; j < i; j++) {
+				if (useToSkip[j] && cdistPos[i] - cdistPos[j] < minDistance[j] * hctx.config.ALT_EXCLUDE_RAD_MULT_IN) {
+					coveredByPrevious = true;
+					break;
 				}
 			}
-			if (DEBUG_VERBOSE_LEVEL >= 1) {
-				System.out.printf("Selected %d points for alternatives %s\n", altPoints, Arrays.toString(minDistance));
+			if(!coveredByPrevious) {
+				useToSkip[i] = true;
+				altPoints ++;
+			} else {
+				minDistance[i] = 0; // for printing purpose
 			}
-			if (progress.isCancelled) {
-				return;
+		}
+		if (DEBUG_VERBOSE_LEVEL >= 1) {
+			System.out.printf("Selected %d points for alternatives %s\n", altPoints, Arrays.toString(minDistance));
+		}
+		if (progress.isCancelled) {
+			return;
+		}
+		final List<List<T>> excludes = new ArrayList<>();
+		for (int i = 0; i < distances.length; i++) {
+			if (!useToSkip[i]) {
+				continue;
 			}
-			for (int i = 0; i < distances.length; i++) {
-				if (!useToSkip[i]) {
-					continue;
-				}
-				hctx.clearVisited(stPoints, endPoints);
-//				hctx.clearVisited();
-				for (NetworkDBPoint pnt : exclude) {
-					pnt.rtExclude = false;
-				}
-				exclude.clear();
-				
-				LatLon pnt = points.get(i).getPoint();
-				List<T> objs = hctx.pointsRect.getClosestObjects(pnt.getLatitude(), pnt.getLongitude(), minDistance[i]);
-				for (T p : objs) {
-					if (MapUtils.getDistance(p.getPoint(), pnt) <= minDistance[i]) {
-						exclude.add(p);
-						p.rtExclude = true;
-					}
+			LatLon pnt = points.get(i).getPoint();
+			List<T> exclude = new ArrayList<>();
+			for (T p : hctx.getClosestPoints(pnt.getLatitude(), pnt.getLongitude(), minDistance[i])) {
+				if (MapUtils.getDistance(p.getPoint(), pnt) <= minDistance[i]) {
+					exclude.add(p);
 				}
-				
-				NetworkDBPoint finalPnt = runRoutingPointsToPoints(hctx, stPoints, endPoints);
+			}
+			excludes.add(exclude);
+		}
+		// restore start / end points, searches below don't modify points
+		hctx.clearVisited(stPoints, endPoints);
+		final int[] penalized = new int[route.uniquePoints.size()];
+		int k = 0;
+		for (long ind : route.uniquePoints.toArray()) {
+			penalized[k++] = (int) ind;
+		}
+		final double maxCost = route.getHHRoutingTime() * (1 + hctx.config.ALT_MAX_STRETCH);
+		final HHNetworkRouteRes[] candidates = new HHNetworkRouteRes[excludes.size()];
+		final AtomicBoolean firstFound = new AtomicBoolean();
+		runParallelTasks(excludes.size(), hctx.config.ALT_THREADS, "HH alternative route", new ParallelTask() {
+			@Override
+			public void run(int i) throws SQLException, IOException {
 				if (progress.isCancelled) {
 					return;
 				}
-				if (finalPnt != null) {
-					double cost = (finalPnt.rt(false).rtDistanceFromStart + finalPnt.rt(true).rtDistanceFromStart);
+				// threads of parallel tasks aren't reused between calls, so workspaces are kept by context instead of thread
+				HHRoutingChQuery query = hctx.acquireChQuery();
+				try {
+					int[] path = query.searchPath(hctx, stPoints, endPoints, excludes.get(i), penalized,
+							hctx.config.ALT_PENALTY);
+					if (path == null) {
+						return;
+					}
+					HHNetworkRouteRes alt;
+					synchronized (hctx) {
+						alt = createRouteSegmentFromPath(hctx, path);
+					}
 					if (DEBUG_VERBOSE_LEVEL == 1) {
-						System.out.println("Alternative route cost: " + cost);
+						System.out.println("Alternative route cost: " + alt.getHHRoutingTime());
 					}
-					rt = createRouteSegmentFromFinalPoint(hctx, finalPnt);
-					route.altRoutes.add(rt);
-				} else {
-					break;
+					if (alt.getHHRoutingTime() > maxCost || !isUnique(hctx, alt, route)
+							|| !isLocallyOptimal(hctx, query, path, alt, route)) {
+						return;
+					}
+					candidates[i] = alt;
+					if (!hctx.config.ROUTE_ALL_ALT_SEGMENTS) {
+						loadSegmentsGeometry(hctx, alt);
+						if (hctx.config.altRouteListener != null && firstFound.compareAndSet(false, true)) {
+							hctx.config.altRouteListener.alternativeRouteFound(alt);
+						}
+					}
+				} finally {
+					hctx.releaseChQuery(query);
 				}
-				
 			}
-			route.altRoutes.sort(new Comparator<HHNetworkRouteRes>() {
+		});
+		if (progress.isCancelled) {
+			return;
+		}
+		for (HHNetworkRouteRes alt : candidates) {
+			if (alt != null) {
+				route.altRoutes.add(alt);
+			}
+		}
+		route.altRoutes.sort(new Comparator<HHNetworkRouteRes>() {
 
-				@Override
-				public int compare(HHNetworkRouteRes o1, HHNetworkRouteRes o2) {
-					return Double.compare(o1.getHHRoutingTime(), o2.getHHRoutingTime());
-				}
-			});
-			int size = route.altRoutes.size();
-			if (size > 0) {
-				for(int k = 0; k < route.altRoutes.size(); ) {
-					HHNetworkRouteRes altR = route.altRoutes.get(k);
-					boolean unique = true;
-					for (int j = 0; j <= k; j++) {
-						HHNetworkRouteRes cmp = j == k ? route : route.altRoutes.get(j);
-						TLongHashSet cp = new TLongHashSet(altR.uniquePoints);
-						cp.retainAll(cmp.uniquePoints);
-						if (cp.size() >= hctx.config.ALT_NON_UNIQUENESS * altR.uniquePoints.size()) {
-							unique = false;
-							break;
-						}
-					}
-					if (unique) {
-						k++;
-					} else {
-						route.altRoutes.remove(k);
-					}
+			@Override
+			public int compare(HHNetworkRouteRes o1, HHNetworkRouteRes o2) {
+				return Double.compare(o1.getHHRoutingTime(), o2.getHHRoutingTime());
+			}
+		});
+		int size = route.altRoutes.size();
+		if (size > 0) {
+			for (int j = 1; j < route.altRoutes.size(); ) {
+				HHNetworkRouteRes altR = route.altRoutes.get(j);
+				boolean unique = true;
+				for (int i = 0; i < j && unique; i++) {
+					unique = isUnique(hctx, altR, route.altRoutes.get(i));
 				}
-				if (route.altRoutes.size() > 0) {
-					printf(hctx.config.STATS_VERBOSE_LEVEL > 0, "Cost %.2f - %.2f [%d unique / %d]...", route.altRoutes.get(0).getHHRoutingTime(),
-						route.altRoutes.get(route.altRoutes.size() - 1).getHHRoutingTime(), route.altRoutes.size(), size);
+				if (unique) {
+					j++;
+				} else {
+					route.altRoutes.remove(j);
 				}
-				int ind = DEBUG_ALT_ROUTE_SELECTION % (route.altRoutes.size() + 1);
-				if (ind > 0) {
-					HHNetworkRouteRes rts = route.altRoutes.get(ind - 1);
-					printf(hctx.config.STATS_VERBOSE_LEVEL > 0, DEBUG_ALT_ROUTE_SELECTION + " select %.2f ", rts.getHHRoutingTime());
-					route.detailed = rts.detailed;
-					route.segments = rts.segments;
-					route.altRoutes = Collections.singletonList(rts);
+			}
+			printf(hctx.config.STATS_VERBOSE_LEVEL > 0, "Cost %.2f - %.2f [%d unique / %d]...", route.altRoutes.get(0).getHHRoutingTime(),
+					route.altRoutes.get(route.altRoutes.size() - 1).getHHRoutingTime(), route.altRoutes.size(), size);
+			int ind = DEBUG_ALT_ROUTE_SELECTION % (route.altRoutes.size() + 1);
+			if (ind > 0) {
+				HHNetworkRouteRes rts = route.altRoutes.get(ind - 1);
+				printf(hctx.config.STATS_VERBOSE_LEVEL > 0, DEBUG_ALT_ROUTE_SELECTION + " select %.2f ", rts.getHHRoutingTime());
+				route.detailed = rts.detailed;
+				route.segments = rts.segments;
+				route.altRoutes = Collections.singletonList(rts);
+			}
+		}
+	}
+
+	private boolean isUnique(HHRoutingContext<T> hctx, HHNetworkRouteRes alt, HHNetworkRouteRes cmp) {
+		TLongHashSet cp = new TLongHashSet(alt.uniquePoints);
+		cp.retainAll(cmp.uniquePoints);
+		return cp.size() < hctx.config.ALT_NON_UNIQUENESS * alt.uniquePoints.size();
+	}
+
+	// T-test: part of alternative around the middle of detour should be the fastest route between its ends
+	private boolean isLocallyOptimal(HHRoutingContext<T> hctx, HHRoutingChQuery query, int[] path,
+			HHNetworkRouteRes alt, HHNetworkRouteRes route) throws SQLException, IOException {
+		NetworkDBPoint[] points = hctx.getPointsByIndex();
+		double[] cost = new double[path.length];
+		int first = -1, last = -1;
+		int seg = 0;
+		for (int i = 0; i < path.length; i++) {
+			if (i > 0) {
+				while (alt.segments.get(seg).segment == null) {
+					seg++;
 				}
+				cost[i] = cost[i - 1] + alt.segments.get(seg++).segment.dist;
 			}
-		} finally {
-			for (NetworkDBPoint pnt : exclude) {
-				pnt.rtExclude = false;
+			if (!route.uniquePoints.contains(path[i])) {
+				first = first < 0 ? i : first;
+				last = i;
 			}
 		}
-				
+		if (first < 0) {
+			return false;
+		}
+		double middle = (cost[Math.max(first - 1, 0)] + cost[Math.min(last + 1, path.length - 1)]) / 2;
+		int mid = first;
+		while (mid < last && cost[mid + 1] <= middle) {
+			mid++;
+		}
+		double test = route.getHHRoutingTime() * hctx.config.ALT_LOCAL_OPTIMALITY / 2;
+		int from = mid, to = mid;
+		while (from > 0 && cost[mid] - cost[from - 1] <= test) {
+			from--;
+		}
+		while (to < path.length - 1 && cost[to + 1] - cost[mid] <= test) {
+			to++;
+		}
+		if (from == to) {
+			return true;
+		}
+		double fastest = query.searchCost(hctx, points[path[from]], points[path[to]]);
+		return cost[to] - cost[from] <= fastest * (1 + ALT_LOCAL_OPTIMALITY_TOLERANCE) + MAX_INC_COST_CORR;
 	}
 
 	protected HHRoutingContext<T> initHCtx(HHRoutingConfig c, LatLon start, LatLon end) throws SQLException, IOException {
@@ -613,6 +1209,14 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		long time = System.nanoTime();
 		progress.hhIteration(HHIteration.LOAD_POINTS);
 		printf(hctx.config.STATS_VERBOSE_LEVEL > 0, "Loading points... ");
+		if (hctx.initGraphFileRegion(pointClass)) {
+			// points and segments are read from mapped file when they're reached
+			hctx.initialized = true;
+			hctx.stats.loadPointsTime = (System.nanoTime() - time) / 1e6;
+			printf(hctx.config.STATS_VERBOSE_LEVEL > 0, " on demand from %,d - %.2fms\n",
+					hctx.regions.get(0).graphFile.getPointsCount(), hctx.stats.loadPointsTime);
+			return hctx;
+		}
 		hctx.pointsById = hctx.loadNetworkPoints(pointClass);
 		hctx.boundaries = new TLongObjectHashMap<RouteSegment>();
 		hctx.pointsByGeo = new TLongObjectHashMap<T>();
@@ -824,8 +1428,16 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		return res;
 	}
 	
-	@SuppressWarnings("unchecked")
 	private TLongObjectHashMap<T> initStart(HHRoutingContext<T> hctx, RouteSegmentPoint s, boolean reverse, TLongObjectHashMap<T> pnts) throws IOException, InterruptedException {
+		return initStart(hctx, s, reverse, pnts, null);
+	}
+	
+	/**
+	 * @param reachedBoundaries if not null, collects final segments of reached boundaries which are not network points
+	 */
+	@SuppressWarnings("unchecked")
+	private TLongObjectHashMap<T> initStart(HHRoutingContext<T> hctx, RouteSegmentPoint s, boolean reverse, TLongObjectHashMap<T> pnts, 
+			TLongObjectHashMap<FinalRouteSegment> reachedBoundaries) throws IOException, InterruptedException {
 		if (!hctx.config.ROUTE_LAST_MILE) {
 			// simple method to calculate without detailed maps
 			double startLat = MapUtils.get31LatitudeY(!reverse? hctx.startY : hctx.endY);
@@ -834,7 +1446,7 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 			float spd = hctx.rctx.getRouter().getMinSpeed();
 			while (rad < 300000 && pnts.isEmpty()) {
 				rad = rad * 2;
-				List<T> pntSelect = hctx.pointsRect.getClosestObjects(startLat, startLon, rad);
+				List<T> pntSelect = hctx.getClosestPoints(startLat, startLon, rad);
 				// limit by cluster
 				int cid = pntSelect.get(0).clusterId;
 				for (T pSelect : pntSelect) {
@@ -852,7 +1464,7 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		if (s == null) {
 			return pnts;
 		}
-		T finitePnt = hctx.pointsByGeo.get(calcUniDirRoutePointInternalId(s));
+		T finitePnt = hctx.getPointByGeo(calcUniDirRoutePointInternalId(s));
 		if (finitePnt != null) {
 			// start / end point is directly on a network point
 			double plusCost = 0, negCost = 0;
@@ -897,7 +1509,11 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 						reverse ? o.getSegmentEnd() : o.getSegmentStart(),
 						reverse ? o.getSegmentStart() : o.getSegmentEnd());
 				if (set.add(pntId)) {
-					T pnt = hctx.pointsByGeo.get(pntId);
+					T pnt = hctx.getPointByGeo(pntId);
+					if (pnt == null && reachedBoundaries != null) {
+						reachedBoundaries.put(pntId, o);
+						continue;
+					}
 					if (pnt == null) {
 						if (pnts.contains(PNT_SHORT_ROUTE_START_END)) {
 							continue;
@@ -952,6 +1568,14 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 
 	protected T runRoutingPointsToPoints(HHRoutingContext<T> hctx, TLongObjectHashMap<T> stPoints,
 	                                     TLongObjectHashMap<T> endPoints) throws SQLException, IOException {
+		if (isChQueryApplicable(hctx, stPoints, endPoints)) {
+			HHRoutingChQuery query = hctx.acquireChQuery();
+			try {
+				return query.run(hctx, stPoints, endPoints);
+			} finally {
+				hctx.releaseChQuery(query);
+			}
+		}
 		for (T start : stPoints.valueCollection()) {
 			if (start.rtExclude) {
 				continue;
@@ -978,6 +1602,17 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		return t;
 	}
 	
+	private boolean isChQueryApplicable(HHRoutingContext<T> hctx, TLongObjectHashMap<T> stPoints,
+	                                    TLongObjectHashMap<T> endPoints) {
+		HHRoutingConfig c = hctx.config;
+		if (!c.USE_CH || c.DIJKSTRA_DIRECTION != 0 || c.USE_MIDPOINT || c.MAX_DEPTH > 0 || c.MAX_COST > 0
+				|| c.MAX_SETTLE_POINTS > 0) {
+			return false;
+		}
+		// short route without network points is handled by generic search
+		return !stPoints.containsKey(PNT_SHORT_ROUTE_START_END) && !endPoints.containsKey(PNT_SHORT_ROUTE_START_END);
+	}
+
 	private T runRoutingWithInitQueue(HHRoutingContext<T> hctx) throws SQLException, IOException {
 		float DIR_CONFIG = hctx.config.DIJKSTRA_DIRECTION;
 		RouteCalculationProgress progress = hctx.rctx == null ? null : hctx.rctx.calculationProgress;
@@ -1253,16 +1888,30 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 				s.rtTimeDetailed = f.distanceFromStart;
 				s.list = rrp.convertFinalSegmentToResults(hctx.rctx, f);
 			} else {
-				// load segment geometry from db
-				if (!hctx.loadGeometry(s.segment, false)) {
-					s.segment.getGeometry().clear();
-					s.segment.getGeometry().add(s.segment.start.getPoint());
-					s.segment.getGeometry().add(s.segment.end.getPoint());
-				}
+				loadSegmentGeometry(hctx, s.segment);
 			}
 		}
 		return false;
 	}
+
+	private void loadSegmentsGeometry(HHRoutingContext<T> hctx, HHNetworkRouteRes route) throws SQLException {
+		for (HHNetworkSegmentRes s : route.segments) {
+			if (s.segment != null) {
+				synchronized (hctx) {
+					loadSegmentGeometry(hctx, s.segment);
+				}
+			}
+		}
+	}
+
+	private void loadSegmentGeometry(HHRoutingContext<T> hctx, NetworkDBSegment segment) throws SQLException {
+		// load segment geometry from db
+		if (!hctx.loadGeometry(segment, false)) {
+			segment.getGeometry().clear();
+			segment.getGeometry().add(segment.start.getPoint());
+			segment.getGeometry().add(segment.end.getPoint());
+		}
+	}
 	
 	private void recalculateNetworkCluster(HHRoutingContext<T> hctx, NetworkDBPoint start) throws InterruptedException, IOException {
 		BinaryRoutePlanner plan = new BinaryRoutePlanner();
@@ -1288,7 +1937,7 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 					}
 				} else {
 					resUnique.put(pntId, o);
-					NetworkDBPoint p = hctx.pointsByGeo.get(calcRPId(o, o.getSegmentStart(), o.getSegmentEnd()));
+					NetworkDBPoint p = hctx.getPointByGeo(calcRPId(o, o.getSegmentStart(), o.getSegmentEnd()));
 					if (p == null) {
 						System.err.println("Error calculations new final boundary not found");
 						continue;
@@ -1422,6 +2071,40 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 
 	}
 
+	private HHNetworkRouteRes createRouteSegmentFromPath(HHRoutingContext<T> hctx, int[] path) {
+		NetworkDBPoint[] points = hctx.getPointsByIndex();
+		HHNetworkRouteRes route = new HHNetworkRouteRes();
+		NetworkDBPoint start = points[path[0]];
+		if (start.rt(false).rtDetailedRoute != null) {
+			HHNetworkSegmentRes res = new HHNetworkSegmentRes(null);
+			res.list = new RouteResultPreparation().convertFinalSegmentToResults(hctx.rctx, start.rt(false).rtDetailedRoute);
+			res.rtTimeDetailed = res.rtTimeHHSegments = start.rt(false).rtDetailedRoute.distanceFromStart;
+			route.segments.add(res);
+		}
+		route.uniquePoints.add(start.index);
+		for (int i = 1; i < path.length; i++) {
+			NetworkDBPoint prev = points[path[i - 1]];
+			NetworkDBPoint next = points[path[i]];
+			// segments of reverse search part are loaded only for points closer to end
+			NetworkDBSegment segment = prev.getSegment(next, true);
+			if (segment == null) {
+				segment = next.getSegment(prev, false);
+			}
+			HHNetworkSegmentRes res = new HHNetworkSegmentRes(segment);
+			res.rtTimeDetailed = res.rtTimeHHSegments = segment.dist;
+			route.segments.add(res);
+			route.uniquePoints.add(next.index);
+		}
+		NetworkDBPoint end = points[path[path.length - 1]];
+		if (end.rt(true).rtDetailedRoute != null) {
+			HHNetworkSegmentRes res = new HHNetworkSegmentRes(null);
+			res.list = new RouteResultPreparation().convertFinalSegmentToResults(hctx.rctx, end.rt(true).rtDetailedRoute);
+			res.rtTimeDetailed = res.rtTimeHHSegments = end.rt(true).rtDetailedRoute.distanceFromStart;
+			route.segments.add(res);
+		}
+		return route;
+	}
+
 	/// Utilities
 	static final int ROUTE_POINTS = 11;
 	public static RouteSegmentPoint loadPoint(RoutingContext ctx, NetworkDBPoint pnt) {
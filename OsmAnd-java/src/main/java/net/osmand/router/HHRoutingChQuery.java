@@ -0,0 +1,413 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPointRouteInfo;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+
+/**
+ * Bidirectional contraction hierarchy query over HH network points: both directions go only upward by
+ * {@link NetworkDBPoint#chInd()}, point reached shorter from a higher neighbour isn't expanded (stall-on-demand) and
+ * search stops once both queues are not better than the best meeting point.
+ *
+ * If network isn't contracted, the same search runs as plain bidirectional dijkstra.
+ *
+ * Distances, parents and queues are primitive arrays by point index. Workspaces are kept by routing context
+ * ({@link HHRoutingContext#acquireChQuery()}), so they are released with context, and only touched entries are reset
+ * after query, so repeated queries don't allocate. Found path is written to route info of points
+ * as by generic search, so final route is built the same way.
+ */
+class HHRoutingChQuery {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+	private static final byte SETTLED_POS = 1;
+	private static final byte SETTLED_REV = 2;
+	private static final byte TOUCHED = 4;
+	private static final byte EXCLUDED = 8;
+	private static final byte PENALIZED = 16;
+	private static final int CHECK_CANCEL_ITERATIONS = 1 << 10;
+
+	private double[] distPos = new double[0];
+	private double[] distRev = new double[0];
+	private int[] parentPos = new int[0];
+	private int[] parentRev = new int[0];
+	private byte[] state = new byte[0];
+	private final IndexedHeap queuePos = new IndexedHeap();
+	private final IndexedHeap queueRev = new IndexedHeap();
+	private final TIntArrayList touched = new TIntArrayList();
+
+	/**
+	 * @return meeting point with route info of path set or null if route isn't found or calculation was cancelled
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends NetworkDBPoint> T run(HHRoutingContext<T> hctx, TLongObjectHashMap<T> stPoints,
+			TLongObjectHashMap<T> endPoints) throws SQLException, IOException {
+		NetworkDBPoint[] points = hctx.getPointsByIndex();
+		try {
+			initStartEnd(hctx, stPoints, endPoints);
+			int meet = search(hctx, points, 0);
+			if (meet < 0) {
+				return null;
+			}
+			writeRoute(hctx, points, meet, false);
+			writeRoute(hctx, points, meet, true);
+			return (T) points[meet];
+		} finally {
+			clear();
+		}
+	}
+
+	/**
+	 * Searches route without changing route info of points, so it could run concurrently with other threads.
+	 * @param exclude points to avoid
+	 * @param penalized segments between these points cost (1 + penalty) times more
+	 * @return indexes of route points from start to end or null if route isn't found
+	 */
+	<T extends NetworkDBPoint> int[] searchPath(HHRoutingContext<T> hctx, TLongObjectHashMap<T> stPoints,
+			TLongObjectHashMap<T> endPoints, List<? extends NetworkDBPoint> exclude, int[] penalized, double penalty)
+			throws SQLException, IOException {
+		NetworkDBPoint[] points = hctx.getPointsByIndex();
+		try {
+			ensureCapacity(points.length);
+			for (NetworkDBPoint p : exclude) {
+				mark(p.index, EXCLUDED);
+			}
+			for (int ind : penalized) {
+				mark(ind, PENALIZED);
+			}
+			initStartEnd(hctx, stPoints, endPoints);
+			int meet = search(hctx, points, penalty);
+			if (meet < 0) {
+				return null;
+			}
+			TIntArrayList path = new TIntArrayList();
+			for (int ind = meet; ind >= 0; ind = parentPos[ind]) {
+				path.add(ind);
+			}
+			path.reverse();
+			for (int ind = parentRev[meet]; ind >= 0; ind = parentRev[ind]) {
+				path.add(ind);
+			}
+			return path.toArray();
+		} finally {
+			clear();
+		}
+	}
+
+	/**
+	 * @return cost of the fastest route between network points or infinity if there is no route
+	 */
+	<T extends NetworkDBPoint> double searchCost(HHRoutingContext<T> hctx, NetworkDBPoint start, NetworkDBPoint end)
+			throws SQLException, IOException {
+		NetworkDBPoint[] points = hctx.getPointsByIndex();
+		try {
+			ensureCapacity(points.length);
+			init(start.index, false, 0);
+			init(end.index, true, 0);
+			int meet = search(hctx, points, 0);
+			return meet < 0 ? INF : distPos[meet] + distRev[meet];
+		} finally {
+			clear();
+		}
+	}
+
+	private <T extends NetworkDBPoint> void initStartEnd(HHRoutingContext<T> hctx, TLongObjectHashMap<T> stPoints,
+			TLongObjectHashMap<T> endPoints) {
+		ensureCapacity(hctx.getPointsByIndex().length);
+		for (T start : stPoints.valueCollection()) {
+			if (!start.rtExclude) {
+				init(start.index, false, start.rt(false).rtDistanceFromStart);
+			}
+		}
+		for (T end : endPoints.valueCollection()) {
+			if (!end.rtExclude) {
+				init(end.index, true, end.rt(true).rtDistanceFromStart);
+			}
+		}
+	}
+
+	// CH query or bidirectional dijkstra if network isn't contracted, returns index of meeting point or -1
+	@SuppressWarnings("unchecked")
+	private <T extends NetworkDBPoint> int search(HHRoutingContext<T> hctx, NetworkDBPoint[] points, double penalty)
+			throws SQLException, IOException {
+		boolean ch = hctx.config.USE_CH;
+		boolean skipShortcuts = !hctx.config.USE_CH && !hctx.config.USE_CH_SHORTCUTS;
+		RouteCalculationProgress progress = hctx.rctx == null ? null : hctx.rctx.calculationProgress;
+		double best = INF;
+		int meet = -1;
+		int iterations = 0;
+		// stats of context are shared by parallel queries, so they're updated once after search
+		int visited = 0;
+		int added = 0;
+		try {
+			while (true) {
+				double minPos = queuePos.isEmpty() ? INF : distPos[queuePos.peek()];
+				double minRev = queueRev.isEmpty() ? INF : distRev[queueRev.peek()];
+				// CH meets only at top points, dijkstra meets in the middle
+				if (ch ? (minPos >= best && minRev >= best) : minPos + minRev >= best) {
+					break;
+				}
+				if (++iterations % CHECK_CANCEL_ITERATIONS == 0 && progress != null && progress.isCancelled) {
+					return -1;
+				}
+				boolean rev = minRev < minPos;
+				int ind = (rev ? queueRev : queuePos).poll();
+				double[] dist = rev ? distRev : distPos;
+				double d = dist[ind];
+				state[ind] |= rev ? SETTLED_REV : SETTLED_POS;
+				visited++;
+				double other = (rev ? distPos : distRev)[ind];
+				if (d + other < best) {
+					best = d + other;
+					meet = ind;
+				}
+				T point = (T) points[ind];
+				if (ch && isStalled(hctx, point, d, rev, penalty)) {
+					continue;
+				}
+				boolean penalizedPoint = (state[ind] & PENALIZED) != 0;
+				for (NetworkDBSegment connected : loadSegments(hctx, point, rev)) {
+					NetworkDBPoint next = rev ? connected.start : connected.end;
+					if (next.rtExclude || connected.dist < 0 || (skipShortcuts && connected.shortcut)
+							|| (ch && !upward(point, next))) {
+						continue;
+					}
+					int nextInd = next.index;
+					if ((state[nextInd] & (EXCLUDED | (rev ? SETTLED_REV : SETTLED_POS))) != 0) {
+						continue;
+					}
+					double nd = d + connected.dist;
+					if (penalizedPoint && (state[nextInd] & PENALIZED) != 0) {
+						nd += connected.dist * penalty;
+					}
+					if (nd < dist[nextInd]) {
+						touch(nextInd);
+						dist[nextInd] = nd;
+						(rev ? parentRev : parentPos)[nextInd] = ind;
+						(rev ? queueRev : queuePos).update(nextInd);
+						added++;
+					}
+				}
+			}
+		} finally {
+			synchronized (hctx) {
+				hctx.stats.visitedVertices += visited;
+				hctx.stats.uniqueVisitedVertices += visited;
+				hctx.stats.addedVertices += added;
+			}
+		}
+		return meet;
+	}
+
+	// same restriction as generic search with CH: never go to lower point
+	private static boolean upward(NetworkDBPoint from, NetworkDBPoint to) {
+		return !(to.chInd() > 0 && to.chInd() < from.chInd());
+	}
+
+	// point is reached shorter from higher point, segment costs are penalized the same way as by search
+	private <T extends NetworkDBPoint> boolean isStalled(HHRoutingContext<T> hctx, T point, double d, boolean rev,
+			double penalty) throws SQLException, IOException {
+		// segments coming to point in search direction are stored in opposite direction
+		double[] dist = rev ? distRev : distPos;
+		boolean penalizedPoint = (state[point.index] & PENALIZED) != 0;
+		for (NetworkDBSegment connected : loadSegments(hctx, point, !rev)) {
+			NetworkDBPoint prev = rev ? connected.end : connected.start;
+			if (connected.dist < 0 || prev.rtExclude || upward(prev, point)) {
+				continue;
+			}
+			double segmentDist = connected.dist;
+			if (penalizedPoint && (state[prev.index] & PENALIZED) != 0) {
+				segmentDist += connected.dist * penalty;
+			}
+			if (dist[prev.index] + segmentDist < d) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private <T extends NetworkDBPoint> List<NetworkDBSegment> loadSegments(HHRoutingContext<T> hctx, T point,
+			boolean rev) throws SQLException, IOException {
+		synchronized (hctx) {
+			long tm = System.nanoTime();
+			hctx.stats.loadEdgesCnt += hctx.loadNetworkSegmentPoint(point, rev);
+			hctx.stats.loadEdgesTime += (System.nanoTime() - tm) / 1e6;
+			return point.connected(rev);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends NetworkDBPoint> void writeRoute(HHRoutingContext<T> hctx, NetworkDBPoint[] points, int ind,
+			boolean rev) {
+		double[] dist = rev ? distRev : distPos;
+		int[] parent = rev ? parentRev : parentPos;
+		while (ind >= 0) {
+			NetworkDBPoint p = points[ind];
+			NetworkDBPointRouteInfo rt = p.rt(rev);
+			int par = parent[ind];
+			if (par >= 0) {
+				// start points keep their detailed route, others are cleared by context after routing
+				rt.rtRouteToPoint = points[par];
+				rt.rtDistanceFromStart = dist[ind];
+				rt.rtCost = dist[ind];
+				hctx.queueAdded.add((T) p);
+			}
+			rt.rtVisited = true;
+			ind = par;
+		}
+	}
+
+	private void init(int ind, boolean rev, double d) {
+		double[] dist = rev ? distRev : distPos;
+		if (d < dist[ind] && (state[ind] & EXCLUDED) == 0) {
+			touch(ind);
+			dist[ind] = d;
+			(rev ? queueRev : queuePos).update(ind);
+		}
+	}
+
+	private void mark(int ind, byte flag) {
+		touch(ind);
+		state[ind] |= flag;
+	}
+
+	private void touch(int ind) {
+		if ((state[ind] & TOUCHED) == 0) {
+			state[ind] |= TOUCHED;
+			touched.add(ind);
+		}
+	}
+
+	private void ensureCapacity(int size) {
+		if (distPos.length >= size) {
+			return;
+		}
+		distPos = new double[size];
+		distRev = new double[size];
+		parentPos = new int[size];
+		parentRev = new int[size];
+		state = new byte[size];
+		Arrays.fill(distPos, INF);
+		Arrays.fill(distRev, INF);
+		Arrays.fill(parentPos, -1);
+		Arrays.fill(parentRev, -1);
+		queuePos.init(distPos);
+		queueRev.init(distRev);
+	}
+
+	private void clear() {
+		queuePos.clear();
+		queueRev.clear();
+		for (int i = 0; i < touched.size(); i++) {
+			int ind = touched.getQuick(i);
+			distPos[ind] = INF;
+			distRev[ind] = INF;
+			parentPos[ind] = -1;
+			parentRev[ind] = -1;
+			state[ind] = 0;
+		}
+		touched.resetQuick();
+	}
+
+	/**
+	 * Binary min heap of point indexes by distance with decrease key
+	 */
+	private static class IndexedHeap {
+		private double[] keys;
+		private int[] heap;
+		private int[] pos;
+		private int size;
+
+		void init(double[] keys) {
+			this.keys = keys;
+			heap = new int[Math.max(16, keys.length / 8)];
+			pos = new int[keys.length];
+			Arrays.fill(pos, -1);
+			size = 0;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int peek() {
+			return heap[0];
+		}
+
+		int poll() {
+			int top = heap[0];
+			pos[top] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				pos[heap[0]] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		// adds index or moves it up after its key decreased
+		void update(int ind) {
+			int i = pos[ind];
+			if (i < 0) {
+				if (size == heap.length) {
+					heap = Arrays.copyOf(heap, size * 2);
+				}
+				i = size++;
+				heap[i] = ind;
+				pos[ind] = i;
+			}
+			siftUp(i);
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				pos[heap[i]] = -1;
+			}
+			size = 0;
+		}
+
+		private void siftUp(int i) {
+			int ind = heap[i];
+			double key = keys[ind];
+			while (i > 0) {
+				int p = (i - 1) >>> 1;
+				if (keys[heap[p]] <= key) {
+					break;
+				}
+				heap[i] = heap[p];
+				pos[heap[i]] = i;
+				i = p;
+			}
+			heap[i] = ind;
+			pos[ind] = i;
+		}
+
+		private void siftDown(int i) {
+			int ind = heap[i];
+			double key = keys[ind];
+			int half = size >>> 1;
+			while (i < half) {
+				int c = 2 * i + 1;
+				if (c + 1 < size && keys[heap[c + 1]] < keys[heap[c]]) {
+					c++;
+				}
+				if (key <= keys[heap[c]]) {
+					break;
+				}
+				heap[i] = heap[c];
+				pos[heap[i]] = i;
+				i = c;
+			}
+			heap[i] = ind;
+			pos[ind] = i;
+		}
+	}
+}
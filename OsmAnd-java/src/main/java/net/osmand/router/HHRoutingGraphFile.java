@@ -0,0 +1,529 @@
+package net.osmand.router;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
+import net.osmand.data.DataTileManager;
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.HHRouteRegionPointsCtx;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPointCh;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+import net.osmand.util.Algorithms;
+
+/**
+ * HH-routing network graph exported from {@link HHRoutingDB} (.hhdb / .chdb) into compact binary file which is
+ * memory mapped for routing. Points are stored as fixed size records ordered by point index with indexes by geo id
+ * and by tile, segments of each routing profile as CSR adjacency (offsets by point position + targets). Routing
+ * context creates point objects only for points reached by search (see {@link HHRoutingContext#getPointByPosition}),
+ * so loading doesn't run SQL queries and doesn't depend on network size.
+ *
+ * File layout (big endian):
+ * <pre>
+ * int MAGIC, int VERSION, int header length, header: UTF routingProfile, int profiles, [int id, UTF params],
+ *          int points, int tile zoom, int tiles
+ * points: [int index, int dual point position, int clusterId, int chInd, long roadId, short start, short end,
+ *          int startX, int startY, int endX, int endY, int tag values offset] - POINT_SIZE bytes
+ * geo index: [long geo id, int point position] ordered by geo id - GEO_SIZE bytes
+ * tile index: [long tile, int first point] ordered by tile - TILE_SIZE bytes, int[points] point positions by tile
+ * tag values: int length, [int length, UTF-8 bytes of serialized tag/value array]
+ * profile blocks: int profileId, int out segments, int in segments, int[points + 1] out offsets,
+ *          int[points + 1] in offsets, out segments [int point position (shortcut in high bit), double dist], in segments
+ * </pre>
+ * Point position is used as {@link NetworkDBPoint#fileId}.
+ */
+public class HHRoutingGraphFile {
+
+	public static final String EXT = ".hhgraph";
+
+	private static final int MAGIC = 0x48484752; // HHGR
+	private static final int VERSION = 2;
+	private static final int POINT_SIZE = 48;
+	private static final int GEO_SIZE = 12;
+	private static final int TILE_SIZE = 12;
+	private static final int SEGMENT_SIZE = 12;
+	private static final int SHORTCUT_MASK = 0x80000000;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final String routingProfile;
+	private final TIntObjectHashMap<String> routingProfiles = new TIntObjectHashMap<String>();
+	private final int pointsCount;
+	private final int tilesCount;
+	private final MappedByteBuffer points;
+	private final MappedByteBuffer geoIndex;
+	private final MappedByteBuffer tiles;
+	private final MappedByteBuffer tilePoints;
+	private final MappedByteBuffer tagValues;
+	private final TIntObjectHashMap<ProfileBlock> blocks = new TIntObjectHashMap<ProfileBlock>();
+
+	private static class ProfileBlock {
+		MappedByteBuffer offsets;
+		MappedByteBuffer outSegments;
+		MappedByteBuffer inSegments;
+	}
+
+	/**
+	 * Sets segments of routing profile as connected lists of points
+	 */
+	interface SegmentsLoader {
+		void loadSegments(int routingProfile, List<NetworkDBPointCh> points) throws SQLException;
+	}
+
+	private HHRoutingGraphFile(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		boolean ok = false;
+		try {
+			FileChannel ch = raf.getChannel();
+			ByteBuffer bf = readBuffer(ch, 0, 12);
+			if (bf.getInt() != MAGIC) {
+				throw new IOException("Not a HH routing graph file " + file.getName());
+			}
+			int version = bf.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported HH routing graph version " + version + " " + file.getName());
+			}
+			int headerLength = bf.getInt();
+			DataInputStream header = new DataInputStream(
+					new ByteArrayInputStream(readBuffer(ch, 12, headerLength).array()));
+			routingProfile = header.readUTF();
+			int profiles = header.readInt();
+			for (int i = 0; i < profiles; i++) {
+				int id = header.readInt();
+				routingProfiles.put(id, header.readUTF());
+			}
+			pointsCount = header.readInt();
+			int tileZoom = header.readInt();
+			if (tileZoom != HHRoutingContext.POINTS_RECT_ZOOM) {
+				throw new IOException("Unsupported tile zoom " + tileZoom + " " + file.getName());
+			}
+			tilesCount = header.readInt();
+			long pos = 12 + headerLength;
+			points = map(ch, pos, (long) pointsCount * POINT_SIZE);
+			pos += (long) pointsCount * POINT_SIZE;
+			geoIndex = map(ch, pos, (long) pointsCount * GEO_SIZE);
+			pos += (long) pointsCount * GEO_SIZE;
+			tiles = map(ch, pos, (long) tilesCount * TILE_SIZE);
+			pos += (long) tilesCount * TILE_SIZE;
+			tilePoints = map(ch, pos, (long) pointsCount * 4);
+			pos += (long) pointsCount * 4;
+			int tagsLength = readBuffer(ch, pos, 4).getInt();
+			tagValues = map(ch, pos + 4, tagsLength);
+			pos += 4 + tagsLength;
+			long offsetsSize = (long) (pointsCount + 1) * 4;
+			for (int i = 0; i < profiles; i++) {
+				bf = readBuffer(ch, pos, 12);
+				int profileId = bf.getInt();
+				long outSize = (long) bf.getInt() * SEGMENT_SIZE;
+				long inSize = (long) bf.getInt() * SEGMENT_SIZE;
+				pos += 12;
+				ProfileBlock b = new ProfileBlock();
+				b.offsets = map(ch, pos, 2 * offsetsSize);
+				pos += 2 * offsetsSize;
+				b.outSegments = map(ch, pos, outSize);
+				pos += outSize;
+				b.inSegments = map(ch, pos, inSize);
+				pos += inSize;
+				blocks.put(profileId, b);
+			}
+			ok = true;
+		} finally {
+			if (!ok) {
+				raf.close();
+			}
+		}
+	}
+
+	public static HHRoutingGraphFile open(File file) throws IOException {
+		return new HHRoutingGraphFile(file);
+	}
+
+	private static ByteBuffer readBuffer(FileChannel ch, long pos, int length) throws IOException {
+		ByteBuffer bf = ByteBuffer.allocate(length);
+		while (bf.hasRemaining()) {
+			if (ch.read(bf, pos + bf.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		// cast keeps compatibility with pre-9 runtimes where flip() returns Buffer
+		((Buffer) bf).flip();
+		return bf;
+	}
+
+	private static MappedByteBuffer map(FileChannel ch, long pos, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Section is too large to be mapped: " + size);
+		}
+		return ch.map(FileChannel.MapMode.READ_ONLY, pos, size);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getRoutingProfile() {
+		return routingProfile;
+	}
+
+	public TIntObjectHashMap<String> getRoutingProfiles() {
+		return routingProfiles;
+	}
+
+	public int getPointsCount() {
+		return pointsCount;
+	}
+
+	public int getMaxPointIndex() {
+		return pointsCount == 0 ? -1 : points.getInt((pointsCount - 1) * POINT_SIZE);
+	}
+
+	/**
+	 * @return position of point with index or -1
+	 */
+	public int findPointByIndex(int index) {
+		return search(points, pointsCount, POINT_SIZE, index, true);
+	}
+
+	/**
+	 * @return position of point with geo id (see {@link NetworkDBPoint#getGeoPntId()}) or -1
+	 */
+	public int findPointByGeo(long geoId) {
+		int rec = search(geoIndex, pointsCount, GEO_SIZE, geoId, false);
+		return rec < 0 ? -1 : geoIndex.getInt(rec * GEO_SIZE + 8);
+	}
+
+	/**
+	 * Adds positions of points of tile evaluated by {@link DataTileManager} of {@link HHRoutingContext#POINTS_RECT_ZOOM}
+	 */
+	public void findTilePoints(long tile, TIntArrayList positions) {
+		int rec = search(tiles, tilesCount, TILE_SIZE, tile, false);
+		if (rec < 0) {
+			return;
+		}
+		int from = tiles.getInt(rec * TILE_SIZE + 8);
+		int to = rec + 1 < tilesCount ? tiles.getInt((rec + 1) * TILE_SIZE + 8) : pointsCount;
+		for (int i = from; i < to; i++) {
+			positions.add(tilePoints.getInt(i * 4));
+		}
+	}
+
+	// binary search of record by key stored in the beginning of record
+	private static int search(MappedByteBuffer bf, int count, int recordSize, long key, boolean intKey) {
+		int lo = 0;
+		int hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long k = intKey ? bf.getInt(mid * recordSize) : bf.getLong(mid * recordSize);
+			if (k < key) {
+				lo = mid + 1;
+			} else if (k > key) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public int getDualPoint(int pos) {
+		return points.getInt(pos * POINT_SIZE + 4);
+	}
+
+	/**
+	 * Creates point object without dual point and segments
+	 */
+	public <T extends NetworkDBPoint> T createPoint(int pos, short mapId, Class<T> cl) {
+		T pnt;
+		try {
+			pnt = cl.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		int p = pos * POINT_SIZE;
+		pnt.mapId = mapId;
+		pnt.fileId = pos;
+		pnt.index = points.getInt(p);
+		pnt.clusterId = points.getInt(p + 8);
+		if (pnt instanceof NetworkDBPointCh) {
+			((NetworkDBPointCh) pnt).chInd = points.getInt(p + 12);
+		}
+		pnt.roadId = points.getLong(p + 16);
+		pnt.start = points.getShort(p + 24);
+		pnt.end = points.getShort(p + 26);
+		pnt.startX = points.getInt(p + 28);
+		pnt.startY = points.getInt(p + 32);
+		pnt.endX = points.getInt(p + 36);
+		pnt.endY = points.getInt(p + 40);
+		int tagsOffset = points.getInt(p + 44);
+		if (tagsOffset >= 0) {
+			String[] arr = Algorithms.deserializeStringArray(readString(tagsOffset));
+			if (arr != null && arr.length > 0) {
+				pnt.tagValues = new ArrayList<>();
+				for (int k = 0; k + 1 < arr.length; k += 2) {
+					pnt.tagValues.add(new TagValuePair(arr[k], arr[k + 1], -1));
+				}
+			}
+		}
+		pnt.markSegmentsNotLoaded();
+		return pnt;
+	}
+
+	private String readString(int offset) {
+		byte[] b = new byte[tagValues.getInt(offset)];
+		ByteBuffer bf = tagValues.duplicate();
+		((Buffer) bf).position(offset + 4);
+		bf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	public <T extends NetworkDBPoint> int loadNetworkSegmentPoint(HHRoutingContext<T> ctx, HHRouteRegionPointsCtx<T> reg,
+			T point, boolean reverse) {
+		if (point.connected(reverse) != null) {
+			return 0;
+		}
+		ProfileBlock b = blocks.get(reg.getRoutingProfile());
+		if (b == null || point.fileId < 0 || point.fileId >= pointsCount) {
+			point.connectedSet(true, new ArrayList<NetworkDBSegment>());
+			point.connectedSet(false, new ArrayList<NetworkDBSegment>());
+			return 0;
+		}
+		List<NetworkDBSegment> outs = readSegments(ctx, b, point, true);
+		List<NetworkDBSegment> ins = readSegments(ctx, b, point, false);
+		point.connectedSet(false, outs);
+		point.connectedSet(true, ins);
+		return outs.size() + ins.size();
+	}
+
+	private List<NetworkDBSegment> readSegments(HHRoutingContext<?> ctx, ProfileBlock b, NetworkDBPoint pnt,
+			boolean out) {
+		int base = out ? 0 : (pointsCount + 1) * 4;
+		int from = b.offsets.getInt(base + pnt.fileId * 4);
+		int to = b.offsets.getInt(base + (pnt.fileId + 1) * 4);
+		MappedByteBuffer segments = out ? b.outSegments : b.inSegments;
+		List<NetworkDBSegment> l = new ArrayList<NetworkDBSegment>(to - from);
+		for (int s = from; s < to; s++) {
+			int target = segments.getInt(s * SEGMENT_SIZE);
+			double dist = segments.getDouble(s * SEGMENT_SIZE + 4);
+			boolean shortcut = (target & SHORTCUT_MASK) != 0;
+			NetworkDBPoint other = ctx.getPointByPosition(target & ~SHORTCUT_MASK);
+			NetworkDBPoint start = out ? pnt : other;
+			NetworkDBPoint end = out ? other : pnt;
+			l.add(new NetworkDBSegment(start, end, dist, out, shortcut));
+		}
+		return l;
+	}
+
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	/**
+	 * Exports points and segments of all routing profiles of network db into graph file
+	 */
+	public static void export(final HHRoutingDB db, File out) throws SQLException, IOException {
+		TLongObjectHashMap<NetworkDBPointCh> pointsById = db.loadNetworkPoints((short) 0, NetworkDBPointCh.class);
+		final HHRoutingContext<NetworkDBPointCh> ctx = new HHRoutingContext<>();
+		ctx.pointsById = pointsById;
+		ctx.clusterOutPoints = HHRoutePlanner.groupByClusters(pointsById, true);
+		ctx.clusterInPoints = HHRoutePlanner.groupByClusters(pointsById, false);
+		final HHRouteRegionPointsCtx<NetworkDBPointCh> reg = new HHRouteRegionPointsCtx<>((short) 0, db);
+		ctx.regions.add(reg);
+		write(db.getRoutingProfile(), db.getRoutingProfiles(), pointsById.valueCollection(), new SegmentsLoader() {
+
+			@Override
+			public void loadSegments(int routingProfile, List<NetworkDBPointCh> points) throws SQLException {
+				reg.routingProfile = routingProfile;
+				ctx.unloadAllConnections();
+				for (NetworkDBPointCh p : points) {
+					db.loadNetworkSegmentPoint(ctx, reg, p, false);
+					db.loadNetworkSegmentPoint(ctx, reg, p, true);
+				}
+			}
+		}, out);
+	}
+
+	static void write(String routingProfile, TIntObjectHashMap<String> profiles, Collection<NetworkDBPointCh> points,
+			SegmentsLoader loader, File out) throws SQLException, IOException {
+		final List<NetworkDBPointCh> pnts = new ArrayList<>(points);
+		Collections.sort(pnts, HHRoutingDB.indexComparator);
+		for (int i = 0; i < pnts.size(); i++) {
+			pnts.get(i).fileId = i;
+		}
+		List<NetworkDBPointCh> byGeo = new ArrayList<>(pnts);
+		Collections.sort(byGeo, new Comparator<NetworkDBPoint>() {
+
+			@Override
+			public int compare(NetworkDBPoint o1, NetworkDBPoint o2) {
+				return Long.compare(o1.getGeoPntId(), o2.getGeoPntId());
+			}
+		});
+		DataTileManager<NetworkDBPoint> tileManager = new DataTileManager<>(HHRoutingContext.POINTS_RECT_ZOOM);
+		final long[] pointTiles = new long[pnts.size()];
+		for (int i = 0; i < pnts.size(); i++) {
+			LatLon l = pnts.get(i).getPoint();
+			pointTiles[i] = tileManager.evaluateTile(l.getLatitude(), l.getLongitude());
+		}
+		List<NetworkDBPointCh> byTile = new ArrayList<>(pnts);
+		Collections.sort(byTile, new Comparator<NetworkDBPoint>() {
+
+			@Override
+			public int compare(NetworkDBPoint o1, NetworkDBPoint o2) {
+				int c = Long.compare(pointTiles[o1.fileId], pointTiles[o2.fileId]);
+				return c != 0 ? c : Integer.compare(o1.fileId, o2.fileId);
+			}
+		});
+		TLongArrayList tileKeys = new TLongArrayList();
+		TIntArrayList tileStarts = new TIntArrayList();
+		for (int i = 0; i < byTile.size(); i++) {
+			long tile = pointTiles[byTile.get(i).fileId];
+			if (tileKeys.isEmpty() || tileKeys.get(tileKeys.size() - 1) != tile) {
+				tileKeys.add(tile);
+				tileStarts.add(i);
+			}
+		}
+
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeUTF(routingProfile);
+		header.writeInt(profiles.size());
+		TIntObjectIterator<String> it = profiles.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			header.writeInt(it.key());
+			header.writeUTF(it.value());
+		}
+		header.writeInt(pnts.size());
+		header.writeInt(HHRoutingContext.POINTS_RECT_ZOOM);
+		header.writeInt(tileKeys.size());
+		header.close();
+
+		ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+		DataOutputStream tags = new DataOutputStream(tagBytes);
+		int[] tagOffsets = new int[pnts.size()];
+		for (int i = 0; i < pnts.size(); i++) {
+			NetworkDBPoint p = pnts.get(i);
+			tagOffsets[i] = -1;
+			if (p.tagValues != null && !p.tagValues.isEmpty()) {
+				String[] arr = new String[p.tagValues.size() * 2];
+				for (int k = 0; k < p.tagValues.size(); k++) {
+					arr[2 * k] = p.tagValues.get(k).tag;
+					arr[2 * k + 1] = p.tagValues.get(k).value;
+				}
+				byte[] b = Algorithms.serializeStringArray(arr).getBytes(StandardCharsets.UTF_8);
+				tagOffsets[i] = tags.size();
+				tags.writeInt(b.length);
+				tags.write(b);
+			}
+		}
+		tags.close();
+
+		DataOutputStream dous = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16));
+		try {
+			dous.writeInt(MAGIC);
+			dous.writeInt(VERSION);
+			dous.writeInt(headerBytes.size());
+			headerBytes.writeTo(dous);
+			for (int i = 0; i < pnts.size(); i++) {
+				NetworkDBPointCh p = pnts.get(i);
+				dous.writeInt(p.index);
+				dous.writeInt(p.dualPoint == null ? -1 : p.dualPoint.fileId);
+				dous.writeInt(p.clusterId);
+				dous.writeInt(p.chInd);
+				dous.writeLong(p.roadId);
+				dous.writeShort(p.start);
+				dous.writeShort(p.end);
+				dous.writeInt(p.startX);
+				dous.writeInt(p.startY);
+				dous.writeInt(p.endX);
+				dous.writeInt(p.endY);
+				dous.writeInt(tagOffsets[i]);
+			}
+			for (NetworkDBPointCh p : byGeo) {
+				dous.writeLong(p.getGeoPntId());
+				dous.writeInt(p.fileId);
+			}
+			for (int i = 0; i < tileKeys.size(); i++) {
+				dous.writeLong(tileKeys.get(i));
+				dous.writeInt(tileStarts.get(i));
+			}
+			for (NetworkDBPointCh p : byTile) {
+				dous.writeInt(p.fileId);
+			}
+			dous.writeInt(tagBytes.size());
+			tagBytes.writeTo(dous);
+
+			it = profiles.iterator();
+			while (it.hasNext()) {
+				it.advance();
+				loader.loadSegments(it.key(), pnts);
+				int outSegments = 0;
+				int inSegments = 0;
+				for (NetworkDBPointCh p : pnts) {
+					for (boolean rev : new boolean[] { false, true }) {
+						if (p.connected(rev) == null) {
+							p.connectedSet(rev, new ArrayList<NetworkDBSegment>());
+						}
+						Iterator<NetworkDBSegment> sit = p.connected(rev).iterator();
+						while (sit.hasNext()) {
+							NetworkDBSegment s = sit.next();
+							if (s.start == null || s.end == null) {
+								sit.remove();
+							}
+						}
+					}
+					outSegments += p.connected.size();
+					inSegments += p.connectedReverse.size();
+				}
+				dous.writeInt(it.key());
+				dous.writeInt(outSegments);
+				dous.writeInt(inSegments);
+				for (boolean rev : new boolean[] { false, true }) {
+					int offset = 0;
+					dous.writeInt(offset);
+					for (NetworkDBPointCh p : pnts) {
+						offset += p.connected(rev).size();
+						dous.writeInt(offset);
+					}
+				}
+				for (boolean rev : new boolean[] { false, true }) {
+					for (NetworkDBPointCh p : pnts) {
+						for (NetworkDBSegment s : p.connected(rev)) {
+							int target = (rev ? s.start : s.end).fileId;
+							dous.writeInt(s.shortcut ? target | SHORTCUT_MASK : target);
+							dous.writeDouble(s.dist);
+						}
+					}
+				}
+			}
+		} finally {
+			dous.close();
+		}
+	}
+}
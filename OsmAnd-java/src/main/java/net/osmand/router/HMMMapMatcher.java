@@ -0,0 +1,567 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.util.MapUtils;
+
+/**
+ * Hidden Markov model map matching (Newson & Krumm): states are road projections (candidates) of each GPS
+ * point, emission probability depends on distance to the road and transition probability on difference between
+ * route distance and straight distance of consecutive points. Transitions are calculated by bounded dijkstra by
+ * distance (without turn costs), one search per candidate. Viterbi decoding is incremental: route is fixed as soon
+ * as all survived paths go through the same state or when window is too long, so points could be added online.
+ * Route is broken (gap) when no candidate could be reached from previous point.
+ */
+public class HMMMapMatcher {
+
+	private static final int ROUTE_POINTS = 11;
+
+	private final RoutePlannerFrontEnd router;
+	private final RoutingContext ctx;
+	private final HMMConfig config;
+	// points closer than this distance to previous matched point are skipped
+	private final double minPointDistance;
+	// candidates further than this distance are not considered (m)
+	private final double candidateRadius;
+
+	private final List<List<HMMState>> window = new ArrayList<List<HMMState>>();
+	private LatLon lastLoc;
+	private int pointIndex;
+	private MatchedRoute current;
+	private final List<MatchedRoute> matched = new ArrayList<MatchedRoute>();
+	private List<RouteSegmentResult> emitted = new ArrayList<RouteSegmentResult>();
+
+	private int transitionSearches;
+	private int candidateSearches;
+
+	/**
+	 * Continuous part of matched route between points startInd and endInd
+	 */
+	public static class MatchedRoute {
+		public final int startInd;
+		public int endInd;
+		public final List<RouteSegmentResult> route = new ArrayList<RouteSegmentResult>();
+
+		MatchedRoute(int startInd) {
+			this.startInd = startInd;
+			this.endInd = startInd;
+		}
+	}
+
+	/**
+	 * Parameters of matching
+	 */
+	public static class HMMConfig {
+		public static final HMMConfig DEFAULT = new HMMConfig(10, 5, 8, 3, 50);
+
+		// standard deviation of GPS error (m)
+		public final double sigmaZ;
+		// transition parameter (m): how much route distance could differ from straight distance
+		public final double beta;
+		// max count of candidates per point
+		public final int maxCandidates;
+		// route between candidates longer than straight distance * factor is not searched
+		public final double maxRouteDistanceFactor;
+		// route is forced to be fixed when it's not converged for that number of points
+		public final int maxWindow;
+
+		public HMMConfig(double sigmaZ, double beta, int maxCandidates, double maxRouteDistanceFactor, int maxWindow) {
+			this.sigmaZ = sigmaZ;
+			this.beta = beta;
+			this.maxCandidates = maxCandidates;
+			this.maxRouteDistanceFactor = maxRouteDistanceFactor;
+			this.maxWindow = maxWindow;
+		}
+
+		// points closer than GPS error don't add information
+		public double getMinPointDistance() {
+			return 2 * sigmaZ;
+		}
+	}
+
+	private static class HMMState {
+		final RouteSegmentPoint pnt;
+		final int ind;
+		double score;
+		HMMState prev;
+		// route from previous state, first and last segments are not precise
+		List<RouteSegmentResult> route;
+		// point of state segment from which it was reached or -1 for first point of route
+		int arrivalInd = -1;
+
+		HMMState(RouteSegmentPoint pnt, int ind) {
+			this.pnt = pnt;
+			this.ind = ind;
+		}
+	}
+
+	private static class PathNode {
+		final RouteDataObject road;
+		final int ind;
+		final double dist;
+		final PathNode parent;
+
+		PathNode(RouteDataObject road, int ind, double dist, PathNode parent) {
+			this.road = road;
+			this.ind = ind;
+			this.dist = dist;
+			this.parent = parent;
+		}
+	}
+
+	public HMMMapMatcher(RoutePlannerFrontEnd router, RoutingContext ctx) {
+		this(router, ctx, HMMConfig.DEFAULT);
+	}
+
+	public HMMMapMatcher(RoutePlannerFrontEnd router, RoutingContext ctx, HMMConfig config) {
+		this.router = router;
+		this.ctx = ctx;
+		this.config = config;
+		this.minPointDistance = config.getMinPointDistance();
+		this.candidateRadius = ctx.config.minPointApproximation;
+	}
+
+	/**
+	 * Adds next GPS point (online mode)
+	 * @return route segments which were fixed after adding the point (could be empty)
+	 */
+	public List<RouteSegmentResult> addPoint(LatLon loc) throws IOException {
+		addPoint(pointIndex++, loc);
+		return pollEmitted();
+	}
+
+	/**
+	 * Finishes matching and fixes the rest of route
+	 * @return route segments which were fixed
+	 */
+	public List<RouteSegmentResult> finish() {
+		finishRoute();
+		return pollEmitted();
+	}
+
+	/**
+	 * @return matched continuous routes (finished ones and fixed part of current one)
+	 */
+	public List<MatchedRoute> getMatchedRoutes() {
+		List<MatchedRoute> res = new ArrayList<MatchedRoute>(matched);
+		if (current != null && !current.route.isEmpty()) {
+			res.add(current);
+		}
+		return res;
+	}
+
+	public int getTransitionSearches() {
+		return transitionSearches;
+	}
+
+	/**
+	 * Matches all points and sets routes to gpx points in the same way as greedy approximation
+	 * (start point of each matched route has route to target point)
+	 */
+	public void matchGpxPoints(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) throws IOException {
+		RouteCalculationProgress progress = ctx.calculationProgress;
+		for (GpxPoint p : gpxPoints) {
+			if (progress != null && progress.isCancelled) {
+				return;
+			}
+			addPoint(p.ind, p.loc);
+			if (progress != null) {
+				progress.approximatedDistance = (float) p.cumDist;
+			}
+		}
+		finishRoute();
+		emitted.clear();
+		for (MatchedRoute r : matched) {
+			GpxPoint start = gpxPoints.get(r.startInd);
+			start.routeToTarget = r.route;
+			start.targetInd = r.endInd;
+			if (ctx.getVisitor() != null) {
+				ctx.getVisitor().visitApproximatedSegments(r.route, start, gpxPoints.get(r.endInd));
+			}
+		}
+		gctx.routePointsSearched += candidateSearches;
+		gctx.routeCalculations += transitionSearches;
+	}
+
+	private List<RouteSegmentResult> pollEmitted() {
+		List<RouteSegmentResult> res = emitted;
+		emitted = new ArrayList<RouteSegmentResult>();
+		return res;
+	}
+
+	private void addPoint(int ind, LatLon loc) throws IOException {
+		if (lastLoc != null && MapUtils.getDistance(lastLoc, loc) < minPointDistance) {
+			return;
+		}
+		List<HMMState> states = findCandidates(ind, loc);
+		if (states.isEmpty()) {
+			// outlier or no roads, skip point
+			return;
+		}
+		if (!window.isEmpty()) {
+			List<HMMState> prevStates = window.get(window.size() - 1);
+			double straightDist = MapUtils.getDistance(lastLoc, loc);
+			for (HMMState s : states) {
+				s.score = Double.NEGATIVE_INFINITY;
+			}
+			for (HMMState a : prevStates) {
+				calculateTransitions(a, states, straightDist);
+			}
+			List<HMMState> reached = new ArrayList<HMMState>();
+			for (HMMState s : states) {
+				if (s.score > Double.NEGATIVE_INFINITY) {
+					reached.add(s);
+				}
+			}
+			if (reached.isEmpty()) {
+				finishRoute();
+			} else {
+				states = reached;
+			}
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		for (HMMState s : states) {
+			double d = MapUtils.squareRootDist31(s.pnt.preciseX, s.pnt.preciseY, MapUtils.get31TileNumberX(loc.getLongitude()),
+					MapUtils.get31TileNumberY(loc.getLatitude()));
+			s.score = (window.isEmpty() ? 0 : s.score) - 0.5 * (d / config.sigmaZ) * (d / config.sigmaZ);
+			max = Math.max(max, s.score);
+		}
+		for (HMMState s : states) {
+			// normalize to avoid precision loss
+			s.score -= max;
+		}
+		if (window.isEmpty()) {
+			current = new MatchedRoute(ind);
+		}
+		window.add(states);
+		lastLoc = loc;
+		fixConvergedRoute();
+	}
+
+	private List<HMMState> findCandidates(int ind, LatLon loc) throws IOException {
+		candidateSearches++;
+		List<HMMState> res = new ArrayList<HMMState>();
+		RouteSegmentPoint pnt = router.findRouteSegment(loc.getLatitude(), loc.getLongitude(), ctx, null, false);
+		if (pnt == null) {
+			return res;
+		}
+		List<RouteSegmentPoint> all = new ArrayList<RouteSegmentPoint>();
+		all.add(pnt);
+		if (pnt.others != null) {
+			all.addAll(pnt.others);
+		}
+		for (RouteSegmentPoint p : all) {
+			if (MapUtils.getDistance(p.getPreciseLatLon(), loc) <= candidateRadius) {
+				res.add(new HMMState(p, ind));
+			}
+		}
+		if (res.size() > config.maxCandidates) {
+			final LatLon l = loc;
+			Collections.sort(res, new Comparator<HMMState>() {
+
+				@Override
+				public int compare(HMMState o1, HMMState o2) {
+					return Double.compare(MapUtils.getDistance(o1.pnt.getPreciseLatLon(), l),
+							MapUtils.getDistance(o2.pnt.getPreciseLatLon(), l));
+				}
+			});
+			res = new ArrayList<HMMState>(res.subList(0, config.maxCandidates));
+		}
+		return res;
+	}
+
+	private static long nodeId(RouteDataObject road, int ind) {
+		return (road.getId() << ROUTE_POINTS) + ind;
+	}
+
+	/**
+	 * Runs bounded dijkstra from state a and updates scores of target states
+	 */
+	private void calculateTransitions(HMMState a, List<HMMState> targets, double straightDist) {
+		transitionSearches++;
+		double maxDist = Math.max(straightDist * config.maxRouteDistanceFactor, straightDist + 4 * candidateRadius);
+		int cnt = targets.size();
+		double[] dist = new double[cnt];
+		PathNode[] last = new PathNode[cnt];
+		int[] arrival = new int[cnt];
+		TLongObjectHashMap<TIntArrayList> targetNodes = new TLongObjectHashMap<TIntArrayList>();
+		RouteSegmentPoint pa = a.pnt;
+		for (int j = 0; j < cnt; j++) {
+			dist[j] = Double.POSITIVE_INFINITY;
+			arrival[j] = -1;
+			RouteSegmentPoint pb = targets.get(j).pnt;
+			addTargetNode(targetNodes, nodeId(pb.road, pb.getSegmentStart()), j * 2);
+			addTargetNode(targetNodes, nodeId(pb.road, pb.getSegmentEnd()), j * 2 + 1);
+			if (pb.road.getId() == pa.road.getId() && pb.getSegmentStart() == pa.getSegmentStart()) {
+				// same segment: move along segment without reaching its points
+				int st = pa.getSegmentStart();
+				double da = MapUtils.squareRootDist31(pa.road.getPoint31XTile(st), pa.road.getPoint31YTile(st),
+						pa.preciseX, pa.preciseY);
+				double db = MapUtils.squareRootDist31(pa.road.getPoint31XTile(st), pa.road.getPoint31YTile(st),
+						pb.preciseX, pb.preciseY);
+				boolean forward = db >= da;
+				int arrivalInd = forward ? st : pa.getSegmentEnd();
+				int oneway = ctx.getRouter().isOneWay(pa.road);
+				if ((forward ? oneway >= 0 : oneway <= 0) && (a.arrivalInd == -1 || a.arrivalInd == arrivalInd)) {
+					dist[j] = Math.abs(db - da);
+					arrival[j] = arrivalInd;
+				}
+			}
+		}
+		PriorityQueue<PathNode> queue = new PriorityQueue<PathNode>(64, new Comparator<PathNode>() {
+
+			@Override
+			public int compare(PathNode o1, PathNode o2) {
+				return Double.compare(o1.dist, o2.dist);
+			}
+		});
+		int oneway = ctx.getRouter().isOneWay(pa.road);
+		if (oneway >= 0) {
+			queue.add(new PathNode(pa.road, pa.getSegmentEnd(), distToPoint(pa, pa.getSegmentEnd()), null));
+		}
+		if (oneway <= 0) {
+			queue.add(new PathNode(pa.road, pa.getSegmentStart(), distToPoint(pa, pa.getSegmentStart()), null));
+		}
+		TLongObjectHashMap<PathNode> visited = new TLongObjectHashMap<PathNode>();
+		while (!queue.isEmpty()) {
+			PathNode n = queue.poll();
+			if (n.dist > maxDist || n.dist >= max(dist)) {
+				break;
+			}
+			long id = nodeId(n.road, n.ind);
+			if (visited.containsKey(id)) {
+				continue;
+			}
+			visited.put(id, n);
+			TIntArrayList tn = targetNodes.get(id);
+			if (tn != null) {
+				for (int k = 0; k < tn.size(); k++) {
+					int j = tn.get(k) / 2;
+					boolean forward = tn.get(k) % 2 == 0;
+					int ow = ctx.getRouter().isOneWay(n.road);
+					if (forward ? ow >= 0 : ow <= 0) {
+						double d = n.dist + distToPoint(targets.get(j).pnt, n.ind);
+						if (d < dist[j]) {
+							dist[j] = d;
+							last[j] = n;
+							arrival[j] = n.ind;
+						}
+					}
+				}
+			}
+			int ow = ctx.getRouter().isOneWay(n.road);
+			int x = n.road.getPoint31XTile(n.ind);
+			int y = n.road.getPoint31YTile(n.ind);
+			if (ow >= 0 && n.ind + 1 < n.road.getPointsLength()) {
+				queue.add(new PathNode(n.road, n.ind + 1, n.dist + MapUtils.squareRootDist31(x, y,
+						n.road.getPoint31XTile(n.ind + 1), n.road.getPoint31YTile(n.ind + 1)), n));
+			}
+			if (ow <= 0 && n.ind > 0) {
+				queue.add(new PathNode(n.road, n.ind - 1, n.dist + MapUtils.squareRootDist31(x, y,
+						n.road.getPoint31XTile(n.ind - 1), n.road.getPoint31YTile(n.ind - 1)), n));
+			}
+			RouteSegment rs = ctx.loadRouteSegment(x, y, ctx.config.memoryLimitation);
+			while (rs != null) {
+				if (rs.getRoad().getId() != n.road.getId()) {
+					if (!visited.containsKey(nodeId(rs.getRoad(), rs.getSegmentStart()))) {
+						queue.add(new PathNode(rs.getRoad(), rs.getSegmentStart(), n.dist, n));
+					}
+				}
+				rs = rs.getNext();
+			}
+		}
+		for (int j = 0; j < cnt; j++) {
+			if (dist[j] == Double.POSITIVE_INFINITY) {
+				continue;
+			}
+			HMMState b = targets.get(j);
+			double s = a.score - Math.abs(dist[j] - straightDist) / config.beta;
+			if (s > b.score) {
+				b.score = s;
+				b.prev = a;
+				b.arrivalInd = arrival[j];
+				b.route = last[j] == null ? Collections.<RouteSegmentResult>emptyList() : buildRoute(a, last[j]);
+			}
+		}
+	}
+
+	private static void addTargetNode(TLongObjectHashMap<TIntArrayList> targetNodes, long id, int code) {
+		TIntArrayList l = targetNodes.get(id);
+		if (l == null) {
+			l = new TIntArrayList();
+			targetNodes.put(id, l);
+		}
+		l.add(code);
+	}
+
+	private static double distToPoint(RouteSegmentPoint p, int ind) {
+		return MapUtils.squareRootDist31(p.preciseX, p.preciseY, p.road.getPoint31XTile(ind),
+				p.road.getPoint31YTile(ind));
+	}
+
+	private static double max(double[] ar) {
+		double m = Double.NEGATIVE_INFINITY;
+		for (double d : ar) {
+			m = Math.max(m, d);
+		}
+		return m;
+	}
+
+	/**
+	 * Builds route from segment of state a (from the point it was reached) to last path node
+	 */
+	private List<RouteSegmentResult> buildRoute(HMMState a, PathNode lastNode) {
+		List<PathNode> path = new ArrayList<PathNode>();
+		for (PathNode n = lastNode; n != null; n = n.parent) {
+			path.add(n);
+		}
+		Collections.reverse(path);
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+		PathNode first = path.get(0);
+		int start = first.ind;
+		if (a.arrivalInd == -1) {
+			start = first.ind == a.pnt.getSegmentEnd() ? a.pnt.getSegmentStart() : a.pnt.getSegmentEnd();
+		} else if (a.arrivalInd != first.ind) {
+			start = a.arrivalInd;
+		}
+		RouteDataObject road = first.road;
+		int end = first.ind;
+		for (int i = 1; i < path.size(); i++) {
+			PathNode n = path.get(i);
+			if (n.road.getId() != road.getId()) {
+				addRouteSegment(res, road, start, end);
+				road = n.road;
+				start = n.ind;
+			}
+			end = n.ind;
+		}
+		addRouteSegment(res, road, start, end);
+		return res;
+	}
+
+	private static void addRouteSegment(List<RouteSegmentResult> res, RouteDataObject road, int start, int end) {
+		if (start == end) {
+			return;
+		}
+		if (!res.isEmpty()) {
+			RouteSegmentResult lst = res.get(res.size() - 1);
+			if (lst.getObject().getId() == road.getId() && lst.getEndPointIndex() == start
+					&& (lst.getEndPointIndex() > lst.getStartPointIndex()) == (end > start)) {
+				lst.setEndPointIndex(end);
+				return;
+			}
+		}
+		res.add(new RouteSegmentResult(road, start, end));
+	}
+
+	/**
+	 * Fixes route up to the last state which is ancestor of all current states
+	 */
+	private void fixConvergedRoute() {
+		Set<HMMState> ancestors = new HashSet<HMMState>(window.get(window.size() - 1));
+		for (int k = window.size() - 1; k > 0; k--) {
+			Set<HMMState> prev = new HashSet<HMMState>();
+			for (HMMState s : ancestors) {
+				prev.add(s.prev);
+			}
+			ancestors = prev;
+			if (ancestors.size() == 1) {
+				if (k - 1 > 0 || window.get(0).size() > 1) {
+					fixRoute(k - 1, ancestors.iterator().next());
+				}
+				return;
+			}
+		}
+		if (window.size() > config.maxWindow) {
+			HMMState best = getBestState(window.get(window.size() - 1));
+			int fixStep = window.size() - 1 - config.maxWindow / 2;
+			HMMState s = best;
+			for (int k = window.size() - 1; k > fixStep; k--) {
+				s = s.prev;
+			}
+			fixRoute(fixStep, s);
+		}
+	}
+
+	private static HMMState getBestState(List<HMMState> states) {
+		HMMState best = null;
+		for (HMMState s : states) {
+			if (best == null || s.score > best.score) {
+				best = s;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Fixes route till state at step of window, states which are not descendants of state are removed
+	 */
+	private void fixRoute(int step, HMMState state) {
+		List<HMMState> chain = new ArrayList<HMMState>();
+		for (HMMState s = state; s != null; s = s.prev) {
+			chain.add(s);
+		}
+		Collections.reverse(chain);
+		for (HMMState s : chain) {
+			if (s.route != null) {
+				for (RouteSegmentResult r : s.route) {
+					emitted.add(r);
+					current.route.add(r);
+				}
+			}
+		}
+		current.endInd = state.ind;
+		state.prev = null;
+		state.route = null;
+		window.subList(0, step).clear();
+		window.set(0, new ArrayList<HMMState>(Collections.singletonList(state)));
+		for (int k = 1; k < window.size(); k++) {
+			List<HMMState> kept = new ArrayList<HMMState>();
+			for (HMMState s : window.get(k)) {
+				if (window.get(k - 1).contains(s.prev)) {
+					kept.add(s);
+				}
+			}
+			window.set(k, kept);
+		}
+	}
+
+	/**
+	 * Fixes the rest of current route by the best state and finishes it
+	 */
+	private void finishRoute() {
+		if (window.isEmpty()) {
+			return;
+		}
+		HMMState best = getBestState(window.get(window.size() - 1));
+		fixRoute(window.size() - 1, best);
+		if (best.arrivalInd != -1) {
+			// route till the segment of the last point
+			RouteSegmentResult r = new RouteSegmentResult(best.pnt.road, best.arrivalInd,
+					best.arrivalInd == best.pnt.getSegmentStart() ? best.pnt.getSegmentEnd() : best.pnt.getSegmentStart());
+			emitted.add(r);
+			current.route.add(r);
+		}
+		if (!current.route.isEmpty()) {
+			matched.add(current);
+		}
+		current = null;
+		window.clear();
+		lastLoc = null;
+	}
+}
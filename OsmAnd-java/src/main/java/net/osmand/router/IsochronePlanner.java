@@ -0,0 +1,230 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.ReachedSegmentVisitor;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.util.MapUtils;
+
+/**
+ * Isochrone (reachability) calculation: all road segments reachable from start point within time limit.
+ * Detailed roads are searched by {@link BinaryRoutePlanner} in dijkstra mode limited by
+ * {@link RoutingConfiguration#MAX_COST}, for large limits {@link HHRoutePlanner#runIsochrone} searches HH network
+ * and uses detailed roads only around start point and at the fringe. Reached segments are streamed to
+ * {@link IsochroneListener} while search is running.
+ */
+public class IsochronePlanner {
+
+	// limit from which it makes sense to search HH network
+	public static final float HH_MIN_TIME = 15 * 60;
+	private static final int PARTIAL_RESULT_SIZE = 1000;
+
+	public interface IsochroneListener {
+
+		// new reached segments (segment could be reported again with smaller time)
+		public void segmentsReached(List<IsochroneSegment> segments);
+	}
+
+	public static class IsochroneSegment {
+		public final long roadId;
+		public final int segmentStart;
+		public final int segmentEnd;
+		public final int startX;
+		public final int startY;
+		public final int endX;
+		public final int endY;
+		// time to reach segment start / end point in seconds
+		public final float startTime;
+		public final float endTime;
+
+		public IsochroneSegment(long roadId, int segmentStart, int segmentEnd, int startX, int startY, int endX,
+				int endY, float startTime, float endTime) {
+			this.roadId = roadId;
+			this.segmentStart = segmentStart;
+			this.segmentEnd = segmentEnd;
+			this.startX = startX;
+			this.startY = startY;
+			this.endX = endX;
+			this.endY = endY;
+			this.startTime = startTime;
+			this.endTime = endTime;
+		}
+
+		long getId() {
+			return HHRoutePlanner.calculateRoutePointInternalId(roadId, segmentStart, segmentEnd);
+		}
+
+		/**
+		 * @return point on segment reached at time or null if time is outside of segment times
+		 */
+		public LatLon getPointAtTime(float time) {
+			if (time < startTime || time > endTime) {
+				return null;
+			}
+			double k = endTime - startTime > 0 ? (time - startTime) / (endTime - startTime) : 1;
+			return new LatLon(MapUtils.get31LatitudeY((int) (startY + (endY - startY) * k)),
+					MapUtils.get31LongitudeX((int) (startX + (endX - startX) * k)));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Road %d [%d -> %d] %.1f - %.1f s", roadId / 64, segmentStart, segmentEnd,
+					startTime, endTime);
+		}
+	}
+
+	public static class IsochroneResult {
+		public final LatLon start;
+		public final float maxTime;
+		final TLongObjectHashMap<IsochroneSegment> segments = new TLongObjectHashMap<IsochroneSegment>();
+
+		public IsochroneResult(LatLon start, float maxTime) {
+			this.start = start;
+			this.maxTime = maxTime;
+		}
+
+		public Collection<IsochroneSegment> getSegments() {
+			return segments.valueCollection();
+		}
+
+		boolean add(IsochroneSegment s) {
+			if (s.startTime > maxTime) {
+				return false;
+			}
+			IsochroneSegment ex = segments.get(s.getId());
+			if (ex != null && ex.endTime <= s.endTime) {
+				return false;
+			}
+			segments.put(s.getId(), s);
+			return true;
+		}
+
+		/**
+		 * @return points where time limit is reached (on segments which are partially reachable)
+		 */
+		public List<LatLon> getFrontier() {
+			List<LatLon> res = new ArrayList<LatLon>();
+			for (IsochroneSegment s : segments.valueCollection()) {
+				if (s.endTime > maxTime) {
+					LatLon l = s.getPointAtTime(maxTime);
+					if (l != null) {
+						res.add(l);
+					}
+				}
+			}
+			return res;
+		}
+
+		/**
+		 * Polygon of reached area: the most distant reached point in each of angular sectors around start point
+		 */
+		public List<LatLon> getPolygon(int sectors) {
+			LatLon[] far = new LatLon[sectors];
+			double[] dist = new double[sectors];
+			for (IsochroneSegment s : segments.valueCollection()) {
+				LatLon l = s.endTime <= maxTime ? new LatLon(MapUtils.get31LatitudeY(s.endY),
+						MapUtils.get31LongitudeX(s.endX)) : s.getPointAtTime(maxTime);
+				if (l == null) {
+					continue;
+				}
+				double angle = Math.atan2(l.getLatitude() - start.getLatitude(),
+						(l.getLongitude() - start.getLongitude()) * Math.cos(Math.toRadians(start.getLatitude())));
+				int sector = (int) ((angle + Math.PI) / (2 * Math.PI) * sectors) % sectors;
+				double d = MapUtils.getDistance(start, l);
+				if (far[sector] == null || d > dist[sector]) {
+					far[sector] = l;
+					dist[sector] = d;
+				}
+			}
+			List<LatLon> polygon = new ArrayList<LatLon>();
+			for (LatLon l : far) {
+				if (l != null) {
+					polygon.add(l);
+				}
+			}
+			return polygon;
+		}
+	}
+
+	/**
+	 * Calculates isochrone by detailed roads
+	 * @return result or null if start point is not found
+	 */
+	public IsochroneResult calculate(RoutingContext ctx, LatLon start, float maxTime, IsochroneListener listener)
+			throws IOException, InterruptedException {
+		RouteSegmentPoint pnt = new RoutePlannerFrontEnd().findRouteSegment(start.getLatitude(), start.getLongitude(),
+				ctx, null);
+		if (pnt == null) {
+			return null;
+		}
+		IsochroneResult res = new IsochroneResult(start, maxTime);
+		RoutingContext sctx = createSearchContext(ctx);
+		try {
+			searchDetailed(sctx, pnt, 0, maxTime, res, listener);
+		} finally {
+			sctx.unloadAllData();
+		}
+		return res;
+	}
+
+	/**
+	 * Context for detailed searches of one isochrone: the same maps, but own configuration set for dijkstra (so
+	 * configuration of ctx which could be shared isn't changed) and own tiles which are kept between searches
+	 */
+	static RoutingContext createSearchContext(RoutingContext ctx) {
+		RoutingConfiguration config = new RoutingConfiguration(ctx.config);
+		config.planRoadDirection = 1;
+		config.heuristicCoefficient = 0; // dijkstra
+		return new RoutingContext(ctx, config);
+	}
+
+	/**
+	 * Runs dijkstra from point which is reached at startTime till maxTime and adds reached segments to result
+	 * @param ctx context created by {@link #createSearchContext(RoutingContext)}
+	 */
+	static void searchDetailed(RoutingContext ctx, RouteSegmentPoint pnt, final float startTime, float maxTime,
+			final IsochroneResult res, final IsochroneListener listener) throws IOException, InterruptedException {
+		final List<IsochroneSegment> partial = new ArrayList<IsochroneSegment>();
+		ctx.reachedVisitor = new ReachedSegmentVisitor() {
+
+			@Override
+			public void visitReachedSegment(RouteSegment segment, float timeToEnd) {
+				RouteDataObject road = segment.getRoad();
+				int st = segment.getSegmentStart();
+				int end = segment.getSegmentEnd();
+				IsochroneSegment s = new IsochroneSegment(road.getId(), st, end, road.getPoint31XTile(st),
+						road.getPoint31YTile(st), road.getPoint31XTile(end), road.getPoint31YTile(end),
+						startTime + segment.getDistanceFromStart(), startTime + timeToEnd);
+				if (res.add(s)) {
+					partial.add(s);
+					if (partial.size() >= PARTIAL_RESULT_SIZE) {
+						flush(partial, listener);
+					}
+				}
+			}
+		};
+		try {
+			ctx.config.MAX_COST = maxTime - startTime;
+			ctx.resetSearchState(); // needed for proper multidijsktra work (tiles of previous search are reused)
+			new BinaryRoutePlanner().searchRouteInternal(ctx, pnt, null, null);
+		} finally {
+			ctx.reachedVisitor = null;
+		}
+		flush(partial, listener);
+	}
+
+	static void flush(List<IsochroneSegment> partial, IsochroneListener listener) {
+		if (listener != null && !partial.isEmpty()) {
+			listener.segmentsReached(Collections.unmodifiableList(new ArrayList<IsochroneSegment>(partial)));
+		}
+		partial.clear();
+	}
+}
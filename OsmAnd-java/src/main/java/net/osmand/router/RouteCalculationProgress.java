@@ -45,7 +45,7 @@ public class RouteCalculationProgress {
 	public int unloadedTiles = 0;
 	public int loadedTiles = 0;
 	
-	public boolean isCancelled;
+	public volatile boolean isCancelled;
 	public boolean requestPrivateAccessRouting;
 
 	public long routeCalculationStartTime;
@@ -82,6 +82,25 @@ public class RouteCalculationProgress {
 		return p;
 	}
 	
+	/**
+	 * Adds counters of search which was running concurrently with own progress object
+	 */
+	public void addSearchCounters(RouteCalculationProgress p) {
+		visitedSegments += p.visitedSegments;
+		visitedDirectSegments += p.visitedDirectSegments;
+		visitedOppositeSegments += p.visitedOppositeSegments;
+		directQueueSize += p.directQueueSize;
+		oppositeQueueSize += p.oppositeQueueSize;
+		finalSegmentsFound += p.finalSegmentsFound;
+		timeToLoad += p.timeToLoad;
+		timeToLoadHeaders += p.timeToLoadHeaders;
+		loadedTiles += p.loadedTiles;
+		distinctLoadedTiles += p.distinctLoadedTiles;
+		loadedPrevUnloadedTiles += p.loadedPrevUnloadedTiles;
+		unloadedTiles += p.unloadedTiles;
+		maxLoadedTiles = Math.max(maxLoadedTiles, p.maxLoadedTiles);
+	}
+
 	public Map<String, Object> getInfo(RouteCalculationProgress firstPhase) {
 		TreeMap<String, Object> map = new TreeMap<String, Object>();
 		TreeMap<String, Object> tiles = new TreeMap<String, Object>();
@@ -23,12 +23,15 @@ import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
 import net.osmand.data.QuadPointDouble;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.ReverseSearchTree;
 import net.osmand.router.BinaryRoutePlanner.RouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
 import net.osmand.router.GeneralRouter.RoutingParameter;
 import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
 import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
 import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HMMMapMatcher.HMMConfig;
 import net.osmand.router.RouteCalculationProgress.HHIteration;
 import net.osmand.router.RouteResultPreparation.RouteCalcResult;
 import net.osmand.util.MapUtils;
@@ -41,10 +44,16 @@ public class RoutePlannerFrontEnd {
 	protected static final double GPS_POSSIBLE_ERROR = 7;
 	static boolean TRACE_ROUTING = false;
 	
+	// ms between checks of cancellation while legs are calculated concurrently
+	private static final long CANCEL_CHECK_INTERVAL = 50;
+
 	private static final HHRoutingConfig DEFAULT_ROUTING_CONFIG = HHRoutingConfig.astar(0).calcDetailed(HHRoutingConfig.CALCULATE_ALL_DETAILED);
 //	private static final HHRoutingConfig DEFAULT_ROUTING_CONFIG = HHRoutingConfig.dijkstra(0).calcDetailed(HHRoutingConfig.CALCULATE_ALL_DETAILED);
 	private boolean useSmartRouteRecalculation = true;
 	private boolean useNativeApproximation = true;
+	// HMM map matching instead of greedy approximation (java only)
+	private boolean useHMMApproximation = false;
+	private HMMConfig hmmConfig = HMMConfig.DEFAULT;
 	private boolean useOnlyHHRouting = false;
 	private HHRoutingConfig hhRoutingConfig = null;
 	private HHRoutingType hhRoutingType = HHRoutingType.JAVA;
@@ -307,89 +316,37 @@ public class RoutePlannerFrontEnd {
 		return useNativeApproximation;
 	}
 
+	public RoutePlannerFrontEnd setUseHMMApproximation(boolean useHMMApproximation) {
+		this.useHMMApproximation = useHMMApproximation;
+		return this;
+	}
+
+	public boolean isUseHMMApproximation() {
+		return useHMMApproximation;
+	}
+
+	public RoutePlannerFrontEnd setHMMConfig(HMMConfig hmmConfig) {
+		this.hmmConfig = hmmConfig;
+		return this;
+	}
+
 	public GpxRouteApproximation searchGpxRoute(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, ResultMatcher<GpxRouteApproximation> resultMatcher) throws IOException, InterruptedException {
 		long timeToCalculate = System.nanoTime();
 		NativeLibrary nativeLib = gctx.ctx.nativeLib;
-		if (nativeLib != null && useNativeApproximation) {
+		if (nativeLib != null && useNativeApproximation && !useHMMApproximation) {
 			gctx = nativeLib.runNativeSearchGpxRoute(gctx, gpxPoints);
 		} else {
 			gctx.ctx.keepNativeRoutingContext = true;
 			if (gctx.ctx.calculationProgress == null) {
 				gctx.ctx.calculationProgress = new RouteCalculationProgress();
 			}
-			GpxPoint start = null;
-			GpxPoint prev = null;
-			if (gpxPoints.size() > 0) {
-				gctx.ctx.calculationProgress.totalApproximateDistance = (float) gpxPoints.get(gpxPoints.size() - 1).cumDist;
-				start = gpxPoints.get(0);
-			}
-			float minPointApproximation = gctx.ctx.config.minPointApproximation;
-			while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
-				double routeDist = gctx.ctx.config.maxStepApproximation;
-				GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-				boolean routeFound = false;
-				if (next != null && initRoutingPoint(start, gctx, minPointApproximation)) {
-					while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
-						routeFound = initRoutingPoint(next, gctx, minPointApproximation);
-						if (routeFound) {
-							routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
-							if (routeFound) {
-								routeFound = isRouteCloseToGpxPoints(minPointApproximation, gpxPoints, start, next);
-								if (!routeFound) {
-									start.routeToTarget = null;
-								}
-							}
-							if (routeFound && next.ind < gpxPoints.size() - 1) {
-								// route is found - cut the end of the route and move to next iteration
-								// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
-								// boolean stepBack = true;
-								boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
-								if (!stepBack) {
-									// not supported case (workaround increase routing.xml maxStepApproximation)
-									log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
-									start.routeToTarget = null;
-									routeFound = false;
-								} else {
-									if (gctx.ctx.getVisitor() != null) {
-										gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
-												next);
-									}
-								}
-							}
-						}
-						if (!routeFound) {
-							// route is not found move next point closer to start point (distance / 2)
-							routeDist = routeDist / 2;
-							if (routeDist < gctx.ctx.config.minStepApproximation
-									&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
-								routeDist = gctx.ctx.config.minStepApproximation;
-							}
-							next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-							if (next != null) {
-								routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
-							}
-						}
-					}
-				}
-				// route is not found skip segment and keep it as straight line on display
-				if (!routeFound && next != null) {
-					// route is not found, move start point by
-					next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
-					if (prev != null) {
-						prev.routeToTarget.addAll(prev.stepBackRoute);
-//						makeSegmentPointPrecise(prev.routeToTarget.get(prev.routeToTarget.size() - 1), start.loc, false);
-						if (next != null) {
-							log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
-						}
-					}
-					prev = null;
-				} else {
-					prev = start;
-				}
-				start = next;
-				if (gctx.ctx.calculationProgress != null && start != null) {
-					gctx.ctx.calculationProgress.approximatedDistance = (float) start.cumDist;
+			if (useHMMApproximation) {
+				if (gpxPoints.size() > 0) {
+					gctx.ctx.calculationProgress.totalApproximateDistance = (float) gpxPoints.get(gpxPoints.size() - 1).cumDist;
 				}
+				new HMMMapMatcher(this, gctx.ctx, hmmConfig).matchGpxPoints(gctx, gpxPoints);
+			} else {
+				searchGpxRouteGreedy(gctx, gpxPoints);
 			}
 			if (gctx.ctx.calculationProgress != null) {
 				gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
@@ -407,6 +364,83 @@ public class RoutePlannerFrontEnd {
 		return gctx;
 	}
 
+	private void searchGpxRouteGreedy(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) throws IOException, InterruptedException {
+		GpxPoint start = null;
+		GpxPoint prev = null;
+		if (gpxPoints.size() > 0) {
+			gctx.ctx.calculationProgress.totalApproximateDistance = (float) gpxPoints.get(gpxPoints.size() - 1).cumDist;
+			start = gpxPoints.get(0);
+		}
+		float minPointApproximation = gctx.ctx.config.minPointApproximation;
+		while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
+			double routeDist = gctx.ctx.config.maxStepApproximation;
+			GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+			boolean routeFound = false;
+			if (next != null && initRoutingPoint(start, gctx, minPointApproximation)) {
+				while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
+					routeFound = initRoutingPoint(next, gctx, minPointApproximation);
+					if (routeFound) {
+						routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
+						if (routeFound) {
+							routeFound = isRouteCloseToGpxPoints(minPointApproximation, gpxPoints, start, next);
+							if (!routeFound) {
+								start.routeToTarget = null;
+							}
+						}
+						if (routeFound && next.ind < gpxPoints.size() - 1) {
+							// route is found - cut the end of the route and move to next iteration
+							// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
+							// boolean stepBack = true;
+							boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
+							if (!stepBack) {
+								// not supported case (workaround increase routing.xml maxStepApproximation)
+								log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
+								start.routeToTarget = null;
+								routeFound = false;
+							} else {
+								if (gctx.ctx.getVisitor() != null) {
+									gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
+											next);
+								}
+							}
+						}
+					}
+					if (!routeFound) {
+						// route is not found move next point closer to start point (distance / 2)
+						routeDist = routeDist / 2;
+						if (routeDist < gctx.ctx.config.minStepApproximation
+								&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
+							routeDist = gctx.ctx.config.minStepApproximation;
+						}
+						next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+						if (next != null) {
+							routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
+						}
+					}
+				}
+			}
+			// route is not found skip segment and keep it as straight line on display
+			if (!routeFound && next != null) {
+				// route is not found, move start point by
+				next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
+				if (prev != null) {
+					prev.routeToTarget.addAll(prev.stepBackRoute);
+//						makeSegmentPointPrecise(prev.routeToTarget.get(prev.routeToTarget.size() - 1), start.loc, false);
+					if (next != null) {
+						log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
+					}
+				}
+				prev = null;
+			} else {
+				prev = start;
+			}
+			start = next;
+			if (gctx.ctx.calculationProgress != null && start != null) {
+				gctx.ctx.calculationProgress.approximatedDistance = (float) start.cumDist;
+			}
+		}
+	}
+
 	private boolean isRouteCloseToGpxPoints(float minPointApproximation, List<GpxPoint> gpxPoints,
 	                                        GpxPoint start, GpxPoint next) {
 		boolean routeIsClose = true;
@@ -841,6 +875,8 @@ public class RoutePlannerFrontEnd {
 		if (ctx.calculationProgress == null) {
 			ctx.calculationProgress = new RouteCalculationProgress();
 		}
+		// new route starts at current time (unless routeCalculationTime is set)
+		ctx.departureTime = 0;
 		boolean intermediatesEmpty = intermediates == null || intermediates.isEmpty();
 		List<LatLon> targets = new ArrayList<>();
 		if (!intermediatesEmpty) {
@@ -947,6 +983,16 @@ public class RoutePlannerFrontEnd {
 	private HHNetworkRouteRes runHHRoute(RoutingContext ctx, LatLon start, List<LatLon> targets)
 			throws IOException, InterruptedException {
 		HHRoutePlanner<NetworkDBPoint> routePlanner = HHRoutePlanner.create(ctx);
+		try {
+			return runHHRoute(routePlanner, ctx, start, targets);
+		} finally {
+			// concurrent reverse search readers are reused by all searches of HH route
+			ctx.closeReverseSearchContext();
+		}
+	}
+
+	private HHNetworkRouteRes runHHRoute(HHRoutePlanner<NetworkDBPoint> routePlanner, RoutingContext ctx, LatLon start,
+			List<LatLon> targets) throws IOException, InterruptedException {
 		HHNetworkRouteRes r = null;
 		Double dir = ctx.config.initialDirection;
 		for (int i = 0; i < targets.size(); i++) {
@@ -1096,7 +1142,11 @@ public class RoutePlannerFrontEnd {
 
 	private RouteCalcResult searchRouteInternalPrepare(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
 	                                                            PrecalculatedRouteDirection routeDirection) throws IOException, InterruptedException {
-		RouteSegmentPoint recalculationEnd = getRecalculationEnd(ctx);
+		// resumed reverse search tree gives exact route to the same target, so it's used instead of route
+		// to previous route part (tree is kept only for the target point, not for part of previous route)
+		ReverseSearchTree reverseTree = ctx.reverseSearchTree;
+		boolean resumeReverseTree = reverseTree != null && reverseTree.matches(ctx, end);
+		RouteSegmentPoint recalculationEnd = resumeReverseTree ? null : getRecalculationEnd(ctx);
 		if (recalculationEnd != null) {
 			ctx.initStartAndTargetPoints(start, recalculationEnd);
 		} else {
@@ -1118,7 +1168,16 @@ public class RoutePlannerFrontEnd {
 		} else {
 			refreshProgressDistance(ctx);
 			// Split into 2 methods to let GC work in between
-			ctx.finalRouteSegment = new BinaryRoutePlanner().searchRouteInternal(ctx, start, recalculationEnd != null ? recalculationEnd : end, null);
+			if (recalculationEnd != null) {
+				ctx.reverseSearchTree = null;
+			}
+			try {
+				ctx.finalRouteSegment = new BinaryRoutePlanner().searchRouteInternal(ctx, start, recalculationEnd != null ? recalculationEnd : end, null);
+			} finally {
+				ctx.reverseSearchTree = reverseTree;
+				// readers of concurrent reverse search are reused only by searches of HH routing
+				ctx.closeReverseSearchContext();
+			}
 			RouteResultPreparation rrp = new RouteResultPreparation();
 			// 4. Route is found : collect all segments and prepare result
 			List<RouteSegmentResult> result  = rrp.convertFinalSegmentToResults(ctx, ctx.finalRouteSegment);
@@ -1288,9 +1347,18 @@ public class RoutePlannerFrontEnd {
 				}
 			}
 		}
+		if (restPartRecalculatedRoute == null && isConcurrentLegsAllowed(ctx)) {
+			RouteCalcResult res = searchLegsConcurrently(ctx, points, routeDirection);
+			if (res != null) {
+				return res;
+			}
+		}
 		RouteCalcResult results = new RouteCalcResult(new ArrayList<RouteSegmentResult>());
+		long departureTime = ctx.getDepartureTime();
 		for (int i = 0; i < points.size() - 1; i++) {
 			RoutingContext local = new RoutingContext(ctx);
+			// time dependent speeds of leg are taken at arrival time of previous leg
+			local.departureTime = departureTime;
 			if (i == 0 && ctx.nativeLib == null) {
 				if (useSmartRouteRecalculation) {
 					local.previouslyCalculatedRoute = firstPartRecalculatedRoute;
@@ -1300,6 +1368,9 @@ public class RoutePlannerFrontEnd {
 			makeStartEndPointsPrecise(res, points.get(i).getPreciseLatLon(), points.get(i + 1).getPreciseLatLon(), null);
 			results.detailed.addAll(res.detailed);
 			ctx.routingTime += local.routingTime;
+			for (RouteSegmentResult r : res.detailed) {
+				departureTime += (long) (r.getSegmentTime() * 1000);
+			}
 //			local.unloadAllData(ctx);
 			if (restPartRecalculatedRoute != null) {
 				results.detailed.addAll(restPartRecalculatedRoute);
@@ -1311,6 +1382,137 @@ public class RoutePlannerFrontEnd {
 
 	}
 
+	private boolean isConcurrentLegsAllowed(RoutingContext ctx) {
+		// visitor and direction points are not thread safe, with speed profiles leg depends on arrival time of previous leg
+		return ctx.config.intermediateLegsThreads > 1 && ctx.nativeLib == null && ctx.visitor == null
+				&& ctx.config.getDirectionPoints() == null && ctx.config.speedProfiles == null;
+	}
+
+	/**
+	 * Calculates legs between intermediate points by several threads (each with own context and readers,
+	 * tiles could be shared with {@link RoutingConfiguration#tileCache}), legs are joined and prepared once.
+	 * @return null if concurrent contexts can't be created
+	 */
+	private RouteCalcResult searchLegsConcurrently(final RoutingContext ctx, final List<RouteSegmentPoint> points,
+			final PrecalculatedRouteDirection routeDirection) throws IOException, InterruptedException {
+		final int legs = points.size() - 1;
+		final List<List<RouteSegmentResult>> legResults = new ArrayList<List<RouteSegmentResult>>(
+				Collections.nCopies(legs, (List<RouteSegmentResult>) null));
+		final int[] nextLeg = new int[1];
+		final Exception[] error = new Exception[1];
+		List<RoutingContext> contexts = new ArrayList<RoutingContext>();
+		List<Thread> workers = new ArrayList<Thread>();
+		try {
+			int threads = Math.min(ctx.config.intermediateLegsThreads, legs);
+			for (int k = 0; k < threads; k++) {
+				RoutingContext c = ctx.createConcurrentSearchContext();
+				if (c == null) {
+					return null;
+				}
+				// router keeps registered tag values, evaluation state of rules and caches, so each context has own copy
+				c.searchRouter = ctx.config.router.copyForConcurrentUse();
+				// counters are added to ctx progress after search, cancellation is passed by waiting thread
+				c.calculationProgress = ctx.calculationProgress == null ? null : new RouteCalculationProgress();
+				contexts.add(c);
+			}
+			for (int k = 0; k < contexts.size(); k++) {
+				final RoutingContext local = contexts.get(k);
+				Thread th = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							while (true) {
+								int leg;
+								synchronized (nextLeg) {
+									if (error[0] != null || nextLeg[0] >= legs) {
+										break;
+									}
+									leg = nextLeg[0]++;
+								}
+								RouteSegmentPoint start = points.get(leg);
+								RouteSegmentPoint end = points.get(leg + 1);
+								// tiles keep search state of previous leg
+								local.unloadAllData();
+								local.initStartAndTargetPoints(start, end);
+								local.precalculatedRouteDirection = null;
+								if (routeDirection != null) {
+									synchronized (routeDirection) {
+										local.precalculatedRouteDirection = routeDirection.adopt(local);
+									}
+								}
+								FinalRouteSegment finalSegment = new BinaryRoutePlanner().searchRouteInternal(local,
+										start, end, null);
+								List<RouteSegmentResult> res = new RouteResultPreparation()
+										.convertFinalSegmentToResults(local, finalSegment);
+								synchronized (legResults) {
+									legResults.set(leg, res);
+								}
+							}
+						} catch (Exception e) {
+							synchronized (nextLeg) {
+								if (error[0] == null) {
+									error[0] = e;
+								}
+							}
+						}
+					}
+				}, "Route leg search " + k);
+				th.setDaemon(true);
+				th.start();
+				workers.add(th);
+			}
+			boolean interrupted = false;
+			for (Thread th : workers) {
+				while (th.isAlive()) {
+					try {
+						th.join(CANCEL_CHECK_INTERVAL);
+					} catch (InterruptedException e) {
+						// workers use contexts which are closed after return
+						interrupted = true;
+					}
+					if (interrupted || (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled)) {
+						for (RoutingContext c : contexts) {
+							if (c.calculationProgress != null) {
+								c.calculationProgress.isCancelled = true;
+							}
+						}
+					}
+				}
+			}
+			if (ctx.calculationProgress != null) {
+				for (RoutingContext c : contexts) {
+					ctx.calculationProgress.addSearchCounters(c.calculationProgress);
+				}
+			}
+			if (interrupted) {
+				throw new InterruptedException("Route calculation interrupted");
+			}
+		} finally {
+			for (RoutingContext c : contexts) {
+				ctx.routingTime += c.routingTime;
+				c.closeConcurrentSearchContext();
+			}
+		}
+		if (error[0] instanceof IOException) {
+			throw (IOException) error[0];
+		} else if (error[0] instanceof InterruptedException) {
+			throw (InterruptedException) error[0];
+		} else if (error[0] instanceof RuntimeException) {
+			throw (RuntimeException) error[0];
+		} else if (error[0] != null) {
+			throw new IllegalStateException(error[0]);
+		}
+		List<RouteSegmentResult> result = new ArrayList<RouteSegmentResult>();
+		for (int i = 0; i < legs; i++) {
+			RouteCalcResult leg = new RouteCalcResult(legResults.get(i));
+			makeStartEndPointsPrecise(leg, points.get(i).getPreciseLatLon(), points.get(i + 1).getPreciseLatLon(), null);
+			result.addAll(leg.detailed);
+		}
+		RouteCalcResult res = new RouteResultPreparation().prepareResult(ctx, result);
+		ctx.unloadAllData();
+		return res;
+	}
+
 	private void pringGC(final RoutingContext ctx, boolean before) {
 		if (RoutingContext.SHOW_GC_SIZE && before) {
 			long h1 = RoutingContext.runGCUsedMemory();
@@ -328,6 +328,7 @@ public class RouteResultPreparation {
 			useNaismithRule = true;
 		}
 
+		double timeFromStart = 0;
 		for (int i = 0; i < result.size(); i++) {
 			RouteSegmentResult rr = result.get(i);
 			RouteDataObject road = rr.getObject();
@@ -340,6 +341,10 @@ public class RouteResultPreparation {
 					speed = speed - (speed / SLOW_DOWN_SPEED_THRESHOLD - 1) * SLOW_DOWN_SPEED;
 				}
 			}
+			if (ctx.config.speedProfiles != null) {
+				speed = SpeedProfileTable.applySpeedFactor(speed, ctx.config.speedProfiles.getSpeedFactor(road,
+						ctx.getDepartureTime() + (long) (timeFromStart * 1000)), ctx.getRouter().getMaxSpeed());
+			}
 			boolean plus = rr.getStartPointIndex() < rr.getEndPointIndex();
 			int next;
 			double distance = 0;
@@ -382,6 +387,7 @@ public class RouteResultPreparation {
 			// if(i + 1 < result.size()) { distOnRoadToPass += ctx.getRouter().calculateTurnTime(); }
 			rr.setDistance((float) distance);
 			rr.setSegmentTime((float) distOnRoadToPass);
+			timeFromStart += distOnRoadToPass;
 			if (distOnRoadToPass != 0) {
 				rr.setSegmentSpeed((float) (distance / distOnRoadToPass));  //effective segment speed incl. obstacle and height effects
 			} else {
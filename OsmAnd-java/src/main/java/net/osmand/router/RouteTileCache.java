@@ -0,0 +1,162 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.RoutingContext.TileStatistics;
+
+/**
+ * Process wide size bounded LRU cache of decoded route subregions (tiles) which could be shared by several
+ * {@link RoutingContext} (set {@link RoutingConfiguration#tileCache}).
+ * Cached objects are raw decoded data and don't depend on routing profile, so the same entry is used by all profiles.
+ * Callers get shallow copies bound to region of their reader, arrays of copies are shared and must not be modified.
+ */
+public class RouteTileCache {
+
+	private final long maxSize;
+	private final Map<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(256, 0.75f, true);
+	private long size;
+
+	private int hits;
+	private int misses;
+	private int evictions;
+
+	public RouteTileCache(long maxSizeBytes) {
+		this.maxSize = maxSizeBytes;
+	}
+
+	public List<RouteDataObject> loadRouteIndexData(BinaryMapIndexReader reader, RouteSubregion subregion) throws IOException {
+		TileKey key = new TileKey(reader.getFile(), subregion.filePointer);
+		CachedTile tile;
+		synchronized (this) {
+			tile = tiles.get(key);
+			if (tile != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		if (tile == null) {
+			// decode outside of lock with reader owned by the calling thread
+			List<RouteDataObject> res = reader.loadRouteIndexData(subregion);
+			tile = new CachedTile(res);
+			for (RouteDataObject ro : res) {
+				if (ro != null) {
+					tile.statistics.addObject(ro);
+				}
+			}
+			synchronized (this) {
+				CachedTile existing = tiles.get(key);
+				if (existing != null) {
+					tile = existing;
+				} else {
+					tiles.put(key, tile);
+					size += tile.statistics.size;
+					evict();
+				}
+			}
+		}
+		return copyObjects(tile.objects, subregion.routeReg);
+	}
+
+	// regions of different readers of the same file have the same encoding rules read from file,
+	// so decoded types are valid for region of caller
+	private static List<RouteDataObject> copyObjects(List<RouteDataObject> objects, RouteRegion region) {
+		List<RouteDataObject> res = new ArrayList<RouteDataObject>(objects.size());
+		for (RouteDataObject ro : objects) {
+			res.add(ro == null ? null : new RouteDataObject(ro, region));
+		}
+		return res;
+	}
+
+	private void evict() {
+		Iterator<CachedTile> it = tiles.values().iterator();
+		// keep at least last added tile
+		while (size > maxSize && tiles.size() > 1 && it.hasNext()) {
+			CachedTile t = it.next();
+			size -= t.statistics.size;
+			evictions++;
+			it.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		size = 0;
+	}
+
+	public synchronized long getEstimatedSize() {
+		return size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized int getCachedTiles() {
+		return tiles.size();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	public synchronized int getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("Route tile cache: %d tiles, %.1f / %.1f MB, hits %d, misses %d, evictions %d",
+				tiles.size(), size / (float) (1 << 20), maxSize / (float) (1 << 20), hits, misses, evictions);
+	}
+
+	private static class CachedTile {
+		final List<RouteDataObject> objects;
+		final TileStatistics statistics = new TileStatistics();
+
+		CachedTile(List<RouteDataObject> objects) {
+			this.objects = objects;
+		}
+	}
+
+	private static class TileKey {
+		final File file;
+		final long filePointer;
+
+		TileKey(File file, long filePointer) {
+			this.file = file;
+			this.filePointer = filePointer;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + (int) (filePointer ^ (filePointer >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return filePointer == other.filePointer && file.equals(other.file);
+		}
+	}
+}
@@ -43,10 +43,17 @@ public class RoutingConfiguration {
 	public int ZOOM_TO_LOAD_TILES = 16;
 	public long memoryLimitation;
 	public long nativeMemoryLimitation;
+	// shared between several routing contexts (java routing only)
+	public RouteTileCache tileCache;
 
 	// 1.2 Build A* graph in backward/forward direction (can affect results)
 	// 0 - 2 ways, 1 - direct way, -1 - reverse way
 	public int planRoadDirection = 0;
+	// run forward and reverse search of 2 ways planning in separate threads (java routing only)
+	public boolean parallelBidirectionalSearch = false;
+	// calculate legs between intermediate points in several threads, each thread has own context
+	// and memory limit (java routing only)
+	public int intermediateLegsThreads = 1;
 
 	// 1.3 Router specific coefficients and restrictions
 	// use GeneralRouter and not interface to simplify native access !
@@ -63,9 +70,15 @@ public class RoutingConfiguration {
 
 	// 1.6 Time to calculate all access restrictions based on conditions
 	public long routeCalculationTime = 0;
+	// time dependent speed factors applied at time when segment is passed (java routing only),
+	// route starts at routeCalculationTime or at current time if it is not set
+	public SpeedProfileTable speedProfiles;
 	
 	// 1.7 Maximum visited segments
 	public int MAX_VISITED = -1;
+	
+	// 1.8 Maximum cost (time) of segments visited by dijkstra search (one of start / end is not set)
+	public float MAX_COST = -1;
 
 
 	// extra points to be inserted in ways (quad tree is based on 31 coords)
@@ -85,6 +98,40 @@ public class RoutingConfiguration {
 	// Parameter to smoother the track itself (could be 0 if it's not recorded track)
 	public float smoothenPointsNoRoute = 5;
 
+	public RoutingConfiguration() {
+	}
+
+	/**
+	 * Copy to change search parameters without changing this configuration (router and other objects are shared)
+	 */
+	RoutingConfiguration(RoutingConfiguration cp) {
+		attributes.putAll(cp.attributes);
+		heuristicCoefficient = cp.heuristicCoefficient;
+		ZOOM_TO_LOAD_TILES = cp.ZOOM_TO_LOAD_TILES;
+		memoryLimitation = cp.memoryLimitation;
+		nativeMemoryLimitation = cp.nativeMemoryLimitation;
+		tileCache = cp.tileCache;
+		planRoadDirection = cp.planRoadDirection;
+		parallelBidirectionalSearch = cp.parallelBidirectionalSearch;
+		intermediateLegsThreads = cp.intermediateLegsThreads;
+		router = cp.router;
+		routerName = cp.routerName;
+		initialDirection = cp.initialDirection;
+		targetDirection = cp.targetDirection;
+		penaltyForReverseDirection = cp.penaltyForReverseDirection;
+		recalculateDistance = cp.recalculateDistance;
+		routeCalculationTime = cp.routeCalculationTime;
+		speedProfiles = cp.speedProfiles;
+		MAX_VISITED = cp.MAX_VISITED;
+		MAX_COST = cp.MAX_COST;
+		directionPoints = cp.directionPoints;
+		directionPointsRadius = cp.directionPointsRadius;
+		minPointApproximation = cp.minPointApproximation;
+		minStepApproximation = cp.minStepApproximation;
+		maxStepApproximation = cp.maxStepApproximation;
+		smoothenPointsNoRoute = cp.smoothenPointsNoRoute;
+	}
+
 	public QuadTree<DirectionPoint> getDirectionPoints() {
 		return directionPoints;
 	}
@@ -2,10 +2,10 @@ package net.osmand.router;
 
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,7 +15,6 @@ import org.apache.commons.logging.Log;
 
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.iterator.TLongIterator;
-import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.hash.TLongHashSet;
 import net.osmand.NativeLibrary;
@@ -33,6 +32,8 @@ import net.osmand.data.QuadRect;
 import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.BinaryRoutePlanner.ReachedSegmentVisitor;
+import net.osmand.router.BinaryRoutePlanner.ReverseSearchTree;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentVisitor;
 import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
 import net.osmand.router.RoutingConfiguration.DirectionPoint;
@@ -80,6 +81,8 @@ public class RoutingContext {
 	public boolean leftSideNavigation;
 	public List<RouteSegmentResult> previouslyCalculatedRoute;
 	public PrecalculatedRouteDirection precalculatedRouteDirection;
+	// reverse search tree kept between recalculations to the same target (enabled when set)
+	public ReverseSearchTree reverseSearchTree;
 	
 	
 	// 2. Routing memory cache (big objects)
@@ -101,16 +104,32 @@ public class RoutingContext {
 
 	// callback of processing segments
 	RouteSegmentVisitor visitor = null;
+	// callback of segments reached by search (with time to reach them)
+	ReachedSegmentVisitor reachedVisitor = null;
+	// router used instead of config.router by concurrent search (own copy of config.router)
+	VehicleRouter searchRouter = null;
+	// router which searchRouter is copied from
+	VehicleRouter searchRouterOrigin = null;
+	// time of route start used with config.speedProfiles
+	long departureTime;
 
 	public int alertFasterRoadToVisitedSegments;
 	public int alertSlowerSegmentedWasVisitedEarlier;
+
+	// context of reverse search running concurrently with this context, reused by following searches
+	private RoutingContext reverseSearchContext;
 	
 	// old planner
 	public FinalRouteSegment finalRouteSegment;
 	
 	
 	RoutingContext(RoutingContext cp) {
-		this.config = cp.config;
+		this(cp, cp.config);
+	}
+
+	// context with the same maps and different configuration (tiles aren't shared)
+	RoutingContext(RoutingContext cp, RoutingConfiguration config) {
+		this.config = config;
 		this.map.putAll(cp.map);
 		this.calculationMode = cp.calculationMode;
 		this.leftSideNavigation = cp.leftSideNavigation;
@@ -118,8 +137,94 @@ public class RoutingContext {
 		this.nativeLib = cp.nativeLib;
 		this.visitor = cp.visitor;
 		this.calculationProgress = cp.calculationProgress;
+		this.departureTime = cp.departureTime;
 	}
-	
+
+	long getDepartureTime() {
+		if (departureTime == 0) {
+			departureTime = config.routeCalculationTime != 0 ? config.routeCalculationTime : System.currentTimeMillis();
+		}
+		return departureTime;
+	}
+
+	/**
+	 * Creates context to run search concurrently with this context. It has the same configuration and progress,
+	 * but own tiles and own readers over the same files with own copies of routing regions (readers and lazily loaded
+	 * regions are not thread safe).
+	 * @return null if some reader can't be reopened
+	 */
+	RoutingContext createConcurrentSearchContext() throws IOException {
+		RoutingContext ctx = new RoutingContext(this);
+		ctx.map.clear();
+		ctx.reverseMap.clear();
+		ctx.visitor = null;
+		for (BinaryMapIndexReader ref : map.keySet()) {
+			BinaryMapIndexReader reader;
+			if (ref.isMemoryMapped()) {
+				reader = new BinaryMapIndexReader(ref);
+			} else if (ref.getFile() != null) {
+				reader = new BinaryMapIndexReader(new RandomAccessFile(ref.getFile(), "r"), ref);
+			} else {
+				ctx.closeConcurrentSearchContext();
+				return null;
+			}
+			reader.copyRouteRegions();
+			List<RouteSubregion> subregions = new ArrayList<RouteSubregion>();
+			for (RouteRegion r : reader.getRoutingIndexes()) {
+				List<RouteSubregion> subregs = calculationMode == RouteCalculationMode.BASE ? r.getBaseSubregions() :
+					r.getSubregions();
+				for (RouteSubregion rs : subregs) {
+					subregions.add(new RouteSubregion(rs));
+				}
+				ctx.reverseMap.put(r, reader);
+			}
+			ctx.map.put(reader, subregions);
+		}
+		return ctx;
+	}
+
+	void closeConcurrentSearchContext() {
+		closeReverseSearchContext();
+		subregionTiles.clear();
+		indexedSubregions.clear();
+		for (BinaryMapIndexReader reader : map.keySet()) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+		map.clear();
+		reverseMap.clear();
+	}
+
+	/**
+	 * @return context for reverse search running concurrently with search of this context (with own progress),
+	 *         it's created once and reused by following searches, so readers aren't reopened for each search
+	 */
+	RoutingContext getReverseSearchContext() throws IOException {
+		if (reverseSearchContext == null) {
+			reverseSearchContext = createConcurrentSearchContext();
+			if (reverseSearchContext == null) {
+				return null;
+			}
+		}
+		reverseSearchContext.departureTime = departureTime;
+		reverseSearchContext.calculationProgress = calculationProgress == null ? null : new RouteCalculationProgress();
+		return reverseSearchContext;
+	}
+
+	/**
+	 * Closes readers opened for concurrent reverse search (see {@link RoutingConfiguration#parallelBidirectionalSearch}),
+	 * context could still be used after that.
+	 */
+	public void closeReverseSearchContext() {
+		if (reverseSearchContext != null) {
+			reverseSearchContext.closeConcurrentSearchContext();
+			reverseSearchContext = null;
+		}
+	}
+
 	RoutingContext(RoutingConfiguration config, NativeLibrary nativeLibrary, BinaryMapIndexReader[] list, RouteCalculationMode calcMode) {
 		this.calculationMode = calcMode;
 		for (BinaryMapIndexReader mr : list) {
@@ -164,6 +269,10 @@ public class RoutingContext {
 	public void setVisitor(RouteSegmentVisitor visitor) {
 		this.visitor = visitor;
 	}
+	
+	public void setReachedVisitor(ReachedSegmentVisitor reachedVisitor) {
+		this.reachedVisitor = reachedVisitor;
+	}
 
 	public void setRouter(GeneralRouter router) {
 		config.router = router;
@@ -174,7 +283,7 @@ public class RoutingContext {
 	}
 
 	public VehicleRouter getRouter() {
-		return config.router;
+		return searchRouter != null ? searchRouter : config.router;
 	}
 
 	public boolean planRouteIn2Directions() {
@@ -203,6 +312,18 @@ public class RoutingContext {
 	public void unloadAllData() {
 		unloadAllData(null);
 	}
+
+	/**
+	 * Resets search state stored in segments of loaded tiles, so next search could run over the same tiles
+	 * (multi dijkstra) without {@link #unloadAllData()} and loading tiles again
+	 */
+	public void resetSearchState() {
+		for (RoutingSubregionTile tl : subregionTiles) {
+			if (tl.isLoaded()) {
+				tl.resetSearchState();
+			}
+		}
+	}
 	
 	public void unloadAllData(RoutingContext except) {
 		for (RoutingSubregionTile tl : subregionTiles) {
@@ -290,7 +411,10 @@ public class RoutingContext {
 			try {
 				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
 				ts.setLoadedNonNative();
-				List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
+				// direction points modify loaded objects, so they can't be shared
+				boolean sharedObjects = config.tileCache != null && points.isEmpty();
+				List<RouteDataObject> res = sharedObjects ? config.tileCache.loadRouteIndexData(reader, ts.subregion)
+						: reader.loadRouteIndexData(ts.subregion);
 				
 				if (toLoad != null) {
 					toLoad.addAll(res);
@@ -298,9 +422,12 @@ public class RoutingContext {
 					for (RouteDataObject ro : res) {
 						if (ro != null) {
 							if (config.routeCalculationTime != 0) {
+								if (sharedObjects) {
+									copyTypes(ro);
+								}
 								ro.processConditionalTags(config.routeCalculationTime);
 							}
-							if (config.router.acceptLine(ro)) {
+							if (getRouter().acceptLine(ro)) {
 								if (excludeNotAllowed != null && !excludeNotAllowed.contains(ro.getId())) {
 									// don't attach point for route precalculation
 									if (!config.router.attributes.containsKey(GeneralRouter.CHECK_ALLOW_PRIVATE_NEEDED)) {
@@ -353,6 +480,19 @@ public class RoutingContext {
 		}
 	}
 	
+	// conditional tags are processed in place and shouldn't modify objects of shared tile cache
+	private static void copyTypes(RouteDataObject ro) {
+		ro.types = ro.types.clone();
+		if (ro.pointTypes != null) {
+			ro.pointTypes = ro.pointTypes.clone();
+			for (int i = 0; i < ro.pointTypes.length; i++) {
+				if (ro.pointTypes[i] != null) {
+					ro.pointTypes[i] = ro.pointTypes[i].clone();
+				}
+			}
+		}
+	}
+
 	public List<RoutingSubregionTile> loadAllSubregionTiles(BinaryMapIndexReader reader, RouteSubregion reg) throws IOException {
 		List<RoutingSubregionTile> list = new ArrayList<RoutingContext.RoutingSubregionTile>();
 		SearchRequest<RouteDataObject> request = BinaryMapIndexReader.buildSearchRouteRequest(0,
@@ -735,31 +875,16 @@ public class RoutingContext {
 		
 		private NativeRouteSearchResult searchResult = null;
 		private int isLoaded = 0;
-		private TLongObjectMap<RouteSegment> routes = null;
+		private CompactRouteSegmentMap routes = null;
 		private TLongHashSet excludedIds = null;
 
 		public RoutingSubregionTile(RouteSubregion subregion) {
 			this.subregion = subregion;
 		}
 		
-		public TLongObjectMap<RouteSegment> getRoutes() {
-			return routes;
-		}
-		
 		public void loadAllObjects(final List<RouteDataObject> toFillIn, RoutingContext ctx, TLongObjectHashMap<RouteDataObject> excludeDuplications) {
 			if(routes != null) {
-				Iterator<RouteSegment> it = routes.valueCollection().iterator();
-				while(it.hasNext()){
-					RouteSegment rs = it.next();
-					while(rs != null){
-						RouteDataObject ro = rs.road;
-						if (!excludeDuplications.contains(ro.id)) {
-							excludeDuplications.put(ro.id, ro);
-							toFillIn.add(ro);
-						}
-						rs = rs.nextLoaded;
-					}
-				}
+				routes.collectRoads(toFillIn, excludeDuplications);
 			} else if(searchResult != null) {
 				RouteDataObject[] objects = searchResult.objects;
 				if(objects != null) {
@@ -844,29 +969,21 @@ public class RoutingContext {
 			excludedIds = null;
 		}
 		
+		void resetSearchState() {
+			if (routes != null) {
+				routes.clearSegments();
+			}
+		}
+
 		public void setLoadedNonNative(){
 			isLoaded = Math.abs(isLoaded) + 1;
-			routes = new TLongObjectHashMap<BinaryRoutePlanner.RouteSegment>();
+			routes = new CompactRouteSegmentMap();
 			tileStatistics = new TileStatistics();
 		}
 		
 		public void add(RouteDataObject ro) {
 			tileStatistics.addObject(ro);
-			for (int i = 0; i < ro.pointsX.length; i++) {
-				int x31 = ro.getPoint31XTile(i);
-				int y31 = ro.getPoint31YTile(i);
-				long l = (((long) x31) << 31) + (long) y31;
-				RouteSegment segment = new RouteSegment(ro, i);
-				if (!routes.containsKey(l)) {
-					routes.put(l, segment);
-				} else {
-					RouteSegment orig = routes.get(l);
-					while (orig.nextLoaded != null) {
-						orig = orig.nextLoaded;
-					}
-					orig.nextLoaded = segment;
-				}
-			}
+			routes.add(ro);
 		}
 		
 		public void setLoadedNative(NativeRouteSearchResult r, RoutingContext ctx) {
@@ -874,9 +991,9 @@ public class RoutingContext {
 			tileStatistics = new TileStatistics();
 			if (r.objects != null) {
 				searchResult = null;
-				routes = new TLongObjectHashMap<BinaryRoutePlanner.RouteSegment>();
+				routes = new CompactRouteSegmentMap();
 				for (RouteDataObject ro : r.objects) {
-					if (ro != null && ctx.config.router.acceptLine(ro)) {
+					if (ro != null && ctx.getRouter().acceptLine(ro)) {
 						add(ro);
 					}
 				}
@@ -0,0 +1,282 @@
+package net.osmand.router;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import net.osmand.binary.RouteDataObject;
+
+/**
+ * Time dependent speed factors: road class (highway tag value) or way id -> 168 hourly factors of week
+ * (Monday 00:00 - 01:00 is the first hour). Speed defined by router is multiplied by factor at the time when segment
+ * is passed. File is memory mapped on first lookup, so table which is set but not used doesn't cost anything.
+ *
+ * File layout (big endian):
+ * <pre>
+ * int MAGIC, int VERSION, int header length, header: int classes, [UTF class, int profile], int ways, int profiles
+ * ways: long[ways] sorted osm way ids, int[ways] profile
+ * profiles: [byte[168] factor in percents (unsigned, 0 - no data)]
+ * </pre>
+ */
+public class SpeedProfileTable {
+
+	public static final String EXT = ".speedprofile";
+	public static final int HOURS_OF_WEEK = 7 * 24;
+
+	private static final int MAGIC = 0x53504450; // SPDP
+	private static final int VERSION = 1;
+	private static final long HOUR = 60 * 60 * 1000l;
+	// 01.01.1970 is Thursday
+	private static final int EPOCH_DAY_OF_WEEK = 3;
+
+	private final File file;
+	private TimeZone timeZone = TimeZone.getDefault();
+
+	// loaded lazily
+	private RandomAccessFile raf;
+	private Map<String, Integer> classes;
+	private int waysCount;
+	private MappedByteBuffer ways;
+	private volatile float[] factors;
+
+	private SpeedProfileTable(File file) {
+		this.file = file;
+	}
+
+	public static SpeedProfileTable open(File file) {
+		return new SpeedProfileTable(file);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+
+	/**
+	 * Time zone in which hours of week are defined (default time zone by default)
+	 */
+	public SpeedProfileTable setTimeZone(TimeZone timeZone) {
+		this.timeZone = timeZone;
+		return this;
+	}
+
+	public static int getHourOfWeek(long time, TimeZone tz) {
+		long local = time + tz.getOffset(time);
+		long hours = local >= 0 ? local / HOUR : (local + 1) / HOUR - 1;
+		long days = hours >= 0 ? hours / 24 : (hours + 1) / 24 - 1;
+		int day = (int) ((days + EPOCH_DAY_OF_WEEK) % 7 + 7) % 7;
+		return day * 24 + (int) (hours - days * 24);
+	}
+
+	/**
+	 * Speed with factor applied, speeding up can't exceed max speed of router (bound of A* heuristic)
+	 * unless speed itself is higher. Route planner and route preparation use the same rule.
+	 */
+	public static double applySpeedFactor(double speed, float factor, double maxSpeed) {
+		double res = speed * factor;
+		return factor > 1 ? Math.min(res, Math.max(speed, maxSpeed)) : res;
+	}
+
+	/**
+	 * @return speed factor of road at time or 1 if there is no profile for road
+	 */
+	public float getSpeedFactor(RouteDataObject road, long time) {
+		if (factors == null) {
+			load();
+		}
+		int profile = getProfile(road);
+		if (profile < 0) {
+			return 1;
+		}
+		return factors[profile * HOURS_OF_WEEK + getHourOfWeek(time, timeZone)];
+	}
+
+	private int getProfile(RouteDataObject road) {
+		if (waysCount > 0) {
+			long osmId = road.getId() >> 6;
+			int l = 0;
+			int r = waysCount - 1;
+			while (l <= r) {
+				int m = (l + r) >>> 1;
+				long id = ways.getLong(m * 8);
+				if (id < osmId) {
+					l = m + 1;
+				} else if (id > osmId) {
+					r = m - 1;
+				} else {
+					return ways.getInt(waysCount * 8 + m * 4);
+				}
+			}
+		}
+		String hw = road.getHighway();
+		if (hw != null) {
+			Integer profile = classes.get(hw);
+			if (profile != null) {
+				return profile;
+			}
+		}
+		return -1;
+	}
+
+	private synchronized void load() {
+		if (factors != null) {
+			return;
+		}
+		boolean ok = false;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel ch = raf.getChannel();
+			ByteBuffer bf = readBuffer(ch, 0, 12);
+			if (bf.getInt() != MAGIC) {
+				throw new IOException("Not a speed profile file " + file.getName());
+			}
+			int version = bf.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported speed profile version " + version + " " + file.getName());
+			}
+			int headerLength = bf.getInt();
+			DataInputStream header = new DataInputStream(
+					new ByteArrayInputStream(readBuffer(ch, 12, headerLength).array()));
+			int classesCount = header.readInt();
+			Map<String, Integer> cls = new HashMap<String, Integer>();
+			for (int i = 0; i < classesCount; i++) {
+				String c = header.readUTF();
+				cls.put(c, header.readInt());
+			}
+			int wCount = header.readInt();
+			int profiles = header.readInt();
+			long pos = 12 + headerLength;
+			MappedByteBuffer w = ch.map(FileChannel.MapMode.READ_ONLY, pos, (long) wCount * 12);
+			pos += (long) wCount * 12;
+			ByteBuffer pb = readBuffer(ch, pos, profiles * HOURS_OF_WEEK);
+			float[] f = new float[profiles * HOURS_OF_WEEK];
+			for (int i = 0; i < f.length; i++) {
+				int percent = pb.get(i) & 0xff;
+				f[i] = percent == 0 ? 1 : percent / 100f;
+			}
+			classes = cls;
+			ways = w;
+			waysCount = wCount;
+			factors = f;
+			ok = true;
+		} catch (IOException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		} finally {
+			if (!ok && raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+				}
+				raf = null;
+			}
+		}
+	}
+
+	private static ByteBuffer readBuffer(FileChannel ch, long pos, int length) throws IOException {
+		ByteBuffer bf = ByteBuffer.allocate(length);
+		while (bf.hasRemaining()) {
+			if (ch.read(bf, pos + bf.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		bf.flip();
+		return bf;
+	}
+
+	public synchronized void close() throws IOException {
+		if (raf != null) {
+			raf.close();
+			raf = null;
+		}
+		factors = null;
+		ways = null;
+		classes = null;
+		waysCount = 0;
+	}
+
+	/**
+	 * Writes table, equal profiles are stored once.
+	 * @param classProfiles road class -> 168 factors
+	 * @param wayProfiles osm way id -> 168 factors
+	 */
+	public static void write(File out, Map<String, float[]> classProfiles, Map<Long, float[]> wayProfiles)
+			throws IOException {
+		List<byte[]> profiles = new ArrayList<byte[]>();
+		Map<String, Integer> profileIndexes = new HashMap<String, Integer>();
+		Map<String, Integer> cls = new TreeMap<String, Integer>();
+		for (Map.Entry<String, float[]> e : classProfiles.entrySet()) {
+			cls.put(e.getKey(), addProfile(e.getValue(), profiles, profileIndexes));
+		}
+		TreeMap<Long, Integer> ws = new TreeMap<Long, Integer>();
+		for (Map.Entry<Long, float[]> e : wayProfiles.entrySet()) {
+			ws.put(e.getKey(), addProfile(e.getValue(), profiles, profileIndexes));
+		}
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeInt(cls.size());
+		for (Map.Entry<String, Integer> e : cls.entrySet()) {
+			header.writeUTF(e.getKey());
+			header.writeInt(e.getValue());
+		}
+		header.writeInt(ws.size());
+		header.writeInt(profiles.size());
+		header.close();
+
+		DataOutputStream dous = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+		try {
+			dous.writeInt(MAGIC);
+			dous.writeInt(VERSION);
+			dous.writeInt(headerBytes.size());
+			headerBytes.writeTo(dous);
+			for (Long id : ws.keySet()) {
+				dous.writeLong(id);
+			}
+			for (Integer profile : ws.values()) {
+				dous.writeInt(profile);
+			}
+			for (byte[] p : profiles) {
+				dous.write(p);
+			}
+		} finally {
+			dous.close();
+		}
+	}
+
+	private static int addProfile(float[] factors, List<byte[]> profiles, Map<String, Integer> profileIndexes) {
+		if (factors.length != HOURS_OF_WEEK) {
+			throw new IllegalArgumentException("Speed profile should have " + HOURS_OF_WEEK + " factors");
+		}
+		byte[] p = new byte[HOURS_OF_WEEK];
+		for (int i = 0; i < p.length; i++) {
+			int percent = Math.round(factors[i] * 100);
+			p[i] = (byte) Math.max(1, Math.min(255, percent));
+		}
+		String key = Arrays.toString(p);
+		Integer ind = profileIndexes.get(key);
+		if (ind == null) {
+			ind = profiles.size();
+			profiles.add(p);
+			profileIndexes.put(key, ind);
+		}
+		return ind;
+	}
+}
@@ -0,0 +1,759 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.HHRouteMatrixRes;
+import net.osmand.util.MapUtils;
+
+/**
+ * Orders stops of one or several vehicles by duration matrix (road network times of
+ * {@link HHRoutePlanner#runMatrixRouting} or straight line estimate), matrix could be asymmetric.
+ * Each restart builds solution by cheapest insertion in random order and improves it by 2-opt, or-opt
+ * (also between vehicles) and ruin & recreate perturbations. Restarts run in parallel till time limit or till
+ * they stop improving. Time windows and capacity are soft constraints: violations are penalized, so solution is
+ * always returned and {@link TspSolution#feasible} tells whether all of them are satisfied.
+ */
+public class TspSolver {
+
+	// time used for missing routes in matrix (negative values)
+	public static final double UNREACHABLE_TIME = 1e6;
+	// penalty for each second of late arrival
+	private static final double LATE_PENALTY = 100;
+	// penalty for each unit over vehicle capacity
+	private static final double CAPACITY_PENALTY = 1e4;
+	// part of stops removed by ruin & recreate perturbation
+	private static final double RUIN_PART = 0.15;
+	private static final int MAX_OR_OPT_SEGMENT = 3;
+	// search thread stops after restarts which didn't improve the best solution
+	private static final int MAX_IDLE_RESTARTS = 3;
+
+	public static class TspProblem {
+		final double[][] matrix;
+		final int start;
+		final int end;
+		int vehicles = 1;
+		double startTime;
+		double[] windowStart;
+		double[] windowEnd;
+		double[] serviceTime;
+		int[] demands;
+		int capacity = Integer.MAX_VALUE;
+
+		/**
+		 * @param matrix time in seconds [from][to], negative if route is not found
+		 * @param start index of start point of all vehicles
+		 * @param end index of end point, start for round trip or -1 if route can end at any stop
+		 */
+		public TspProblem(double[][] matrix, int start, int end) {
+			if (start < 0 || start >= matrix.length || end >= matrix.length) {
+				throw new IllegalArgumentException("Start / end is out of matrix");
+			}
+			this.matrix = matrix;
+			this.start = start;
+			this.end = end;
+		}
+
+		public TspProblem setVehicles(int vehicles) {
+			this.vehicles = Math.max(1, vehicles);
+			return this;
+		}
+
+		// time of departure from start (time windows use the same time scale)
+		public TspProblem setStartTime(double startTime) {
+			this.startTime = startTime;
+			return this;
+		}
+
+		public TspProblem setTimeWindow(int stop, double from, double to) {
+			if (windowStart == null) {
+				windowStart = new double[matrix.length];
+				windowEnd = new double[matrix.length];
+				Arrays.fill(windowStart, Double.NEGATIVE_INFINITY);
+				Arrays.fill(windowEnd, Double.POSITIVE_INFINITY);
+			}
+			windowStart[stop] = from;
+			windowEnd[stop] = to;
+			return this;
+		}
+
+		public TspProblem setServiceTime(int stop, double time) {
+			if (serviceTime == null) {
+				serviceTime = new double[matrix.length];
+			}
+			serviceTime[stop] = time;
+			return this;
+		}
+
+		public TspProblem setDemand(int stop, int demand) {
+			if (demands == null) {
+				demands = new int[matrix.length];
+			}
+			demands[stop] = demand;
+			return this;
+		}
+
+		public TspProblem setCapacity(int capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+
+		int[] getStops() {
+			TIntArrayList stops = new TIntArrayList();
+			for (int i = 0; i < matrix.length; i++) {
+				if (i != start && i != end) {
+					stops.add(i);
+				}
+			}
+			return stops.toArray();
+		}
+
+		double time(int from, int to) {
+			if (from == to) {
+				return 0;
+			}
+			double t = matrix[from][to];
+			return t < 0 ? UNREACHABLE_TIME : t;
+		}
+	}
+
+	public static class TspSolution {
+		// point indexes of each vehicle route including start and end point
+		public final int[][] routes;
+		// arrival time at each point (NaN if point is not visited), for start point it is time of return
+		// for round trip or start time
+		public final double[] arrivalTimes;
+		// sum of route durations including waiting and service time
+		public final double duration;
+		public final boolean feasible;
+		public final int restarts;
+		final double cost;
+
+		TspSolution(int[][] routes, double[] arrivalTimes, double duration, double cost, boolean feasible,
+				int restarts) {
+			this.routes = routes;
+			this.arrivalTimes = arrivalTimes;
+			this.duration = duration;
+			this.cost = cost;
+			this.feasible = feasible;
+			this.restarts = restarts;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("Duration %.1f s%s, restarts %d", duration, feasible ? "" : " (not feasible)",
+					restarts));
+			for (int[] r : routes) {
+				sb.append("\n ").append(Arrays.toString(r));
+			}
+			return sb.toString();
+		}
+	}
+
+	private long timeLimit = 1000;
+	private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private int maxIdleIterations = 200;
+	// fixed seed and order of equal solutions give the same result for the same problem (unless time limit is reached)
+	private long seed = 0;
+
+	// shared between threads
+	private Solution best;
+	private int restarts;
+	private Exception error;
+
+	public TspSolver setTimeLimit(long timeLimitMs) {
+		this.timeLimit = timeLimitMs;
+		return this;
+	}
+
+	public TspSolver setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	// restart stops after this number of perturbations which didn't improve it
+	public TspSolver setMaxIdleIterations(int maxIdleIterations) {
+		this.maxIdleIterations = Math.max(1, maxIdleIterations);
+		return this;
+	}
+
+	public TspSolver setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Orders all points of matrix for one vehicle: start is the first point, end (if set and differs from start)
+	 * is the last one, end = -1 for route which can end at any point.
+	 */
+	public static int[] solveOrder(double[][] matrix, int start, int end) throws InterruptedException {
+		return solveOrder(matrix, start, end, 0);
+	}
+
+	public static int[] solveOrder(double[][] matrix, int start, int end, long seed) throws InterruptedException {
+		TspSolution s = new TspSolver().setSeed(seed).solve(new TspProblem(matrix, start, end));
+		int[] route = s.routes[0];
+		if (end == start && route.length > 1) {
+			return Arrays.copyOf(route, route.length - 1);
+		}
+		return route;
+	}
+
+	/**
+	 * @return time matrix by straight line distances with speed (m/s)
+	 */
+	public static double[][] buildStraightLineMatrix(List<LatLon> points, float speed) {
+		double[][] matrix = new double[points.size()][points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			for (int j = i + 1; j < points.size(); j++) {
+				matrix[i][j] = matrix[j][i] = MapUtils.getDistance(points.get(i), points.get(j)) / speed;
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * @return time matrix of matrix routing calculated with the same list of sources and targets
+	 */
+	public static double[][] buildMatrix(HHRouteMatrixRes res) {
+		if (!res.isCorrect() || res.sources.size() != res.targets.size()) {
+			throw new IllegalArgumentException("Matrix should be calculated between the same points");
+		}
+		return res.times;
+	}
+
+	public TspSolution solve(final TspProblem problem) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeLimit;
+		best = null;
+		restarts = 0;
+		error = null;
+		int[] stops = problem.getStops();
+		int th = stops.length <= 3 ? 1 : threads;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int k = 0; k < th; k++) {
+			final Search search = new Search(problem, new Random(seed + k), deadline);
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						search.run();
+					} catch (RuntimeException e) {
+						synchronized (TspSolver.this) {
+							error = e;
+						}
+					}
+				}
+			}, "TSP search " + k);
+			t.setDaemon(true);
+			workers.add(t);
+		}
+		if (workers.size() == 1) {
+			workers.get(0).run();
+		} else {
+			for (Thread t : workers) {
+				t.start();
+			}
+			for (Thread t : workers) {
+				t.join();
+			}
+		}
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		}
+		return best.toSolution(problem, restarts);
+	}
+
+	private synchronized boolean updateBest(Solution s) {
+		if (best == null || s.cost < best.cost - 1e-9) {
+			best = s.copy();
+			return true;
+		}
+		if (s.cost <= best.cost + 1e-9 && s.compareRoutes(best) < 0) {
+			// solution of the same cost found by other thread, result shouldn't depend on order of threads
+			best = s.copy();
+		}
+		return false;
+	}
+
+	private synchronized void restartFinished() {
+		restarts++;
+	}
+
+	private static class Solution {
+		final TIntArrayList[] routes;
+		final double[] costs;
+		double cost;
+
+		Solution(int vehicles) {
+			routes = new TIntArrayList[vehicles];
+			costs = new double[vehicles];
+			for (int i = 0; i < vehicles; i++) {
+				routes[i] = new TIntArrayList();
+			}
+		}
+
+		Solution copy() {
+			Solution s = new Solution(routes.length);
+			for (int i = 0; i < routes.length; i++) {
+				s.routes[i].addAll(routes[i]);
+				s.costs[i] = costs[i];
+			}
+			s.cost = cost;
+			return s;
+		}
+
+		int compareRoutes(Solution o) {
+			for (int r = 0; r < routes.length; r++) {
+				int len = Math.min(routes[r].size(), o.routes[r].size());
+				for (int i = 0; i < len; i++) {
+					if (routes[r].get(i) != o.routes[r].get(i)) {
+						return routes[r].get(i) < o.routes[r].get(i) ? -1 : 1;
+					}
+				}
+				if (routes[r].size() != o.routes[r].size()) {
+					return routes[r].size() < o.routes[r].size() ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+
+		TspSolution toSolution(TspProblem p, int restarts) {
+			int[][] res = new int[routes.length][];
+			double[] arrival = new double[p.matrix.length];
+			Arrays.fill(arrival, Double.NaN);
+			arrival[p.start] = p.startTime;
+			double duration = 0;
+			boolean feasible = true;
+			for (int r = 0; r < routes.length; r++) {
+				TIntArrayList route = routes[r];
+				TIntArrayList points = new TIntArrayList();
+				points.add(p.start);
+				if (route.isEmpty()) {
+					if (p.end >= 0 && p.end != p.start) {
+						points.add(p.end);
+					}
+					res[r] = points.toArray();
+					continue;
+				}
+				double t = p.startTime;
+				int prev = p.start;
+				int load = 0;
+				for (int i = 0; i < route.size(); i++) {
+					int s = route.get(i);
+					feasible &= p.matrix[prev][s] >= 0 || prev == s;
+					t = arrive(p, s, t + p.time(prev, s));
+					feasible &= p.windowEnd == null || t <= p.windowEnd[s];
+					arrival[s] = t;
+					t += p.serviceTime == null ? 0 : p.serviceTime[s];
+					load += p.demands == null ? 0 : p.demands[s];
+					points.add(s);
+					prev = s;
+				}
+				if (p.end >= 0) {
+					feasible &= p.matrix[prev][p.end] >= 0 || prev == p.end;
+					t = arrive(p, p.end, t + p.time(prev, p.end));
+					feasible &= p.windowEnd == null || t <= p.windowEnd[p.end];
+					arrival[p.end] = t;
+					points.add(p.end);
+				}
+				feasible &= load <= p.capacity;
+				duration += t - p.startTime;
+				res[r] = points.toArray();
+			}
+			return new TspSolution(res, arrival, duration, cost, feasible, restarts);
+		}
+	}
+
+	private static double arrive(TspProblem p, int stop, double t) {
+		if (p.windowStart != null && t < p.windowStart[stop]) {
+			// wait for window
+			return p.windowStart[stop];
+		}
+		return t;
+	}
+
+	private class Search {
+		final TspProblem p;
+		final Random rnd;
+		final long deadline;
+		final int[] stops;
+		final int[] buf;
+		final int[] buf2;
+		// without time windows and capacity route cost is sum of arcs, so moves are evaluated by arc differences
+		final boolean simple;
+		final double[] fwd;
+		final double[] bwd;
+
+		Search(TspProblem p, Random rnd, long deadline) {
+			this.p = p;
+			this.rnd = rnd;
+			this.deadline = deadline;
+			this.stops = p.getStops();
+			this.buf = new int[stops.length + 1];
+			this.buf2 = new int[stops.length + 1];
+			this.simple = p.windowEnd == null && p.demands == null;
+			this.fwd = new double[stops.length + 1];
+			this.bwd = new double[stops.length + 1];
+		}
+
+		boolean timeIsUp() {
+			return System.currentTimeMillis() > deadline;
+		}
+
+		void run() {
+			int idleRestarts = 0;
+			do {
+				Solution current = new Solution(p.vehicles);
+				insertStops(current, shuffledStops());
+				localSearch(current);
+				boolean improvedBest = updateBest(current);
+				int idle = 0;
+				while (idle < maxIdleIterations && !timeIsUp() && stops.length > 1) {
+					Solution next = current.copy();
+					ruinAndRecreate(next);
+					localSearch(next);
+					if (next.cost < current.cost - 1e-9) {
+						current = next;
+						idle = 0;
+						improvedBest |= updateBest(current);
+					} else {
+						idle++;
+					}
+				}
+				restartFinished();
+				idleRestarts = improvedBest ? 0 : idleRestarts + 1;
+			} while (!timeIsUp() && stops.length > 3 && idleRestarts < MAX_IDLE_RESTARTS);
+		}
+
+		TIntArrayList shuffledStops() {
+			TIntArrayList l = new TIntArrayList(stops);
+			l.shuffle(rnd);
+			return l;
+		}
+
+		// time of arc, to = -1 is the end of open route
+		double arc(int from, int to) {
+			return to < 0 ? 0 : p.time(from, to);
+		}
+
+		double service(int stop) {
+			return p.serviceTime == null ? 0 : p.serviceTime[stop];
+		}
+
+		double eval(int[] route, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			double t = p.startTime;
+			double late = 0;
+			int load = 0;
+			int prev = p.start;
+			for (int i = 0; i < len; i++) {
+				int s = route[i];
+				t = arrive(p, s, t + p.time(prev, s));
+				if (p.windowEnd != null && t > p.windowEnd[s]) {
+					late += t - p.windowEnd[s];
+				}
+				t += service(s);
+				if (p.demands != null) {
+					load += p.demands[s];
+				}
+				prev = s;
+			}
+			if (p.end >= 0) {
+				t = arrive(p, p.end, t + p.time(prev, p.end));
+				if (p.windowEnd != null && t > p.windowEnd[p.end]) {
+					late += t - p.windowEnd[p.end];
+				}
+			}
+			double cost = t - p.startTime + late * LATE_PENALTY;
+			if (load > p.capacity) {
+				cost += (load - p.capacity) * CAPACITY_PENALTY;
+			}
+			return cost;
+		}
+
+		double eval(TIntArrayList route) {
+			return eval(route.toArray(buf, 0, route.size()), route.size());
+		}
+
+		void updateCosts(Solution s) {
+			s.cost = 0;
+			for (int r = 0; r < s.routes.length; r++) {
+				s.costs[r] = eval(s.routes[r]);
+				s.cost += s.costs[r];
+			}
+		}
+
+		// cost difference of route with stop inserted at position
+		double insertDelta(Solution s, int r, int stop, int pos) {
+			TIntArrayList route = s.routes[r];
+			int len = route.size();
+			if (simple && len > 0) {
+				int u = pos == 0 ? p.start : route.get(pos - 1);
+				int v = pos == len ? p.end : route.get(pos);
+				return p.time(u, stop) + arc(stop, v) - arc(u, v) + service(stop);
+			}
+			for (int i = 0, j = 0; i <= len; i++) {
+				buf[i] = i == pos ? stop : route.get(j++);
+			}
+			return eval(buf, len + 1) - s.costs[r];
+		}
+
+		void insertStops(Solution s, TIntArrayList toInsert) {
+			for (int k = 0; k < toInsert.size(); k++) {
+				int stop = toInsert.get(k);
+				int bestRoute = -1;
+				int bestPos = -1;
+				double bestDelta = Double.POSITIVE_INFINITY;
+				boolean emptyTried = false;
+				for (int r = 0; r < s.routes.length; r++) {
+					TIntArrayList route = s.routes[r];
+					if (route.isEmpty()) {
+						// all empty vehicles are equal
+						if (emptyTried) {
+							continue;
+						}
+						emptyTried = true;
+					}
+					for (int pos = 0; pos <= route.size(); pos++) {
+						double d = insertDelta(s, r, stop, pos);
+						if (d < bestDelta) {
+							bestDelta = d;
+							bestRoute = r;
+							bestPos = pos;
+						}
+					}
+				}
+				TIntArrayList route = s.routes[bestRoute];
+				route.insert(bestPos, stop);
+				double c = eval(route);
+				s.cost += c - s.costs[bestRoute];
+				s.costs[bestRoute] = c;
+			}
+		}
+
+		void ruinAndRecreate(Solution s) {
+			int remove = Math.max(2, (int) (stops.length * RUIN_PART));
+			TIntArrayList removed = new TIntArrayList();
+			if (rnd.nextBoolean()) {
+				// random stops
+				for (int k = 0; k < remove; k++) {
+					int r = rnd.nextInt(s.routes.length);
+					if (!s.routes[r].isEmpty()) {
+						removed.add(s.routes[r].removeAt(rnd.nextInt(s.routes[r].size())));
+					}
+				}
+			} else {
+				// consecutive stops of one route
+				int r = rnd.nextInt(s.routes.length);
+				for (int i = 0; i < s.routes.length && s.routes[r].isEmpty(); i++) {
+					r = (r + 1) % s.routes.length;
+				}
+				TIntArrayList route = s.routes[r];
+				int from = rnd.nextInt(route.size());
+				int cnt = Math.min(remove, route.size() - from);
+				for (int k = 0; k < cnt; k++) {
+					removed.add(route.removeAt(from));
+				}
+			}
+			updateCosts(s);
+			removed.shuffle(rnd);
+			insertStops(s, removed);
+		}
+
+		void localSearch(Solution s) {
+			boolean improved = true;
+			while (improved && !timeIsUp()) {
+				improved = false;
+				for (int r = 0; r < s.routes.length; r++) {
+					improved |= twoOpt(s, r);
+				}
+				improved |= orOpt(s);
+			}
+		}
+
+		void calculatePrefixTimes(int[] route, int len) {
+			for (int k = 1; k < len; k++) {
+				fwd[k] = fwd[k - 1] + p.time(route[k - 1], route[k]);
+				bwd[k] = bwd[k - 1] + p.time(route[k], route[k - 1]);
+			}
+		}
+
+		// reverses part of route [i, j]
+		boolean twoOpt(Solution s, int r) {
+			TIntArrayList route = s.routes[r];
+			int len = route.size();
+			int[] rt = route.toArray();
+			if (simple) {
+				calculatePrefixTimes(rt, len);
+			}
+			boolean improved = false;
+			for (int i = 0; i < len - 1; i++) {
+				if (timeIsUp()) {
+					break;
+				}
+				int a = i == 0 ? p.start : rt[i - 1];
+				for (int j = i + 1; j < len; j++) {
+					boolean better;
+					if (simple) {
+						int b = j == len - 1 ? p.end : rt[j + 1];
+						double delta = p.time(a, rt[j]) + arc(rt[i], b) + bwd[j] - bwd[i]
+								- p.time(a, rt[i]) - arc(rt[j], b) - (fwd[j] - fwd[i]);
+						better = delta < -1e-9;
+					} else {
+						System.arraycopy(rt, 0, buf, 0, len);
+						reverse(buf, i, j);
+						better = eval(buf, len) < s.costs[r] - 1e-9;
+					}
+					if (better) {
+						reverse(rt, i, j);
+						route.clear();
+						route.add(rt);
+						double c = eval(rt, len);
+						s.cost += c - s.costs[r];
+						s.costs[r] = c;
+						if (simple) {
+							calculatePrefixTimes(rt, len);
+						}
+						improved = true;
+					}
+				}
+			}
+			return improved;
+		}
+
+		void reverse(int[] a, int i, int j) {
+			for (; i < j; i++, j--) {
+				int t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		}
+
+		// moves segment of 1 - MAX_OR_OPT_SEGMENT stops to another position of the same or another route
+		boolean orOpt(Solution s) {
+			boolean improved = false;
+			for (int r = 0; r < s.routes.length; r++) {
+				for (int seg = 1; seg <= MAX_OR_OPT_SEGMENT; seg++) {
+					for (int i = 0; i + seg <= s.routes[r].size(); i++) {
+						if (timeIsUp()) {
+							return improved;
+						}
+						if (moveSegment(s, r, i, seg)) {
+							improved = true;
+						}
+					}
+				}
+			}
+			return improved;
+		}
+
+		boolean moveSegment(Solution s, int r, int i, int seg) {
+			TIntArrayList route = s.routes[r];
+			int len = route.size();
+			// route without segment
+			int restLen = 0;
+			for (int k = 0; k < len; k++) {
+				if (k < i || k >= i + seg) {
+					buf2[restLen++] = route.get(k);
+				}
+			}
+			int first = route.get(i);
+			int last = route.get(i + seg - 1);
+			double inner = 0;
+			double segService = service(first);
+			for (int k = i + 1; k < i + seg; k++) {
+				inner += p.time(route.get(k - 1), route.get(k));
+				segService += service(route.get(k));
+			}
+			double restCost = -1;
+			double removeDelta = 0;
+			if (!simple) {
+				restCost = eval(buf2, restLen);
+			} else if (restLen == 0) {
+				removeDelta = -s.costs[r];
+			} else {
+				int u = i == 0 ? p.start : route.get(i - 1);
+				int v = i + seg == len ? p.end : route.get(i + seg);
+				removeDelta = arc(u, v) - p.time(u, first) - inner - arc(last, v) - segService;
+			}
+			boolean emptyTried = false;
+			for (int r2 = 0; r2 < s.routes.length; r2++) {
+				TIntArrayList target = r2 == r ? null : s.routes[r2];
+				if (target == null && restLen == 0) {
+					continue;
+				}
+				int targetLen = target == null ? restLen : target.size();
+				if (target != null && target.isEmpty()) {
+					if (emptyTried) {
+						continue;
+					}
+					emptyTried = true;
+				}
+				double before = target == null ? s.costs[r] : s.costs[r] + s.costs[r2];
+				for (int pos = 0; pos <= targetLen; pos++) {
+					if (target == null && pos == i) {
+						continue;
+					}
+					boolean better;
+					if (simple) {
+						int u = pos == 0 ? p.start : (target == null ? buf2[pos - 1] : target.get(pos - 1));
+						int v = pos == targetLen ? p.end : (target == null ? buf2[pos] : target.get(pos));
+						double insertDelta = p.time(u, first) + inner + arc(last, v) + segService;
+						if (targetLen > 0) {
+							insertDelta -= arc(u, v);
+						}
+						better = removeDelta + insertDelta < -1e-9;
+					} else {
+						int l = fillMoved(route, i, seg, target, targetLen, pos);
+						double c = eval(buf, l);
+						double after = target == null ? c : c + restCost;
+						better = after < before - 1e-9;
+					}
+					if (better) {
+						int l = fillMoved(route, i, seg, target, targetLen, pos);
+						if (target == null) {
+							route.clear();
+							route.add(buf, 0, l);
+						} else {
+							target.clear();
+							target.add(buf, 0, l);
+							route.clear();
+							route.add(buf2, 0, restLen);
+							double c = eval(target);
+							s.cost += c - s.costs[r2];
+							s.costs[r2] = c;
+						}
+						double c = eval(route);
+						s.cost += c - s.costs[r];
+						s.costs[r] = c;
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		// fills buf with target route (or route without segment) with segment inserted at position
+		int fillMoved(TIntArrayList route, int i, int seg, TIntArrayList target, int targetLen, int pos) {
+			int l = 0;
+			for (int k = 0; k <= targetLen; k++) {
+				if (k == pos) {
+					for (int m = 0; m < seg; m++) {
+						buf[l++] = route.get(i + m);
+					}
+				}
+				if (k < targetLen) {
+					buf[l++] = target == null ? buf2[k] : target.get(k);
+				}
+			}
+			return l;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package net.osmand.search.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+
+/**
+ * Reads independent map files in several threads (each file is read by one thread with its own request) and
+ * publishes found objects in the search thread in order of files, so results are the same as for sequential search.
+ * Matching of found objects should be done in {@link #publishRegion}, string matchers are not thread safe.
+ */
+abstract class ParallelRegionSearch<T> {
+
+	private static final long WAIT_CANCEL_CHECK_MS = 50;
+
+	private final SearchResultMatcher resultMatcher;
+	private final int threads;
+	private final int limit;
+	private volatile boolean stopped;
+	// regions after this one are not read, found objects of previous regions exceed limit
+	private volatile int stopRegion = Integer.MAX_VALUE;
+	private int[] found;
+
+	/**
+	 * @param limit number of found objects to stop reading, -1 if not limited. Region is stopped only by objects
+	 *              found in it and in previous regions, so the same objects are published as by sequential search.
+	 */
+	ParallelRegionSearch(SearchResultMatcher resultMatcher, int threads, int limit) {
+		this.resultMatcher = resultMatcher;
+		this.threads = threads;
+		this.limit = limit;
+	}
+
+	/**
+	 * Called in worker thread, found objects should be passed to collector
+	 */
+	protected abstract void searchRegion(BinaryMapIndexReader r, ResultMatcher<T> collector) throws IOException;
+
+	/**
+	 * Called in search thread in order of regions
+	 */
+	protected abstract void publishRegion(BinaryMapIndexReader r, List<T> objects) throws IOException;
+
+	private ResultMatcher<T> createCollector(final int region, final List<T> objects) {
+		return new ResultMatcher<T>() {
+
+			@Override
+			public boolean publish(T object) {
+				objects.add(object);
+				if (limit != -1) {
+					countFound(region);
+				}
+				return false;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return stopped || region >= stopRegion || resultMatcher.isCancelled();
+			}
+		};
+	}
+
+	private synchronized void countFound(int region) {
+		found[region]++;
+		int total = 0;
+		for (int i = 0; i <= region; i++) {
+			total += found[i];
+		}
+		if (total > limit && region < stopRegion) {
+			stopRegion = region;
+		}
+	}
+
+	void search(final List<BinaryMapIndexReader> regions) throws IOException {
+		final int size = regions.size();
+		found = new int[size];
+		if (threads <= 1 || size <= 1) {
+			for (int i = 0; i < size && i <= stopRegion && !resultMatcher.isCancelled(); i++) {
+				List<T> objects = new ArrayList<>();
+				searchRegion(regions.get(i), createCollector(i, objects));
+				publishRegion(regions.get(i), objects);
+			}
+			return;
+		}
+		final Object[] results = new Object[size];
+		final boolean[] done = new boolean[size];
+		final Exception[] error = new Exception[1];
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				int i;
+				while (!stopped && (i = next.getAndIncrement()) < size) {
+					List<T> objects = new ArrayList<>();
+					try {
+						if (i <= stopRegion) {
+							searchRegion(regions.get(i), createCollector(i, objects));
+						}
+					} catch (IOException | RuntimeException e) {
+						synchronized (results) {
+							if (error[0] == null) {
+								error[0] = e;
+							}
+						}
+						stopped = true;
+					}
+					synchronized (results) {
+						results[i] = objects;
+						done[i] = true;
+						results.notifyAll();
+					}
+				}
+			}
+		};
+		List<Thread> workers = new ArrayList<>();
+		for (int k = 0; k < Math.min(threads, size); k++) {
+			Thread t = new Thread(worker, "Search regions " + k);
+			t.setDaemon(true);
+			t.start();
+			workers.add(t);
+		}
+		try {
+			for (int i = 0; i < size && i <= stopRegion; i++) {
+				List<T> objects = waitRegion(i, results, done, error);
+				if (objects == null) {
+					break;
+				}
+				publishRegion(regions.get(i), objects);
+			}
+		} finally {
+			stopped = true;
+			for (Thread t : workers) {
+				try {
+					t.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (error[0] instanceof IOException) {
+			throw (IOException) error[0];
+		} else if (error[0] != null) {
+			throw (RuntimeException) error[0];
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<T> waitRegion(int i, Object[] results, boolean[] done, Exception[] error) {
+		synchronized (results) {
+			while (!done[i] && error[0] == null && !resultMatcher.isCancelled()) {
+				try {
+					results.wait(WAIT_CANCEL_CHECK_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			if (!done[i] || error[0] != null || resultMatcher.isCancelled()) {
+				return null;
+			}
+			List<T> objects = (List<T>) results[i];
+			results[i] = null;
+			return objects;
+		}
+	}
+}
@@ -362,20 +362,23 @@ public class SearchCoreFactory {
 		private void initAndSearchCities(final SearchPhrase phrase, final SearchResultMatcher resultMatcher) throws IOException {
 			QuadRect bbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 20);
 			Iterator<BinaryMapIndexReader> offlineIndexes = phrase.getOfflineIndexes(bbox, SearchPhraseDataType.ADDRESS);
+			int threads = phrase.getSettings().getSearchThreads();
+			if (threads > 1) {
+				List<BinaryMapIndexReader> regions = new ArrayList<>();
+				while (offlineIndexes.hasNext()) {
+					BinaryMapIndexReader r = offlineIndexes.next();
+					if (!townCities.containsKey(r) && !regions.contains(r)) {
+						regions.add(r);
+					}
+				}
+				loadTownCitiesParallel(resultMatcher, regions, threads);
+			}
 			while (offlineIndexes.hasNext()) {
 				BinaryMapIndexReader r = offlineIndexes.next();
 				if (!townCities.containsKey(r)) {
 					BinaryMapIndexReader.buildAddressRequest(null);
 					List<City> l = r.getCities(null, BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE);
-					townCities.put(r, l);
-					for (City c  : l) {
-						LatLon cl = c.getLocation();
-						c.setReferenceFile(r);
-						int y = MapUtils.get31TileNumberY(cl.getLatitude());
-						int x = MapUtils.get31TileNumberX(cl.getLongitude());
-						QuadRect qr = new QuadRect(x, y, x, y);
-						townCitiesQR.insert(c, qr);
-					}
+					addTownCities(r, l);
 				}
 			}
 			if (phrase.isNoSelectedType() && bbox != null
@@ -413,6 +416,36 @@ public class SearchCoreFactory {
 			}
 		}
 		
+		private void addTownCities(BinaryMapIndexReader r, List<City> l) {
+			townCities.put(r, l);
+			for (City c  : l) {
+				LatLon cl = c.getLocation();
+				c.setReferenceFile(r);
+				int y = MapUtils.get31TileNumberY(cl.getLatitude());
+				int x = MapUtils.get31TileNumberX(cl.getLongitude());
+				QuadRect qr = new QuadRect(x, y, x, y);
+				townCitiesQR.insert(c, qr);
+			}
+		}
+
+		private void loadTownCitiesParallel(SearchResultMatcher resultMatcher, List<BinaryMapIndexReader> regions,
+				int threads) throws IOException {
+			new ParallelRegionSearch<City>(resultMatcher, threads, -1) {
+
+				@Override
+				protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<City> collector) throws IOException {
+					for (City c : r.getCities(null, BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE)) {
+						collector.publish(c);
+					}
+				}
+
+				@Override
+				protected void publishRegion(BinaryMapIndexReader r, List<City> objects) {
+					addTownCities(r, objects);
+				}
+			}.search(regions);
+		}
+
 		private void searchPoiInCity(SearchPhrase nphrase, SearchResult res, SearchResultMatcher resultMatcher) throws IOException {
 			if (nphrase != null && res.objectType == ObjectType.CITY) {
 				SearchAmenityByNameAPI poiApi = new SearchCoreFactory.SearchAmenityByNameAPI();
@@ -427,7 +460,6 @@ public class SearchCoreFactory {
 			if (phrase.getRadiusLevel() > 1 || phrase.getUnknownWordToSearch().length() > 3 ||
 					phrase.hasMoreThanOneUnknownSearchWord()|| phrase.isSearchTypeAllowed(ObjectType.POSTCODE, true)) {
 				final boolean locSpecified = phrase.getLastTokenLocation() != null;
-				LatLon loc = phrase.getLastTokenLocation();
 				final List<SearchResult> immediateResults = new ArrayList<>();
 				final QuadRect streetBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS);
 				final QuadRect postcodeBbox = phrase.getRadiusBBoxToSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5);
@@ -550,29 +582,115 @@ public class SearchCoreFactory {
 				Iterator<BinaryMapIndexReader> offlineIterator = phrase.getRadiusOfflineIndexes(DEFAULT_ADDRESS_BBOX_RADIUS * 5,
 						SearchPhraseDataType.ADDRESS);
 				String wordToSearch = phrase.getUnknownWordToSearch();
+				int threads = phrase.getSettings().getSearchThreads();
+				if (threads > 1 && !phrase.getSettings().isExportObjects() && wordToSearch.length() > 0) {
+					List<BinaryMapIndexReader> regions = new ArrayList<>();
+					while (offlineIterator.hasNext()) {
+						regions.add(offlineIterator.next());
+					}
+					searchByNameParallel(phrase, resultMatcher, regions, threads, wordToSearch, rm, immediateResults,
+							currentFile);
+				}
 				while (offlineIterator.hasNext() && wordToSearch.length() > 0) {
 					BinaryMapIndexReader r = offlineIterator.next();
 					currentFile[0] = r;
 					immediateResults.clear();
-					SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(rm, rawDataCollector, wordToSearch.toLowerCase(),
-							phrase.isMainUnknownSearchWordComplete() ? StringMatcherMode.CHECK_EQUALS_FROM_SPACE
-									: StringMatcherMode.CHECK_STARTS_FROM_SPACE);
-					if (locSpecified) {
-						req.setBBoxRadius(loc.getLatitude(), loc.getLongitude(),
-								phrase.getRadiusSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5));
-					}
+					SearchRequest<MapObject> req = buildAddressByNameRequest(phrase, rm, rawDataCollector, wordToSearch);
 					r.searchAddressDataByName(req);
-					for (SearchResult res : immediateResults) {
-						if (res.objectType == ObjectType.STREET) {
-							subSearchApiOrPublish(phrase, resultMatcher, res, streetsApi);
-						} else {
-							SearchPhrase nphrase = subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
-							searchPoiInCity(nphrase, res, resultMatcher);
+					publishAddressResults(phrase, resultMatcher, r, immediateResults);
+				}
+			}
+		}
+
+		private SearchRequest<MapObject> buildAddressByNameRequest(SearchPhrase phrase, ResultMatcher<MapObject> rm,
+				ResultMatcher<MapObject> rawDataCollector, String wordToSearch) {
+			SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(rm, rawDataCollector, wordToSearch.toLowerCase(),
+					phrase.isMainUnknownSearchWordComplete() ? StringMatcherMode.CHECK_EQUALS_FROM_SPACE
+							: StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+			LatLon loc = phrase.getLastTokenLocation();
+			if (loc != null) {
+				req.setBBoxRadius(loc.getLatitude(), loc.getLongitude(),
+						phrase.getRadiusSearch(DEFAULT_ADDRESS_BBOX_RADIUS * 5));
+			}
+			return req;
+		}
+
+		private void publishAddressResults(SearchPhrase phrase, SearchResultMatcher resultMatcher,
+				BinaryMapIndexReader r, List<SearchResult> immediateResults) throws IOException {
+			for (SearchResult res : immediateResults) {
+				if (res.objectType == ObjectType.STREET) {
+					subSearchApiOrPublish(phrase, resultMatcher, res, streetsApi);
+				} else {
+					SearchPhrase nphrase = subSearchApiOrPublish(phrase, resultMatcher, res, cityApi);
+					searchPoiInCity(nphrase, res, resultMatcher);
+				}
+			}
+			resultMatcher.apiSearchRegionFinished(this, r, phrase);
+		}
+
+		/**
+		 * Address name indexes of files are read in worker threads, found objects are matched and sub searches
+		 * by city and street are done in search thread. Streets of found cities are preloaded by workers
+		 * when there are more words to search in city.
+		 */
+		private void searchByNameParallel(final SearchPhrase phrase, final SearchResultMatcher resultMatcher,
+				List<BinaryMapIndexReader> regions, int threads, final String wordToSearch,
+				final ResultMatcher<MapObject> rm, final List<SearchResult> immediateResults,
+				final BinaryMapIndexReader[] currentFile) throws IOException {
+			final boolean preloadStreets = phrase.hasMoreThanOneUnknownSearchWord();
+			new ParallelRegionSearch<MapObject>(resultMatcher, threads, -1) {
+
+				@Override
+				protected void searchRegion(BinaryMapIndexReader r, final ResultMatcher<MapObject> collector)
+						throws IOException {
+					final List<City> cities = new ArrayList<>();
+					ResultMatcher<MapObject> citiesCollector = new ResultMatcher<MapObject>() {
+
+						@Override
+						public boolean publish(MapObject object) {
+							if (preloadStreets && object instanceof City) {
+								cities.add((City) object);
+							}
+							return collector.publish(object);
+						}
+
+						@Override
+						public boolean isCancelled() {
+							return collector.isCancelled();
+						}
+					};
+					r.searchAddressDataByName(buildAddressByNameRequest(phrase, citiesCollector, null, wordToSearch));
+					// read streets of cities in order of file
+					Collections.sort(cities, new Comparator<City>() {
+
+						@Override
+						public int compare(City o1, City o2) {
+							return Long.compare(o1.getFileOffset(), o2.getFileOffset());
+						}
+					});
+					for (City c : cities) {
+						if (collector.isCancelled()) {
+							break;
+						}
+						if (c.getStreets().isEmpty()) {
+							r.preloadStreets(c, null);
 						}
 					}
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
 				}
-			}
+
+				@Override
+				protected void publishRegion(BinaryMapIndexReader r, List<MapObject> objects) throws IOException {
+					currentFile[0] = r;
+					immediateResults.clear();
+					for (MapObject o : objects) {
+						if (rm.isCancelled()) {
+							break;
+						}
+						rm.publish(o);
+					}
+					publishAddressResults(phrase, resultMatcher, r, immediateResults);
+				}
+			}.search(regions);
 		}
 	}
 
@@ -622,61 +740,70 @@ public class SearchCoreFactory {
 					}
 				};
 			}
-			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
-					(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
-					(int) bbox.bottom, new ResultMatcher<Amenity>() {
-						int limit = 0;
+			final ResultMatcher<Amenity> amenityMatcher = new ResultMatcher<Amenity>() {
+				int limit = 0;
 
-						@Override
-						public boolean publish(Amenity object) {
-							if (phrase.getSettings().isExportObjects()) {
-								resultMatcher.exportObject(phrase, object);
-							}
-							if (limit++ > LIMIT) {
-								return false;
-							}
-							String poiID = object.getType().getKeyName() + "_" + object.getId();
-							if (ids.contains(poiID)) {
-								return false;
-							}
-							SearchResult sr = new SearchResult(phrase);
-							sr.otherNames = object.getOtherNames(true);
-							sr.localeName = object.getName(phrase.getSettings().getLang(),
-									phrase.getSettings().isTransliterate());
-							if (!nm.matches(sr.localeName) && !nm.matches(sr.otherNames)
-									&& !nm.matches(object.getAdditionalInfoValues(false))) {
-								return false;
-							}
-							sr.object = object;
-							sr.preferredZoom = SearchCoreFactory.PREFERRED_POI_ZOOM;
-							sr.file = currentFile[0];
-							sr.location = object.getLocation();
-							if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
-								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
-								sr.preferredZoom = object.getSubType().equals("country") ? PREFERRED_COUNTRY_ZOOM : PREFERRED_CITY_ZOOM;
-							} else if (object.getSubType().equals("town")) {
-								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE;
-							} else {
-								sr.priorityDistance = 1;
-							}
-							sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
-							phrase.countUnknownWordsMatchMainResult(sr);
-							sr.objectType = ObjectType.POI;
-							resultMatcher.publish(sr);
-							ids.add(poiID);
-							return false;
-						}
+				@Override
+				public boolean publish(Amenity object) {
+					if (phrase.getSettings().isExportObjects()) {
+						resultMatcher.exportObject(phrase, object);
+					}
+					if (limit++ > LIMIT) {
+						return false;
+					}
+					String poiID = object.getType().getKeyName() + "_" + object.getId();
+					if (ids.contains(poiID)) {
+						return false;
+					}
+					SearchResult sr = new SearchResult(phrase);
+					sr.otherNames = object.getOtherNames(true);
+					sr.localeName = object.getName(phrase.getSettings().getLang(),
+							phrase.getSettings().isTransliterate());
+					if (!nm.matches(sr.localeName) && !nm.matches(sr.otherNames)
+							&& !nm.matches(object.getAdditionalInfoValues(false))) {
+						return false;
+					}
+					sr.object = object;
+					sr.preferredZoom = SearchCoreFactory.PREFERRED_POI_ZOOM;
+					sr.file = currentFile[0];
+					sr.location = object.getLocation();
+					if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
+						sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
+						sr.preferredZoom = object.getSubType().equals("country") ? PREFERRED_COUNTRY_ZOOM : PREFERRED_CITY_ZOOM;
+					} else if (object.getSubType().equals("town")) {
+						sr.priorityDistance = SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE;
+					} else {
+						sr.priorityDistance = 1;
+					}
+					sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
+					phrase.countUnknownWordsMatchMainResult(sr);
+					sr.objectType = ObjectType.POI;
+					resultMatcher.publish(sr);
+					ids.add(poiID);
+					return false;
+				}
 
-						@Override
-						public boolean isCancelled() {
-							return resultMatcher.isCancelled() && (limit < LIMIT);
-						}
-					}, rawDataCollector);
+				@Override
+				public boolean isCancelled() {
+					return resultMatcher.isCancelled() && (limit < LIMIT);
+				}
+			};
+			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
+					(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
+					(int) bbox.bottom, amenityMatcher, rawDataCollector);
 			
 			BinaryMapIndexReader fileRequest = phrase.getFileRequest();
+			int threads = phrase.getSettings().getSearchThreads();
 			if (fileRequest != null) {
 				fileRequest.searchPoiByName(req);
 				resultMatcher.apiSearchRegionFinished(this, fileRequest, phrase);
+			} else if (threads > 1 && !phrase.getSettings().isExportObjects()) {
+				List<BinaryMapIndexReader> regions = new ArrayList<>();
+				while (offlineIterator.hasNext()) {
+					regions.add(offlineIterator.next());
+				}
+				searchPoiByNameParallel(phrase, resultMatcher, regions, threads, bbox, searchWord, amenityMatcher,
+						currentFile);
 			} else {
 				while (offlineIterator.hasNext()) {
 					BinaryMapIndexReader r = offlineIterator.next();
@@ -690,6 +817,33 @@ public class SearchCoreFactory {
 			return true;
 		}
 
+		private void searchPoiByNameParallel(final SearchPhrase phrase, final SearchResultMatcher resultMatcher,
+				List<BinaryMapIndexReader> regions, int threads, final QuadRect bbox, final String searchWord,
+				final ResultMatcher<Amenity> amenityMatcher, final BinaryMapIndexReader[] currentFile) throws IOException {
+			new ParallelRegionSearch<Amenity>(resultMatcher, threads, LIMIT) {
+
+				@Override
+				protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<Amenity> collector) throws IOException {
+					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
+							(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
+							(int) bbox.bottom, collector, null);
+					r.searchPoiByName(req);
+				}
+
+				@Override
+				protected void publishRegion(BinaryMapIndexReader r, List<Amenity> objects) {
+					currentFile[0] = r;
+					for (Amenity a : objects) {
+						if (amenityMatcher.isCancelled()) {
+							break;
+						}
+						amenityMatcher.publish(a);
+					}
+					resultMatcher.apiSearchRegionFinished(SearchAmenityByNameAPI.this, r, phrase);
+				}
+			}.search(regions);
+		}
+
 		@Override
 		public int getSearchPriority(SearchPhrase p) {
 			if (p.hasObjectType(ObjectType.POI) ||
@@ -1123,6 +1277,12 @@ public class SearchCoreFactory {
 				QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
 				List<BinaryMapIndexReader> offlineIndexes = phrase.getOfflineIndexes();
 				Set<String> searchedPois = new TreeSet<>();
+				int threads = phrase.getSettings().getSearchThreads();
+				if (threads > 1) {
+					searchPoiParallel(phrase, resultMatcher, offlineIndexes, threads, bbox, poiTypeFilter, nameFilter,
+							searchedPois, poiAdditionals, countExtraWords);
+					return true;
+				}
 				for (BinaryMapIndexReader r : offlineIndexes) {
 					ResultMatcher<Amenity> rm = getResultMatcher(phrase, poiTypeFilter, resultMatcher, nameFilter, r,
 							searchedPois, poiAdditionals, countExtraWords);
@@ -1138,6 +1298,37 @@ public class SearchCoreFactory {
 			return true;
 		}
 
+		private void searchPoiParallel(final SearchPhrase phrase, final SearchResultMatcher resultMatcher,
+				List<BinaryMapIndexReader> offlineIndexes, int threads, final QuadRect bbox,
+				final SearchPoiTypeFilter poiTypeFilter, final String nameFilter, final Set<String> searchedPois,
+				final Collection<String> poiAdditionals, final int countExtraWords) throws IOException {
+			new ParallelRegionSearch<Amenity>(resultMatcher, threads, -1) {
+
+				@Override
+				protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<Amenity> collector) throws IOException {
+					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
+							(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, poiTypeFilter, collector);
+					r.searchPoi(req);
+				}
+
+				@Override
+				protected void publishRegion(BinaryMapIndexReader r, List<Amenity> objects) {
+					ResultMatcher<Amenity> rm = getResultMatcher(phrase, poiTypeFilter, resultMatcher, nameFilter, r,
+							searchedPois, poiAdditionals, countExtraWords);
+					if (poiTypeFilter instanceof CustomSearchPoiFilter) {
+						rm = ((CustomSearchPoiFilter) poiTypeFilter).wrapResultMatcher(rm);
+					}
+					for (Amenity a : objects) {
+						if (rm.isCancelled()) {
+							break;
+						}
+						rm.publish(a);
+					}
+					resultMatcher.apiSearchRegionFinished(SearchAmenityByTypeAPI.this, r, phrase);
+				}
+			}.search(offlineIndexes);
+		}
+
 
 		private ResultMatcher<Amenity> getResultMatcher(final SearchPhrase phrase, final SearchPoiTypeFilter poiTypeFilter,
 		                                                final SearchResultMatcher resultMatcher, final String nameFilter,
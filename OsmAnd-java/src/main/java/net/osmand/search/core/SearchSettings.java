@@ -32,6 +32,7 @@ public class SearchSettings {
 	private List<BinaryMapIndexReader> offlineIndexes = new ArrayList<>();
 	private int radiusLevel = 1;
 	private int totalLimit = -1;
+	private int searchThreads = 1;
 	private String lang;
 	private boolean transliterateIfMissing;
 	private ObjectType[] searchTypes;
@@ -47,6 +48,7 @@ public class SearchSettings {
 			this.lang = s.lang;
 			this.transliterateIfMissing = s.transliterateIfMissing;
 			this.totalLimit = s.totalLimit;
+			this.searchThreads = s.searchThreads;
 			this.offlineIndexes = s.offlineIndexes;
 			this.originalLocation = s.originalLocation;
 			this.searchBBox31 = s.searchBBox31;
@@ -103,6 +105,19 @@ public class SearchSettings {
 		return s;
 	}
 	
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	/**
+	 * Number of threads to read map files in parallel by POI and address search (1 - sequential search)
+	 */
+	public SearchSettings setSearchThreads(int searchThreads) {
+		SearchSettings s = new SearchSettings(this);
+		s.searchThreads = Math.max(1, searchThreads);
+		return s;
+	}
+
 	public LatLon getOriginalLocation() {
 		return originalLocation;
 	}
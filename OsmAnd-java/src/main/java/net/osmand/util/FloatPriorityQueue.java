@@ -0,0 +1,127 @@
+package net.osmand.util;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of objects with float priority. Priorities and objects are stored in parallel arrays,
+ * so no wrapper object is allocated per element. Sift up/down order is the same as {@link java.util.PriorityQueue}
+ * with comparator by priority, so elements with equal priority are polled in the same order.
+ */
+public class FloatPriorityQueue<T> {
+
+	private float[] keys;
+	private Object[] values;
+	private int size;
+
+	public FloatPriorityQueue() {
+		this(64);
+	}
+
+	public FloatPriorityQueue(int initialCapacity) {
+		initialCapacity = Math.max(1, initialCapacity);
+		keys = new float[initialCapacity];
+		values = new Object[initialCapacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+
+	public void add(T value, float key) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int i = size;
+		if (i >= keys.length) {
+			grow();
+		}
+		size = i + 1;
+		if (i == 0) {
+			keys[0] = key;
+			values[0] = value;
+		} else {
+			siftUp(i, key, value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public T peek() {
+		return size == 0 ? null : (T) values[0];
+	}
+
+	/**
+	 * @return priority of the head element or NaN if queue is empty
+	 */
+	public float peekKey() {
+		return size == 0 ? Float.NaN : keys[0];
+	}
+
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		if (size == 0) {
+			return null;
+		}
+		int s = --size;
+		T result = (T) values[0];
+		float key = keys[s];
+		Object value = values[s];
+		values[s] = null;
+		if (s != 0) {
+			siftDown(0, key, value);
+		}
+		return result;
+	}
+
+	private void grow() {
+		int oldCapacity = keys.length;
+		// double size if small; else grow by 50%
+		int newCapacity = oldCapacity + ((oldCapacity < 64) ? (oldCapacity + 2) : (oldCapacity >> 1));
+		keys = Arrays.copyOf(keys, newCapacity);
+		values = Arrays.copyOf(values, newCapacity);
+	}
+
+	private void siftUp(int k, float key, Object value) {
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			float pk = keys[parent];
+			if (Float.compare(key, pk) >= 0) {
+				break;
+			}
+			keys[k] = pk;
+			values[k] = values[parent];
+			k = parent;
+		}
+		keys[k] = key;
+		values[k] = value;
+	}
+
+	private void siftDown(int k, float key, Object value) {
+		int half = size >>> 1;
+		while (k < half) {
+			int child = (k << 1) + 1;
+			float ck = keys[child];
+			int right = child + 1;
+			if (right < size && Float.compare(ck, keys[right]) > 0) {
+				child = right;
+				ck = keys[child];
+			}
+			if (Float.compare(key, ck) <= 0) {
+				break;
+			}
+			keys[k] = ck;
+			values[k] = values[child];
+			k = child;
+		}
+		keys[k] = key;
+		values[k] = value;
+	}
+}
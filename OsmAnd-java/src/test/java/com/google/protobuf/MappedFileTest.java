@@ -0,0 +1,84 @@
+package com.google.protobuf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileTest {
+
+	// 16 byte chunks
+	private static final int CHUNK_SHIFT = 4;
+	private static final int LENGTH = 1000;
+
+	private File file;
+	private RandomAccessFile raf;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("mapped", ".obf");
+		byte[] data = new byte[LENGTH];
+		new Random(5).nextBytes(data);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		raf = new RandomAccessFile(file, "r");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		raf.close();
+		file.delete();
+	}
+
+	@Test
+	public void testReadAcrossChunkBoundary() throws IOException {
+		MappedFile.Cursor cursor = MappedFile.map(raf, CHUNK_SHIFT).newCursor();
+		Assert.assertEquals(LENGTH, cursor.length());
+		// starts before boundary of 1st chunk and ends in 3rd chunk
+		checkRead(cursor, 10, 30);
+		checkRead(cursor, 16, 16);
+		// last chunk is not full
+		checkRead(cursor, LENGTH - 20, 20);
+		checkRead(cursor, 0, LENGTH);
+	}
+
+	@Test
+	public void testRandomReads() throws IOException {
+		MappedFile.Cursor cursor = MappedFile.map(raf, CHUNK_SHIFT).newCursor();
+		Random rnd = new Random(9);
+		for (int i = 0; i < 500; i++) {
+			int pos = rnd.nextInt(LENGTH);
+			checkRead(cursor, pos, rnd.nextInt(LENGTH - pos + 1));
+		}
+	}
+
+	@Test(expected = InvalidProtocolBufferException.class)
+	public void testReadAfterEnd() throws IOException {
+		MappedFile.Cursor cursor = MappedFile.map(raf, CHUNK_SHIFT).newCursor();
+		cursor.seek(LENGTH - 5);
+		cursor.readFully(new byte[10], 0, 10);
+	}
+
+	private void checkRead(MappedFile.Cursor cursor, int pos, int len) throws IOException {
+		byte[] expected = new byte[len];
+		raf.seek(pos);
+		raf.readFully(expected);
+		byte[] actual = new byte[len + 2];
+		cursor.seek(pos);
+		cursor.readFully(actual, 1, len);
+		Assert.assertEquals(pos + len, cursor.getFilePointer());
+		for (int i = 0; i < len; i++) {
+			Assert.assertEquals(pos + " " + len + " at " + i, expected[i], actual[i + 1]);
+		}
+	}
+}
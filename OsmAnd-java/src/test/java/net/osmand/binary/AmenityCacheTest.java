@@ -0,0 +1,89 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.AmenityCache.PoiAtom;
+import net.osmand.data.Amenity;
+
+public class AmenityCacheTest {
+
+	private final File file = new File("Germany_berlin_europe.obf");
+	private final File otherFile = new File("Germany_brandenburg_europe.obf");
+
+	@Test
+	public void testHitsAndMisses() {
+		AmenityCache cache = new AmenityCache(10);
+		PoiAtom atom = new PoiAtom();
+		Assert.assertNull(cache.get(file, 1, 100));
+		cache.put(file, 1, 100, atom);
+		Assert.assertSame(atom, cache.get(file, 1, 100));
+		// other file and other version of the same file
+		Assert.assertNull(cache.get(otherFile, 1, 100));
+		Assert.assertNull(cache.get(file, 2, 100));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		AmenityCache cache = new AmenityCache(3);
+		for (int i = 0; i < 3; i++) {
+			cache.put(file, 1, i, new PoiAtom());
+		}
+		Assert.assertNotNull(cache.get(file, 1, 0));
+		cache.put(file, 1, 3, new PoiAtom());
+		Assert.assertEquals(3, cache.size());
+		Assert.assertNotNull(cache.get(file, 1, 0));
+		Assert.assertNull(cache.get(file, 1, 1));
+		Assert.assertNotNull(cache.get(file, 1, 3));
+	}
+
+	@Test
+	public void testClearFile() {
+		AmenityCache cache = new AmenityCache(10);
+		cache.put(file, 1, 100, new PoiAtom());
+		cache.put(otherFile, 1, 100, new PoiAtom());
+		cache.clear(file);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertNull(cache.get(file, 1, 100));
+		Assert.assertNotNull(cache.get(otherFile, 1, 100));
+	}
+
+	@Test
+	public void testLazyAdditionalInfo() {
+		PoiAtom atom = new PoiAtom();
+		atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.NAME_FIELD_NUMBER, null, "Café am Markt");
+		atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.TEXTVALUES_FIELD_NUMBER, "name:en", "Market cafe");
+		atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.TEXTVALUES_FIELD_NUMBER, "name:de", "Marktcafé");
+		atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.TEXTVALUES_FIELD_NUMBER, "cuisine", "coffee_shop");
+		atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.OPENINGHOURS_FIELD_NUMBER, null, "Mo-Fr 08:00-18:00");
+		atom.addField(OsmandOdb.OsmAndPoiBoxDataAtom.SITE_FIELD_NUMBER, null, "https://example.org");
+
+		Amenity eager = new Amenity();
+		atom.setFields(eager, true, true);
+		Amenity lazy = new Amenity();
+		atom.setFields(lazy, true, false);
+		lazy.setLazyAdditionalInfo(atom);
+
+		Assert.assertEquals(eager.getName(), lazy.getName());
+		Assert.assertEquals(eager.getEnName(false), lazy.getEnName(false));
+		Assert.assertEquals("Marktcafé", lazy.getName("de"));
+		Assert.assertEquals(eager.getNamesMap(true), lazy.getNamesMap(true));
+		Assert.assertEquals(eager.getOpeningHours(), lazy.getOpeningHours());
+		Assert.assertEquals(eager.getSite(), lazy.getSite());
+		Assert.assertEquals(eager.getAdditionalInfo("cuisine"), lazy.getAdditionalInfo("cuisine"));
+		Assert.assertEquals(new ArrayList<>(eager.getAdditionalInfoKeys()), new ArrayList<>(lazy.getAdditionalInfoKeys()));
+
+		// changes made before first access aren't overwritten by decoded values
+		Amenity changed = new Amenity();
+		atom.setFields(changed, true, false);
+		changed.setLazyAdditionalInfo(atom);
+		changed.setAdditionalInfo("cuisine", "italian");
+		Assert.assertEquals("italian", changed.getAdditionalInfo("cuisine"));
+		Assert.assertEquals("Mo-Fr 08:00-18:00", changed.getOpeningHours());
+	}
+}
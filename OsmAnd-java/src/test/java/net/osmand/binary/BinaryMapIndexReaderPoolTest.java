@@ -0,0 +1,116 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+public class BinaryMapIndexReaderPoolTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+	private static final int ITERATIONS = 5;
+
+	@Test
+	public void testRouteRegionCopyIsIndependent() {
+		RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		region.initRouteEncodingRule(2, "name", "");
+		RouteSubregion sub = new RouteSubregion(region);
+		sub.subregions = new ArrayList<RouteSubregion>();
+		sub.subregions.add(new RouteSubregion(region));
+		region.getSubregions().add(sub);
+
+		RouteRegion copy = new RouteRegion(region);
+		int created = copy.findOrCreateRouteType("highway", "secondary");
+		Assert.assertEquals(3, created);
+		Assert.assertEquals(3, region.routeEncodingRules.size());
+		Assert.assertEquals(4, copy.routeEncodingRules.size());
+		Assert.assertEquals(1, copy.searchRouteEncodingRule("highway", "primary"));
+		Assert.assertEquals(region.getNameTypeRule(), copy.getNameTypeRule());
+
+		RouteSubregion copySub = copy.getSubregions().get(0);
+		Assert.assertNotSame(sub, copySub);
+		Assert.assertSame(copy, copySub.routeReg);
+		Assert.assertSame(copy, copySub.subregions.get(0).routeReg);
+		copySub.subregions.add(new RouteSubregion(copy));
+		Assert.assertEquals(1, sub.subregions.size());
+	}
+
+	@Test
+	public void testConcurrentLeasesOfOneFile() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		final BinaryMapIndexReaderPool pool = new BinaryMapIndexReaderPool(Collections.singletonList(file), false);
+		try {
+			final BinaryMapIndexReader[] first = pool.lease();
+			final BinaryMapIndexReader[] second = pool.lease();
+			Assert.assertNotSame(first[0].getRoutingIndexes().get(0), second[0].getRoutingIndexes().get(0));
+
+			final int[] counts = new int[2];
+			final Exception[] error = new Exception[1];
+			Thread[] threads = new Thread[2];
+			for (int i = 0; i < threads.length; i++) {
+				final int ind = i;
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							counts[ind] = loadAllRoads(ind == 0 ? first[0] : second[0]);
+						} catch (Exception e) {
+							synchronized (error) {
+								error[0] = e;
+							}
+						}
+					}
+				}, "Pool lease " + i);
+				threads[i].start();
+			}
+			for (Thread t : threads) {
+				t.join();
+			}
+			if (error[0] != null) {
+				throw error[0];
+			}
+			Assert.assertTrue(counts[0] > 0);
+			Assert.assertEquals(counts[0], counts[1]);
+			pool.release(first);
+			pool.release(second);
+		} finally {
+			pool.close();
+		}
+	}
+
+	private static int loadAllRoads(BinaryMapIndexReader reader) throws Exception {
+		int total = 0;
+		for (int it = 0; it < ITERATIONS; it++) {
+			int count = 0;
+			for (RouteRegion region : reader.getRoutingIndexes()) {
+				SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE,
+						0, Integer.MAX_VALUE, null);
+				List<RouteSubregion> subregions = reader.searchRouteIndexTree(req, region.getSubregions());
+				for (RouteSubregion sub : subregions) {
+					for (RouteDataObject o : reader.loadRouteIndexData(sub)) {
+						Assert.assertSame(region, o.region);
+						count++;
+					}
+				}
+				region.findOrCreateRouteType("test_tag", "value_" + it);
+			}
+			if (it == 0) {
+				total = count;
+			} else {
+				Assert.assertEquals(total, count);
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,160 @@
+package net.osmand.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+import net.osmand.StringMatcher;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.data.Amenity;
+
+public class PoiNameTrigramIndexTest {
+
+	private static final String[][] BOXES = {
+			{"Café Müller", "Bäckerei Schmidt"},
+			{"Hauptbahnhof", "Apotheke am Markt"},
+			{"Kunstmuseum", "Marktplatz Café"},
+			{"Stadtbibliothek"}};
+
+	@Test
+	public void testContainsApproximately() {
+		Assert.assertTrue(PoiNameTrigramIndex.containsApproximately("hauptbahnhof", "bahn", 0));
+		Assert.assertFalse(PoiNameTrigramIndex.containsApproximately("hauptbahnhof", "bhan", 0));
+		Assert.assertTrue(PoiNameTrigramIndex.containsApproximately("hauptbahnhof", "bhanhof", 2));
+		Assert.assertTrue(PoiNameTrigramIndex.containsApproximately("hauptbahnhof", "banhof", 1));
+		Assert.assertFalse(PoiNameTrigramIndex.containsApproximately("hauptbahnhof", "museum", 1));
+	}
+
+	@Test
+	public void testMatcher() {
+		StringMatcher infix = PoiNameTrigramIndex.createMatcher("bahnh", 0);
+		Assert.assertTrue(infix.matches("Hauptbahnhof"));
+		Assert.assertFalse(infix.matches("Bahn"));
+		StringMatcher words = PoiNameTrigramIndex.createMatcher("markt cafe", 0);
+		Assert.assertTrue(words.matches("Marktplatz Café"));
+		Assert.assertFalse(words.matches("Apotheke am Markt"));
+		StringMatcher typo = PoiNameTrigramIndex.createMatcher("bibliotek", 1);
+		Assert.assertTrue(typo.matches("Stadtbibliothek"));
+	}
+
+	@Test
+	public void testSearchBoxes() throws IOException {
+		File obf = File.createTempFile("region", ".obf");
+		File file = File.createTempFile("region", PoiNameTrigramIndex.FILE_EXT);
+		PoiRegion region = new PoiRegion();
+		region.setFilePointer(1000);
+		try {
+			writeIndex(file, obf, region);
+			PoiNameTrigramIndex index = PoiNameTrigramIndex.read(file, obf);
+			Assert.assertNotNull(index);
+			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, 0, "q", 0,
+					Integer.MAX_VALUE, 0, Integer.MAX_VALUE, null);
+
+			assertBoxes(index.searchBoxes(region, "ahnho", req, 0), 1);
+			assertBoxes(index.searchBoxes(region, "markt", req, 0), 1, 2);
+			assertBoxes(index.searchBoxes(region, "markt cafe", req, 0), 2);
+			assertBoxes(index.searchBoxes(region, "mueller", req, 0));
+			assertBoxes(index.searchBoxes(region, "bibliotek", req, 1), 3);
+			// too short words can't be searched by trigrams
+			Assert.assertNull(index.searchBoxes(region, "am", req, 0));
+
+			// boxes are filtered by request bbox
+			SearchRequest<Amenity> bboxReq = BinaryMapIndexReader.buildSearchPoiRequest(0, 0, "q", 0, 1500, 0, 1500,
+					null);
+			assertBoxes(index.searchBoxes(region, "markt", bboxReq, 0), 1);
+			index.close();
+
+			// index of other file
+			Assert.assertNull(PoiNameTrigramIndex.read(file, file));
+			// updated file of the same size
+			Assert.assertTrue(obf.setLastModified(obf.lastModified() - 10000));
+			Assert.assertNull(PoiNameTrigramIndex.read(file, obf));
+		} finally {
+			obf.delete();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testDistantBoxes() throws IOException {
+		File obf = File.createTempFile("region", ".obf");
+		File file = File.createTempFile("region", PoiNameTrigramIndex.FILE_EXT);
+		PoiRegion region = new PoiRegion();
+		try {
+			// box numbers differ more than by 1 byte varint
+			int[] found = { 0, 200, 20000, 20001 };
+			PoiNameTrigramIndex.RegionBuilder builder = new PoiNameTrigramIndex.RegionBuilder();
+			for (int i = 0, k = 0; i <= found[found.length - 1]; i++) {
+				builder.startBox(i);
+				Amenity am = new Amenity();
+				am.setName(i == found[k] ? "Stadtbibliothek" : "Cafe " + i);
+				k += i == found[k] ? 1 : 0;
+				builder.addNames(am);
+				builder.finishBox(0, 0);
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				PoiNameTrigramIndex.writeHeader(out, obf);
+				out.writeInt(1);
+				PoiNameTrigramIndex.writeRegion(out, region, builder);
+			} finally {
+				out.close();
+			}
+			PoiNameTrigramIndex index = PoiNameTrigramIndex.read(file, obf);
+			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, 0, "q", 0,
+					Integer.MAX_VALUE, 0, Integer.MAX_VALUE, null);
+			TIntLongHashMap offsets = index.searchBoxes(region, "bibliothek", req, 0);
+			Assert.assertEquals(found.length, offsets.size());
+			for (int box : found) {
+				Assert.assertTrue(offsets.containsKey(box));
+			}
+			Assert.assertEquals(found[found.length - 1] + 1, index.searchBoxes(region, "cafe", req, 0).size()
+					+ found.length);
+			index.close();
+		} finally {
+			obf.delete();
+			file.delete();
+		}
+	}
+
+	private void writeIndex(File file, File obf, PoiRegion region) throws IOException {
+		PoiNameTrigramIndex.RegionBuilder builder = new PoiNameTrigramIndex.RegionBuilder();
+		for (int i = 0; i < BOXES.length; i++) {
+			builder.startBox(boxOffset(i));
+			for (String name : BOXES[i]) {
+				Amenity am = new Amenity();
+				am.setName(name);
+				builder.addNames(am);
+			}
+			builder.finishBox(i * 1000, i * 1000);
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			PoiNameTrigramIndex.writeHeader(out, obf);
+			out.writeInt(1);
+			PoiNameTrigramIndex.writeRegion(out, region, builder);
+		} finally {
+			out.close();
+		}
+	}
+
+	private int boxOffset(int box) {
+		return 100 + box * 17;
+	}
+
+	private void assertBoxes(TIntLongHashMap offsets, int... boxes) {
+		Assert.assertNotNull(offsets);
+		Assert.assertEquals(boxes.length, offsets.size());
+		for (int box : boxes) {
+			Assert.assertTrue(offsets.containsKey(boxOffset(box)));
+			Assert.assertEquals(box * 2000, offsets.get(boxOffset(box)));
+		}
+	}
+}
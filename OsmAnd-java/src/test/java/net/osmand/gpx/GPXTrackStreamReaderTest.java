@@ -0,0 +1,115 @@
+package net.osmand.gpx;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.gpx.GPXUtilities.Track;
+import net.osmand.gpx.GPXUtilities.TrkSegment;
+import net.osmand.gpx.GPXUtilities.WptPt;
+
+public class GPXTrackStreamReaderTest {
+
+	private static final long FILE_TIMESTAMP = 1700000000000l;
+
+	@Test
+	public void testSameAnalysisAsLoadedFile() throws IOException {
+		byte[] gpx = createGpx(new Random(11));
+		GPXFile file = GPXUtilities.loadGPXFile(new ByteArrayInputStream(gpx));
+		Assert.assertNull(file.error);
+		GPXTrackAnalysis expected = file.getAnalysis(FILE_TIMESTAMP);
+
+		GPXTrackPoints points = new GPXTrackPoints();
+		GPXTrackAnalysis actual = GPXTrackStreamReader.analyse(new ByteArrayInputStream(gpx), points, FILE_TIMESTAMP);
+
+		Assert.assertEquals(expected.getTotalTracks(), actual.getTotalTracks());
+		Assert.assertEquals(expected.getPoints(), actual.getPoints());
+		Assert.assertEquals(expected.getStartTime(), actual.getStartTime());
+		Assert.assertEquals(expected.getEndTime(), actual.getEndTime());
+		Assert.assertEquals(expected.getTimeMoving(), actual.getTimeMoving());
+		Assert.assertEquals(expected.getTotalDistance(), actual.getTotalDistance(), 1e-3);
+		Assert.assertEquals(expected.getTotalDistanceMoving(), actual.getTotalDistanceMoving(), 1e-3);
+		Assert.assertEquals(expected.getMinSpeed(), actual.getMinSpeed(), 1e-5);
+		Assert.assertEquals(expected.getMaxSpeed(), actual.getMaxSpeed(), 1e-5);
+		Assert.assertEquals(expected.getAvgSpeed(), actual.getAvgSpeed(), 1e-5);
+		Assert.assertEquals(expected.getMinElevation(), actual.getMinElevation(), 1e-5);
+		Assert.assertEquals(expected.getMaxElevation(), actual.getMaxElevation(), 1e-5);
+		Assert.assertEquals(expected.getAvgElevation(), actual.getAvgElevation(), 1e-3);
+		Assert.assertEquals(expected.getDiffElevationUp(), actual.getDiffElevationUp(), 1e-3);
+		Assert.assertEquals(expected.getDiffElevationDown(), actual.getDiffElevationDown(), 1e-3);
+		Assert.assertEquals(expected.left, actual.left, 1e-9);
+		Assert.assertEquals(expected.right, actual.right, 1e-9);
+		Assert.assertEquals(expected.top, actual.top, 1e-9);
+		Assert.assertEquals(expected.bottom, actual.bottom, 1e-9);
+		Assert.assertEquals(expected.getLatLonStart(), actual.getLatLonStart());
+
+		int pointsCount = 0;
+		int segmentsCount = 0;
+		for (Track t : file.tracks) {
+			for (TrkSegment s : t.segments) {
+				if (s.generalSegment) {
+					continue;
+				}
+				WptPt last = null;
+				for (WptPt p : s.points) {
+					Assert.assertEquals(p.lat, points.getLatitude(pointsCount), 1e-7);
+					Assert.assertEquals(p.lon, points.getLongitude(pointsCount), 1e-7);
+					Assert.assertEquals(p.time, points.getTime(pointsCount));
+					last = p;
+					pointsCount++;
+				}
+				if (s.points.size() > 1) {
+					// distance from segment start is set by analysis of loaded file to points of segment
+					Assert.assertEquals(last.distance, points.getDistance(pointsCount - 1), 1e-2);
+				}
+				segmentsCount++;
+			}
+		}
+		Assert.assertEquals(pointsCount, points.getPointsCount());
+		Assert.assertEquals(segmentsCount, points.getSegmentsCount());
+	}
+
+	@Test
+	public void testParseTime() {
+		String[] times = {"2023-05-17T08:15:42Z", "2023-05-17T08:15:42.123Z", "1999-12-31T23:59:59+02:00",
+				"2024-02-29T00:00:00.500-05:30", "2023-05-17T08:15:42", "2023-05-17T08:15:42.1234567Z",
+				"2023-05-17T08:15:42.12Z"};
+		for (String t : times) {
+			Assert.assertEquals(t, GPXUtilities.parseTime(t), GPXTrackStreamReader.parseTime(t));
+		}
+	}
+
+	private byte[] createGpx(Random rnd) {
+		GPXFile file = new GPXFile("test");
+		long time = 1600000000000l;
+		for (int t = 0; t < 2; t++) {
+			Track track = new Track();
+			for (int s = 0; s < 3; s++) {
+				TrkSegment segment = new TrkSegment();
+				// single point segment isn't analysed
+				int count = s == 2 ? 1 : 200 + rnd.nextInt(100);
+				double lat = 52 + rnd.nextDouble();
+				double lon = 4 + rnd.nextDouble();
+				double ele = 100;
+				for (int i = 0; i < count; i++) {
+					lat += (rnd.nextDouble() - 0.3) * 1e-4;
+					lon += (rnd.nextDouble() - 0.3) * 1e-4;
+					ele += (rnd.nextDouble() - 0.45) * 3;
+					// stops without movement
+					time += rnd.nextInt(10) == 0 ? 30000 : 1000 + rnd.nextInt(3000);
+					WptPt p = new WptPt(lat, lon, time, Math.round(ele * 10) / 10d, 0, Double.NaN);
+					segment.points.add(p);
+				}
+				track.segments.add(segment);
+			}
+			file.tracks.add(track);
+		}
+		StringWriter writer = new StringWriter();
+		Assert.assertNull(GPXUtilities.writeGpx(writer, file, null));
+		return writer.toString().getBytes();
+	}
+}
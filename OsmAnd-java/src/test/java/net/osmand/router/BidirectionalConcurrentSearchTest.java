@@ -0,0 +1,177 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+public class BidirectionalConcurrentSearchTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+	private static final int EVALUATIONS = 20000;
+
+	@Test
+	public void testRouterCopyDoesNotShareRegisteredValues() {
+		GeneralRouter router = createRouter();
+		int primary = router.registerTagValueAttribute("highway", "primary");
+		GeneralRouter copy = router.copyForConcurrentUse();
+		int copyId = copy.registerTagValueAttribute("highway", "service");
+		int originalId = router.registerTagValueAttribute("highway", "track");
+		Assert.assertEquals(copyId, originalId);
+		Assert.assertEquals(primary, copy.registerTagValueAttribute("highway", "primary"));
+		Assert.assertEquals(copyId, copy.registerTagValueAttribute("highway", "service"));
+	}
+
+	@Test
+	public void testRouterCopiesEvaluateConcurrently() throws Exception {
+		GeneralRouter router = createRouter();
+		RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		region.initRouteEncodingRule(2, "highway", "residential");
+		final RouteDataObject primary = road(region, 1);
+		final RouteDataObject residential = road(region, 2);
+		Assert.assertEquals(50, speed(router, primary), 0.01f);
+		Assert.assertEquals(20, speed(router, residential), 0.01f);
+
+		final GeneralRouter[] routers = { router.copyForConcurrentUse(), router.copyForConcurrentUse() };
+		final Exception[] error = new Exception[1];
+		Thread[] threads = new Thread[routers.length];
+		for (int i = 0; i < threads.length; i++) {
+			final GeneralRouter r = routers[i];
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int k = 0; k < EVALUATIONS; k++) {
+							// new objects to evaluate rules each time instead of cached value
+							RouteDataObject ro = k % 2 == 0 ? new RouteDataObject(primary) : new RouteDataObject(residential);
+							ro.id = k;
+							float expected = k % 2 == 0 ? 50 : 20;
+							if (Math.abs(speed(r, ro) - expected) > 0.01f) {
+								throw new IllegalStateException("Wrong speed of road " + ro.getHighway());
+							}
+						}
+					} catch (Exception e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			}, "Router copy " + i);
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+	}
+
+	@Test
+	public void testConcurrentSearchEqualsSequential() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		Reader reader = new InputStreamReader(BidirectionalConcurrentSearchTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		int checked = 0;
+		for (TestEntry te : testEntries) {
+			if (te.isIgnore() || te.getExpectedResults() == null || te.getParams().containsKey("map")) {
+				continue;
+			}
+			List<RouteSegmentResult> sequential = searchRoute(file, te, false);
+			List<RouteSegmentResult> concurrent = searchRoute(file, te, true);
+			Assert.assertEquals(te.getTestName(), roadIds(sequential), roadIds(concurrent));
+			Assert.assertEquals(te.getTestName(), routeTime(sequential), routeTime(concurrent), 1);
+			checked++;
+		}
+		Assert.assertTrue(checked > 0);
+	}
+
+	private static List<RouteSegmentResult> searchRoute(File file, TestEntry te, boolean concurrent)
+			throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+					RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+			Map<String, String> params = te.getParams();
+			RoutingConfiguration config = RoutingConfiguration.getDefault().build(
+					params.containsKey("vehicle") ? params.get("vehicle") : "car", memoryLimits, params);
+			if (params.containsKey("heuristicCoefficient")) {
+				config.heuristicCoefficient = Float.parseFloat(params.get("heuristicCoefficient"));
+			}
+			config.planRoadDirection = 0;
+			config.parallelBidirectionalSearch = concurrent;
+			RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			ctx.leftSideNavigation = false;
+			List<RouteSegmentResult> res = fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(),
+					te.getTransitPoint()).detailed;
+			Assert.assertNotNull(res);
+			return res;
+		} finally {
+			readers[0].close();
+		}
+	}
+
+	private static List<Long> roadIds(List<RouteSegmentResult> route) {
+		List<Long> ids = new ArrayList<Long>();
+		for (RouteSegmentResult r : route) {
+			ids.add(r.getObject().getId());
+		}
+		return ids;
+	}
+
+	private static double routeTime(List<RouteSegmentResult> route) {
+		double time = 0;
+		for (RouteSegmentResult r : route) {
+			time += r.getSegmentTime();
+		}
+		return time;
+	}
+
+	private static float speed(GeneralRouter router, RouteDataObject ro) {
+		return router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(ro, 0);
+	}
+
+	private static GeneralRouter createRouter() {
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("50", null)
+				.registerAndTagValueCondition("highway", "primary", false);
+		router.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("20", null)
+				.registerAndTagValueCondition("highway", "residential", false);
+		return router;
+	}
+
+	private static RouteDataObject road(RouteRegion region, int type) {
+		RouteDataObject ro = new RouteDataObject(region);
+		ro.id = type;
+		ro.types = new int[] { type };
+		ro.pointsX = new int[] { 0, 100 };
+		ro.pointsY = new int[] { 0, 100 };
+		return ro;
+	}
+}
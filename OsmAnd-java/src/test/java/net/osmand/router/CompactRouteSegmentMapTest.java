@@ -0,0 +1,82 @@
+package net.osmand.router;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+public class CompactRouteSegmentMapTest {
+
+	private static final int LONG_ROAD_POINTS = 40000;
+
+	@Test
+	public void testPointsOfLongRoad() {
+		RouteRegion region = new RouteRegion();
+		RouteDataObject road = road(region, 1, LONG_ROAD_POINTS);
+		CompactRouteSegmentMap map = new CompactRouteSegmentMap();
+		map.add(road);
+		Assert.assertEquals(1, map.getRoadsSize());
+		// segments address points by short index
+		Assert.assertEquals(Short.MAX_VALUE, map.getPointsSize());
+
+		int[] check = { 0, 1, Short.MAX_VALUE - 2, Short.MAX_VALUE - 1 };
+		for (int ind : check) {
+			RouteSegment s = map.get(key(road, ind));
+			Assert.assertNotNull(s);
+			Assert.assertSame(road, s.getRoad());
+			Assert.assertEquals(ind, s.getSegmentStart());
+			Assert.assertEquals(ind + 1, s.getSegmentEnd());
+			Assert.assertEquals(road.getPoint31XTile(ind), s.getStartPointX());
+			Assert.assertNull(s.nextLoaded);
+		}
+		Assert.assertNull(map.get(key(road, Short.MAX_VALUE)));
+		Assert.assertNull(map.get(key(road, LONG_ROAD_POINTS - 1)));
+
+		RouteDataObject shortRoad = road(region, 2, 10);
+		CompactRouteSegmentMap shortMap = new CompactRouteSegmentMap();
+		shortMap.add(shortRoad);
+		Assert.assertEquals(10, shortMap.getPointsSize());
+		Assert.assertEquals(8, shortMap.get(key(shortRoad, 9)).getSegmentEnd());
+	}
+
+	@Test
+	public void testConnectedRoadsAndSameSegments() {
+		RouteRegion region = new RouteRegion();
+		RouteDataObject longRoad = road(region, 1, LONG_ROAD_POINTS);
+		int cross = 30000;
+		RouteDataObject crossRoad = new RouteDataObject(region);
+		crossRoad.id = 2;
+		crossRoad.pointsX = new int[] { longRoad.getPoint31XTile(cross), longRoad.getPoint31XTile(cross) };
+		crossRoad.pointsY = new int[] { longRoad.getPoint31YTile(cross), longRoad.getPoint31YTile(cross) + 100 };
+		CompactRouteSegmentMap map = new CompactRouteSegmentMap();
+		map.add(longRoad);
+		map.add(crossRoad);
+
+		RouteSegment s = map.get(key(longRoad, cross));
+		Assert.assertSame(longRoad, s.getRoad());
+		Assert.assertEquals(cross, s.getSegmentStart());
+		Assert.assertNotNull(s.nextLoaded);
+		Assert.assertSame(crossRoad, s.nextLoaded.getRoad());
+		Assert.assertEquals(0, s.nextLoaded.getSegmentStart());
+		Assert.assertSame(s, map.get(key(longRoad, cross)));
+		Assert.assertNull(map.get(key(longRoad, cross) + 1));
+	}
+
+	private static RouteDataObject road(RouteRegion region, long id, int points) {
+		RouteDataObject ro = new RouteDataObject(region);
+		ro.id = id;
+		ro.pointsX = new int[points];
+		ro.pointsY = new int[points];
+		for (int i = 0; i < points; i++) {
+			ro.pointsX[i] = (1 << 30) + i * 10;
+			ro.pointsY[i] = 1 << 29;
+		}
+		return ro;
+	}
+
+	private static long key(RouteDataObject ro, int ind) {
+		return (((long) ro.getPoint31XTile(ind)) << 31) + (long) ro.getPoint31YTile(ind);
+	}
+}
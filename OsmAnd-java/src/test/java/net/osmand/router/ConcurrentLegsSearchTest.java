@@ -0,0 +1,92 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+public class ConcurrentLegsSearchTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+
+	@Test
+	public void testTwoLegsInParallelEqualSequential() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		Reader reader = new InputStreamReader(ConcurrentLegsSearchTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		int checked = 0;
+		for (TestEntry te : testEntries) {
+			if (te.isIgnore() || te.getExpectedResults() == null || te.getParams().containsKey("map")) {
+				continue;
+			}
+			// route via middle point of start and end has two legs
+			LatLon start = te.getStartPoint();
+			LatLon end = te.getEndPoint();
+			List<LatLon> intermediates = te.getTransitPoint() != null && !te.getTransitPoint().isEmpty()
+					? te.getTransitPoint() : Collections.singletonList(new LatLon(
+							(start.getLatitude() + end.getLatitude()) / 2, (start.getLongitude() + end.getLongitude()) / 2));
+			RouteCalcResult sequential = searchRoute(file, te, intermediates, 1);
+			RouteCalcResult concurrent = searchRoute(file, te, intermediates, 2);
+			if (sequential == null || !sequential.isCorrect()) {
+				continue;
+			}
+			Assert.assertTrue(te.getTestName(), concurrent.isCorrect());
+			Assert.assertEquals(te.getTestName(), roadIds(sequential.detailed), roadIds(concurrent.detailed));
+			checked++;
+		}
+		Assert.assertTrue(checked > 0);
+	}
+
+	private static RouteCalcResult searchRoute(File file, TestEntry te, List<LatLon> intermediates, int threads)
+			throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+					RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+			Map<String, String> params = te.getParams();
+			RoutingConfiguration config = RoutingConfiguration.getDefault().build(
+					params.containsKey("vehicle") ? params.get("vehicle") : "car", memoryLimits, params);
+			config.intermediateLegsThreads = threads;
+			RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			ctx.leftSideNavigation = false;
+			RouteCalcResult res = fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(), intermediates);
+			if (threads > 1 && res != null && res.isCorrect()) {
+				Assert.assertTrue(ctx.calculationProgress.visitedSegments > 0);
+			}
+			return res;
+		} finally {
+			readers[0].close();
+		}
+	}
+
+	private static List<Long> roadIds(List<RouteSegmentResult> route) {
+		List<Long> ids = new ArrayList<Long>();
+		for (RouteSegmentResult r : route) {
+			ids.add(r.getObject().getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,155 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.LocationsHolder;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReaderPool;
+import net.osmand.data.LatLon;
+import net.osmand.router.GpxBatchApproximator.GpxTrack;
+import net.osmand.router.GpxBatchApproximator.GpxTrackListener;
+import net.osmand.router.GpxBatchApproximator.GpxTrackSource;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+public class GpxBatchApproximatorTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+	private static final int TRACKS = 3;
+	private static final int COPIES = 4;
+
+	@Test
+	public void testSeveralTracksInParallel() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+				RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+		List<List<LatLon>> tracks = createTracks(file, memoryLimits);
+		Assert.assertFalse(tracks.isEmpty());
+		Map<String, List<Long>> expected = new HashMap<String, List<Long>>();
+		for (int i = 0; i < tracks.size(); i++) {
+			expected.put(String.valueOf(i), approximate(file, tracks.get(i), memoryLimits));
+		}
+
+		final LinkedList<GpxTrack> source = new LinkedList<GpxTrack>();
+		for (int c = 0; c < COPIES; c++) {
+			for (int i = 0; i < tracks.size(); i++) {
+				source.add(new GpxTrack(String.valueOf(i), tracks.get(i)));
+			}
+		}
+		final Map<GpxTrack, List<Long>> results = Collections.synchronizedMap(new HashMap<GpxTrack, List<Long>>());
+		final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+		BinaryMapIndexReaderPool pool = new BinaryMapIndexReaderPool(Collections.singletonList(file), false);
+		try {
+			GpxBatchApproximator batch = new GpxBatchApproximator(pool, RoutingConfiguration.getDefault(), "car", null,
+					memoryLimits).setThreads(3).setMaxPendingTracks(2).setTileCache(new RouteTileCache(1 << 26));
+			batch.run(new GpxTrackSource() {
+				@Override
+				public GpxTrack nextTrack() {
+					return source.poll();
+				}
+			}, new GpxTrackListener() {
+				@Override
+				public void trackApproximated(GpxTrack track, GpxRouteApproximation gctx) {
+					results.put(track, roadIds(gctx.result));
+				}
+
+				@Override
+				public void trackFailed(GpxTrack track, Exception e) {
+					errors.add(e);
+				}
+			});
+			Assert.assertTrue(errors.toString(), errors.isEmpty());
+			Assert.assertEquals(tracks.size() * COPIES, batch.getApproximatedTracks());
+		} finally {
+			pool.close();
+		}
+		Assert.assertEquals(tracks.size() * COPIES, results.size());
+		for (Map.Entry<GpxTrack, List<Long>> e : results.entrySet()) {
+			Assert.assertEquals(e.getKey().toString(), expected.get(e.getKey().id), e.getValue());
+		}
+	}
+
+	// tracks are points of routes between test points
+	private static List<List<LatLon>> createTracks(File file, RoutingMemoryLimits memoryLimits)
+			throws IOException, InterruptedException {
+		Reader reader = new InputStreamReader(GpxBatchApproximatorTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		List<List<LatLon>> tracks = new ArrayList<List<LatLon>>();
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			for (TestEntry te : testEntries) {
+				if (tracks.size() >= TRACKS) {
+					break;
+				}
+				if (te.isIgnore() || te.getExpectedResults() == null || !te.getParams().isEmpty()) {
+					continue;
+				}
+				RoutingConfiguration config = RoutingConfiguration.getDefault().build("car", memoryLimits,
+						new HashMap<String, String>());
+				RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+				RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+						RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+				RouteCalcResult res = fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(), null);
+				if (res == null || !res.isCorrect() || res.detailed.isEmpty()) {
+					continue;
+				}
+				List<LatLon> track = new ArrayList<LatLon>();
+				for (RouteSegmentResult r : res.detailed) {
+					track.add(r.getStartPoint());
+				}
+				track.add(res.detailed.get(res.detailed.size() - 1).getEndPoint());
+				tracks.add(track);
+			}
+		} finally {
+			readers[0].close();
+		}
+		return tracks;
+	}
+
+	private static List<Long> approximate(File file, List<LatLon> track, RoutingMemoryLimits memoryLimits)
+			throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			RoutingConfiguration config = RoutingConfiguration.getDefault().build("car", memoryLimits,
+					new HashMap<String, String>());
+			RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers);
+			GpxRouteApproximation gctx = new GpxRouteApproximation(ctx);
+			List<GpxPoint> points = fe.generateGpxPoints(gctx, new LocationsHolder(track));
+			return roadIds(fe.searchGpxRoute(gctx, points, null).result);
+		} finally {
+			readers[0].close();
+		}
+	}
+
+	private static List<Long> roadIds(List<RouteSegmentResult> route) {
+		List<Long> ids = new ArrayList<Long>();
+		for (RouteSegmentResult r : route) {
+			ids.add(r.getObject().getId());
+		}
+		return ids;
+	}
+}
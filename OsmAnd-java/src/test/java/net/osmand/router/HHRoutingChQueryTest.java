@@ -0,0 +1,252 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPointCh;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+
+public class HHRoutingChQueryTest {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+	private static final int POINTS = 30;
+
+	@Test
+	public void testContractedSearchEqualsDijkstra() throws Exception {
+		Random rnd = new Random(17);
+		double[][] w = randomGraph(rnd, POINTS);
+		TestContext hctx = contractedNetwork(w);
+		double[][] expected = allPairs(w);
+		HHRoutingChQuery query = hctx.acquireChQuery();
+		for (int s = 0; s < POINTS; s++) {
+			for (int e = 0; e < POINTS; e++) {
+				if (s != e) {
+					Assert.assertEquals(s + " -> " + e, expected[s][e],
+							query.searchCost(hctx, hctx.point(s), hctx.point(e)), 1e-6);
+				}
+			}
+		}
+		hctx.releaseChQuery(query);
+	}
+
+	@Test
+	public void testStallUsesPenalty() throws Exception {
+		// S (0) -> P (1) -> T (2), higher point H (3) reaches P shorter, but segment H -> P is penalized
+		double[][] w = new double[4][4];
+		for (double[] r : w) {
+			Arrays.fill(r, INF);
+		}
+		w[0][1] = 10;
+		w[0][3] = 3;
+		w[3][1] = 5;
+		w[1][2] = 1;
+		TestContext hctx = network(w);
+		TLongObjectHashMap<NetworkDBPoint> st = new TLongObjectHashMap<NetworkDBPoint>();
+		st.put(0, hctx.point(0));
+		TLongObjectHashMap<NetworkDBPoint> end = new TLongObjectHashMap<NetworkDBPoint>();
+		end.put(2, hctx.point(2));
+		int[] path = hctx.acquireChQuery().searchPath(hctx, st, end, Collections.<NetworkDBPoint>emptyList(),
+				new int[] { 1, 3 }, 1);
+		Assert.assertNotNull(path);
+		Assert.assertArrayEquals(new int[] { 0, 1, 2 }, path);
+	}
+
+	@Test
+	public void testStatsOfParallelQueries() throws Exception {
+		double[][] w = randomGraph(new Random(5), POINTS);
+		final TestContext hctx = contractedNetwork(w);
+		HHRoutingChQuery query = hctx.acquireChQuery();
+		for (int s = 0; s < POINTS; s++) {
+			query.searchCost(hctx, hctx.point(s), hctx.point(POINTS - 1 - s));
+		}
+		hctx.releaseChQuery(query);
+		final int visited = hctx.stats.visitedVertices;
+		final int added = hctx.stats.addedVertices;
+		Assert.assertTrue(visited > 0);
+
+		hctx.stats = new HHRouteDataStructure.RoutingStats();
+		final int threads = 4;
+		final Exception[] error = new Exception[1];
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int k = 0; k < threads; k++) {
+			Thread th = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					HHRoutingChQuery q = hctx.acquireChQuery();
+					try {
+						for (int s = 0; s < POINTS; s++) {
+							q.searchCost(hctx, hctx.point(s), hctx.point(POINTS - 1 - s));
+						}
+					} catch (Exception e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					} finally {
+						hctx.releaseChQuery(q);
+					}
+				}
+			});
+			th.start();
+			workers.add(th);
+		}
+		for (Thread th : workers) {
+			th.join();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+		Assert.assertEquals(visited * threads, hctx.stats.visitedVertices);
+		Assert.assertEquals(added * threads, hctx.stats.addedVertices);
+	}
+
+	@Test
+	public void testWorkspacesAreKeptByContext() {
+		TestContext hctx = network(randomGraph(new Random(3), POINTS));
+		HHRoutingChQuery first = hctx.acquireChQuery();
+		HHRoutingChQuery second = hctx.acquireChQuery();
+		Assert.assertNotSame(first, second);
+		hctx.releaseChQuery(first);
+		Assert.assertSame(first, hctx.acquireChQuery());
+		hctx.releaseChQuery(first);
+		Assert.assertNotSame(first, network(randomGraph(new Random(3), POINTS)).acquireChQuery());
+	}
+
+	@Test
+	public void testPointsByIndexBuiltOnce() throws Exception {
+		final TestContext hctx = network(randomGraph(new Random(7), POINTS));
+		final NetworkDBPoint[][] arrays = new NetworkDBPoint[8][];
+		Thread[] threads = new Thread[arrays.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int ind = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					arrays[ind] = hctx.getPointsByIndex();
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread th : threads) {
+			th.join();
+		}
+		for (NetworkDBPoint[] arr : arrays) {
+			Assert.assertSame(arrays[0], arr);
+		}
+		Assert.assertEquals(POINTS, arrays[0].length);
+		Assert.assertSame(hctx.point(5), arrays[0][5]);
+
+		// reloaded points
+		TLongObjectHashMap<NetworkDBPoint> reloaded = new TLongObjectHashMap<NetworkDBPoint>();
+		reloaded.put(1, hctx.point(1));
+		hctx.pointsById = reloaded;
+		NetworkDBPoint[] arr = hctx.getPointsByIndex();
+		Assert.assertEquals(2, arr.length);
+		Assert.assertNull(arr[0]);
+		Assert.assertSame(hctx.point(1), arr[1]);
+	}
+
+	private static double[][] randomGraph(Random rnd, int n) {
+		double[][] w = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(w[i], INF);
+			// ring keeps graph connected
+			w[i][(i + 1) % n] = 10 + rnd.nextInt(50);
+			w[(i + 1) % n][i] = 10 + rnd.nextInt(50);
+		}
+		for (int k = 0; k < n * 2; k++) {
+			int a = rnd.nextInt(n);
+			int b = rnd.nextInt(n);
+			if (a != b) {
+				w[a][b] = 10 + rnd.nextInt(100);
+			}
+		}
+		return w;
+	}
+
+	private static double[][] allPairs(double[][] w) {
+		int n = w.length;
+		double[][] d = new double[n][];
+		for (int i = 0; i < n; i++) {
+			d[i] = w[i].clone();
+			d[i][i] = 0;
+		}
+		for (int k = 0; k < n; k++) {
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					d[i][j] = Math.min(d[i][j], d[i][k] + d[k][j]);
+				}
+			}
+		}
+		return d;
+	}
+
+	// contracts points in order of index and adds all shortcuts (without witness search)
+	private static TestContext contractedNetwork(double[][] w) {
+		int n = w.length;
+		double[][] g = new double[n][];
+		for (int i = 0; i < n; i++) {
+			g[i] = w[i].clone();
+		}
+		TestContext hctx = network(w);
+		for (int v = 0; v < n; v++) {
+			for (int u = v + 1; u < n; u++) {
+				for (int x = v + 1; x < n; x++) {
+					if (u != x && g[u][v] < INF && g[v][x] < INF && g[u][v] + g[v][x] < g[u][x]) {
+						g[u][x] = g[u][v] + g[v][x];
+						hctx.connect(u, x, g[u][x], true);
+					}
+				}
+			}
+		}
+		return hctx;
+	}
+
+	private static TestContext network(double[][] w) {
+		TestContext hctx = new TestContext();
+		hctx.config = HHRoutingConfig.ch();
+		hctx.pointsById = new TLongObjectHashMap<NetworkDBPoint>();
+		for (int i = 0; i < w.length; i++) {
+			NetworkDBPointCh p = new NetworkDBPointCh();
+			p.index = i;
+			p.chInd = i + 1;
+			hctx.pointsById.put(i, p);
+		}
+		for (int i = 0; i < w.length; i++) {
+			for (int j = 0; j < w.length; j++) {
+				if (w[i][j] < INF) {
+					hctx.connect(i, j, w[i][j], false);
+				}
+			}
+		}
+		return hctx;
+	}
+
+	private static class TestContext extends HHRoutingContext<NetworkDBPoint> {
+
+		NetworkDBPoint point(int ind) {
+			return pointsById.get(ind);
+		}
+
+		void connect(int from, int to, double dist, boolean shortcut) {
+			NetworkDBSegment s = new NetworkDBSegment(point(from), point(to), dist, true, shortcut);
+			point(from).connected(false).add(s);
+			point(to).connected(true).add(s);
+		}
+
+		@Override
+		public int loadNetworkSegmentPoint(NetworkDBPoint point, boolean reverse) {
+			// all segments are set by test
+			return 0;
+		}
+	}
+}
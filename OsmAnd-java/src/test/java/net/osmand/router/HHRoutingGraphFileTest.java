@@ -0,0 +1,231 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
+import net.osmand.data.DataTileManager;
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.HHRouteRegionPointsCtx;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPointCh;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+import net.osmand.util.MapUtils;
+
+public class HHRoutingGraphFileTest {
+
+	private static final int PAIRS = 4;
+
+	private File file;
+	private HHRoutingGraphFile graphFile;
+	private List<NetworkDBPointCh> points;
+	// segments of profile: [from, to, dist, shortcut]
+	private final TIntObjectHashMap<double[][]> segments = new TIntObjectHashMap<double[][]>();
+
+	@Before
+	public void writeGraph() throws Exception {
+		points = new ArrayList<NetworkDBPointCh>();
+		for (int i = 0; i < PAIRS; i++) {
+			// pairs are 0.5 degree from each other, so they're in different tiles
+			int x = MapUtils.get31TileNumberX(4 + i * 0.5);
+			int y = MapUtils.get31TileNumberY(52 + i * 0.5);
+			NetworkDBPointCh p = point(10 + 4 * i, i, 100 + i, (short) 1, (short) 2, x, y, x + 50, y + 50);
+			NetworkDBPointCh d = point(12 + 4 * i, i, 100 + i, (short) 2, (short) 1, x + 50, y + 50, x, y);
+			p.dualPoint = d;
+			d.dualPoint = p;
+			points.add(d);
+			points.add(p);
+		}
+		points.get(0).tagValues = new ArrayList<TagValuePair>();
+		points.get(0).tagValues.add(new TagValuePair("highway", "primary", -1));
+		points.get(0).tagValues.add(new TagValuePair("name", "Главная", -1));
+		segments.put(0, new double[][] { { 0, 2, 10, 0 }, { 2, 4, 20, 0 }, { 0, 4, 30, 1 }, { 4, 6, 40, 0 } });
+		segments.put(1, new double[][] { { 0, 2, 15, 0 }, { 0, 6, 90, 1 }, { 3, 1, 5, 0 } });
+
+		TIntObjectHashMap<String> profiles = new TIntObjectHashMap<String>();
+		profiles.put(0, "");
+		profiles.put(1, "avoid_motorway");
+		file = File.createTempFile("graph", HHRoutingGraphFile.EXT);
+		HHRoutingGraphFile.write("car", profiles, points, new HHRoutingGraphFile.SegmentsLoader() {
+
+			@Override
+			public void loadSegments(int routingProfile, List<NetworkDBPointCh> pnts) {
+				for (NetworkDBPointCh p : pnts) {
+					p.connectedSet(false, new ArrayList<NetworkDBSegment>());
+					p.connectedSet(true, new ArrayList<NetworkDBSegment>());
+				}
+				for (double[] s : segments.get(routingProfile)) {
+					NetworkDBPoint start = points.get((int) s[0]);
+					NetworkDBPoint end = points.get((int) s[1]);
+					NetworkDBSegment seg = new NetworkDBSegment(start, end, s[2], true, s[3] > 0);
+					start.connected(false).add(seg);
+					end.connected(true).add(seg);
+				}
+			}
+		}, file);
+		graphFile = HHRoutingGraphFile.open(file);
+	}
+
+	@After
+	public void deleteGraph() throws IOException {
+		if (graphFile != null) {
+			graphFile.close();
+		}
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testPointsAreReadBack() {
+		Assert.assertEquals("car", graphFile.getRoutingProfile());
+		Assert.assertEquals("avoid_motorway", graphFile.getRoutingProfiles().get(1));
+		Assert.assertEquals(points.size(), graphFile.getPointsCount());
+		Assert.assertEquals(12 + 4 * (PAIRS - 1), graphFile.getMaxPointIndex());
+		DataTileManager<NetworkDBPoint> tiles = new DataTileManager<NetworkDBPoint>(HHRoutingContext.POINTS_RECT_ZOOM);
+		for (NetworkDBPointCh p : points) {
+			int pos = graphFile.findPointByIndex(p.index);
+			Assert.assertTrue(pos >= 0);
+			Assert.assertEquals(pos, graphFile.findPointByGeo(p.getGeoPntId()));
+			Assert.assertEquals(graphFile.findPointByIndex(p.dualPoint.index), graphFile.getDualPoint(pos));
+			NetworkDBPointCh r = graphFile.createPoint(pos, (short) 3, NetworkDBPointCh.class);
+			Assert.assertEquals(3, r.mapId);
+			Assert.assertEquals(pos, r.fileId);
+			Assert.assertEquals(p.index, r.index);
+			Assert.assertEquals(p.clusterId, r.clusterId);
+			Assert.assertEquals(p.chInd, r.chInd);
+			Assert.assertEquals(p.roadId, r.roadId);
+			Assert.assertEquals(p.start, r.start);
+			Assert.assertEquals(p.end, r.end);
+			Assert.assertEquals(p.startX, r.startX);
+			Assert.assertEquals(p.startY, r.startY);
+			Assert.assertEquals(p.endX, r.endX);
+			Assert.assertEquals(p.endY, r.endY);
+			Assert.assertNull(r.connected(false));
+			Assert.assertEquals(tags(p), tags(r));
+			LatLon l = p.getPoint();
+			TIntArrayList tilePoints = new TIntArrayList();
+			graphFile.findTilePoints(tiles.evaluateTile(l.getLatitude(), l.getLongitude()), tilePoints);
+			Assert.assertTrue(tilePoints.contains(pos));
+			Assert.assertEquals(2, tilePoints.size());
+		}
+		Assert.assertEquals(-1, graphFile.findPointByIndex(11));
+		Assert.assertEquals(-1, graphFile.findPointByGeo(1));
+	}
+
+	@Test
+	public void testContextCreatesReachedPoints() throws Exception {
+		HHRoutingContext<NetworkDBPointCh> ctx = new HHRoutingContext<NetworkDBPointCh>();
+		ctx.regions.add(new HHRouteRegionPointsCtx<NetworkDBPointCh>((short) 0, graphFile, 1));
+		Assert.assertTrue(ctx.initGraphFileRegion(NetworkDBPointCh.class));
+		Assert.assertTrue(ctx.pointsById.isEmpty());
+		Assert.assertTrue(ctx.boundaries.containsKey(points.get(5).getGeoPntId()));
+		Assert.assertFalse(ctx.boundaries.containsKey(1));
+		ctx.boundaries.put(1, null);
+		Assert.assertTrue(ctx.boundaries.containsKey(1));
+		ctx.boundaries.remove(1);
+		Assert.assertFalse(ctx.boundaries.containsKey(1));
+		Assert.assertTrue(ctx.pointsById.isEmpty());
+
+		NetworkDBPointCh p = ctx.getPointByGeo(points.get(0).getGeoPntId());
+		Assert.assertEquals(points.get(0).index, p.index);
+		Assert.assertEquals(points.get(1).index, p.dualPoint.index);
+		Assert.assertSame(p, p.dualPoint.dualPoint);
+		Assert.assertSame(p, ctx.getPointByGeo(points.get(0).getGeoPntId()));
+		Assert.assertEquals(2, ctx.pointsById.size());
+		NetworkDBPoint[] byIndex = ctx.getPointsByIndex();
+		Assert.assertEquals(graphFile.getMaxPointIndex() + 1, byIndex.length);
+		Assert.assertSame(p, byIndex[p.index]);
+
+		ctx.loadNetworkSegmentPoint(p, false);
+		Assert.assertEquals(expectedSegments(1, 0, false), segments(p, false));
+		Assert.assertEquals(expectedSegments(1, 0, true), segments(p, true));
+		// targets are created with their dual points without segments
+		Assert.assertEquals(6, ctx.pointsById.size());
+		NetworkDBPoint target = ctx.pointsById.get(points.get(6).index);
+		Assert.assertNull(target.connected(false));
+		Assert.assertSame(target, byIndex[target.index]);
+		Assert.assertSame(target, p.connected(false).get(1).end);
+
+		List<NetworkDBPointCh> closest = ctx.getClosestPoints(p.getPoint().getLatitude(),
+				p.getPoint().getLongitude(), 15000);
+		Assert.assertEquals(2, closest.size());
+		Assert.assertTrue(closest.contains(p));
+		Assert.assertEquals(6, ctx.pointsById.size());
+		LatLon far = points.get(4).getPoint();
+		// points of other tile are created
+		Assert.assertEquals(2, ctx.getClosestPoints(far.getLatitude(), far.getLongitude(), 15000).size());
+		Assert.assertEquals(8, ctx.pointsById.size());
+	}
+
+	@Test
+	public void testSegmentsOfEachProfile() throws Exception {
+		for (int profile : segments.keys()) {
+			HHRoutingContext<NetworkDBPointCh> ctx = new HHRoutingContext<NetworkDBPointCh>();
+			ctx.regions.add(new HHRouteRegionPointsCtx<NetworkDBPointCh>((short) 0, graphFile, profile));
+			ctx.initGraphFileRegion(NetworkDBPointCh.class);
+			for (int i = 0; i < points.size(); i++) {
+				NetworkDBPointCh p = ctx.getPointByGeo(points.get(i).getGeoPntId());
+				ctx.loadNetworkSegmentPoint(p, false);
+				Assert.assertEquals(expectedSegments(profile, i, false), segments(p, false));
+				Assert.assertEquals(expectedSegments(profile, i, true), segments(p, true));
+			}
+		}
+	}
+
+	private Set<String> expectedSegments(int profile, int pnt, boolean rev) {
+		Set<String> res = new HashSet<String>();
+		for (double[] s : segments.get(profile)) {
+			if ((int) s[rev ? 1 : 0] == pnt) {
+				res.add(points.get((int) s[rev ? 0 : 1]).index + " " + s[2] + " " + (s[3] > 0));
+			}
+		}
+		return res;
+	}
+
+	private static Set<String> segments(NetworkDBPoint p, boolean rev) {
+		Set<String> res = new HashSet<String>();
+		for (NetworkDBSegment s : p.connected(rev)) {
+			res.add((rev ? s.start : s.end).index + " " + s.dist + " " + s.shortcut);
+		}
+		return res;
+	}
+
+	private static List<String> tags(NetworkDBPoint p) {
+		List<String> res = new ArrayList<String>();
+		if (p.tagValues != null) {
+			for (TagValuePair tp : p.tagValues) {
+				res.add(tp.tag + "=" + tp.value);
+			}
+		}
+		return res;
+	}
+
+	private static NetworkDBPointCh point(int index, int clusterId, long road, short start, short end, int startX,
+			int startY, int endX, int endY) {
+		NetworkDBPointCh p = new NetworkDBPointCh();
+		p.index = index;
+		p.clusterId = clusterId;
+		p.chInd = index + 1;
+		p.roadId = road * 64;
+		p.start = start;
+		p.end = end;
+		p.startX = startX;
+		p.startY = startY;
+		p.endX = endX;
+		p.endY = endY;
+		return p;
+	}
+}
@@ -0,0 +1,211 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPointCh;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+import net.osmand.router.HHRoutePlanner.MatrixLabel;
+
+public class HHRoutingMatrixTest {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+	private static final int POINTS = 40;
+
+	@Test
+	public void testDijkstraMatrixEqualsAllPairs() throws Exception {
+		double[][] w = randomGraph(new Random(11), POINTS);
+		checkMatrix(w, network(w, HHRoutingConfig.dijkstra(0)), 1);
+		checkMatrix(w, network(w, HHRoutingConfig.dijkstra(0)), 4);
+	}
+
+	@Test
+	public void testChMatrixEqualsAllPairs() throws Exception {
+		double[][] w = randomGraph(new Random(13), POINTS);
+		checkMatrix(w, contractedNetwork(w), 1);
+		checkMatrix(w, contractedNetwork(w), 4);
+	}
+
+	@Test
+	public void testDirectTimesAreKept() throws Exception {
+		double[][] w = randomGraph(new Random(19), POINTS);
+		TestContext hctx = network(w, HHRoutingConfig.dijkstra(0));
+		double[][] expected = allPairs(w);
+		int[] sources = { 0, 5 };
+		int[] targets = { 7, 9 };
+		double[][] times = new double[sources.length][targets.length];
+		double[][] lengths = new double[sources.length][targets.length];
+		for (double[] t : times) {
+			Arrays.fill(t, INF);
+		}
+		// direct route is shorter than network route
+		times[1][0] = expected[5][7] / 2;
+		lengths[1][0] = 1;
+		HHRoutePlanner.runNetworkMatrix(hctx, labels(hctx, sources), labels(hctx, targets), times, lengths, null);
+		Assert.assertEquals(expected[5][7] / 2, times[1][0], 1e-6);
+		Assert.assertEquals(1, lengths[1][0], 1e-6);
+		Assert.assertEquals(expected[5][9], times[1][1], 1e-6);
+		Assert.assertEquals(expected[0][7], times[0][0], 1e-6);
+	}
+
+	@Test
+	public void testTaskErrorIsRethrown() throws Exception {
+		TestContext hctx = network(randomGraph(new Random(23), POINTS), HHRoutingConfig.dijkstra(0));
+		hctx.config.MATRIX_THREADS = 4;
+		hctx.failOn = hctx.point(3);
+		int[] all = new int[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			all[i] = i;
+		}
+		double[][] times = new double[POINTS][POINTS];
+		for (double[] t : times) {
+			Arrays.fill(t, INF);
+		}
+		try {
+			HHRoutePlanner.runNetworkMatrix(hctx, labels(hctx, all), labels(hctx, all), times, new double[POINTS][POINTS],
+					null);
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("point 3", e.getMessage());
+		}
+	}
+
+	private static void checkMatrix(double[][] w, TestContext hctx, int threads) throws Exception {
+		hctx.config.MATRIX_THREADS = threads;
+		double[][] expected = allPairs(w);
+		int[] sources = { 0, 3, 17, 25, 39 };
+		int[] targets = { 1, 3, 12, 30 };
+		double[][] times = new double[sources.length][targets.length];
+		double[][] lengths = new double[sources.length][targets.length];
+		for (double[] t : times) {
+			Arrays.fill(t, INF);
+		}
+		HHRoutePlanner.runNetworkMatrix(hctx, labels(hctx, sources), labels(hctx, targets), times, lengths,
+				new RouteCalculationProgress());
+		for (int s = 0; s < sources.length; s++) {
+			for (int t = 0; t < targets.length; t++) {
+				Assert.assertEquals(sources[s] + " -> " + targets[t], expected[sources[s]][targets[t]], times[s][t],
+						1e-6);
+			}
+		}
+	}
+
+	private static List<List<MatrixLabel>> labels(TestContext hctx, int[] points) {
+		List<List<MatrixLabel>> res = new ArrayList<List<MatrixLabel>>();
+		for (int i = 0; i < points.length; i++) {
+			res.add(Collections.singletonList(new MatrixLabel(hctx.point(points[i]), i, 0, 0)));
+		}
+		return res;
+	}
+
+	private static double[][] randomGraph(Random rnd, int n) {
+		double[][] w = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(w[i], INF);
+			// ring keeps graph connected
+			w[i][(i + 1) % n] = 10 + rnd.nextInt(50);
+			w[(i + 1) % n][i] = 10 + rnd.nextInt(50);
+		}
+		for (int k = 0; k < n * 2; k++) {
+			int a = rnd.nextInt(n);
+			int b = rnd.nextInt(n);
+			if (a != b) {
+				w[a][b] = 10 + rnd.nextInt(100);
+			}
+		}
+		return w;
+	}
+
+	private static double[][] allPairs(double[][] w) {
+		int n = w.length;
+		double[][] d = new double[n][];
+		for (int i = 0; i < n; i++) {
+			d[i] = w[i].clone();
+			d[i][i] = 0;
+		}
+		for (int k = 0; k < n; k++) {
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					d[i][j] = Math.min(d[i][j], d[i][k] + d[k][j]);
+				}
+			}
+		}
+		return d;
+	}
+
+	// contracts points in order of index and adds all shortcuts (without witness search)
+	private static TestContext contractedNetwork(double[][] w) {
+		int n = w.length;
+		double[][] g = new double[n][];
+		for (int i = 0; i < n; i++) {
+			g[i] = w[i].clone();
+		}
+		TestContext hctx = network(w, HHRoutingConfig.ch());
+		for (int v = 0; v < n; v++) {
+			for (int u = v + 1; u < n; u++) {
+				for (int x = v + 1; x < n; x++) {
+					if (u != x && g[u][v] < INF && g[v][x] < INF && g[u][v] + g[v][x] < g[u][x]) {
+						g[u][x] = g[u][v] + g[v][x];
+						hctx.connect(u, x, g[u][x], true);
+					}
+				}
+			}
+		}
+		return hctx;
+	}
+
+	private static TestContext network(double[][] w, HHRoutingConfig config) {
+		TestContext hctx = new TestContext();
+		hctx.config = config;
+		hctx.pointsById = new TLongObjectHashMap<NetworkDBPoint>();
+		for (int i = 0; i < w.length; i++) {
+			NetworkDBPointCh p = new NetworkDBPointCh();
+			p.index = i;
+			p.chInd = i + 1;
+			hctx.pointsById.put(i, p);
+		}
+		for (int i = 0; i < w.length; i++) {
+			for (int j = 0; j < w.length; j++) {
+				if (w[i][j] < INF) {
+					hctx.connect(i, j, w[i][j], false);
+				}
+			}
+		}
+		return hctx;
+	}
+
+	private static class TestContext extends HHRoutingContext<NetworkDBPoint> {
+
+		NetworkDBPoint failOn;
+
+		NetworkDBPoint point(int ind) {
+			return pointsById.get(ind);
+		}
+
+		void connect(int from, int to, double dist, boolean shortcut) {
+			NetworkDBSegment s = new NetworkDBSegment(point(from), point(to), dist, true, shortcut);
+			point(from).connected(false).add(s);
+			point(to).connected(true).add(s);
+		}
+
+		@Override
+		public int loadNetworkSegmentPoint(NetworkDBPoint point, boolean reverse) throws IOException {
+			if (point == failOn) {
+				throw new IOException("point " + point.index);
+			}
+			// all segments are set by test
+			return 0;
+		}
+	}
+}
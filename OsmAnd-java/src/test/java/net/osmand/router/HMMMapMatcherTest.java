@@ -0,0 +1,161 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.LocationsHolder;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.HMMMapMatcher.HMMConfig;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+public class HMMMapMatcherTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+	private static final int TRACKS = 3;
+	// part of greedy route length which should be matched by the same roads
+	private static final double MIN_COMMON_PART = 0.8;
+
+	@Test
+	public void testMinPointDistanceFollowsGpsError() {
+		Assert.assertEquals(2 * HMMConfig.DEFAULT.sigmaZ, HMMConfig.DEFAULT.getMinPointDistance(), 0);
+		HMMConfig config = new HMMConfig(25, 5, 8, 3, 50);
+		Assert.assertEquals(50, config.getMinPointDistance(), 0);
+	}
+
+	@Test
+	public void testMatchedRouteEqualsGreedyApproximation() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		List<List<LatLon>> tracks = createTracks(file);
+		Assert.assertFalse(tracks.isEmpty());
+		for (List<LatLon> track : tracks) {
+			GpxRouteApproximation greedy = approximate(file, track, false, HMMConfig.DEFAULT);
+			GpxRouteApproximation hmm = approximate(file, track, true, HMMConfig.DEFAULT);
+			Assert.assertFalse(greedy.result.isEmpty());
+			Assert.assertFalse(hmm.result.isEmpty());
+			Set<Long> hmmRoads = new HashSet<Long>();
+			for (RouteSegmentResult r : hmm.result) {
+				hmmRoads.add(r.getObject().getId());
+			}
+			double common = 0;
+			double total = 0;
+			for (RouteSegmentResult r : greedy.result) {
+				total += r.getDistance();
+				if (hmmRoads.contains(r.getObject().getId())) {
+					common += r.getDistance();
+				}
+			}
+			Assert.assertTrue(common + " of " + total, common >= MIN_COMMON_PART * total);
+		}
+	}
+
+	@Test
+	public void testLargerGpsErrorSkipsMorePoints() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		List<LatLon> track = densify(createTracks(file).get(0), 5);
+		GpxRouteApproximation precise = approximate(file, track, true, HMMConfig.DEFAULT);
+		GpxRouteApproximation rough = approximate(file, track, true, new HMMConfig(40, 5, 8, 3, 50));
+		Assert.assertFalse(rough.result.isEmpty());
+		Assert.assertTrue(rough.routePointsSearched < precise.routePointsSearched);
+	}
+
+	private static GpxRouteApproximation approximate(File file, List<LatLon> track, boolean useHMM, HMMConfig config)
+			throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			RoutingConfiguration rconfig = RoutingConfiguration.getDefault().build("car", memoryLimits(),
+					new HashMap<String, String>());
+			RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd().setUseHMMApproximation(useHMM).setHMMConfig(config);
+			RoutingContext ctx = fe.buildRoutingContext(rconfig, null, readers);
+			GpxRouteApproximation gctx = new GpxRouteApproximation(ctx);
+			List<GpxPoint> points = fe.generateGpxPoints(gctx, new LocationsHolder(track));
+			return fe.searchGpxRoute(gctx, points, null);
+		} finally {
+			readers[0].close();
+		}
+	}
+
+	// tracks are points of routes between test points
+	private static List<List<LatLon>> createTracks(File file) throws IOException, InterruptedException {
+		Reader reader = new InputStreamReader(HMMMapMatcherTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		List<List<LatLon>> tracks = new ArrayList<List<LatLon>>();
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			for (TestEntry te : testEntries) {
+				if (tracks.size() >= TRACKS) {
+					break;
+				}
+				if (te.isIgnore() || te.getExpectedResults() == null || !te.getParams().isEmpty()) {
+					continue;
+				}
+				RoutingConfiguration config = RoutingConfiguration.getDefault().build("car", memoryLimits(),
+						new HashMap<String, String>());
+				RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+				RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+						RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+				RouteCalcResult res = fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(), null);
+				if (res == null || !res.isCorrect() || res.detailed.isEmpty()) {
+					continue;
+				}
+				List<LatLon> track = new ArrayList<LatLon>();
+				for (RouteSegmentResult r : res.detailed) {
+					track.add(r.getStartPoint());
+				}
+				track.add(res.detailed.get(res.detailed.size() - 1).getEndPoint());
+				tracks.add(track);
+			}
+		} finally {
+			readers[0].close();
+		}
+		return tracks;
+	}
+
+	// adds points between track points not further than step (m)
+	private static List<LatLon> densify(List<LatLon> track, double step) {
+		List<LatLon> res = new ArrayList<LatLon>();
+		for (int i = 0; i < track.size() - 1; i++) {
+			LatLon a = track.get(i);
+			LatLon b = track.get(i + 1);
+			int parts = Math.max(1, (int) (MapUtils.getDistance(a, b) / step));
+			for (int k = 0; k < parts; k++) {
+				double t = k / (double) parts;
+				res.add(new LatLon(a.getLatitude() + (b.getLatitude() - a.getLatitude()) * t,
+						a.getLongitude() + (b.getLongitude() - a.getLongitude()) * t));
+			}
+		}
+		res.add(track.get(track.size() - 1));
+		return res;
+	}
+
+	private static RoutingMemoryLimits memoryLimits() {
+		return new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+				RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+	}
+}
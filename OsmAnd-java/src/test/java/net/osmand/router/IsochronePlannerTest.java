@@ -0,0 +1,133 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.IsochronePlanner.IsochroneResult;
+import net.osmand.router.IsochronePlanner.IsochroneSegment;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+public class IsochronePlannerTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+	private static final float MAX_TIME = 5 * 60;
+
+	@Test
+	public void testSearchContextKeepsConfiguration() {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.planRoadDirection = 0;
+		config.heuristicCoefficient = 1.5f;
+		RoutingContext ctx = new RoutingContext(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		RoutingContext sctx = IsochronePlanner.createSearchContext(ctx);
+		Assert.assertNotSame(ctx.config, sctx.config);
+		Assert.assertSame(ctx.config.router, sctx.config.router);
+		Assert.assertEquals(1, sctx.config.planRoadDirection);
+		Assert.assertEquals(0, sctx.config.heuristicCoefficient, 0);
+		Assert.assertEquals(0, config.planRoadDirection);
+		Assert.assertEquals(1.5f, config.heuristicCoefficient, 0);
+		Assert.assertEquals(-1, config.MAX_COST, 0);
+	}
+
+	@Test
+	public void testClearedSegmentsAreCreatedAgain() {
+		RouteDataObject road = new RouteDataObject(new RouteRegion());
+		road.id = 1;
+		road.pointsX = new int[] { 0, 100, 200 };
+		road.pointsY = new int[] { 0, 100, 200 };
+		CompactRouteSegmentMap map = new CompactRouteSegmentMap();
+		map.add(road);
+		long key = (((long) road.getPoint31XTile(1)) << 31) + (long) road.getPoint31YTile(1);
+		RouteSegment s = map.get(key);
+		s.distanceFromStart = 10;
+		map.clearSegments();
+		RouteSegment cleared = map.get(key);
+		Assert.assertNotSame(s, cleared);
+		Assert.assertNull(cleared.parentRoute);
+		Assert.assertEquals(0, cleared.distanceFromStart, 0);
+		Assert.assertSame(road, cleared.getRoad());
+	}
+
+	@Test
+	public void testReusedTilesGiveSameIsochrone() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		Reader reader = new InputStreamReader(IsochronePlannerTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		int checked = 0;
+		for (TestEntry te : testEntries) {
+			if (te.isIgnore() || te.getExpectedResults() == null || !te.getParams().isEmpty()) {
+				continue;
+			}
+			BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+			try {
+				RoutingContext ctx = createContext(readers);
+				RouteSegmentPoint start = findPoint(ctx, te.getStartPoint());
+				RouteSegmentPoint end = findPoint(ctx, te.getEndPoint());
+				if (start == null || end == null) {
+					continue;
+				}
+				// second search runs over tiles of the first one
+				RoutingContext sctx = IsochronePlanner.createSearchContext(ctx);
+				search(sctx, start);
+				Map<Long, Float> reused = search(sctx, end);
+				sctx.unloadAllData();
+				Map<Long, Float> fresh = search(IsochronePlanner.createSearchContext(createContext(readers)), end);
+				Assert.assertFalse(fresh.isEmpty());
+				Assert.assertEquals(te.getTestName(), fresh, reused);
+				Assert.assertEquals(0, ctx.config.planRoadDirection);
+				Assert.assertEquals(-1, ctx.config.MAX_COST, 0);
+				checked++;
+			} finally {
+				readers[0].close();
+			}
+		}
+		Assert.assertTrue(checked > 0);
+	}
+
+	private static Map<Long, Float> search(RoutingContext sctx, RouteSegmentPoint pnt)
+			throws IOException, InterruptedException {
+		IsochroneResult res = new IsochroneResult(new LatLon(0, 0), MAX_TIME);
+		IsochronePlanner.searchDetailed(sctx, new RouteSegmentPoint(pnt), 0, MAX_TIME, res, null);
+		Map<Long, Float> times = new HashMap<Long, Float>();
+		for (IsochroneSegment s : res.getSegments()) {
+			times.put(s.getId(), s.endTime);
+		}
+		return times;
+	}
+
+	private static RouteSegmentPoint findPoint(RoutingContext ctx, LatLon l) throws IOException {
+		return new RoutePlannerFrontEnd().findRouteSegment(l.getLatitude(), l.getLongitude(), ctx, null);
+	}
+
+	private static RoutingContext createContext(BinaryMapIndexReader[] readers) {
+		RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+				RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car", memoryLimits,
+				new LinkedHashMap<String, String>());
+		config.planRoadDirection = 0;
+		return new RoutePlannerFrontEnd().buildRoutingContext(config, null, readers, RouteCalculationMode.NORMAL);
+	}
+}
@@ -0,0 +1,160 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.ReverseSearchTree;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.FloatPriorityQueue;
+
+public class ReverseSearchTreeTest {
+
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+
+	@Test
+	public void testTreeMatchesRouterParameters() {
+		GeneralRouter base = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		RoutingContext ctx = context(base.build(params("short_way", "false")), 1 << 20);
+		RouteSegmentPoint end = endPoint();
+		ReverseSearchTree tree = new ReverseSearchTree();
+		tree.store(ctx, end, visited(end), new FloatPriorityQueue<RouteSegment>(10));
+		Assert.assertFalse(tree.isEmpty());
+		Assert.assertTrue(tree.matches(ctx, end));
+		Assert.assertFalse(tree.matches(ctx, new RouteSegmentPoint(end.getRoad(), 1, 0)));
+
+		// new context of the same profile and parameters
+		Assert.assertTrue(tree.matches(context(base.build(params("short_way", "false")), 1 << 20), end));
+		Assert.assertFalse(tree.matches(context(base.build(params("short_way", "true")), 1 << 20), end));
+		GeneralRouter avoid = base.build(params("short_way", "false"));
+		avoid.setImpassableRoads(Collections.singleton(5L));
+		Assert.assertFalse(tree.matches(context(avoid, 1 << 20), end));
+		RoutingContext other = context(base.build(params("short_way", "false")), 1 << 20);
+		other.config.routerName = "bicycle";
+		Assert.assertFalse(tree.matches(other, end));
+	}
+
+	@Test
+	public void testTreeIsNotKeptOverMemoryLimit() {
+		GeneralRouter base = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		RouteSegmentPoint end = endPoint();
+		ReverseSearchTree tree = new ReverseSearchTree();
+		RoutingContext ctx = context(base, 1 << 20);
+		tree.store(ctx, end, visited(end), new FloatPriorityQueue<RouteSegment>(10));
+		Assert.assertTrue(tree.matches(ctx, end));
+
+		ctx = context(base, BinaryRoutePlanner.STANDARD_ROAD_VISITED_OVERHEAD);
+		tree.store(ctx, end, visited(end), new FloatPriorityQueue<RouteSegment>(10));
+		Assert.assertTrue(tree.isEmpty());
+		Assert.assertFalse(tree.matches(ctx, end));
+		Assert.assertEquals(1, tree.getSkippedStores());
+	}
+
+	@Test
+	public void testResumedTreeGivesSameRoute() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		Reader reader = new InputStreamReader(ReverseSearchTreeTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		int checked = 0;
+		for (TestEntry te : testEntries) {
+			if (te.isIgnore() || te.getExpectedResults() == null || !te.getParams().isEmpty()) {
+				continue;
+			}
+			// second search starts from the middle of the first route
+			ReverseSearchTree tree = new ReverseSearchTree();
+			List<RouteSegmentResult> first = searchRoute(file, te.getStartPoint(), te.getEndPoint(), tree);
+			if (first == null || first.size() < 2 || tree.isEmpty()) {
+				continue;
+			}
+			LatLon start = first.get(first.size() / 2).getStartPoint();
+			List<RouteSegmentResult> resumed = searchRoute(file, start, te.getEndPoint(), tree);
+			Assert.assertEquals(te.getTestName(), 1, tree.getResumedSearches());
+			List<RouteSegmentResult> fresh = searchRoute(file, start, te.getEndPoint(), null);
+			Assert.assertEquals(te.getTestName(), roadIds(fresh), roadIds(resumed));
+			checked++;
+		}
+		Assert.assertTrue(checked > 0);
+	}
+
+	private static List<RouteSegmentResult> searchRoute(File file, LatLon start, LatLon end, ReverseSearchTree tree)
+			throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+					RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+			RoutingConfiguration config = RoutingConfiguration.getDefault().build("car", memoryLimits,
+					new LinkedHashMap<String, String>());
+			config.planRoadDirection = 0;
+			RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers, RouteCalculationMode.NORMAL);
+			ctx.reverseSearchTree = tree;
+			return fe.searchRoute(ctx, start, end, null).detailed;
+		} finally {
+			readers[0].close();
+		}
+	}
+
+	private static List<Long> roadIds(List<RouteSegmentResult> route) {
+		List<Long> ids = new ArrayList<Long>();
+		for (RouteSegmentResult r : route) {
+			ids.add(r.getObject().getId());
+		}
+		return ids;
+	}
+
+	private static Map<String, String> params(String key, String value) {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		params.put(key, value);
+		return params;
+	}
+
+	private static RoutingContext context(GeneralRouter router, long memoryLimitation) {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = router;
+		config.routerName = "car";
+		config.memoryLimitation = memoryLimitation;
+		return new RoutingContext(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+	}
+
+	private static RouteSegmentPoint endPoint() {
+		RouteDataObject road = new RouteDataObject(new RouteRegion());
+		road.id = 10;
+		road.pointsX = new int[] { 0, 100, 200 };
+		road.pointsY = new int[] { 0, 100, 200 };
+		return new RouteSegmentPoint(road, 0, 0);
+	}
+
+	private static TLongObjectHashMap<RouteSegment> visited(RouteSegmentPoint end) {
+		TLongObjectHashMap<RouteSegment> visited = new TLongObjectHashMap<RouteSegment>();
+		visited.put(1, new RouteSegment(end.getRoad(), 0, 1));
+		visited.put(2, new RouteSegment(end.getRoad(), 1, 2));
+		return visited;
+	}
+}
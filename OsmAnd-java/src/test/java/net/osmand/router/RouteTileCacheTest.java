@@ -0,0 +1,113 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+
+public class RouteTileCacheTest {
+
+	private File file;
+	private final List<RandomAccessFile> files = new ArrayList<RandomAccessFile>();
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("tiles", ".obf");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (RandomAccessFile raf : files) {
+			raf.close();
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testObjectsAreBoundToRegionOfCaller() throws IOException {
+		RouteRegion first = new RouteRegion();
+		first.initRouteEncodingRule(1, "highway", "primary");
+		RouteRegion second = new RouteRegion(first);
+		TestReader firstReader = createReader();
+		TestReader secondReader = createReader();
+		RouteTileCache cache = new RouteTileCache(1 << 20);
+
+		List<RouteDataObject> loaded = cache.loadRouteIndexData(firstReader, subregion(first));
+		List<RouteDataObject> cached = cache.loadRouteIndexData(secondReader, subregion(second));
+		Assert.assertEquals(1, firstReader.loads);
+		Assert.assertEquals(0, secondReader.loads);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+
+		Assert.assertEquals(2, cached.size());
+		for (int i = 0; i < cached.size(); i++) {
+			Assert.assertSame(first, loaded.get(i).region);
+			Assert.assertSame(second, cached.get(i).region);
+			Assert.assertEquals(loaded.get(i).getId(), cached.get(i).getId());
+			Assert.assertEquals("primary", cached.get(i).getHighway());
+		}
+	}
+
+	@Test
+	public void testEveryCallerGetsOwnCopies() throws IOException {
+		RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(1, "highway", "primary");
+		TestReader reader = createReader();
+		RouteTileCache cache = new RouteTileCache(1 << 20);
+
+		List<RouteDataObject> first = cache.loadRouteIndexData(reader, subregion(region));
+		List<RouteDataObject> second = cache.loadRouteIndexData(reader, subregion(region));
+		Assert.assertNotSame(first.get(0), second.get(0));
+		first.get(0).types = new int[0];
+		first.clear();
+		List<RouteDataObject> third = cache.loadRouteIndexData(reader, subregion(region));
+		Assert.assertEquals(2, third.size());
+		Assert.assertEquals(1, third.get(0).types.length);
+	}
+
+	private RouteSubregion subregion(RouteRegion region) {
+		RouteSubregion sub = new RouteSubregion(region);
+		sub.filePointer = 100;
+		return sub;
+	}
+
+	private TestReader createReader() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		files.add(raf);
+		return new TestReader(raf, file);
+	}
+
+	private static class TestReader extends BinaryMapIndexReader {
+		int loads;
+
+		TestReader(RandomAccessFile raf, File file) throws IOException {
+			super(raf, file, false);
+		}
+
+		@Override
+		public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) {
+			loads++;
+			List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+			for (int i = 0; i < 2; i++) {
+				RouteDataObject ro = new RouteDataObject(rs.routeReg);
+				ro.id = i + 1;
+				ro.types = new int[] { 1 };
+				ro.pointsX = new int[] { 0, 10 };
+				ro.pointsY = new int[] { 0, 10 };
+				res.add(ro);
+			}
+			return res;
+		}
+	}
+}
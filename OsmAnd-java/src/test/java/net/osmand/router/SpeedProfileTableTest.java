@@ -0,0 +1,179 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+public class SpeedProfileTableTest {
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	// Monday 06.01.2025 00:00 UTC
+	private static final long MONDAY = 1736121600000l;
+	private static final long HOUR = 60 * 60 * 1000l;
+	private static final String ROUTING_FILE = "src/test/resources/routing/Routing_test_archive.obf";
+
+	@Test
+	public void testHourOfWeek() {
+		Assert.assertEquals(0, SpeedProfileTable.getHourOfWeek(MONDAY, UTC));
+		Assert.assertEquals(8, SpeedProfileTable.getHourOfWeek(MONDAY + 8 * HOUR + HOUR / 2, UTC));
+		Assert.assertEquals(167, SpeedProfileTable.getHourOfWeek(MONDAY - 1, UTC));
+		Assert.assertEquals(3 * 24, SpeedProfileTable.getHourOfWeek(0, UTC));
+		Assert.assertEquals(3 * 24 - 1, SpeedProfileTable.getHourOfWeek(-1, UTC));
+		Assert.assertEquals(2, SpeedProfileTable.getHourOfWeek(MONDAY, TimeZone.getTimeZone("GMT+02:00")));
+	}
+
+	@Test
+	public void testSpeedFactors() throws IOException {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(0, "highway", "primary");
+		reg.initRouteEncodingRule(1, "highway", "residential");
+		float[] rushHour = new float[SpeedProfileTable.HOURS_OF_WEEK];
+		Arrays.fill(rushHour, 1);
+		rushHour[8] = 0.5f;
+		float[] slowWay = new float[SpeedProfileTable.HOURS_OF_WEEK];
+		Arrays.fill(slowWay, 0.25f);
+		Map<String, float[]> classes = new HashMap<String, float[]>();
+		classes.put("primary", rushHour);
+		File f = File.createTempFile("test", SpeedProfileTable.EXT);
+		try {
+			SpeedProfileTable.write(f, classes, Collections.singletonMap(42l, slowWay));
+			SpeedProfileTable table = SpeedProfileTable.open(f).setTimeZone(UTC);
+			RouteDataObject primary = road(reg, 10, 0);
+			Assert.assertEquals(1, table.getSpeedFactor(primary, MONDAY), 1e-6);
+			Assert.assertEquals(0.5, table.getSpeedFactor(primary, MONDAY + 8 * HOUR), 1e-6);
+			Assert.assertEquals(0.25, table.getSpeedFactor(road(reg, 42, 0), MONDAY), 1e-6);
+			Assert.assertEquals(1, table.getSpeedFactor(road(reg, 11, 1), MONDAY + 8 * HOUR), 1e-6);
+			table.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testSpeedUpIsCappedByMaxSpeed() {
+		Assert.assertEquals(10, SpeedProfileTable.applySpeedFactor(20, 0.5f, 30), 1e-6);
+		Assert.assertEquals(24, SpeedProfileTable.applySpeedFactor(20, 1.2f, 30), 1e-6);
+		Assert.assertEquals(30, SpeedProfileTable.applySpeedFactor(20, 2, 30), 1e-6);
+		// speed which is already higher than max speed isn't increased
+		Assert.assertEquals(40, SpeedProfileTable.applySpeedFactor(40, 2, 30), 1e-6);
+		Assert.assertEquals(20, SpeedProfileTable.applySpeedFactor(40, 0.5f, 30), 1e-6);
+	}
+
+	@Test
+	public void testLegStartsAtArrivalOfPreviousLeg() throws Exception {
+		File file = new File(ROUTING_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		Reader reader = new InputStreamReader(SpeedProfileTableTest.class.getResourceAsStream("/test_routing.json"));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		reader.close();
+		int checked = 0;
+		for (TestEntry te : testEntries) {
+			if (te.isIgnore() || te.getExpectedResults() == null || !te.getParams().isEmpty()) {
+				continue;
+			}
+			LatLon start = te.getStartPoint();
+			LatLon end = te.getEndPoint();
+			LatLon middle = new LatLon((start.getLatitude() + end.getLatitude()) / 2,
+					(start.getLongitude() + end.getLongitude()) / 2);
+			RouteCalcResult first = searchRoute(file, start, middle, null, null, 0);
+			RouteCalcResult second = searchRoute(file, middle, end, null, null, 0);
+			if (!isCorrect(first) || !isCorrect(second)) {
+				continue;
+			}
+			double t1 = routeTime(first.detailed);
+			double t2 = routeTime(second.detailed);
+			if (Math.min(t1, t2) < 0.2 * (t1 + t2)) {
+				continue;
+			}
+			// all roads of route are 2 times slower since second hour, second leg starts right after first hour
+			float[] slowSecondHour = new float[SpeedProfileTable.HOURS_OF_WEEK];
+			Arrays.fill(slowSecondHour, 0.5f);
+			slowSecondHour[0] = 1;
+			Map<String, float[]> classes = new HashMap<String, float[]>();
+			for (RouteCalcResult r : Arrays.asList(first, second)) {
+				for (RouteSegmentResult s : r.detailed) {
+					if (s.getObject().getHighway() != null) {
+						classes.put(s.getObject().getHighway(), slowSecondHour);
+					}
+				}
+			}
+			File f = File.createTempFile("test", SpeedProfileTable.EXT);
+			try {
+				SpeedProfileTable.write(f, classes, Collections.<Long, float[]>emptyMap());
+				SpeedProfileTable table = SpeedProfileTable.open(f).setTimeZone(UTC);
+				RouteCalcResult res = searchRoute(file, start, end, Collections.singletonList(middle), table,
+						MONDAY + HOUR - (long) (t1 * 1000) - 500);
+				table.close();
+				Assert.assertTrue(te.getTestName(), isCorrect(res));
+				double expected = t1 + 2 * t2;
+				Assert.assertEquals(te.getTestName(), expected, routeTime(res.detailed), 0.05 * expected);
+			} finally {
+				f.delete();
+			}
+			checked++;
+		}
+		Assert.assertTrue(checked > 0);
+	}
+
+	private static RouteCalcResult searchRoute(File file, LatLon start, LatLon end, List<LatLon> intermediates,
+			SpeedProfileTable table, long time) throws IOException, InterruptedException {
+		BinaryMapIndexReader[] readers = { new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file) };
+		try {
+			RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+					RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+			RoutingConfiguration config = RoutingConfiguration.getDefault().build("car", memoryLimits,
+					new HashMap<String, String>());
+			config.speedProfiles = table;
+			config.routeCalculationTime = time;
+			RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			return fe.searchRoute(ctx, start, end, intermediates);
+		} finally {
+			readers[0].close();
+		}
+	}
+
+	private static boolean isCorrect(RouteCalcResult res) {
+		return res != null && res.isCorrect() && !res.detailed.isEmpty();
+	}
+
+	private static double routeTime(List<RouteSegmentResult> route) {
+		double time = 0;
+		for (RouteSegmentResult r : route) {
+			time += r.getSegmentTime();
+		}
+		return time;
+	}
+
+	private static RouteDataObject road(RouteRegion reg, long osmId, int type) {
+		RouteDataObject r = new RouteDataObject(reg);
+		r.id = osmId << 6;
+		r.types = new int[] { type };
+		return r;
+	}
+}
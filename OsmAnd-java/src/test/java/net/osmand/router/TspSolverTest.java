@@ -0,0 +1,154 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.router.TspSolver.TspProblem;
+import net.osmand.router.TspSolver.TspSolution;
+
+public class TspSolverTest {
+
+	@Test
+	public void testOptimalOrderOfAsymmetricMatrix() throws InterruptedException {
+		Random rnd = new Random(11);
+		for (int test = 0; test < 5; test++) {
+			double[][] matrix = randomMatrix(rnd, 8);
+			TspSolution s = new TspSolver().setSeed(test).setThreads(2).solve(new TspProblem(matrix, 0, 7));
+			int[] route = s.routes[0];
+			Assert.assertEquals(8, route.length);
+			Assert.assertEquals(0, route[0]);
+			Assert.assertEquals(7, route[7]);
+			Assert.assertEquals(bruteForce(matrix, 0, 7), routeTime(matrix, route), 1e-6);
+			Assert.assertEquals(routeTime(matrix, route), s.duration, 1e-6);
+			Assert.assertTrue(s.feasible);
+		}
+	}
+
+	@Test
+	public void testRoundTripOrder() throws InterruptedException {
+		double[][] matrix = randomMatrix(new Random(5), 6);
+		int[] order = TspSolver.solveOrder(matrix, 0, 0);
+		Assert.assertEquals(6, order.length);
+		Assert.assertEquals(0, order[0]);
+		int[] sorted = order.clone();
+		Arrays.sort(sorted);
+		Assert.assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 }, sorted);
+	}
+
+	@Test
+	public void testOpenRouteOrderIsDeterministic() throws InterruptedException {
+		double[][] matrix = randomMatrix(new Random(7), 30);
+		int[] order = TspSolver.solveOrder(matrix, 0, -1);
+		Assert.assertEquals(30, order.length);
+		Assert.assertEquals(0, order[0]);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertArrayEquals(order, TspSolver.solveOrder(matrix, 0, -1));
+		}
+	}
+
+	@Test
+	public void testTimeWindows() throws InterruptedException {
+		// points on a line, 10 s between neighbours
+		int n = 6;
+		double[][] matrix = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				matrix[i][j] = Math.abs(i - j) * 10;
+			}
+		}
+		// the farthest point should be visited first as service of other points takes time
+		TspProblem p = new TspProblem(matrix, 0, -1).setTimeWindow(5, 0, 60);
+		for (int i = 1; i < 5; i++) {
+			p.setServiceTime(i, 20);
+		}
+		TspSolution s = new TspSolver().setSeed(1).solve(p);
+		Assert.assertTrue(s.feasible);
+		Assert.assertEquals(5, s.routes[0][1]);
+		Assert.assertTrue(s.arrivalTimes[5] <= 60);
+		// the nearest point can't be visited before 100 s
+		p = new TspProblem(matrix, 0, -1).setTimeWindow(1, 100, 200);
+		s = new TspSolver().setSeed(1).solve(p);
+		Assert.assertTrue(s.feasible);
+		Assert.assertEquals(100, s.arrivalTimes[1], 1e-6);
+	}
+
+	@Test
+	public void testVehiclesCapacity() throws InterruptedException {
+		double[][] matrix = randomMatrix(new Random(3), 9);
+		TspProblem p = new TspProblem(matrix, 0, 0).setVehicles(3).setCapacity(3);
+		for (int i = 1; i < 9; i++) {
+			p.setDemand(i, 1);
+		}
+		TspSolution s = new TspSolver().setSeed(2).solve(p);
+		Assert.assertTrue(s.feasible);
+		boolean[] visited = new boolean[9];
+		for (int[] route : s.routes) {
+			Assert.assertTrue(route.length - 2 <= 3);
+			Assert.assertEquals(0, route[0]);
+			Assert.assertEquals(0, route[route.length - 1]);
+			for (int i = 1; i < route.length - 1; i++) {
+				Assert.assertFalse(visited[route[i]]);
+				visited[route[i]] = true;
+			}
+		}
+		for (int i = 1; i < 9; i++) {
+			Assert.assertTrue(visited[i]);
+		}
+	}
+
+	private static double[][] randomMatrix(Random rnd, int n) {
+		double[][] matrix = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				matrix[i][j] = i == j ? 0 : 10 + rnd.nextInt(100);
+			}
+		}
+		return matrix;
+	}
+
+	private static double routeTime(double[][] matrix, int[] route) {
+		double t = 0;
+		for (int i = 1; i < route.length; i++) {
+			t += matrix[route[i - 1]][route[i]];
+		}
+		return t;
+	}
+
+	private static double bruteForce(double[][] matrix, int start, int end) {
+		int[] stops = new int[matrix.length - 2];
+		for (int i = 0, k = 0; i < matrix.length; i++) {
+			if (i != start && i != end) {
+				stops[k++] = i;
+			}
+		}
+		return permute(matrix, stops, 0, start, end);
+	}
+
+	private static double permute(double[][] matrix, int[] stops, int k, int start, int end) {
+		if (k == stops.length) {
+			double t = 0;
+			int prev = start;
+			for (int s : stops) {
+				t += matrix[prev][s];
+				prev = s;
+			}
+			return t + matrix[prev][end];
+		}
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = k; i < stops.length; i++) {
+			swap(stops, i, k);
+			best = Math.min(best, permute(matrix, stops, k + 1, start, end));
+			swap(stops, i, k);
+		}
+		return best;
+	}
+
+	private static void swap(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+}
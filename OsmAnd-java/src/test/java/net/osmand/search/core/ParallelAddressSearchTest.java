@@ -0,0 +1,184 @@
+package net.osmand.search.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.City;
+import net.osmand.data.City.CityType;
+import net.osmand.data.LatLon;
+import net.osmand.data.MapObject;
+import net.osmand.data.Street;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+import net.osmand.search.core.SearchCoreFactory.SearchAddressByNameAPI;
+
+public class ParallelAddressSearchTest {
+
+	private static final int REGIONS = 8;
+	private static final LatLon CENTER = new LatLon(52, 4);
+
+	private File file;
+	private final List<BinaryMapIndexReader> regions = new ArrayList<>();
+	private final AtomicInteger preloadedCities = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		// readers don't read file, address data is created by test
+		file = File.createTempFile("address", ".obf");
+		Random rnd = new Random(7);
+		for (int i = 0; i < REGIONS; i++) {
+			regions.add(new TestRegion(file, i, rnd));
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader r : regions) {
+			r.close();
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testOneWordSameResultsAsSequential() throws IOException {
+		List<String> expected = search("Oakwood", 1);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, search("Oakwood", 4));
+		Assert.assertEquals(0, preloadedCities.get());
+	}
+
+	@Test
+	public void testMoreWordsSameResultsAsSequential() throws IOException {
+		List<String> expected = search("Oakwood Lane", 1);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(0, preloadedCities.get());
+		Assert.assertEquals(expected, search("Oakwood Lane", 4));
+		// streets of found villages are preloaded by workers
+		Assert.assertTrue(preloadedCities.get() > 0);
+		Assert.assertEquals(expected, search("Oakwood Lane", 4));
+	}
+
+	// published results with finished region events in order of publishing
+	private List<String> search(String text, int threads) throws IOException {
+		SearchSettings settings = new SearchSettings(regions).setOriginalLocation(CENTER).setSearchThreads(threads);
+		SearchPhrase phrase = SearchPhrase.emptyPhrase(settings).generateNewPhrase(text, settings);
+		final List<String> published = new ArrayList<>();
+		ResultMatcher<SearchResult> collector = new ResultMatcher<SearchResult>() {
+
+			@Override
+			public boolean publish(SearchResult r) {
+				String region = r.file == null ? "" : r.file.getRegionName();
+				published.add(r.objectType + " " + r.localeName + " " + r.localeRelatedObjectName + " " + region + " "
+						+ r.location);
+				return true;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
+		};
+		SearchResultMatcher matcher = new SearchResultMatcher(collector, phrase, 1, new AtomicInteger(1), -1);
+		new SearchAddressByNameAPI(null, null).search(phrase, matcher);
+		return published;
+	}
+
+	private class TestRegion extends BinaryMapIndexReader {
+
+		private final int index;
+		private final List<City> towns = new ArrayList<>();
+		private final List<MapObject> objects = new ArrayList<>();
+
+		TestRegion(File file, int index, Random rnd) throws IOException {
+			super(new RandomAccessFile(file, "r"), file, false);
+			this.index = index;
+			towns.add(city(CityType.TOWN, "Oakwood Town " + index, rnd));
+			towns.add(city(CityType.CITY, "Elm City " + index, rnd));
+			int villages = rnd.nextInt(4);
+			for (int i = 0; i < villages; i++) {
+				City v = city(CityType.VILLAGE, "Oakwood " + index + "-" + i, rnd);
+				v.setFileOffset(rnd.nextInt(1000));
+				objects.add(v);
+			}
+			objects.add(city(CityType.HAMLET, "Oakwood Hamlet " + index, rnd));
+			City postcode = new City("OAK" + index, -index - 1);
+			postcode.setLocation(CENTER.getLatitude(), CENTER.getLongitude());
+			objects.add(postcode);
+			if (index % 2 == 0) {
+				Street s = new Street(towns.get(0));
+				s.setName("Oakwood Street " + index);
+				s.setId((long) index * 100);
+				s.setLocation(location(rnd));
+				objects.add(s);
+			}
+		}
+
+		private City city(CityType type, String name, Random rnd) {
+			City c = new City(type);
+			c.setName(name);
+			c.setId((long) index * 100 + objects.size() + towns.size() + 1);
+			c.setLocation(location(rnd));
+			return c;
+		}
+
+		private LatLon location(Random rnd) {
+			return new LatLon(CENTER.getLatitude() + rnd.nextDouble() * 0.1, CENTER.getLongitude() + rnd.nextDouble() * 0.1);
+		}
+
+		@Override
+		public String getRegionName() {
+			return "region" + index;
+		}
+
+		@Override
+		public boolean containsPoiData(int left31x, int top31y, int right31x, int bottom31y) {
+			return true;
+		}
+
+		@Override
+		public boolean containsAddressData() {
+			return true;
+		}
+
+		@Override
+		public List<City> getCities(SearchRequest<City> resultMatcher, int cityType) {
+			return new ArrayList<>(towns);
+		}
+
+		@Override
+		public List<MapObject> searchAddressDataByName(SearchRequest<MapObject> req) {
+			Random rnd = new Random(index);
+			for (MapObject o : objects) {
+				if (rnd.nextBoolean()) {
+					// different timing of regions
+					Thread.yield();
+				}
+				req.publish(o);
+			}
+			return req.getSearchResults();
+		}
+
+		@Override
+		public int preloadStreets(City c, SearchRequest<Street> resultMatcher) {
+			if (c.getStreets().isEmpty()) {
+				Street s = new Street(c);
+				s.setName(c.getName() + " Lane");
+				s.setLocation(c.getLocation());
+				c.registerStreet(s);
+				preloadedCities.incrementAndGet();
+			}
+			return 1;
+		}
+	}
+}
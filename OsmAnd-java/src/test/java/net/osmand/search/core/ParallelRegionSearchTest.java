@@ -0,0 +1,123 @@
+package net.osmand.search.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+
+public class ParallelRegionSearchTest {
+
+	private static final int REGIONS = 12;
+
+	private File file;
+	private List<BinaryMapIndexReader> regions = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		// readers aren't used by search, they are only different regions
+		file = File.createTempFile("region", ".obf");
+		for (int i = 0; i < REGIONS; i++) {
+			regions.add(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, false));
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader r : regions) {
+			r.close();
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testSameOrderAsSequential() throws IOException {
+		int[] sizes = regionSizes(new Random(3));
+		List<Integer> expected = search(sizes, 1, -1);
+		Assert.assertEquals(sum(sizes), expected.size());
+		for (int threads = 2; threads <= 5; threads++) {
+			Assert.assertEquals(expected, search(sizes, threads, -1));
+		}
+	}
+
+	@Test
+	public void testLimitKeepsSameResults() throws IOException {
+		int[] sizes = regionSizes(new Random(5));
+		int limit = sum(sizes) / 3;
+		List<Integer> expected = search(sizes, 1, limit);
+		Assert.assertTrue(expected.size() > limit);
+		for (int threads = 2; threads <= 5; threads++) {
+			List<Integer> result = search(sizes, threads, limit);
+			// regions could be read further than by sequential search, but first objects are always the same
+			Assert.assertEquals(expected, result.subList(0, limit + 1));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testErrorIsRethrown() throws IOException {
+		SearchResultMatcher matcher = new SearchResultMatcher(null, null, 1, new AtomicInteger(1), -1);
+		new ParallelRegionSearch<Integer>(matcher, 3, -1) {
+
+			@Override
+			protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<Integer> collector) throws IOException {
+				throw new IOException("Broken file");
+			}
+
+			@Override
+			protected void publishRegion(BinaryMapIndexReader r, List<Integer> objects) {
+			}
+		}.search(regions);
+	}
+
+	private List<Integer> search(final int[] sizes, int threads, int limit) throws IOException {
+		SearchResultMatcher matcher = new SearchResultMatcher(null, null, 1, new AtomicInteger(1), -1);
+		final List<Integer> published = new ArrayList<>();
+		new ParallelRegionSearch<Integer>(matcher, threads, limit) {
+
+			@Override
+			protected void searchRegion(BinaryMapIndexReader r, ResultMatcher<Integer> collector) {
+				int index = regions.indexOf(r);
+				Random rnd = new Random(index);
+				for (int i = 0; i < sizes[index] && !collector.isCancelled(); i++) {
+					if (rnd.nextInt(50) == 0) {
+						Thread.yield();
+					}
+					collector.publish(index * 1000 + i);
+				}
+			}
+
+			@Override
+			protected void publishRegion(BinaryMapIndexReader r, List<Integer> objects) {
+				published.addAll(objects);
+			}
+		}.search(regions);
+		return published;
+	}
+
+	private int[] regionSizes(Random rnd) {
+		int[] sizes = new int[REGIONS];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = rnd.nextInt(4) == 0 ? 0 : rnd.nextInt(500);
+		}
+		return sizes;
+	}
+
+	private int sum(int[] sizes) {
+		int s = 0;
+		for (int i : sizes) {
+			s += i;
+		}
+		return s;
+	}
+}
@@ -0,0 +1,55 @@
+package net.osmand.util;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FloatPriorityQueueTest {
+
+	private static class Entry {
+		final int id;
+		final float cost;
+
+		Entry(int id, float cost) {
+			this.id = id;
+			this.cost = cost;
+		}
+	}
+
+	@Test
+	public void testSameOrderAsPriorityQueue() {
+		Random rnd = new Random(17);
+		PriorityQueue<Entry> expected = new PriorityQueue<>(50, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return Double.compare(o1.cost, o2.cost);
+			}
+		});
+		FloatPriorityQueue<Entry> queue = new FloatPriorityQueue<>(50);
+		int id = 0;
+		for (int it = 0; it < 20000; it++) {
+			if (rnd.nextInt(3) > 0) {
+				// few distinct costs to check order of equal elements
+				Entry e = new Entry(id++, rnd.nextInt(50) / 2f);
+				expected.add(e);
+				queue.add(e, e.cost);
+			} else {
+				Assert.assertEquals(expected.size(), queue.size());
+				if (!expected.isEmpty()) {
+					Assert.assertEquals(expected.peek().cost, queue.peekKey(), 0);
+				}
+				Entry e = expected.poll();
+				Entry a = queue.poll();
+				Assert.assertSame(e, a);
+			}
+		}
+		while (!expected.isEmpty()) {
+			Assert.assertSame(expected.poll(), queue.poll());
+		}
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.poll());
+	}
+}
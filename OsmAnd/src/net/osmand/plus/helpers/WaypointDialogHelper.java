@@ -14,7 +14,6 @@ import androidx.annotation.Nullable;
 
 import net.osmand.plus.utils.AndroidUtils;
 import net.osmand.Location;
-import net.osmand.TspAnt;
 import net.osmand.data.FavouritePoint;
 import net.osmand.data.LatLon;
 import net.osmand.data.LocationPoint;
@@ -33,6 +32,7 @@ import net.osmand.plus.base.bottomsheetmenu.simpleitems.TitleItem;
 import net.osmand.plus.routepreparationmenu.AddPointBottomSheetDialog;
 import net.osmand.plus.routepreparationmenu.MapRouteInfoMenu;
 import net.osmand.plus.views.controls.StableArrayAdapter;
+import net.osmand.router.TspSolver;
 import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
 
@@ -389,12 +389,14 @@ public class WaypointDialogHelper {
 					start = lt.get(0);
 				}
 				TargetPoint end = lt.remove(lt.size() - 1);
-				ArrayList<LatLon> al = new ArrayList<>();
+				List<LatLon> points = new ArrayList<>();
+				points.add(start.point);
 				for (TargetPoint p : lt) {
-					al.add(p.point);
+					points.add(p.point);
 				}
+				points.add(end.point);
 				try {
-					return new TspAnt().readGraph(al, start.point, end.point).solve();
+					return TspSolver.solveOrder(TspSolver.buildStraightLineMatrix(points, 1), 0, points.size() - 1);
 				} catch (Exception e) {
 					return null;
 				}
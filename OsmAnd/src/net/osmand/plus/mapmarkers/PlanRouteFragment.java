@@ -20,7 +20,6 @@ import com.google.android.material.snackbar.Snackbar;
 import net.osmand.gpx.GPXUtilities.TrkSegment;
 import net.osmand.gpx.GPXUtilities.WptPt;
 import net.osmand.Location;
-import net.osmand.TspAnt;
 import net.osmand.data.LatLon;
 import net.osmand.data.PointDescription;
 import net.osmand.data.RotatedTileBox;
@@ -50,6 +49,7 @@ import net.osmand.plus.views.OsmandMapTileView;
 import net.osmand.plus.views.layers.MapMarkersLayer;
 import net.osmand.plus.views.mapwidgets.TopToolbarController;
 import net.osmand.plus.views.mapwidgets.TopToolbarView;
+import net.osmand.router.TspSolver;
 import net.osmand.util.MapUtils;
 
 import java.util.ArrayList;
@@ -863,7 +863,15 @@ public class PlanRouteFragment extends BaseOsmAndFragment
 
 				LatLon start = startFromLoc ? new LatLon(myLoc.getLatitude(), myLoc.getLongitude()) : selectedLatLon.remove(0);
 
-				int[] sequence = new TspAnt().readGraph(selectedLatLon, start, null).solve();
+				List<LatLon> points = new ArrayList<>();
+				points.add(start);
+				points.addAll(selectedLatLon);
+				int[] sequence;
+				try {
+					sequence = TspSolver.solveOrder(TspSolver.buildStraightLineMatrix(points, 1), 0, -1);
+				} catch (InterruptedException e) {
+					return selectedMarkers;
+				}
 
 				List<MapMarker> res = new ArrayList<>();
 				for (int i = 0; i < sequence.length; i++) {
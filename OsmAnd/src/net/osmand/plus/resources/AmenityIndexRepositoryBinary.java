@@ -180,6 +180,7 @@ public class AmenityIndexRepositoryBinary implements AmenityIndexRepository {
 		long now = System.currentTimeMillis();
 		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(sleft, sright, stop, sbottom, zoom,
 				filter, matcher);
+		req.setLazyAdditionalInfo(true);
 		List<Amenity> result = null;
 		try {
 			BinaryMapIndexReader reader = getOpenFile();
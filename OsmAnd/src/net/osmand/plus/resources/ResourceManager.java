@@ -22,6 +22,7 @@ import net.osmand.IndexConstants;
 import net.osmand.Location;
 import net.osmand.PlatformUtil;
 import net.osmand.ResultMatcher;
+import net.osmand.binary.AmenityCache;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
 import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiSubType;
@@ -927,6 +928,7 @@ public class ResourceManager {
 		renderer.clearAllResources();
 		CachedOsmandIndexes cachedOsmandIndexes = new CachedOsmandIndexes();
 		File indCache = context.getAppPath(INDEXES_CACHE);
+		cachedOsmandIndexes.setPoiNameTrigramsDir(indCache.getParentFile());
 		if (indCache.exists()) {
 			try {
 				cachedOsmandIndexes.readFromFile(indCache);
@@ -1454,6 +1456,7 @@ public class ResourceManager {
 			res.close();
 		}
 		fileReaders.clear();
+		AmenityCache.getDefault().clear();
 	}
 
 	public BinaryMapIndexReader[] getReverseGeocodingMapFiles() {